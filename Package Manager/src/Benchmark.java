@@ -0,0 +1,298 @@
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Filename:   Benchmark.java
+ * Project:    p4
+ *
+ * Measures the throughput and allocation of Graph and PackageManager operations on synthetic
+ * graphs from GraphGenerator.
+ *
+ * Every operation is warmed up, then run for a fixed time, and reported with its throughput,
+ * the bytes it allocated per call and its allocation rate, measured on the benchmark thread, and
+ * the number and time of garbage collections during the run.
+ *
+ * Usage: java Benchmark [shapes] [sizes] [seconds per operation]
+ * e.g.   java Benchmark CHAIN,POWER_LAW 1000,1000000 2
+ */
+public class Benchmark {
+	/**
+	 * An operation to be measured
+	 */
+	private interface Operation {
+		void run() throws Exception;
+	}
+
+	/**
+	 * The time each operation is warmed up and measured for, in nanoseconds
+	 */
+	private static long warmupNanos, measureNanos;
+
+	/**
+	 * Prevents the results of the operations from being optimized away
+	 */
+	private static long sink;
+
+	/**
+	 * Runs the benchmarks
+	 *
+	 * @param args the shapes, the sizes and the number of seconds per operation, all optional
+	 * @throws Exception if an operation fails
+	 */
+	public static void main(String[] args) throws Exception {
+		String shapes = args.length > 0 ? args[0] : "CHAIN,FAN_OUT,POWER_LAW,DIAMOND";
+		String sizes = args.length > 1 ? args[1] : "1000,10000,100000";
+		double seconds = args.length > 2 ? Double.parseDouble(args[2]) : 1;
+		measureNanos = (long) (seconds * 1e9);
+		warmupNanos = measureNanos / 2;
+
+		System.out.printf("%-10s %8s %-42s %14s %12s %14s %10s %6s %8s%n", "shape", "size", "operation",
+				"ops/s", "ms/op", "bytes/op", "MB/s alloc", "GCs", "GC ms");
+		for (String shapeName : shapes.split(",")) {
+			GraphGenerator.Shape shape = GraphGenerator.Shape.valueOf(shapeName.trim());
+			for (String sizeText : sizes.split(",")) {
+				int size = Integer.parseInt(sizeText.trim());
+				runAll(shape, size);
+			}
+		}
+	}
+
+	/**
+	 * This helper method runs every operation on one generated graph
+	 * @param shape - the shape of the graph
+	 * @param size - the number of packages
+	 */
+	private static void runAll(GraphGenerator.Shape shape, int size) throws Exception {
+		List<Package> packages = GraphGenerator.generate(shape, size, 42);
+		Path json = Files.createTempFile("benchmark", ".json");
+		try {
+			GraphGenerator.writeJson(packages, json);
+			// the edges of the graph as two arrays, for building graphs directly
+			List<String> sources = new ArrayList<String>();
+			List<String> targets = new ArrayList<String>();
+			for (Package pkg : packages) {
+				for (String dependency : pkg.getDependencies()) {
+					sources.add(pkg.getName());
+					targets.add(dependency);
+				}
+			}
+			String[] sourceArray = sources.toArray(new String[0]);
+			String[] targetArray = targets.toArray(new String[0]);
+
+			measure(shape, size, "Graph.addVertex+addEdge", () -> {
+				Graph graph = new Graph();
+				for (Package pkg : packages) {
+					graph.addVertex(pkg.getName());
+				}
+				for (int i = 0; i < sourceArray.length; i++) {
+					graph.addEdge(sourceArray[i], targetArray[i]);
+				}
+				sink += graph.size();
+			});
+			measure(shape, size, "Graph.addEdges", () -> {
+				Graph graph = new Graph();
+				graph.addEdges(sourceArray, targetArray);
+				sink += graph.size();
+			});
+
+			PackageManager pm = new PackageManager();
+			pm.constructGraph(json.toString());
+			// results are computed every time, not served from the cache
+			pm.setResultCacheSize(0);
+			Graph graph = new Graph();
+			graph.addEdges(sourceArray, targetArray);
+			graph.freeze();
+
+			measure(shape, size, "Graph.getAdjacentVerticesOf (all)", () -> {
+				for (Package pkg : packages) {
+					sink += graph.getAdjacentVerticesOf(pkg.getName()).size();
+				}
+			});
+			measure(shape, size, "Graph.neighborCursor (all)", () -> {
+				NeighborCursor cursor = graph.neighborCursor();
+				for (Package pkg : packages) {
+					cursor.reset(pkg.getName());
+					while (cursor.next()) {
+						sink += cursor.current().length();
+					}
+				}
+			});
+			measure(shape, size, "PackageManager.constructGraph", () -> {
+				PackageManager fresh = new PackageManager();
+				fresh.constructGraph(json.toString());
+				sink += fresh.getAllPackages().size();
+			});
+			measure(shape, size, "PackageManager.constructGraph (stream)", () -> {
+				PackageManager fresh = new PackageManager();
+				fresh.setStreamingIngest(true);
+				fresh.constructGraph(json.toString());
+				sink += fresh.getAllPackages().size();
+			});
+			long indexStart = System.nanoTime();
+			ManifestIndex manifestIndex = ManifestIndex.open(json.toString());
+			System.out.printf("%-10s %8d %-42s %14s %12.3f %14d%n", shape, size, "ManifestIndex build", "", 
+					(System.nanoTime() - indexStart) / 1e6, new java.io.File(ManifestIndex.indexPath(json.toString())).length());
+			String lazyRoot = packages.get(size / 2).getName();
+			measure(shape, size, "getInstallationOrder (lazy, fresh manager)", () -> {
+				PackageManager fresh = new PackageManager();
+				fresh.setLazyLoading(true);
+				fresh.constructGraph(json.toString());
+				sink += fresh.getInstallationOrder(lazyRoot).size() + manifestIndex.size();
+			});
+			// the snapshot is written once, and every load maps it in place
+			Path snapshot = Files.createTempFile("benchmark", ".snapshot");
+			PackageManager writer = new PackageManager();
+			writer.constructGraph(json.toString());
+			writer.saveSnapshot(snapshot.toString(), json.toString());
+			writer = null;
+			measure(shape, size, "getInstallationOrder (snapshot, fresh manager)", () -> {
+				PackageManager fresh = new PackageManager();
+				fresh.constructGraphFromSnapshot(json.toString(), snapshot.toString());
+				sink += fresh.getInstallationOrder(lazyRoot).size();
+			});
+			Files.delete(snapshot);
+			// the off-heap graph is built once, since every build allocates its pages again
+			long offHeapStart = System.nanoTime();
+			PackageManager offHeap = new PackageManager();
+			offHeap.setOffHeapStorage(true);
+			offHeap.constructGraph(json.toString());
+			offHeap.setResultCacheSize(0);
+			System.out.printf("%-10s %8d %-42s %14s %12.3f %14d%n", shape, size, "PackageManager.constructGraph (off-heap)", "", 
+					(System.nanoTime() - offHeapStart) / 1e6, offHeap.getOffHeapFootprint());
+			measure(shape, size, "getInstallationOrderForAll (off-heap)", () -> {
+				sink += offHeap.getInstallationOrderForAllPackages().size();
+			});
+			String root = packages.get(0).getName();
+			String middle = packages.get(size / 2).getName();
+			measure(shape, size, "PackageManager.getInstallationOrder", () -> {
+				sink += pm.getInstallationOrder(root).size();
+			});
+			measure(shape, size, "PackageManager.toInstall", () -> {
+				sink += pm.toInstall(root, middle).size();
+			});
+			measure(shape, size, "PackageManager.getInstallationOrderForAll", () -> {
+				sink += pm.getInstallationOrderForAllPackages().size();
+			});
+			measure(shape, size, "PackageManager.getPackageWithMaxDeps", () -> {
+				// changing the threshold drops the counts computed by the previous call
+				pm.setApproximationThreshold(200000);
+				sink += pm.getPackageWithMaxDependencies().length();
+			});
+			measure(shape, size, "PackageManager.getRegistryStatistics", () -> {
+				// changing the threshold drops the statistics computed by the previous call
+				pm.setApproximationThreshold(200000);
+				sink += pm.getRegistryStatistics().getComputeNanos();
+			});
+			measure(shape, size, "PackageManager.install (no-op, 8 threads)", () -> {
+				sink += pm.install(root, InstallAction.noOp(), 8).getInstalled().size();
+			});
+			// the same pairs are asked of an index with the closures and one with labels
+			String[][] pairs = new String[1000][];
+			java.util.Random random = new java.util.Random(42);
+			for (int i = 0; i < pairs.length; i++) {
+				pairs[i] = new String[] {packages.get(random.nextInt(size)).getName(), packages.get(random.nextInt(size)).getName()};
+			}
+			for (long budget : new long[] {64L << 20, 0}) {
+				pm.setReachabilityBudget(budget);
+				ReachabilityIndex index = pm.getReachabilityIndex();
+				System.out.printf("%-10s %8d %-42s %14s %12.3f %14d%n", shape, size, 
+						"ReachabilityIndex build (" + (index.isExact() ? "closures" : index.getLabelCount() + " labels") + ")",
+						"", index.getBuildNanos() / 1e6, index.getFootprint());
+				measure(shape, size, "PackageManager.dependsOn (1000 pairs" + (budget == 0 ? ", labels)" : ")"), () -> {
+					for (String[] pair : pairs) {
+						sink += pm.dependsOn(pair[0], pair[1]) ? 1 : 0;
+					}
+				});
+			}
+			measure(shape, size, "getInstallationOrder scan (1000 pairs)", () -> {
+				for (String[] pair : pairs) {
+					sink += pm.getInstallationOrder(pair[0]).contains(pair[1]) ? 1 : 0;
+				}
+			});
+
+			// two deltas that change the dependencies of the root back and forth
+			Path[] deltas = {Files.createTempFile("delta", ".json"), Files.createTempFile("delta", ".json")};
+			try {
+				String dependencies = String.join("\", \"", packages.get(0).getDependencies());
+				Files.write(deltas[0], ("{\"changed\": [{\"name\": \"" + root + "\", \"dependencies\": [\"" 
+						+ middle + "\"]}]}").getBytes(StandardCharsets.UTF_8));
+				Files.write(deltas[1], ("{\"changed\": [{\"name\": \"" + root + "\", \"dependencies\": [" 
+						+ (dependencies.isEmpty() ? "" : "\"" + dependencies + "\"") + "]}]}").getBytes(StandardCharsets.UTF_8));
+				int[] applied = {0};
+				measure(shape, size, "PackageManager.applyDelta (1 package)", () -> {
+					pm.applyDelta(deltas[applied[0]++ & 1].toString());
+					sink += applied[0];
+				});
+			} finally {
+				Files.delete(deltas[0]);
+				Files.delete(deltas[1]);
+			}
+		} finally {
+			Files.delete(json);
+			Files.deleteIfExists(java.nio.file.Paths.get(ManifestIndex.indexPath(json.toString())));
+		}
+		if (sink == 42)
+			System.out.println();
+	}
+
+	/**
+	 * This helper method warms up and measures one operation, and prints one line of results
+	 * @param shape - the shape of the graph
+	 * @param size - the number of packages
+	 * @param name - the name of the operation
+	 * @param operation - the operation
+	 */
+	private static void measure(GraphGenerator.Shape shape, int size, String name, Operation operation) throws Exception {
+		// always run at least once, even if a single call takes longer than the warmup
+		long end = System.nanoTime() + warmupNanos;
+		do {
+			operation.run();
+		} while (System.nanoTime() < end);
+
+		long gcCount = 0, gcMillis = 0;
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount -= gc.getCollectionCount();
+			gcMillis -= gc.getCollectionTime();
+		}
+		long allocated = -allocatedBytes();
+		long start = System.nanoTime();
+		end = start + measureNanos;
+		long calls = 0;
+		long now;
+		do {
+			operation.run();
+			calls++;
+			now = System.nanoTime();
+		} while (now < end);
+		long elapsed = now - start;
+		allocated += allocatedBytes();
+		for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+			gcCount += gc.getCollectionCount();
+			gcMillis += gc.getCollectionTime();
+		}
+
+		// report -1 if the JVM cannot measure allocations
+		if (allocatedBytes() < 0)
+			allocated = -calls;
+		double opsPerSecond = calls / (elapsed / 1e9);
+		double allocationRate = allocated < 0 ? -1 : allocated / (1024.0 * 1024.0) / (elapsed / 1e9);
+		System.out.printf("%-10s %8d %-42s %14.2f %12.3f %14d %10.1f %6d %8d%n", shape, size, name,
+				opsPerSecond, elapsed / 1e6 / calls, allocated / calls, allocationRate, gcCount, gcMillis);
+	}
+
+	/**
+	 * This helper method returns the number of bytes allocated by the current thread so far
+	 * @return the number of bytes, or a negative number if the JVM cannot measure it
+	 */
+	private static long allocatedBytes() {
+		java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+		if (threads instanceof com.sun.management.ThreadMXBean)
+			return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+		return -1;
+	}
+}
@@ -1,5 +1,49 @@
+import java.util.Collections;
+import java.util.List;
 
 @SuppressWarnings("serial")
 public class CycleException extends Exception {
-	
+	/**
+	 * The vertices of every strongly connected component with a cycle
+	 */
+	private final List<List<String>> components;
+
+	/**
+	 * One cycle through every component, starting and ending with the same vertex
+	 */
+	private final List<List<String>> cycles;
+
+	/**
+	 * Creates an exception that does not report which cycles were found
+	 */
+	public CycleException() {
+		this(Collections.<List<String>>emptyList(), Collections.<List<String>>emptyList());
+	}
+
+	/**
+	 * Creates an exception reporting the cyclic components that were found
+	 * @param components the vertices of every component with a cycle
+	 * @param cycles one cycle through every component, in the same order as the components
+	 */
+	public CycleException(List<List<String>> components, List<List<String>> cycles) {
+		super(cycles.isEmpty() ? null : "dependency cycles: " + cycles);
+		this.components = Collections.unmodifiableList(components);
+		this.cycles = Collections.unmodifiableList(cycles);
+	}
+
+	/**
+	 * Returns the vertices of every strongly connected component with a cycle
+	 * @return the cyclic components, or an empty list if they were not reported
+	 */
+	public List<List<String>> getComponents() {
+		return components;
+	}
+
+	/**
+	 * Returns one cycle through every cyclic component, such as [A, B, C, A]
+	 * @return the cycles, or an empty list if they were not reported
+	 */
+	public List<List<String>> getCycles() {
+		return cycles;
+	}
 }
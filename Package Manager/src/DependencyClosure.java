@@ -0,0 +1,237 @@
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Filename:   DependencyClosure.java
+ * Project:    p4
+ *
+ * Counts the distinct transitive dependencies of every vertex of a graph in one pass.
+ *
+ * The vertices are visited in installation order, so the dependencies of a vertex are always
+ * counted before the vertex itself, and the set of dependencies of a vertex is the union of
+ * its successors and their own sets. In exact mode the sets are bitsets of vertex ids. In
+ * approximate mode they are k-minimum-values sketches of a fixed size, which keep memory linear
+ * in the number of vertices for very large graphs at the cost of a small relative error. The
+ * set of a vertex is released as soon as all of its dependents have been counted.
+ */
+public class DependencyClosure {
+	/**
+	 * The number of hash values kept in every sketch in approximate mode
+	 */
+	static final int SKETCH_SIZE = 256;
+
+	/**
+	 * The graph the counts were computed from
+	 */
+	private final Graph graph;
+
+	/**
+	 * The version of the graph the counts were computed from
+	 */
+	private final long version;
+
+	/**
+	 * The number of distinct transitive dependencies of every vertex, indexed by id
+	 */
+	private final int[] counts;
+
+	/**
+	 * Whether the counts are estimates
+	 */
+	private final boolean approximate;
+
+	/**
+	 * Counts the transitive dependencies of every vertex of a graph
+	 *
+	 * @param graph the graph
+	 * @param approximate true to estimate the counts with sketches instead of exact bitsets
+	 * @throws CycleException if the graph has a cycle
+	 */
+	public DependencyClosure(Graph graph, boolean approximate) throws CycleException {
+		this.graph = graph;
+		this.version = graph.version();
+		this.approximate = approximate;
+		int[] order = TopologicalOrder.sort(graph);
+		counts = new int[graph.idBound()];
+		if (approximate)
+			countApproximately(order);
+		else
+			countExactly(order);
+	}
+
+	/**
+	 * Returns whether the counts are still up to date with the graph
+	 *
+	 * @param graph the graph
+	 * @return true if the counts were computed from this graph and it has not changed since
+	 */
+	public boolean isCurrent(Graph graph) {
+		return this.graph == graph && graph.version() == version;
+	}
+
+	/**
+	 * Returns whether the counts are estimates
+	 *
+	 * @return true if the counts were computed in approximate mode
+	 */
+	public boolean isApproximate() {
+		return approximate;
+	}
+
+	/**
+	 * Returns the number of distinct transitive dependencies of a vertex
+	 *
+	 * @param id the id of the vertex
+	 * @return the number of packages the vertex depends on, directly or not
+	 */
+	public int getCount(int id) {
+		return counts[id];
+	}
+
+	/**
+	 * Returns the vertices with the most transitive dependencies, from the most to the least.
+	 * Vertices with the same count are listed in case-insensitive alphabetic order.
+	 *
+	 * @param k the number of vertices to return
+	 * @return the names of at most k vertices
+	 */
+	public List<String> getTop(int k) {
+		int[] sortedIds = graph.sortedIds();
+		k = Math.min(k, sortedIds.length);
+		// keep the best k ids found so far sorted, scanning the ids in alphabetic order so that
+		// an id only replaces another one with a strictly larger count
+		int[] top = new int[k];
+		int size = 0;
+		for (int id : sortedIds) {
+			if (size == k && (k == 0 || counts[id] <= counts[top[k - 1]]))
+				continue;
+			int position = size < k ? size++ : k - 1;
+			while (position > 0 && counts[top[position - 1]] < counts[id]) {
+				top[position] = top[position - 1];
+				position--;
+			}
+			top[position] = id;
+		}
+		List<String> names = new ArrayList<String>(size);
+		for (int i = 0; i < size; i++) {
+			names.add(graph.nameOf(top[i]));
+		}
+		return names;
+	}
+
+	/**
+	 * This helper method counts the dependencies of every vertex with one bitset per vertex
+	 * @param order - the ids of the vertices in installation order
+	 */
+	private void countExactly(int[] order) {
+		BitSet[] closures = new BitSet[counts.length];
+		// the number of dependents of every vertex that still need its bitset
+		int[] pending = new int[counts.length];
+		for (int id : order) {
+			pending[id] = graph.inDegree(id);
+		}
+		for (int id : order) {
+			BitSet closure = new BitSet();
+			for (int i = 0; i < graph.outDegree(id); i++) {
+				int successor = graph.successor(id, i);
+				if (!graph.isVertex(successor))
+					continue;
+				closure.set(successor);
+				closure.or(closures[successor]);
+				// release the bitset of the successor once all of its dependents are counted
+				if (--pending[successor] == 0)
+					closures[successor] = null;
+			}
+			counts[id] = closure.cardinality();
+			if (pending[id] > 0)
+				closures[id] = closure;
+		}
+	}
+
+	/**
+	 * This helper method estimates the dependencies of every vertex with one sketch per vertex,
+	 * holding the smallest hash values of the ids in its set
+	 * @param order - the ids of the vertices in installation order
+	 */
+	private void countApproximately(int[] order) {
+		long[][] sketches = new long[counts.length][];
+		int[] pending = new int[counts.length];
+		for (int id : order) {
+			pending[id] = graph.inDegree(id);
+		}
+		long[] merged = new long[2 * SKETCH_SIZE + 1];
+		for (int id : order) {
+			long[] sketch = new long[0];
+			for (int i = 0; i < graph.outDegree(id); i++) {
+				int successor = graph.successor(id, i);
+				if (!graph.isVertex(successor))
+					continue;
+				sketch = merge(sketch, sketches[successor], hash(successor), merged);
+				if (--pending[successor] == 0)
+					sketches[successor] = null;
+			}
+			counts[id] = estimate(sketch);
+			if (pending[id] > 0)
+				sketches[id] = sketch;
+		}
+	}
+
+	/**
+	 * This helper method merges two sorted sketches and one more hash value, keeping the
+	 * smallest distinct values
+	 * @param a - the first sketch
+	 * @param b - the second sketch
+	 * @param extra - the hash value to be added
+	 * @param buffer - scratch array large enough for both sketches and the extra value
+	 * @return the merged sketch
+	 */
+	static long[] merge(long[] a, long[] b, long extra, long[] buffer) {
+		int i = 0, j = 0, size = 0;
+		boolean extraAdded = false;
+		while (size < SKETCH_SIZE && (i < a.length || j < b.length || !extraAdded)) {
+			// take the smallest of the next value of each source
+			long next = Long.MAX_VALUE;
+			if (i < a.length)
+				next = a[i];
+			if (j < b.length && b[j] < next)
+				next = b[j];
+			if (!extraAdded && extra <= next)
+				next = extra;
+			if (i < a.length && a[i] == next)
+				i++;
+			if (j < b.length && b[j] == next)
+				j++;
+			if (!extraAdded && extra == next)
+				extraAdded = true;
+			buffer[size++] = next;
+		}
+		return java.util.Arrays.copyOf(buffer, size);
+	}
+
+	/**
+	 * This helper method estimates the number of distinct ids in a sketch
+	 * @param sketch - the sorted smallest hash values of the ids
+	 * @return the estimated number of ids
+	 */
+	static int estimate(long[] sketch) {
+		if (sketch.length < SKETCH_SIZE)
+			return sketch.length;
+		// the k-th smallest of n uniform values in [0, 1) is about k / n
+		double kth = (double) sketch[SKETCH_SIZE - 1] / Long.MAX_VALUE;
+		return (int) Math.round((SKETCH_SIZE - 1) / kth);
+	}
+
+	/**
+	 * This helper method spreads a vertex id into a non-negative hash value
+	 * @param id - the id of the vertex
+	 * @return the hash value
+	 */
+	static long hash(int id) {
+		long h = id * 0x9E3779B97F4A7C15L;
+		h ^= h >>> 32;
+		h *= 0xD6E8FEB86659FD93L;
+		h ^= h >>> 32;
+		return h >>> 1;
+	}
+}
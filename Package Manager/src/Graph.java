@@ -40,18 +40,141 @@ import java.util.Set;
  * Authors:    Congkai Tan
  * 
  * Directed and unweighted graph implementation
+ * 
+ * Vertices are given dense int ids, and the successors and predecessors of every vertex are 
+ * kept in growable int arrays, so the memory used scales with the number of vertices and edges,
+ * and the dependents of a vertex are found without scanning the whole graph. A hashed index maps
+ * names to ids, and removed vertices are left as tombstones that are compacted away once they 
+ * outnumber the vertices in the graph.
+ * 
+ * The successors of every vertex are kept in case-insensitive order of their names as edges are
+ * added, so neighbors are never sorted when they are read, and a NeighborCursor walks them in 
+ * place.
+ * 
+ * A graph is not thread-safe while it is changed, but a frozen graph that is no longer changed 
+ * can be read by any number of threads at the same time.
+ * 
+ * Changing a frozen graph only unpacks the vertices it touches, whose edges are then kept apart
+ * from the packed layout, so a copy changed by a few edges still shares the packed arrays of
+ * the graph it was copied from.
  */
 
 public class Graph implements GraphADT {
 	/**
-	 * The list storing all vertices in the graph
+	 * The name of every vertex indexed by its id, removed vertices are left as null tombstones 
+	 * until the graph is compacted
+	 */
+	private String[] names;
+
+	/**
+	 * The index from the name of every vertex to its id
+	 */
+	private java.util.Map<String, Integer> ids;
+
+	/**
+	 * The number of ids handed out since the graph was last compacted
+	 */
+	private int idBound;
+
+	/**
+	 * The growable adjacency array of every vertex, indexed by vertex id, while the graph is 
+	 * being loaded, sorted in case-insensitive order of the names of the successors. The edges 
+	 * pointing to a removed vertex are removed with it.
+	 */
+	private int[][] adjacency;
+
+	/**
+	 * The number of successors stored in each adjacency array
+	 */
+	private int[] degree;
+
+	/**
+	 * The number of edges in the graph pointing to each vertex
+	 */
+	private int[] inDegree;
+
+	/**
+	 * The growable array of the predecessors of every vertex, the sources of the edges pointing 
+	 * to it, while the graph is being loaded. The first inDegree entries are used.
+	 */
+	private int[][] incoming;
+
+	/**
+	 * The ids of the vertices sorted in case-insensitive order of their names, computed on demand
+	 * and cleared whenever a vertex is added or removed
+	 */
+	private volatile int[] sortedIds;
+
+	/**
+	 * The position of every vertex in sortedIds, indexed by id, computed on demand with it
+	 */
+	private volatile int[] ranks;
+
+	/**
+	 * The offsets of each vertex in the targets array once the graph is frozen, the successors 
+	 * of vertex i are targets[offsets[i]] to targets[offsets[i + 1] - 1]
+	 */
+	private int[] offsets;
+
+	/**
+	 * The successors of every vertex once the graph is frozen
 	 */
-	private List<String> vertices;
+	private int[] targets;
 
 	/**
-	 * The adjacency matrix
+	 * The offsets of each vertex in the sources array once the graph is frozen, the predecessors
+	 * of vertex i are sources[inOffsets[i]] to sources[inOffsets[i + 1] - 1]
 	 */
-	private boolean[][] matrix;
+	private int[] inOffsets;
+
+	/**
+	 * The predecessors of every vertex once the graph is frozen
+	 */
+	private int[] sources;
+
+	/**
+	 * Whether the adjacency is currently stored in the frozen (offsets + targets) layout
+	 */
+	private boolean frozen;
+
+	/**
+	 * The number of vertices covered by the packed layout, the vertices added after the graph 
+	 * was frozen are always stored in the growable arrays
+	 */
+	private int packedBound;
+
+	/**
+	 * Whether the edges of every vertex below packedBound have been unpacked into the growable 
+	 * arrays since the graph was frozen, or null if none has
+	 */
+	private boolean[] unpacked;
+
+	/**
+	 * The number of vertices below packedBound that have been unpacked
+	 */
+	private int unpackedCount;
+
+	/**
+	 * Whether the index of the names is shared with a copy of the graph, and has to be copied 
+	 * before it is changed
+	 */
+	private boolean sharedIds;
+
+	/**
+	 * The number of times the graph has been changed, so that results computed from the graph 
+	 * can tell if they are still up to date
+	 */
+	private long version;
+
+	/**
+	 * The number of vertices and edges inserted into the graph and the graphs it was copied from
+	 */
+	private long vertexInserts, edgeInserts;
+
+	/**
+	 * The listener notified of every change to the graph, or null
+	 */
+	private GraphListener listener;
 
 	/**
 	 * The number of vertices in the graph
@@ -67,11 +190,16 @@ public class Graph implements GraphADT {
 	 * Default no-argument constructor
 	 */ 
 	public Graph() {
-		vertices = new java.util.ArrayList<String>();
-		// the adjacency matrix would be initialized to have a size of 100*100, and every time the matrix
-		// is full, it would be resized to a doubled size
-		matrix = new boolean[100][100];
-		order = size = 0;
+		names = new String[16];
+		ids = new java.util.HashMap<String, Integer>();
+		// the adjacency arrays would be initialized to hold 16 vertices, and every time they are
+		// full, they would be resized to a doubled size
+		adjacency = new int[16][];
+		degree = new int[16];
+		inDegree = new int[16];
+		incoming = new int[16][];
+		frozen = false;
+		idBound = order = size = 0;
 	}
 
 	/**
@@ -86,39 +214,40 @@ public class Graph implements GraphADT {
 	 * 2. vertex is not already in the graph 
 	 */
 	public void addVertex(String vertex) {
-		// check if the passed in argument is null
-		if (vertex == null)
+		// check if the passed in argument is null or already in the graph
+		if (vertex == null || ids.containsKey(vertex))
 			return;
-		// check if there is duplicate vertices in the graph
-		for (String temp : vertices) {
-			if (temp.equals(vertex))
-				return;
-		}
-		// Resize the adjacency matrix if it is full
-		if (vertices.size() == matrix.length)
-			matrix = resize(matrix);
-		// Store the vertex and increment order
-		vertices.add(vertex);
+		ownIds();
+		// Resize the arrays indexed by id if they are full
+		if (idBound == names.length)
+			resize(2 * names.length);
+		// a new vertex is never in the packed layout
+		if (degree == null)
+			degree = new int[names.length];
+		// Store the vertex under the next id and increment order
+		sortedIds = ranks = null;
+		names[idBound] = vertex;
+		ids.put(vertex, idBound++);
 		order++;
+		vertexInserts++;
+		version++;
+		if (listener != null)
+			listener.vertexAdded(vertex);
 	}
 
 	/**
-	 * This helper method helps resize the adjacency matrix by doubling its original size
-	 * @param matrix - the old matrix to be resized
-	 * @return the new resized matrix
+	 * This helper method resizes all the arrays indexed by vertex id
+	 * @param capacity - the new number of ids the arrays can hold
 	 */
-	private boolean[][] resize(boolean[][] matrix) {
-		// Double the old size to acquire the size of the new adjacency matrix
-		int newSize = 2 * matrix.length;
-		// create the new adjacency matrix
-		boolean[][] newMatrix = new boolean[newSize][newSize];
-		// copy each element in the old matrix to the new matrix
-		for (int i = 0; i < matrix.length; i++) {
-			for (int j = 0; j < matrix[i].length; j++) {
-				newMatrix[i][j] = matrix[i][j];
-			}
-		}
-		return newMatrix;
+	private void resize(int capacity) {
+		names = java.util.Arrays.copyOf(names, capacity);
+		adjacency = java.util.Arrays.copyOf(adjacency, capacity);
+		if (degree != null)
+			degree = java.util.Arrays.copyOf(degree, capacity);
+		inDegree = java.util.Arrays.copyOf(inDegree, capacity);
+		incoming = java.util.Arrays.copyOf(incoming, capacity);
+		if (unpacked != null)
+			unpacked = java.util.Arrays.copyOf(unpacked, capacity);
 	}
 
 	/**
@@ -138,23 +267,83 @@ public class Graph implements GraphADT {
 		if (vertex == null)
 			return;
 		// check if the vertex is present in the graph
-		if (!vertices.contains(vertex))
+		if (!ids.containsKey(vertex))
 			return;
-		// remove the row of the vertex to be removed
-		for (int i = vertices.indexOf(vertex); i < order - 1; i++) {
-			matrix[i] = matrix[i + 1];
+		ownIds();
+		int removed = ids.remove(vertex);
+		unpack(removed);
+		sortedIds = ranks = null;
+		// drop the outgoing edges of the vertex
+		for (int i = 0; i < degree[removed]; i++) {
+			int target = adjacency[removed][i];
+			if (names[target] != null && target != removed) {
+				unpack(target);
+				removeIncoming(target, removed);
+				size--;
+			}
 		}
-		matrix[order] = new boolean[matrix.length];
-		// remove the column of the vertex to be removed
-		for (int i = 0; i < order - 1; i++) {
-			for (int j = vertices.indexOf(vertex); j < order - 1; j++) {
-				matrix[i][j] = matrix[i][j + 1];
+		// drop the incoming edges from the adjacency arrays of their sources
+		for (int i = 0; i < inDegree[removed]; i++) {
+			int source = incoming[removed][i];
+			if (source != removed) {
+				unpack(source);
+				removeSuccessor(source, searchEdge(source, removed));
 			}
-			matrix[i][order] = false;
 		}
-		// remove the vertex in the vertices list and decrement order
-		vertices.remove(vertex);
+		size -= inDegree[removed];
+		names[removed] = null;
+		adjacency[removed] = incoming[removed] = null;
+		degree[removed] = inDegree[removed] = 0;
 		order--;
+		version++;
+		if (listener != null)
+			listener.vertexRemoved(vertex);
+		// compact the graph once there are more tombstones than vertices
+		if (idBound - order > Math.max(order, 16))
+			compact();
+	}
+
+	/**
+	 * This helper method renumbers the vertices so that the ids are dense again. The relative 
+	 * order of the ids is kept, so the adjacency arrays stay sorted.
+	 */
+	private void compact() {
+		thaw();
+		ownIds();
+		sortedIds = ranks = null;
+		int[] newIds = new int[idBound];
+		int next = 0;
+		for (int i = 0; i < idBound; i++) {
+			newIds[i] = names[i] == null ? -1 : next++;
+		}
+		for (int i = 0; i < idBound; i++) {
+			if (newIds[i] < 0)
+				continue;
+			// the successors and predecessors are always in the graph, they only have to be 
+			// renumbered
+			int[] successors = adjacency[i];
+			for (int j = 0; j < degree[i]; j++) {
+				successors[j] = newIds[successors[j]];
+			}
+			int[] predecessors = incoming[i];
+			for (int j = 0; j < inDegree[i]; j++) {
+				predecessors[j] = newIds[predecessors[j]];
+			}
+			int id = newIds[i];
+			names[id] = names[i];
+			adjacency[id] = successors;
+			degree[id] = degree[i];
+			incoming[id] = predecessors;
+			inDegree[id] = inDegree[i];
+			ids.put(names[id], id);
+		}
+		// clear the slots that are no longer used
+		for (int i = next; i < idBound; i++) {
+			names[i] = null;
+			adjacency[i] = incoming[i] = null;
+			degree[i] = inDegree[i] = 0;
+		}
+		idBound = next;
 	}
 
 	/**
@@ -175,19 +364,106 @@ public class Graph implements GraphADT {
 		if (vertex1 == null || vertex2 == null)
 			return;
 		// check if both edges exist in the graph
-		if (!vertices.contains(vertex1) || !vertices.contains(vertex2)) {
-			addVertex(vertex1);
-			addVertex(vertex2);
-		}
-		// The index of the vertices in the adjacency matrix would be equal to their indices in the 
-		// vertices list
-		int index1 = vertices.indexOf(vertex1);
-		int index2 = vertices.indexOf(vertex2);
-		// check if the edge already exists
-		if (!matrix[index1][index2]) {
-			// Store the added edge in adjacency matrix and increment size
-			matrix[index1][index2] = true;
+		addVertex(vertex1);
+		addVertex(vertex2);
+		int index1 = ids.get(vertex1);
+		int index2 = ids.get(vertex2);
+		// check if the edge already exists, or find where it goes in the sorted successors
+		int position = searchEdge(index1, index2);
+		if (position < 0) {
+			position = -position - 1;
+			unpack(index1);
+			unpack(index2);
+			// Resize the adjacency array of the source if it is full
+			int[] successors = adjacency[index1];
+			if (successors == null) {
+				successors = adjacency[index1] = new int[4];
+			} else if (degree[index1] == successors.length) {
+				successors = adjacency[index1] = java.util.Arrays.copyOf(successors, 2 * successors.length);
+			}
+			// Store the added edge in the adjacency array and increment size
+			System.arraycopy(successors, position, successors, position + 1, degree[index1] - position);
+			successors[position] = index2;
+			degree[index1]++;
+			addIncoming(index2, index1);
 			size++;
+			edgeInserts++;
+			version++;
+			if (listener != null)
+				listener.edgeAdded(vertex1, vertex2);
+		}
+	}
+
+	/**
+	 * Add a batch of edges to this graph, the edge at index i going from vertices1[i] to 
+	 * vertices2[i]. Edges with a null vertex are skipped, and missing vertices are added as in 
+	 * addEdge.
+	 * 
+	 * The batch is sorted by source once, so duplicates inside the batch are dropped without 
+	 * checking the graph, and the adjacency array of every source grows at most once and has 
+	 * the new successors merged into it in one pass.
+	 */
+	public void addEdges(String[] vertices1, String[] vertices2) {
+		// encode every edge as one long, the source id in the high bits
+		long[] edges = new long[vertices1.length];
+		int count = 0;
+		for (int i = 0; i < vertices1.length; i++) {
+			if (vertices1[i] == null || vertices2[i] == null)
+				continue;
+			addVertex(vertices1[i]);
+			addVertex(vertices2[i]);
+			edges[count++] = ((long) ids.get(vertices1[i]) << 32) | ids.get(vertices2[i]);
+		}
+		if (count == 0)
+			return;
+		java.util.Arrays.sort(edges, 0, count);
+		int start = 0;
+		while (start < count) {
+			int source = (int) (edges[start] >>> 32);
+			// find the end of the edges of this source
+			int end = start + 1;
+			while (end < count && (int) (edges[end] >>> 32) == source)
+				end++;
+			unpack(source);
+			int[] successors = adjacency[source];
+			int needed = degree[source] + (end - start);
+			if (successors == null) {
+				successors = adjacency[source] = new int[Math.max(4, needed)];
+			} else if (needed > successors.length) {
+				successors = adjacency[source] = java.util.Arrays.copyOf(successors, 
+						Math.max(needed, 2 * successors.length));
+			}
+			// an edge equal to the previous one in the sorted batch is a duplicate, and the 
+			// graph only has to be checked if the source already had successors
+			int oldDegree = degree[source];
+			int added = 0;
+			for (int i = start; i < end; i++) {
+				if (i > start && edges[i] == edges[i - 1])
+					continue;
+				int target = (int) edges[i];
+				if (oldDegree > 0 && searchEdge(source, target) >= 0)
+					continue;
+				successors[oldDegree + added++] = target;
+				unpack(target);
+				addIncoming(target, source);
+				size++;
+				edgeInserts++;
+				version++;
+				if (listener != null)
+					listener.edgeAdded(names[source], names[target]);
+			}
+			// sort the new successors and merge them with the old ones from the back
+			sortByName(successors, oldDegree, oldDegree + added);
+			int[] merged = java.util.Arrays.copyOfRange(successors, oldDegree, oldDegree + added);
+			int next = oldDegree + added, old = oldDegree - 1, fresh = added - 1;
+			while (fresh >= 0) {
+				if (old >= 0 && compare(successors[old], merged[fresh]) > 0)
+					successors[--next] = successors[old--];
+				else
+					successors[--next] = merged[fresh--];
+			}
+			degree[source] = oldDegree + added;
+			start = end;
 		}
 	}
 
@@ -208,27 +484,46 @@ public class Graph implements GraphADT {
 		if (!(vertex1 != null && vertex2 != null)) 
 			return;
 		// check if both vertices are present in the graph
-		if (!(vertices.contains(vertex1) && vertices.contains(vertex2)))
+		Integer index1 = ids.get(vertex1);
+		Integer index2 = ids.get(vertex2);
+		if (index1 == null || index2 == null)
 			return;
-		int index1 = vertices.indexOf(vertex1);
-		int index2 = vertices.indexOf(vertex2);
-		// remove the edge if it is present
-		if (matrix[index1][index2]) {
-			matrix[index1][index2] = false;
+		// remove the edge if it is present, keeping the other successors in order
+		if (searchEdge(index1, index2) >= 0) {
+			unpack(index1);
+			unpack(index2);
+			removeSuccessor(index1, searchEdge(index1, index2));
+			removeIncoming(index2, index1);
 			size--;
+			version++;
+			if (listener != null)
+				listener.edgeRemoved(vertex1, vertex2);
 		}
 	}	
 
+	/**
+	 * Sets the listener notified after every vertex or edge is added or removed
+	 * @param listener - the listener, or null to stop notifying
+	 */
+	public void setListener(GraphListener listener) {
+		this.listener = listener;
+	}
+
 	/**
 	 * Returns a Set that contains all the vertices
 	 * 
 	 */
 	public Set<String> getAllVertices() {
-		Set<String> set = new java.util.HashSet<String>();
-		for (String temp : vertices) {
-			set.add(temp);
-		}
-		return set;
+		return new java.util.HashSet<String>(ids.keySet());
+	}
+
+	/**
+	 * Returns whether the given vertex is in the graph
+	 * @param vertex - the vertex to look up
+	 * @return true if the vertex is in the graph, false otherwise
+	 */
+	public boolean containsVertex(String vertex) {
+		return vertex != null && ids.containsKey(vertex);
 	}
 
 	/**
@@ -237,21 +532,55 @@ public class Graph implements GraphADT {
 	 */
 	public List<String> getAdjacentVerticesOf(String vertex) {
 		// check if the vertex is in the graph
-		if (!vertices.contains(vertex))
+		Integer index = vertex == null ? null : ids.get(vertex);
+		if (index == null)
 			return null;
-		List<String> neighbors = new java.util.ArrayList<String>();
-		int index = vertices.indexOf(vertex);
-		// check in the Adjacency Matrix if two nodes are connected
-		for (int i = 0; i < order; i++) {
-			if (matrix[index][i]) {
-				neighbors.add(vertices.get(i));
-			}
+		int degree = outDegree(index);
+		List<String> neighbors = new java.util.ArrayList<String>(degree);
+		// only the successors stored for this vertex are visited, already in alphabetic order
+		for (int i = 0; i < degree; i++) {
+			neighbors.add(names[successor(index, i)]);
 		}
-		// Sort in alphabetic order
-		neighbors.sort(String.CASE_INSENSITIVE_ORDER);
 		return neighbors;
 	}
 
+	/**
+	 * Returns a cursor walking the sorted successors of vertices in place
+	 * @return a new cursor, not on any vertex yet
+	 */
+	public NeighborCursor neighborCursor() {
+		return new Cursor();
+	}
+
+	/**
+	 * A cursor over the successors stored for a vertex
+	 */
+	private class Cursor implements NeighborCursor {
+		/**
+		 * The id of the vertex, or -1 if the cursor is not on a vertex in the graph
+		 */
+		private int vertex = -1;
+
+		/**
+		 * The position of the current successor
+		 */
+		private int position;
+
+		public boolean reset(String vertex) {
+			this.vertex = idOf(vertex);
+			position = -1;
+			return this.vertex >= 0;
+		}
+
+		public boolean next() {
+			return vertex >= 0 && ++position < outDegree(vertex);
+		}
+
+		public String current() {
+			return names[successor(vertex, position)];
+		}
+	}
+
 	/**
 	 * Returns the number of edges in this graph.
 	 */
@@ -265,4 +594,499 @@ public class Graph implements GraphADT {
 	public int order() {
 		return order;
 	}
+
+	/**
+	 * Packs the adjacency arrays of all vertices into one offsets array and one targets array. 
+	 * This should be called once the graph has been loaded, since the packed layout needs no 
+	 * per-vertex array headers or spare capacity. Any later mutation unpacks the graph again.
+	 */
+	public void freeze() {
+		if (frozen && unpackedCount == 0 && packedBound == idBound)
+			return;
+		// the packed layout never holds tombstones
+		if (idBound != order)
+			compact();
+		// the vertices may still be partly packed, so they are read through the accessors
+		int[] newOffsets = new int[idBound + 1];
+		int[] newTargets = new int[size];
+		int next = 0;
+		for (int i = 0; i < idBound; i++) {
+			newOffsets[i] = next;
+			int count = outDegree(i);
+			for (int j = 0; j < count; j++) {
+				newTargets[next++] = successor(i, j);
+			}
+		}
+		newOffsets[idBound] = next;
+		int[] newInOffsets = new int[idBound + 1];
+		int[] newSources = new int[size];
+		next = 0;
+		for (int i = 0; i < idBound; i++) {
+			newInOffsets[i] = next;
+			for (int j = 0; j < inDegree[i]; j++) {
+				newSources[next++] = predecessor(i, j);
+			}
+		}
+		newInOffsets[idBound] = next;
+		offsets = newOffsets;
+		targets = newTargets;
+		inOffsets = newInOffsets;
+		sources = newSources;
+		// the per-vertex arrays are released, only the packed layout is kept
+		adjacency = new int[names.length][];
+		incoming = new int[names.length][];
+		degree = null;
+		unpacked = null;
+		unpackedCount = 0;
+		packedBound = idBound;
+		frozen = true;
+	}
+
+	/**
+	 * Freezes the graph unless it is frozen and only a few of its vertices have been changed 
+	 * since, so that publishing a small change does not pack the whole graph again. The 
+	 * vertices changed are read from their own arrays until the graph is packed.
+	 */
+	void settle() {
+		if (frozen && 16L * (unpackedCount + idBound - packedBound) <= idBound)
+			return;
+		freeze();
+	}
+
+	/**
+	 * Creates a frozen graph directly from the packed layout, such as one written by freeze and
+	 * saved to a file. The vertex with id i is names[i], and its successors are targets[offsets[i]]
+	 * to targets[offsets[i + 1] - 1], which must be sorted as freeze leaves them.
+	 * @param names - the distinct names of the vertices
+	 * @param offsets - the offsets of the successors of every vertex, of length names.length + 1
+	 * @param targets - the ids of the successors of every vertex
+	 * @return the frozen graph
+	 */
+	static Graph fromPacked(String[] names, int[] offsets, int[] targets) {
+		Graph graph = new Graph();
+		graph.resize(Math.max(16, names.length));
+		for (int i = 0; i < names.length; i++) {
+			graph.names[i] = names[i];
+			graph.ids.put(names[i], i);
+		}
+		for (int target : targets) {
+			graph.inDegree[target]++;
+		}
+		// the predecessors are not saved, they are collected from the successors
+		int[] inOffsets = new int[names.length + 1];
+		for (int i = 0; i < names.length; i++) {
+			inOffsets[i + 1] = inOffsets[i] + graph.inDegree[i];
+		}
+		int[] sources = new int[targets.length];
+		int[] next = java.util.Arrays.copyOf(inOffsets, names.length);
+		for (int i = 0; i < names.length; i++) {
+			for (int j = offsets[i]; j < offsets[i + 1]; j++) {
+				sources[next[targets[j]]++] = i;
+			}
+		}
+		graph.idBound = graph.order = names.length;
+		graph.size = targets.length;
+		graph.offsets = offsets;
+		graph.targets = targets;
+		graph.inOffsets = inOffsets;
+		graph.sources = sources;
+		graph.degree = null;
+		graph.packedBound = names.length;
+		graph.frozen = true;
+		return graph;
+	}
+
+	/**
+	 * Returns this graph if all of its vertices are packed, or else a frozen copy of it. A graph
+	 * that was never frozen is frozen first, as copying it does.
+	 * @return a graph with the same vertices and edges whose vertices are all packed
+	 */
+	Graph packed() {
+		if (!frozen)
+			freeze();
+		if (unpackedCount == 0 && packedBound == idBound)
+			return this;
+		Graph copy = copy();
+		copy.freeze();
+		return copy;
+	}
+
+	/**
+	 * Returns the offsets array of the packed layout, freezing the graph first. The array is 
+	 * shared and must not be modified.
+	 * @return the offsets of the successors of every vertex
+	 */
+	int[] packedOffsets() {
+		freeze();
+		return offsets;
+	}
+
+	/**
+	 * Returns the targets array of the packed layout, freezing the graph first. The array is 
+	 * shared and must not be modified.
+	 * @return the successors of every vertex
+	 */
+	int[] packedTargets() {
+		freeze();
+		return targets;
+	}
+
+	/**
+	 * Returns a copy of this graph that can be changed without changing this graph, settling 
+	 * this graph first. The copy shares the packed arrays of this graph, which are never 
+	 * written to, and the index of the names until either graph adds or removes a vertex. 
+	 * Only the edges of the vertices changed since the graph was packed are copied, and the 
+	 * copy only unpacks the vertices it changes, but the arrays indexed by id, such as the 
+	 * names and the degrees, are copied whole, so a copy takes time in proportion to the 
+	 * number of vertices. The copy has no listener.
+	 * @return the copy of this graph
+	 */
+	Graph copy() {
+		settle();
+		Graph copy = new Graph();
+		copy.names = names.clone();
+		copy.ids = ids;
+		copy.sharedIds = sharedIds = true;
+		copy.idBound = idBound;
+		copy.adjacency = new int[names.length][];
+		copy.incoming = new int[names.length][];
+		copy.degree = degree == null ? null : degree.clone();
+		copy.unpacked = unpacked == null ? null : unpacked.clone();
+		copy.unpackedCount = unpackedCount;
+		copy.packedBound = packedBound;
+		// the unpacked arrays are changed in place, so each graph gets its own
+		for (int i = unpacked == null ? packedBound : 0; i < idBound; i++) {
+			if (!isPacked(i)) {
+				copy.adjacency[i] = adjacency[i] == null ? null : adjacency[i].clone();
+				copy.incoming[i] = incoming[i] == null ? null : incoming[i].clone();
+			}
+		}
+		copy.inDegree = inDegree.clone();
+		copy.sortedIds = sortedIds;
+		copy.ranks = ranks;
+		copy.offsets = offsets;
+		copy.targets = targets;
+		copy.inOffsets = inOffsets;
+		copy.sources = sources;
+		copy.frozen = true;
+		copy.version = version;
+		copy.vertexInserts = vertexInserts;
+		copy.edgeInserts = edgeInserts;
+		copy.order = order;
+		copy.size = size;
+		return copy;
+	}
+
+	/**
+	 * This helper method unpacks every vertex of a frozen graph back into growable adjacency 
+	 * arrays and drops the packed layout
+	 */
+	private void thaw() {
+		if (!frozen)
+			return;
+		for (int i = 0; i < packedBound; i++) {
+			unpack(i);
+		}
+		offsets = targets = inOffsets = sources = null;
+		unpacked = null;
+		unpackedCount = packedBound = 0;
+		frozen = false;
+	}
+
+	/**
+	 * This helper method copies the successors and predecessors of a vertex out of the packed 
+	 * layout into its own growable arrays, before they are changed
+	 * @param id - the id of the vertex
+	 */
+	private void unpack(int id) {
+		if (!isPacked(id))
+			return;
+		if (degree == null)
+			degree = new int[names.length];
+		if (unpacked == null)
+			unpacked = new boolean[names.length];
+		int count = offsets[id + 1] - offsets[id];
+		degree[id] = count;
+		adjacency[id] = count == 0 ? null : java.util.Arrays.copyOfRange(targets, offsets[id], offsets[id + 1]);
+		incoming[id] = inDegree[id] == 0 ? null : java.util.Arrays.copyOfRange(sources, inOffsets[id], inOffsets[id + 1]);
+		unpacked[id] = true;
+		unpackedCount++;
+	}
+
+	/**
+	 * This helper method tells whether the edges of a vertex are read from the packed layout
+	 * @param id - the id of the vertex
+	 * @return true if the vertex is packed, false if it has its own arrays
+	 */
+	private boolean isPacked(int id) {
+		return frozen && id < packedBound && (unpacked == null || !unpacked[id]);
+	}
+
+	/**
+	 * This helper method gives this graph its own index of the names before it is changed, if 
+	 * the index is shared with a copy
+	 */
+	private void ownIds() {
+		if (sharedIds) {
+			ids = new java.util.HashMap<String, Integer>(ids);
+			sharedIds = false;
+		}
+	}
+
+	/**
+	 * Returns the number of times the graph has been changed. Two calls return the same value 
+	 * only if no vertex or edge has been added or removed in between.
+	 * @return the version of the graph
+	 */
+	long version() {
+		return version;
+	}
+
+	/**
+	 * Returns the number of vertices inserted into the graph, counting the inserts into the 
+	 * graphs it was copied from
+	 * @return the number of vertex inserts
+	 */
+	long vertexInserts() {
+		return vertexInserts;
+	}
+
+	/**
+	 * Returns the number of edges inserted into the graph, counting the inserts into the 
+	 * graphs it was copied from
+	 * @return the number of edge inserts
+	 */
+	long edgeInserts() {
+		return edgeInserts;
+	}
+
+	/**
+	 * Returns the id of the given vertex
+	 * @param vertex - the vertex to look up
+	 * @return the id of the vertex, or -1 if it is not in the graph
+	 */
+	int idOf(String vertex) {
+		Integer id = vertex == null ? null : ids.get(vertex);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the vertex with the given id
+	 * @param id - the id of the vertex
+	 * @return the name of the vertex, or null if the vertex has been removed
+	 */
+	String nameOf(int id) {
+		return names[id];
+	}
+
+	/**
+	 * Returns whether an id belongs to a vertex, which is cheaper than looking up its name
+	 * @param id - an id below idBound()
+	 * @return true if the id is in use, false if it is the tombstone of a removed vertex
+	 */
+	boolean isVertex(int id) {
+		return names[id] != null;
+	}
+
+	/**
+	 * Returns one more than the largest id in use. Ids of removed vertices below this bound are 
+	 * tombstones, for which nameOf returns null.
+	 * @return the upper bound of the vertex ids
+	 */
+	int idBound() {
+		return idBound;
+	}
+
+	/**
+	 * Returns the ids of all the vertices sorted in case-insensitive order of their names, which
+	 * is the order used to break ties between vertices. The array is shared and must not be 
+	 * modified.
+	 * @return the sorted ids of the vertices
+	 */
+	int[] sortedIds() {
+		// readers of a shared frozen graph may sort at the same time, and keep either result
+		int[] result = sortedIds;
+		if (result == null) {
+			Integer[] sorted = new Integer[order];
+			int next = 0;
+			for (int i = 0; i < idBound; i++) {
+				if (names[i] != null)
+					sorted[next++] = i;
+			}
+			java.util.Arrays.sort(sorted, (a, b) -> String.CASE_INSENSITIVE_ORDER.compare(names[a], names[b]));
+			int[] ids = new int[order];
+			for (int i = 0; i < order; i++) {
+				ids[i] = sorted[i];
+			}
+			sortedIds = result = ids;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the position of a vertex in the case-insensitive order of the names of all the 
+	 * vertices
+	 * @param id - the id of the vertex
+	 * @return the rank of the vertex, from 0 to order() - 1
+	 */
+	int rank(int id) {
+		int[] result = ranks;
+		if (result == null) {
+			int[] sorted = sortedIds();
+			result = new int[idBound];
+			for (int i = 0; i < sorted.length; i++) {
+				result[sorted[i]] = i;
+			}
+			ranks = result;
+		}
+		return result[id];
+	}
+
+	/**
+	 * Returns the number of edges pointing to the vertex with the given id
+	 * @param id - the id of the vertex
+	 * @return the in-degree of the vertex
+	 */
+	int inDegree(int id) {
+		return inDegree[id];
+	}
+
+	/**
+	 * Returns the number of successors of the vertex with the given id
+	 * @param id - the id of the vertex
+	 * @return the out-degree of the vertex
+	 */
+	int outDegree(int id) {
+		return isPacked(id) ? offsets[id + 1] - offsets[id] : degree[id];
+	}
+
+	/**
+	 * Returns the id of the i-th successor of the vertex with the given id, in case-insensitive
+	 * order of the names of the successors
+	 * @param id - the id of the vertex
+	 * @param i - the position of the successor, from 0 to outDegree(id) - 1
+	 * @return the id of the successor
+	 */
+	int successor(int id, int i) {
+		return isPacked(id) ? targets[offsets[id] + i] : adjacency[id][i];
+	}
+
+	/**
+	 * Returns the id of the i-th predecessor of the vertex with the given id, the source of the 
+	 * i-th edge pointing to it. The predecessors are in no particular order.
+	 * @param id - the id of the vertex
+	 * @param i - the position of the predecessor, from 0 to inDegree(id) - 1
+	 * @return the id of the predecessor
+	 */
+	int predecessor(int id, int i) {
+		return isPacked(id) ? sources[inOffsets[id] + i] : incoming[id][i];
+	}
+
+	/**
+	 * This helper method records an edge in the predecessors of its target
+	 * @param target - the id of the target
+	 * @param source - the id of the source
+	 */
+	private void addIncoming(int target, int source) {
+		int[] predecessors = incoming[target];
+		if (predecessors == null) {
+			predecessors = incoming[target] = new int[4];
+		} else if (inDegree[target] == predecessors.length) {
+			predecessors = incoming[target] = java.util.Arrays.copyOf(predecessors, 2 * predecessors.length);
+		}
+		predecessors[inDegree[target]++] = source;
+	}
+
+	/**
+	 * This helper method removes an edge from the predecessors of its target by moving the last
+	 * predecessor into its slot
+	 * @param target - the id of the target
+	 * @param source - the id of the source
+	 */
+	private void removeIncoming(int target, int source) {
+		int[] predecessors = incoming[target];
+		for (int i = 0; i < inDegree[target]; i++) {
+			if (predecessors[i] == source) {
+				predecessors[i] = predecessors[--inDegree[target]];
+				return;
+			}
+		}
+	}
+
+	/**
+	 * This helper method finds the position of an edge among the sorted successors of its source
+	 * @param index1 - the id of the source
+	 * @param index2 - the id of the target
+	 * @return the position of the target among the successors of the source, or 
+	 * (-(insertion point) - 1) if the edge is not in the graph
+	 */
+	private int searchEdge(int index1, int index2) {
+		int low = 0;
+		int high = outDegree(index1) - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			int compared = compare(successor(index1, middle), index2);
+			if (compared < 0)
+				low = middle + 1;
+			else if (compared > 0)
+				high = middle - 1;
+			else
+				return middle;
+		}
+		return -(low + 1);
+	}
+
+	/**
+	 * This helper method compares two vertices in the order of the adjacency arrays, the 
+	 * case-insensitive order of their names, and their ids for names that only differ in case
+	 * @param id1 - the id of the first vertex
+	 * @param id2 - the id of the second vertex
+	 * @return a negative number, zero or a positive number as the first vertex comes before, 
+	 * is, or comes after the second one
+	 */
+	private int compare(int id1, int id2) {
+		int compared = String.CASE_INSENSITIVE_ORDER.compare(names[id1], names[id2]);
+		return compared != 0 ? compared : Integer.compare(id1, id2);
+	}
+
+	/**
+	 * This helper method sorts a range of vertex ids in the order of the adjacency arrays
+	 * @param ids - the array of ids
+	 * @param from - the first position of the range
+	 * @param to - the position after the last one of the range
+	 */
+	private void sortByName(int[] ids, int from, int to) {
+		// most batches only add a few successors to each vertex
+		if (to - from <= 16) {
+			for (int i = from + 1; i < to; i++) {
+				int id = ids[i];
+				int j = i - 1;
+				while (j >= from && compare(ids[j], id) > 0) {
+					ids[j + 1] = ids[j];
+					j--;
+				}
+				ids[j + 1] = id;
+			}
+			return;
+		}
+		Integer[] boxed = new Integer[to - from];
+		for (int i = from; i < to; i++) {
+			boxed[i - from] = ids[i];
+		}
+		java.util.Arrays.sort(boxed, this::compare);
+		for (int i = from; i < to; i++) {
+			ids[i] = boxed[i - from];
+		}
+	}
+
+	/**
+	 * This helper method removes a successor of a mutable vertex, keeping the others in order
+	 * @param source - the id of the vertex
+	 * @param position - the position of the successor to be removed
+	 */
+	private void removeSuccessor(int source, int position) {
+		int[] successors = adjacency[source];
+		System.arraycopy(successors, position + 1, successors, position, degree[source] - position - 1);
+		degree[source]--;
+	}
 }
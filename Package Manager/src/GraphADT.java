@@ -62,6 +62,25 @@ public interface GraphADT {
     public void addEdge(String vertex1, String vertex2);
 
     
+    /**
+     * Add a batch of edges to this graph, the edge at index i
+     * going from vertices1[i] to vertices2[i].
+     * Each edge is added as if by addEdge, so duplicate edges
+     * and edges already in the graph are not added again.
+     * 
+     * Implementations may sort and deduplicate the whole batch
+     * at once instead of adding the edges one by one.
+     * 
+     * @param vertices1 the first vertex (src) of every edge
+     * @param vertices2 the second vertex (dst) of every edge
+     */
+    public default void addEdges(String[] vertices1, String[] vertices2) {
+        for (int i = 0; i < vertices1.length; i++) {
+            addEdge(vertices1[i], vertices2[i]);
+        }
+    }
+
+    
     /**
      * Remove the edge from vertex1 to vertex2
      * from this graph.  (edge is directed and unweighted)
@@ -97,6 +116,36 @@ public interface GraphADT {
     public List<String> getAdjacentVerticesOf(String vertex);
     
 
+    /**
+     * Returns a cursor over the neighbors of vertices, in the
+     * same order as getAdjacentVerticesOf. Implementations
+     * that keep their adjacency sorted walk it in place,
+     * without copying or sorting it for every vertex.
+     * 
+     * @return a new cursor, not on any vertex yet
+     */
+    public default NeighborCursor neighborCursor() {
+        return new NeighborCursor() {
+            private List<String> neighbors;
+            private int position;
+
+            public boolean reset(String vertex) {
+                neighbors = getAdjacentVerticesOf(vertex);
+                position = -1;
+                return neighbors != null;
+            }
+
+            public boolean next() {
+                return neighbors != null && ++position < neighbors.size();
+            }
+
+            public String current() {
+                return neighbors.get(position);
+            }
+        };
+    }
+    
+
     /**
      * Returns the number of edges in this graph.
      * @return number of edges in the graph.
@@ -0,0 +1,145 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Filename:   GraphGenerator.java
+ * Project:    p4
+ *
+ * Generates synthetic package dependency graphs of realistic shapes for benchmarks, and writes
+ * them as json package dependency files. Every package only depends on packages generated
+ * after it, so the generated graphs never have a cycle.
+ */
+public class GraphGenerator {
+
+	/**
+	 * The shapes of the generated graphs
+	 */
+	public enum Shape {
+		/** every package depends on the next one, so the graph is one long path */
+		CHAIN,
+		/** one root depends on about sqrt(n) hubs, each of which depends on its own leaves */
+		FAN_OUT,
+		/** dependencies are picked by preferential attachment, as in the npm registry */
+		POWER_LAW,
+		/** layers of eight packages, each depending on three packages of the next layer */
+		DIAMOND
+	}
+
+	/**
+	 * Generates a graph of the given shape
+	 *
+	 * @param shape the shape of the graph
+	 * @param size the number of packages
+	 * @param seed the seed of the random choices, so that the same graph can be generated again
+	 * @return the packages of the graph, named pkg0 to pkg(size - 1)
+	 */
+	public static List<Package> generate(Shape shape, int size, long seed) {
+		Random random = new Random(seed);
+		List<List<Integer>> dependencies = new ArrayList<List<Integer>>(size);
+		for (int i = 0; i < size; i++) {
+			dependencies.add(new ArrayList<Integer>());
+		}
+		switch (shape) {
+		case CHAIN:
+			for (int i = 0; i + 1 < size; i++) {
+				dependencies.get(i).add(i + 1);
+			}
+			break;
+		case FAN_OUT:
+			int hubs = Math.max(1, (int) Math.sqrt(size));
+			for (int i = 1; i < size; i++) {
+				// the first packages after the root are the hubs, the others are their leaves
+				int parent = i <= hubs ? 0 : 1 + (i % hubs);
+				dependencies.get(parent).add(i);
+			}
+			break;
+		case POWER_LAW:
+			generatePowerLaw(dependencies, random);
+			break;
+		case DIAMOND:
+			int width = 8;
+			for (int i = 0; i + width < size; i++) {
+				int nextLayer = (i / width + 1) * width;
+				int layerSize = Math.min(width, size - nextLayer);
+				for (int j = 0; j < Math.min(3, layerSize); j++) {
+					int dependency = nextLayer + random.nextInt(layerSize);
+					if (!dependencies.get(i).contains(dependency))
+						dependencies.get(i).add(dependency);
+				}
+			}
+			break;
+		}
+		List<Package> packages = new ArrayList<Package>(size);
+		for (int i = 0; i < size; i++) {
+			String[] names = new String[dependencies.get(i).size()];
+			for (int j = 0; j < names.length; j++) {
+				names[j] = "pkg" + dependencies.get(i).get(j);
+			}
+			packages.add(new Package("pkg" + i, names));
+		}
+		return packages;
+	}
+
+	/**
+	 * Writes packages as a json package dependency file
+	 *
+	 * @param packages the packages to be written
+	 * @param path the path of the json file
+	 * @throws IOException if the file cannot be written
+	 */
+	public static void writeJson(List<Package> packages, Path path) throws IOException {
+		try (BufferedWriter out = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			out.write("{\"packages\": [\n");
+			for (int i = 0; i < packages.size(); i++) {
+				Package pkg = packages.get(i);
+				out.write("{\"name\": \"" + pkg.getName() + "\", \"dependencies\": [");
+				String[] dependencies = pkg.getDependencies();
+				for (int j = 0; j < dependencies.length; j++) {
+					if (j > 0)
+						out.write(", ");
+					out.write("\"" + dependencies[j] + "\"");
+				}
+				out.write(i + 1 < packages.size() ? "]},\n" : "]}\n");
+			}
+			out.write("]}\n");
+		}
+	}
+
+	/**
+	 * This helper method picks the dependencies of every package by preferential attachment,
+	 * walking from the last package to the first so that packages only depend on later ones
+	 * @param dependencies - the empty lists of dependencies of every package
+	 * @param random - the source of random choices
+	 */
+	private static void generatePowerLaw(List<List<Integer>> dependencies, Random random) {
+		int size = dependencies.size();
+		// every package appears once, plus once for every package that depends on it, so that
+		// a uniform pick from the pool favours popular packages
+		int[] pool = new int[size * 12];
+		int poolSize = 0;
+		for (int i = size - 1; i >= 0; i--) {
+			int available = size - 1 - i;
+			// the number of dependencies follows a Pareto distribution with a mean near 4
+			int wanted = (int) Math.min(40, Math.floor(1.0 / Math.pow(1 - random.nextDouble(), 1.0 / 1.5)) + 1);
+			wanted = Math.min(wanted, available);
+			List<Integer> chosen = dependencies.get(i);
+			for (int attempt = 0; chosen.size() < wanted && attempt < 4 * wanted; attempt++) {
+				int dependency = pool[random.nextInt(poolSize)];
+				if (!chosen.contains(dependency))
+					chosen.add(dependency);
+			}
+			for (int dependency : chosen) {
+				if (poolSize < pool.length)
+					pool[poolSize++] = dependency;
+			}
+			if (poolSize < pool.length)
+				pool[poolSize++] = i;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+/**
+ * Filename:   GraphListener.java
+ * Project:    p4
+ * 
+ * Receives the changes made to a graph, so that results computed from the graph can be kept up
+ * to date. Every method does nothing by default.
+ */
+public interface GraphListener {
+
+	/**
+	 * Called after a vertex has been added to the graph
+	 * 
+	 * @param vertex the added vertex
+	 */
+	public default void vertexAdded(String vertex) {
+	}
+
+	/**
+	 * Called after a vertex and all of its edges have been removed from the graph
+	 * 
+	 * @param vertex the removed vertex
+	 */
+	public default void vertexRemoved(String vertex) {
+	}
+
+	/**
+	 * Called after an edge has been added to the graph
+	 * 
+	 * @param vertex1 the first vertex (src)
+	 * @param vertex2 the second vertex (dst)
+	 */
+	public default void edgeAdded(String vertex1, String vertex2) {
+	}
+
+	/**
+	 * Called after an edge has been removed from the graph
+	 * 
+	 * @param vertex1 the first vertex (src)
+	 * @param vertex2 the second vertex (dst)
+	 */
+	public default void edgeRemoved(String vertex1, String vertex2) {
+	}
+}
@@ -0,0 +1,373 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Filename:   GraphSnapshot.java
+ * Project:    p4
+ *
+ * Saves a graph to a versioned binary file in the layout of an OffHeapGraph, and loads it
+ * again as an OffHeapGraph mapped read-only from the file, so that a graph is served from the
+ * page cache without parsing its json file again or copying it onto the heap. Loading only
+ * reads the header, the checksums of the pages and the install costs and releases, and
+ * processes loading the same snapshot share its pages.
+ *
+ * The file holds, in big-endian order:
+ * 1. the header: the magic number and the format version, the modification time and length
+ *    of the json file the graph was built from, the number of vertices V and of edges E, the
+ *    number of slots of the name index minus one, the number of bits of the page size, the
+ *    offset and length of every section, the checksums of the last two sections, and the
+ *    checksum of the header
+ * 2. the regions of the OffHeapGraph, one section each: the UTF-8 bytes of the names, their
+ *    V + 1 offsets as longs, their V hash codes, the slots of the name index, the V + 1
+ *    offsets and E ids of the successors, the V + 1 offsets and E ids of the predecessors, the
+ *    V case-insensitive ranks and the V ids in case-insensitive order
+ * 3. the CRC32 of every page of the regions, in the order of the sections
+ * 4. the install costs, as a count followed by the name and the cost of every package, and
+ *    the releases, as a count followed by the name, the version and the number of
+ *    dependencies of every release, and the name and the range of each dependency
+ *
+ * The strings of the last section are written as a byte length followed by their UTF-8
+ * bytes.
+ *
+ * A snapshot is only loaded if its header and its last two sections match their checksums
+ * and the json file has not changed since the snapshot was written. Every page of the graph
+ * is checked against its checksum the first time it is read, and a corrupt page makes the
+ * query reading it throw an UncheckedIOException.
+ */
+public class GraphSnapshot {
+	/**
+	 * The magic number at the start of every snapshot
+	 */
+	public static final int MAGIC = 0x504D4753;
+
+	/**
+	 * The version of the file format. Version 2 stores the successors of every vertex sorted,
+	 * version 3 no longer stores an id index, version 4 stores the install costs and the
+	 * releases of the packages, and version 5 stores the layout of an OffHeapGraph, which is
+	 * mapped in place.
+	 */
+	public static final int FORMAT_VERSION = 5;
+
+	/**
+	 * The number of sections: the regions of the graph, the page checksums and the packages
+	 */
+	static final int SECTIONS = OffHeapGraph.SECTIONS + 2;
+
+	/**
+	 * The size of the fixed header in bytes
+	 */
+	static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4 + 4 + 16 * SECTIONS + 8 + 8 + 8;
+
+	/**
+	 * The number of bits of the size of the pages checked one at a time
+	 */
+	static final int PAGE_BITS = 20;
+
+	/**
+	 * Writes a graph to a snapshot file, with the install costs and the releases of its
+	 * packages. A graph on the heap is laid out off the heap first, in pages mapped from
+	 * temporary files beside the snapshot.
+	 *
+	 * @param graph the graph to be saved
+	 * @param costs the install costs of the packages
+	 * @param releases the releases of every package
+	 * @param snapshotPath the path of the snapshot file
+	 * @param jsonFilepath the json file the graph was built from
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public static void save(Graph graph, Map<String, Double> costs, Map<String, List<Release>> releases,
+			String snapshotPath, String jsonFilepath) throws IOException {
+		java.io.File source = new java.io.File(jsonFilepath);
+		java.io.File file = new java.io.File(snapshotPath).getAbsoluteFile();
+		OffHeapGraph packed = OffHeapGraph.of(graph, file.getParentFile());
+		byte[] packages = encodePackages(costs, releases);
+
+		// lay the sections out one after another
+		long[] starts = new long[SECTIONS];
+		long[] lengths = new long[SECTIONS];
+		System.arraycopy(packed.sectionLengths(), 0, lengths, 0, OffHeapGraph.SECTIONS);
+		long pages = 0;
+		for (int section = 0; section < OffHeapGraph.SECTIONS; section++) {
+			pages += pageCount(lengths[section]);
+		}
+		lengths[SECTIONS - 2] = 4 * pages;
+		lengths[SECTIONS - 1] = packages.length;
+		long position = HEADER_SIZE;
+		for (int section = 0; section < SECTIONS; section++) {
+			starts[section] = position;
+			position += lengths[section];
+		}
+
+		// write to a temporary file first so that readers never see a partial snapshot
+		java.io.File temp = new java.io.File(snapshotPath + ".tmp");
+		try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+			out.setLength(0);
+			FileChannel channel = out.getChannel();
+			packed.writeSections(channel, starts);
+			// the pages are checked as they were written
+			ByteBuffer checksums = ByteBuffer.allocate((int) lengths[SECTIONS - 2]);
+			ByteBuffer page = ByteBuffer.allocate(1 << PAGE_BITS);
+			CRC32 crc = new CRC32();
+			for (int section = 0; section < OffHeapGraph.SECTIONS; section++) {
+				for (long offset = 0; offset < lengths[section]; offset += page.capacity()) {
+					page.clear();
+					page.limit((int) Math.min(page.capacity(), lengths[section] - offset));
+					while (page.hasRemaining()) {
+						if (channel.read(page, starts[section] + offset + page.position()) < 0)
+							throw new IOException("the snapshot was truncated while it was written");
+					}
+					page.flip();
+					crc.reset();
+					crc.update(page);
+					checksums.putInt((int) crc.getValue());
+				}
+			}
+			checksums.flip();
+			long checksumsCrc = checksum(checksums.duplicate());
+			writeFully(channel, checksums, starts[SECTIONS - 2]);
+			long packagesCrc = checksum(ByteBuffer.wrap(packages));
+			writeFully(channel, ByteBuffer.wrap(packages), starts[SECTIONS - 1]);
+
+			ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+			header.putInt(MAGIC).putInt(FORMAT_VERSION);
+			header.putLong(source.lastModified()).putLong(source.length());
+			header.putInt(packed.order()).putInt(packed.size()).putInt(packed.slotMask()).putInt(PAGE_BITS);
+			for (int section = 0; section < SECTIONS; section++) {
+				header.putLong(starts[section]).putLong(lengths[section]);
+			}
+			header.putLong(checksumsCrc).putLong(packagesCrc);
+			header.putLong(checksum((ByteBuffer) header.duplicate().flip()));
+			header.flip();
+			writeFully(channel, header, 0);
+		}
+		java.nio.file.Files.move(temp.toPath(), file.toPath(),
+				java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * Loads a graph from a snapshot file if it is valid for a json file, with the install
+	 * costs and the releases of its packages. The graph is mapped in place, so only the
+	 * header, the page checksums and the packages are read.
+	 *
+	 * @param snapshotPath the path of the snapshot file
+	 * @param jsonFilepath the json file the snapshot should have been built from
+	 * @param costs the map the install costs are added to
+	 * @param releases the map the releases are added to, in the order they were saved
+	 * @return the read-only graph, or null if the snapshot is missing, corrupt, of another
+	 * format version, or older than the json file, in which case the maps may hold part of
+	 * the snapshot
+	 */
+	public static Graph load(String snapshotPath, String jsonFilepath, Map<String, Double> costs,
+			Map<String, List<Release>> releases) {
+		java.io.File source = new java.io.File(jsonFilepath);
+		try (RandomAccessFile file = new RandomAccessFile(snapshotPath, "r")) {
+			// the mappings stay valid after the channel is closed
+			FileChannel channel = file.getChannel();
+			long length = channel.size();
+			if (length < HEADER_SIZE)
+				return null;
+			ByteBuffer header = read(channel, 0, HEADER_SIZE);
+			if (header.getInt(0) != MAGIC || header.getInt(4) != FORMAT_VERSION)
+				return null;
+			if (header.getLong(8) != source.lastModified() || header.getLong(16) != source.length())
+				return null;
+			if (checksum(section(header, 0, HEADER_SIZE - 8)) != header.getLong(HEADER_SIZE - 8))
+				return null;
+			int vertices = header.getInt(24);
+			int edges = header.getInt(28);
+			int slotMask = header.getInt(32);
+			int pageBits = header.getInt(36);
+			if (vertices < 0 || edges < 0 || (slotMask & (slotMask + 1)) != 0 || slotMask < vertices || pageBits != PAGE_BITS)
+				return null;
+			long[] starts = new long[SECTIONS];
+			long[] lengths = new long[SECTIONS];
+			for (int section = 0; section < SECTIONS; section++) {
+				starts[section] = header.getLong(40 + 16 * section);
+				lengths[section] = header.getLong(48 + 16 * section);
+				if (starts[section] < HEADER_SIZE || lengths[section] < 0 || starts[section] + lengths[section] > length)
+					return null;
+			}
+			// the regions must have the sizes of a graph of V vertices and E edges
+			long[] expected = {lengths[0], 8L * (vertices + 1), 4L * vertices, 4L * (slotMask + 1),
+					4L * (vertices + 1), 4L * edges, 4L * (vertices + 1), 4L * edges, 4L * vertices, 4L * vertices};
+			long pages = 0;
+			for (int section = 0; section < OffHeapGraph.SECTIONS; section++) {
+				if (lengths[section] != expected[section])
+					return null;
+				pages += pageCount(lengths[section]);
+			}
+			if (lengths[SECTIONS - 2] != 4 * pages || lengths[SECTIONS - 1] > Integer.MAX_VALUE)
+				return null;
+			ByteBuffer checksums = read(channel, starts[SECTIONS - 2], (int) lengths[SECTIONS - 2]);
+			ByteBuffer packages = read(channel, starts[SECTIONS - 1], (int) lengths[SECTIONS - 1]);
+			int base = 40 + 16 * SECTIONS;
+			if (checksum(checksums.duplicate()) != header.getLong(base) || checksum(packages.duplicate()) != header.getLong(base + 8))
+				return null;
+			decodePackages(packages, costs, releases);
+			int[] pageChecksums = new int[(int) pages];
+			checksums.asIntBuffer().get(pageChecksums);
+			return OffHeapGraph.map(channel, starts, lengths, PAGE_BITS, pageChecksums, vertices, edges, slotMask);
+		} catch (IOException e) {
+			return null;
+		} catch (RuntimeException e) {
+			// a snapshot whose contents do not match its sizes is not used
+			return null;
+		}
+	}
+
+	/**
+	 * This helper method returns the number of pages of a section
+	 * @param length - the number of bytes of the section
+	 * @return the number of pages, the last one possibly partial
+	 */
+	private static long pageCount(long length) {
+		return (length + (1L << PAGE_BITS) - 1) >>> PAGE_BITS;
+	}
+
+	/**
+	 * This helper method encodes the install costs and the releases of the packages
+	 * @param costs - the install costs of the packages
+	 * @param releases - the releases of every package
+	 * @return the bytes of the last section of the snapshot
+	 */
+	private static byte[] encodePackages(Map<String, Double> costs, Map<String, List<Release>> releases) throws IOException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeInt(costs.size());
+		for (Map.Entry<String, Double> cost : costs.entrySet()) {
+			writeString(out, cost.getKey());
+			out.writeDouble(cost.getValue());
+		}
+		int count = 0;
+		for (List<Release> list : releases.values()) {
+			count += list.size();
+		}
+		out.writeInt(count);
+		for (List<Release> list : releases.values()) {
+			for (Release release : list) {
+				writeString(out, release.getName());
+				writeString(out, release.getVersion().toString());
+				out.writeInt(release.getDependencies().size());
+				for (Map.Entry<String, VersionRange> dependency : release.getDependencies().entrySet()) {
+					writeString(out, dependency.getKey());
+					writeString(out, dependency.getValue().toString());
+				}
+			}
+		}
+		out.flush();
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * This helper method decodes the install costs and the releases of the packages
+	 * @param packages - the last section of the snapshot
+	 * @param costs - the map the install costs are added to
+	 * @param releases - the map the releases are added to
+	 */
+	private static void decodePackages(ByteBuffer packages, Map<String, Double> costs, Map<String, List<Release>> releases) {
+		for (int i = packages.getInt(); i > 0; i--) {
+			costs.put(readString(packages), packages.getDouble());
+		}
+		for (int i = packages.getInt(); i > 0; i--) {
+			String name = readString(packages);
+			Version version = Version.parse(readString(packages));
+			Map<String, VersionRange> dependencies = new LinkedHashMap<String, VersionRange>();
+			for (int j = packages.getInt(); j > 0; j--) {
+				dependencies.put(readString(packages), VersionRange.parse(readString(packages)));
+			}
+			List<Release> list = releases.get(name);
+			if (list == null) {
+				list = new ArrayList<Release>();
+				releases.put(name, list);
+			}
+			list.add(new Release(name, version, dependencies));
+		}
+		if (packages.hasRemaining())
+			throw new IllegalArgumentException("the packages of the snapshot have trailing bytes");
+	}
+
+	/**
+	 * This helper method reads a part of a file onto the heap
+	 * @param channel - the file
+	 * @param position - the offset of the part
+	 * @param length - the number of bytes of the part
+	 * @return the bytes of the part, from its start
+	 */
+	private static ByteBuffer read(FileChannel channel, long position, int length) throws IOException {
+		ByteBuffer buffer = ByteBuffer.allocate(length);
+		while (buffer.hasRemaining()) {
+			if (channel.read(buffer, position + buffer.position()) < 0)
+				throw new IOException("the snapshot is truncated");
+		}
+		buffer.flip();
+		return buffer;
+	}
+
+	/**
+	 * This helper method writes all the bytes of a buffer to a file
+	 * @param channel - the file
+	 * @param buffer - the bytes
+	 * @param position - the offset they are written at
+	 */
+	private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+		while (buffer.hasRemaining()) {
+			position += channel.write(buffer, position);
+		}
+	}
+
+	/**
+	 * This helper method returns a view of a part of a buffer
+	 * @param buffer - the buffer
+	 * @param position - the offset of the part
+	 * @param length - the number of bytes of the part
+	 * @return the bytes of the part, from its start
+	 */
+	private static ByteBuffer section(ByteBuffer buffer, int position, int length) {
+		ByteBuffer section = buffer.duplicate();
+		section.limit(position + length).position(position);
+		return section;
+	}
+
+	/**
+	 * This helper method returns the CRC32 of the remaining bytes of a buffer
+	 * @param buffer - the buffer, whose remaining bytes are consumed
+	 * @return the checksum
+	 */
+	private static long checksum(ByteBuffer buffer) {
+		CRC32 crc = new CRC32();
+		crc.update(buffer);
+		return crc.getValue();
+	}
+
+	/**
+	 * This helper method writes a string as its byte length followed by its UTF-8 bytes
+	 * @param out - the stream of the snapshot
+	 * @param text - the string
+	 */
+	private static void writeString(DataOutputStream out, String text) throws IOException {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	/**
+	 * This helper method reads a string written by writeString
+	 * @param buffer - the section of the snapshot, positioned at the string
+	 * @return the string
+	 */
+	private static String readString(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getInt()];
+		buffer.get(bytes);
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+}
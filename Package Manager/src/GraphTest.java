@@ -170,4 +170,175 @@ public class GraphTest {
 			fail("the list of all vertices of an empty graph shoudl be empty");
 	}
 
+	/**
+	 * This tests if the edges are kept after the graph is frozen, and if the graph can still be 
+	 * mutated afterwards
+	 */
+	@Test
+	public void test06_mutate_after_freeze() {
+		graph.addEdge("A", "B");
+		graph.addEdge("A", "C");
+		graph.addEdge("C", "B");
+		graph.freeze();
+		if (!graph.getAdjacentVerticesOf("A").equals(Arrays.asList("B", "C")))
+			fail("the adjacency list is not as expected after the graph is frozen");
+		graph.addEdge("B", "D");
+		graph.removeVertex("C");
+		if (!graph.getAdjacentVerticesOf("A").equals(Arrays.asList("B")) 
+				|| !graph.getAdjacentVerticesOf("B").equals(Arrays.asList("D")))
+			fail("the adjacency list is not as expected after the frozen graph is mutated");
+		if (graph.order() != 3 || graph.size() != 2)
+			fail("The graph does not have correct value of order or size");
+	}
+
+	/**
+	 * This tests if the order, size and adjacency lists stay correct while enough vertices are 
+	 * removed for the graph to be compacted, and if a removed vertex can be added back
+	 */
+	@Test
+	public void test07_remove_many_vertices() {
+		for (int i = 0; i < 100; i++) {
+			graph.addEdge("" + i, "" + (i + 1));
+		}
+		for (int i = 1; i < 100; i += 2) {
+			graph.removeVertex("" + i);
+		}
+		if (graph.order() != 51 || graph.size() != 0)
+			fail("The graph does not have correct value of order or size after removal");
+		graph.addEdge("0", "1");
+		graph.addEdge("2", "1");
+		if (!graph.containsVertex("1") || graph.containsVertex("3") || graph.size() != 2)
+			fail("The removed vertex was not added back correctly");
+		if (!graph.getAdjacentVerticesOf("2").equals(Arrays.asList("1")))
+			fail("the adjacency list is not as expected after the vertex is added back");
+	}
+
+	/**
+	 * This tests if a batch of edges with duplicates is added as if the edges were added one by one
+	 */
+	@Test
+	public void test08_add_edges_in_batch() {
+		graph.addEdge("A", "B");
+		graph.addEdges(new String[] {"A", "C", "A", "A", "C", null}, 
+				new String[] {"B", "A", "D", "D", "B", "A"});
+		if (graph.order() != 4 || graph.size() != 4)
+			fail("The graph does not have correct value of order or size after adding a batch");
+		if (!graph.getAdjacentVerticesOf("A").equals(Arrays.asList("B", "D")) 
+				|| !graph.getAdjacentVerticesOf("C").equals(Arrays.asList("A", "B")))
+			fail("the adjacency list is not as expected after adding a batch");
+	}
+
+	/**
+	 * This tests if a copy of a graph can be changed without changing the graph
+	 */
+	@Test
+	public void test09_copy_is_independent() {
+		graph.addEdge("A", "B");
+		graph.addEdge("B", "C");
+		Graph copy = graph.copy();
+		copy.addEdge("A", "C");
+		copy.removeVertex("B");
+		copy.addVertex("D");
+		if (graph.order() != 3 || graph.size() != 2 || copy.order() != 3 || copy.size() != 1)
+			fail("The graph or its copy does not have correct value of order or size");
+		if (!graph.getAdjacentVerticesOf("A").equals(Arrays.asList("B")) || graph.containsVertex("D"))
+			fail("the graph changed with its copy");
+		if (!copy.getAdjacentVerticesOf("A").equals(Arrays.asList("C")))
+			fail("the adjacency list of the copy is not as expected");
+	}
+
+	/**
+	 * This tests if the predecessors of every vertex follow the edges through removals, 
+	 * compaction and freezing
+	 */
+	@Test
+	public void test10_predecessors() {
+		for (int i = 0; i < 40; i++) {
+			graph.addEdge("V" + i, "V" + (i + 1));
+			graph.addEdge("V" + i, "Z");
+		}
+		for (int i = 1; i < 40; i += 2) {
+			graph.removeVertex("V" + i);
+		}
+		graph.removeEdge("V0", "Z");
+		for (boolean frozen : new boolean[] {false, true}) {
+			if (frozen)
+				graph.freeze();
+			int z = graph.idOf("Z");
+			Set<String> predecessors = new HashSet<String>();
+			for (int i = 0; i < graph.inDegree(z); i++) {
+				predecessors.add(graph.nameOf(graph.predecessor(z, i)));
+			}
+			if (predecessors.size() != 19 || predecessors.contains("V0") || predecessors.contains("V1"))
+				fail("The predecessors of Z are not as expected: " + predecessors);
+			int v2 = graph.idOf("V2");
+			if (graph.inDegree(v2) != 0 || graph.inDegree(graph.idOf("V40")) != 0)
+				fail("The predecessors of removed vertices should be dropped");
+		}
+	}
+
+	/**
+	 * This tests if the neighbors are kept in case-insensitive order as edges are added and 
+	 * removed, and if a cursor walks the same neighbors as getAdjacentVerticesOf
+	 */
+	@Test
+	public void test11_sorted_neighbors_and_cursor() {
+		graph.addEdge("A", "d");
+		graph.addEdge("A", "B");
+		graph.addEdges(new String[] {"A", "A", "A"}, new String[] {"c", "E", "a"});
+		graph.removeEdge("A", "c");
+		graph.addEdge("A", "C");
+		if (!graph.getAdjacentVerticesOf("A").equals(Arrays.asList("a", "B", "C", "d", "E")))
+			fail("the adjacency list is not in case-insensitive order: " + graph.getAdjacentVerticesOf("A"));
+		graph.freeze();
+		NeighborCursor cursor = graph.neighborCursor();
+		for (String vertex : new String[] {"A", "B"}) {
+			List<String> walked = new ArrayList<String>();
+			if (!cursor.reset(vertex))
+				fail("the cursor should find " + vertex);
+			while (cursor.next()) {
+				walked.add(cursor.current());
+			}
+			if (!walked.equals(graph.getAdjacentVerticesOf(vertex)))
+				fail("the cursor did not walk the neighbors of " + vertex + ": " + walked);
+		}
+		if (cursor.reset("Z") || cursor.next())
+			fail("the cursor should have no neighbors for a missing vertex");
+	}
+
+	/**
+	 * This tests if a copy of a frozen graph only unpacks the vertices it changes, and if it 
+	 * reads the same as a graph packed again
+	 */
+	@Test
+	public void test12_partly_unpacked_copy() {
+		for (int i = 0; i < 1000; i++) {
+			graph.addEdge("V" + i, "V" + (i + 1));
+		}
+		graph.freeze();
+		Graph copy = graph.copy();
+		copy.removeEdge("V10", "V11");
+		copy.addEdge("V10", "V12");
+		copy.addEdge("W", "V50");
+		copy.removeVertex("V90");
+		copy.settle();
+		if (graph.size() != 1000 || !graph.getAdjacentVerticesOf("V10").equals(Arrays.asList("V11")))
+			fail("the graph changed with its copy");
+		if (copy.order() != 1001 || copy.size() != 999 || !copy.getAdjacentVerticesOf("V10").equals(Arrays.asList("V12")) 
+				|| copy.inDegree(copy.idOf("V50")) != 2 || copy.inDegree(copy.idOf("V11")) != 0)
+			fail("the copy does not have the changed edges");
+		// the copy still reads its unchanged vertices from the packed arrays of the graph
+		Graph packed = copy.packed();
+		if (packed == copy || copy.packed() == graph || packed.packed() != packed)
+			fail("only a graph with unpacked vertices should be packed into a copy");
+		for (String vertex : copy.getAllVertices()) {
+			if (!copy.getAdjacentVerticesOf(vertex).equals(packed.getAdjacentVerticesOf(vertex)))
+				fail("the packed copy differs at " + vertex);
+		}
+		Graph next = copy.copy();
+		next.addEdge("V0", "W");
+		if (copy.getAdjacentVerticesOf("V0").size() != 1 || next.getAdjacentVerticesOf("V0").size() != 2)
+			fail("a copy of a partly unpacked graph should be independent");
+	}
+
 }
@@ -0,0 +1,39 @@
+/**
+ * Filename:   InstallAction.java
+ * Project:    p4
+ *
+ * The action that installs one package, called by InstallExecutor once all the dependencies of
+ * the package are installed. It may be called from several threads at the same time for
+ * different packages.
+ */
+public interface InstallAction {
+
+	/**
+	 * Installs a package
+	 *
+	 * @param pkg the name of the package
+	 * @throws Exception if the package cannot be installed, which cancels the packages that
+	 * depend on it
+	 */
+	void install(String pkg) throws Exception;
+
+	/**
+	 * Returns an action that does nothing, to measure the overhead of the executor
+	 *
+	 * @return the no-op action
+	 */
+	static InstallAction noOp() {
+		return pkg -> {
+		};
+	}
+
+	/**
+	 * Returns an action that sleeps for a fixed time, standing in for a download and install
+	 *
+	 * @param millis the time every install takes in milliseconds
+	 * @return the sleeping action
+	 */
+	static InstallAction sleeping(long millis) {
+		return pkg -> Thread.sleep(millis);
+	}
+}
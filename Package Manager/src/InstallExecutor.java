@@ -0,0 +1,230 @@
+import java.lang.reflect.Method;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * Filename:   InstallExecutor.java
+ * Project:    p4
+ *
+ * Runs an install action for every package of an installation plan, starting each package as
+ * soon as all of its dependencies are installed, with at most a fixed number of installs
+ * running at the same time.
+ *
+ * The installs run on virtual threads when the JVM has them, and on a fixed pool of platform
+ * threads otherwise. When an install fails, every package that depends on it, directly or
+ * not, is cancelled at once; the packages that do not depend on it keep being installed.
+ */
+public class InstallExecutor {
+	/**
+	 * The largest number of installs running at the same time
+	 */
+	private final int concurrency;
+
+	/**
+	 * Creates an executor
+	 *
+	 * @param concurrency the largest number of installs running at the same time, at least 1
+	 */
+	public InstallExecutor(int concurrency) {
+		if (concurrency < 1)
+			throw new IllegalArgumentException("the concurrency must be at least 1");
+		this.concurrency = concurrency;
+	}
+
+	/**
+	 * Installs every package of a plan, and waits until every package is installed, failed or
+	 * cancelled
+	 *
+	 * @param plan the plan of the packages to be installed
+	 * @param action the action installing one package
+	 * @return the outcome of every package
+	 * @throws InterruptedException if the calling thread is interrupted while waiting, in which
+	 * case the running installs are interrupted too
+	 */
+	public Report run(InstallPlan plan, InstallAction action) throws InterruptedException {
+		long start = System.nanoTime();
+		String[] packages = plan.packages();
+		int count = packages.length;
+		int[] remaining = new int[count];
+		ArrayDeque<Integer> ready = new ArrayDeque<Integer>();
+		for (int i = 0; i < count; i++) {
+			remaining[i] = plan.dependenciesOf(i).length;
+			if (remaining[i] == 0)
+				ready.add(i);
+		}
+		// the installs report to this thread, which alone decides what to start next, so the
+		// state of the packages needs no locking
+		BlockingQueue<Completion> completions = new LinkedBlockingQueue<Completion>();
+		boolean[] cancelled = new boolean[count];
+		Report report = new Report();
+		ExecutorService threads = newThreads(Math.min(concurrency, Math.max(1, count)));
+		try {
+			int running = 0;
+			while (running > 0 || !ready.isEmpty()) {
+				while (running < concurrency && !ready.isEmpty()) {
+					int next = ready.poll();
+					threads.execute(() -> {
+						Throwable failure = null;
+						try {
+							action.install(packages[next]);
+						} catch (Throwable e) {
+							failure = e;
+						}
+						completions.add(new Completion(next, failure));
+					});
+					running++;
+				}
+				Completion done = completions.take();
+				running--;
+				String pkg = packages[done.position];
+				if (done.failure == null) {
+					report.installed.add(pkg);
+					for (int dependent : plan.dependentsOf(done.position)) {
+						if (--remaining[dependent] == 0 && !cancelled[dependent])
+							ready.add(dependent);
+					}
+				} else {
+					report.failed.put(pkg, done.failure);
+					cancelDependents(plan, done.position, cancelled, report);
+				}
+			}
+		} finally {
+			// interrupt the running installs if this thread was interrupted
+			threads.shutdownNow();
+		}
+		report.elapsedNanos = System.nanoTime() - start;
+		return report;
+	}
+
+	/**
+	 * This helper method cancels every package that depends on a failed package, directly or not
+	 * @param plan - the plan being installed
+	 * @param failed - the position of the failed package
+	 * @param cancelled - whether every package of the plan is cancelled
+	 * @param report - the report the cancelled packages are added to
+	 */
+	private static void cancelDependents(InstallPlan plan, int failed, boolean[] cancelled, Report report) {
+		ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+		pending.push(failed);
+		while (!pending.isEmpty()) {
+			for (int dependent : plan.dependentsOf(pending.pop())) {
+				// a package cannot have started before all of its dependencies were installed
+				if (!cancelled[dependent]) {
+					cancelled[dependent] = true;
+					report.cancelled.add(plan.packages()[dependent]);
+					pending.push(dependent);
+				}
+			}
+		}
+	}
+
+	/**
+	 * This helper method creates the threads running the installs, a new virtual thread for
+	 * every install if the JVM supports them, or a fixed pool of platform threads otherwise
+	 * @param poolSize - the number of platform threads of the pool
+	 * @return the executor service
+	 */
+	private static ExecutorService newThreads(int poolSize) {
+		try {
+			Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) factory.invoke(null);
+		} catch (ReflectiveOperationException e) {
+			return Executors.newFixedThreadPool(poolSize, runnable -> {
+				Thread thread = new Thread(runnable, "install");
+				thread.setDaemon(true);
+				return thread;
+			});
+		}
+	}
+
+	/**
+	 * An install that finished, successfully if its failure is null
+	 */
+	private static class Completion {
+		final int position;
+		final Throwable failure;
+
+		Completion(int position, Throwable failure) {
+			this.position = position;
+			this.failure = failure;
+		}
+	}
+
+	/**
+	 * The outcome of installing a plan
+	 */
+	public static class Report {
+		/**
+		 * The installed packages in the order they finished
+		 */
+		private final List<String> installed = new ArrayList<String>();
+
+		/**
+		 * The failed packages in the order they failed, with the exception of their install
+		 */
+		private final Map<String, Throwable> failed = new LinkedHashMap<String, Throwable>();
+
+		/**
+		 * The packages not installed because one of their dependencies failed
+		 */
+		private final List<String> cancelled = new ArrayList<String>();
+
+		/**
+		 * The time taken to install the plan
+		 */
+		private long elapsedNanos;
+
+		/**
+		 * Returns the installed packages
+		 *
+		 * @return the installed packages, in the order their installs finished
+		 */
+		public List<String> getInstalled() {
+			return Collections.unmodifiableList(installed);
+		}
+
+		/**
+		 * Returns the packages whose install failed
+		 *
+		 * @return the exception of every failed package, in the order they failed
+		 */
+		public Map<String, Throwable> getFailed() {
+			return Collections.unmodifiableMap(failed);
+		}
+
+		/**
+		 * Returns the packages that were cancelled because one of their dependencies failed
+		 *
+		 * @return the cancelled packages
+		 */
+		public List<String> getCancelled() {
+			return Collections.unmodifiableList(cancelled);
+		}
+
+		/**
+		 * Returns whether every package was installed
+		 *
+		 * @return true if no install failed
+		 */
+		public boolean isSuccessful() {
+			return failed.isEmpty();
+		}
+
+		/**
+		 * Returns the wall-clock time taken to install the plan
+		 *
+		 * @return the elapsed time in nanoseconds
+		 */
+		public long getElapsedNanos() {
+			return elapsedNanos;
+		}
+	}
+}
@@ -0,0 +1,347 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Filename:   InstallPlan.java
+ * Project:    p4
+ *
+ * A plan for installing a set of packages in parallel.
+ *
+ * The packages are grouped into waves: a package with no dependencies in the plan is in the
+ * first wave, and every other package is in the wave after the last wave of its dependencies,
+ * so all the packages of a wave can be installed at the same time once the earlier waves are
+ * done. Every package has an install cost, 1 unless the json file gives a "cost", from which the
+ * plan computes its critical path, the longest chain of dependencies by total cost, and a
+ * schedule for a given number of workers.
+ */
+public class InstallPlan {
+	/**
+	 * The packages of the plan in a valid installation order
+	 */
+	private final String[] packages;
+
+	/**
+	 * The install cost of every package, in the same order
+	 */
+	private final double[] costs;
+
+	/**
+	 * The positions of the dependencies of every package, in the same order
+	 */
+	private final int[][] dependencies;
+
+	/**
+	 * The positions of the packages that depend on every package, in the same order
+	 */
+	private final int[][] dependents;
+
+	/**
+	 * The waves of the plan
+	 */
+	private final List<List<String>> waves;
+
+	/**
+	 * The packages of the critical path in installation order, and its total cost
+	 */
+	private final List<String> criticalPath;
+	private final double criticalPathCost;
+
+	/**
+	 * Creates the plan for a set of packages
+	 *
+	 * @param graph the dependency graph
+	 * @param order the packages of the plan in a valid installation order, including all of
+	 * their dependencies
+	 * @param costs the install cost of the packages that do not cost 1
+	 */
+	InstallPlan(Graph graph, List<String> order, Map<String, Double> costs) {
+		int count = order.size();
+		packages = order.toArray(new String[0]);
+		this.costs = new double[count];
+		// the position of every vertex of the graph in the plan
+		int[] position = new int[graph.idBound()];
+		Arrays.fill(position, -1);
+		for (int i = 0; i < count; i++) {
+			position[graph.idOf(packages[i])] = i;
+			Double cost = costs.get(packages[i]);
+			this.costs[i] = cost == null ? 1 : cost;
+		}
+		dependencies = new int[count][];
+		int[] dependentCounts = new int[count];
+		for (int i = 0; i < count; i++) {
+			int id = graph.idOf(packages[i]);
+			int[] found = new int[graph.outDegree(id)];
+			int size = 0;
+			for (int j = 0; j < graph.outDegree(id); j++) {
+				int successor = graph.successor(id, j);
+				if (graph.isVertex(successor) && position[successor] >= 0) {
+					found[size++] = position[successor];
+					dependentCounts[position[successor]]++;
+				}
+			}
+			dependencies[i] = Arrays.copyOf(found, size);
+		}
+		dependents = new int[count][];
+		for (int i = 0; i < count; i++) {
+			dependents[i] = new int[dependentCounts[i]];
+			dependentCounts[i] = 0;
+		}
+		for (int i = 0; i < count; i++) {
+			for (int dependency : dependencies[i]) {
+				dependents[dependency][dependentCounts[dependency]++] = i;
+			}
+		}
+
+		// in installation order, the waves and finish times of the dependencies of a package
+		// are known before the package itself
+		int[] wave = new int[count];
+		double[] finish = new double[count];
+		int[] slowestDependency = new int[count];
+		int waveCount = 0;
+		int last = -1;
+		for (int i = 0; i < count; i++) {
+			slowestDependency[i] = -1;
+			for (int dependency : dependencies[i]) {
+				wave[i] = Math.max(wave[i], wave[dependency] + 1);
+				if (slowestDependency[i] < 0 || finish[dependency] > finish[slowestDependency[i]])
+					slowestDependency[i] = dependency;
+			}
+			finish[i] = this.costs[i] + (slowestDependency[i] < 0 ? 0 : finish[slowestDependency[i]]);
+			waveCount = Math.max(waveCount, wave[i] + 1);
+			if (last < 0 || finish[i] > finish[last])
+				last = i;
+		}
+		List<List<String>> waves = new ArrayList<List<String>>(waveCount);
+		for (int i = 0; i < waveCount; i++) {
+			waves.add(new ArrayList<String>());
+		}
+		for (int i = 0; i < count; i++) {
+			waves.get(wave[i]).add(packages[i]);
+		}
+		for (List<String> each : waves) {
+			each.sort(String.CASE_INSENSITIVE_ORDER);
+		}
+		this.waves = Collections.unmodifiableList(waves);
+
+		// walk back from the package that finishes last along its slowest dependencies
+		List<String> path = new ArrayList<String>();
+		for (int i = last; i >= 0; i = slowestDependency[i]) {
+			path.add(packages[i]);
+		}
+		Collections.reverse(path);
+		criticalPath = Collections.unmodifiableList(path);
+		criticalPathCost = last < 0 ? 0 : finish[last];
+	}
+
+	/**
+	 * Returns the waves of the plan. Every package of a wave only depends on packages of
+	 * earlier waves, and the packages of a wave are in case-insensitive alphabetic order.
+	 *
+	 * @return the waves, the first one to be installed first
+	 */
+	public List<List<String>> getWaves() {
+		return waves;
+	}
+
+	/**
+	 * Returns the critical path of the plan, the chain of dependencies with the largest total
+	 * install cost. No schedule can install all the packages faster than its cost.
+	 *
+	 * @return the packages of the critical path, in installation order
+	 */
+	public List<String> getCriticalPath() {
+		return criticalPath;
+	}
+
+	/**
+	 * Returns the total install cost of the critical path
+	 *
+	 * @return the cost of the critical path
+	 */
+	public double getCriticalPathCost() {
+		return criticalPathCost;
+	}
+
+	/**
+	 * Returns the total install cost of all the packages, which is the time a single worker
+	 * needs to install them
+	 *
+	 * @return the sum of the costs of the packages
+	 */
+	public double getTotalCost() {
+		double total = 0;
+		for (double cost : costs) {
+			total += cost;
+		}
+		return total;
+	}
+
+	/**
+	 * Returns the packages of the plan in installation order
+	 *
+	 * @return the packages, indexed by their position in the plan
+	 */
+	String[] packages() {
+		return packages;
+	}
+
+	/**
+	 * Returns the dependencies of a package of the plan
+	 *
+	 * @param position the position of the package in the plan
+	 * @return the positions of its dependencies
+	 */
+	int[] dependenciesOf(int position) {
+		return dependencies[position];
+	}
+
+	/**
+	 * Returns the packages of the plan that depend on a package
+	 *
+	 * @param position the position of the package in the plan
+	 * @return the positions of its dependents
+	 */
+	int[] dependentsOf(int position) {
+		return dependents[position];
+	}
+
+	/**
+	 * Schedules the plan on a number of workers. Whenever a worker is free, it installs the
+	 * ready package with the most costly chain of dependents still to come, so that the
+	 * packages on the critical path are started first.
+	 *
+	 * @param workers the number of workers, at least 1
+	 * @return the schedule
+	 */
+	public Schedule schedule(int workers) {
+		if (workers < 1)
+			throw new IllegalArgumentException("the number of workers must be at least 1");
+		int count = packages.length;
+		// the cost of the most costly chain from every package to the last of its dependents
+		double[] priority = new double[count];
+		for (int i = count - 1; i >= 0; i--) {
+			double tail = 0;
+			for (int dependent : dependents[i]) {
+				tail = Math.max(tail, priority[dependent]);
+			}
+			priority[i] = costs[i] + tail;
+		}
+		int[] remaining = new int[count];
+		PriorityQueue<Integer> ready = new PriorityQueue<Integer>(Math.max(1, count), (a, b) -> {
+			int compare = Double.compare(priority[b], priority[a]);
+			return compare != 0 ? compare : String.CASE_INSENSITIVE_ORDER.compare(packages[a], packages[b]);
+		});
+		for (int i = 0; i < count; i++) {
+			remaining[i] = dependencies[i].length;
+			if (remaining[i] == 0)
+				ready.add(i);
+		}
+		// the running packages ordered by finish time, each as {finish time, package, worker}
+		PriorityQueue<double[]> running = new PriorityQueue<double[]>((a, b) -> Double.compare(a[0], b[0]));
+		List<Integer> freeWorkers = new ArrayList<Integer>();
+		for (int i = workers - 1; i >= 0; i--) {
+			freeWorkers.add(i);
+		}
+		double[] start = new double[count];
+		int[] worker = new int[count];
+		double now = 0;
+		int done = 0;
+		while (done < count) {
+			// start ready packages on every free worker
+			while (!freeWorkers.isEmpty() && !ready.isEmpty()) {
+				int next = ready.poll();
+				int assigned = freeWorkers.remove(freeWorkers.size() - 1);
+				start[next] = now;
+				worker[next] = assigned;
+				running.add(new double[] {now + costs[next], next, assigned});
+			}
+			// wait for the next package to finish
+			double[] finished = running.poll();
+			now = finished[0];
+			int pkg = (int) finished[1];
+			freeWorkers.add((int) finished[2]);
+			done++;
+			for (int dependent : dependents[pkg]) {
+				if (--remaining[dependent] == 0)
+					ready.add(dependent);
+			}
+		}
+		return new Schedule(packages, start, worker, workers, now);
+	}
+
+	/**
+	 * The schedule of a plan on a fixed number of workers
+	 */
+	public static class Schedule {
+		/**
+		 * The packages installed by every worker, in the order they are started
+		 */
+		private final List<List<String>> assignments;
+
+		/**
+		 * The start time of every package
+		 */
+		private final Map<String, Double> startTimes;
+
+		/**
+		 * The time at which the last package is installed
+		 */
+		private final double makespan;
+
+		/**
+		 * Creates a schedule
+		 */
+		private Schedule(String[] packages, double[] start, int[] worker, int workers, double makespan) {
+			Integer[] byStart = new Integer[packages.length];
+			for (int i = 0; i < packages.length; i++) {
+				byStart[i] = i;
+			}
+			Arrays.sort(byStart, (a, b) -> Double.compare(start[a], start[b]));
+			List<List<String>> assignments = new ArrayList<List<String>>(workers);
+			for (int i = 0; i < workers; i++) {
+				assignments.add(new ArrayList<String>());
+			}
+			startTimes = new HashMap<String, Double>();
+			for (int i : byStart) {
+				assignments.get(worker[i]).add(packages[i]);
+				startTimes.put(packages[i], start[i]);
+			}
+			this.assignments = Collections.unmodifiableList(assignments);
+			this.makespan = makespan;
+		}
+
+		/**
+		 * Returns the packages installed by every worker
+		 *
+		 * @return one list per worker, in the order its packages are started
+		 */
+		public List<List<String>> getAssignments() {
+			return assignments;
+		}
+
+		/**
+		 * Returns the time at which a package is started
+		 *
+		 * @param pkg the name of the package
+		 * @return the start time, in the unit of the install costs, or null if the package is not
+		 * in the plan
+		 */
+		public Double getStartTime(String pkg) {
+			return startTimes.get(pkg);
+		}
+
+		/**
+		 * Returns the predicted wall-clock time to install all the packages
+		 *
+		 * @return the time at which the last package is installed, in the unit of the costs
+		 */
+		public double getMakespan() {
+			return makespan;
+		}
+	}
+}
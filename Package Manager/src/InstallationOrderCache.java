@@ -0,0 +1,271 @@
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Filename:   InstallationOrderCache.java
+ * Project:    p4
+ *
+ * A bounded cache of installation orders, evicting the least recently used entry when it is full.
+ *
+ * Every entry is stored with the set of vertices its result was computed from, the closure. A
+ * change to the graph only invalidates the entries whose closure contains the changed vertex, so
+ * the results of unrelated packages stay cached.
+ *
+ * Every entry belongs to the published version of the graph. The changes made while the next
+ * version is built are only recorded, and applied when that version is published, so readers
+ * of the current version keep their entries until then. Results computed from an older
+ * version are not cached. All the methods are synchronized, so the cache can be shared by any
+ * number of readers.
+ */
+public class InstallationOrderCache implements GraphListener {
+	/**
+	 * A cached result and the vertices it was computed from
+	 */
+	private static class Entry {
+		final List<String> result;
+		final String[] closure;
+
+		Entry(List<String> result, String[] closure) {
+			this.result = result;
+			this.closure = closure;
+		}
+	}
+
+	/**
+	 * The cached entries in access order, the least recently used first
+	 */
+	private final LinkedHashMap<Object, Entry> entries;
+
+	/**
+	 * The keys of the entries whose closure contains each vertex
+	 */
+	private final Map<String, Set<Object>> index;
+
+	/**
+	 * The largest number of entries kept
+	 */
+	private int maxSize;
+
+	/**
+	 * The number of lookups that found an entry, did not, and the number of evicted entries
+	 */
+	private long hits, misses, evictions;
+
+	/**
+	 * The published version of the graph, the only one whose results are cached
+	 */
+	private Graph current;
+
+	/**
+	 * The vertices changed in the version being built, to be invalidated when it is published
+	 */
+	private final Set<String> pending;
+
+	/**
+	 * Creates an empty cache
+	 *
+	 * @param maxSize the largest number of entries kept, 0 to disable caching
+	 */
+	public InstallationOrderCache(int maxSize) {
+		entries = new LinkedHashMap<Object, Entry>(16, 0.75f, true);
+		index = new HashMap<String, Set<Object>>();
+		pending = new HashSet<String>();
+		setMaxSize(maxSize);
+	}
+
+	/**
+	 * Sets the largest number of entries kept, evicting the least recently used entries if
+	 * there are more
+	 *
+	 * @param maxSize the largest number of entries kept, 0 to disable caching
+	 */
+	public synchronized void setMaxSize(int maxSize) {
+		if (maxSize < 0)
+			throw new IllegalArgumentException("the size of the cache must not be negative");
+		this.maxSize = maxSize;
+		evict();
+	}
+
+	/**
+	 * Returns a copy of a cached result
+	 *
+	 * @param key the key of the result
+	 * @param graph the version of the graph the result is wanted for
+	 * @return a copy of the result, or null if it is not cached for that version
+	 */
+	public synchronized List<String> get(Object key, Graph graph) {
+		Entry entry = graph == current ? entries.get(key) : null;
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return new ArrayList<String>(entry.result);
+	}
+
+	/**
+	 * Caches a result
+	 *
+	 * @param key the key of the result
+	 * @param result the result, which is copied
+	 * @param closure every vertex the result was computed from
+	 * @param graph the version of the graph the result was computed from, which is not cached 
+	 * unless it is still the published version
+	 */
+	public synchronized void put(Object key, List<String> result, Collection<String> closure, Graph graph) {
+		if (maxSize == 0 || graph != current)
+			return;
+		remove(key);
+		Entry entry = new Entry(Collections.unmodifiableList(new ArrayList<String>(result)),
+				closure.toArray(new String[0]));
+		entries.put(key, entry);
+		for (String vertex : entry.closure) {
+			Set<Object> keys = index.get(vertex);
+			if (keys == null) {
+				keys = new HashSet<Object>();
+				index.put(vertex, keys);
+			}
+			keys.add(key);
+		}
+		evict();
+	}
+
+	/**
+	 * Removes every entry whose closure contains a vertex
+	 *
+	 * @param vertex the vertex that changed
+	 */
+	public synchronized void invalidate(String vertex) {
+		Set<Object> keys = index.get(vertex);
+		if (keys == null)
+			return;
+		for (Object key : new ArrayList<Object>(keys)) {
+			remove(key);
+		}
+	}
+
+	/**
+	 * Removes every entry, and makes a new graph the published version
+	 *
+	 * @param graph the graph whose results are cached from now on
+	 */
+	public synchronized void reset(Graph graph) {
+		entries.clear();
+		index.clear();
+		pending.clear();
+		current = graph;
+	}
+
+	/**
+	 * Makes the next version of the graph the published version, removing the entries whose
+	 * closure contains a vertex changed in it
+	 *
+	 * @param graph the new version of the graph
+	 */
+	public synchronized void publish(Graph graph) {
+		for (String vertex : pending) {
+			invalidate(vertex);
+		}
+		pending.clear();
+		current = graph;
+	}
+
+	/**
+	 * Forgets the changes recorded for a version of the graph that is not published
+	 */
+	public synchronized void discard() {
+		pending.clear();
+	}
+
+	/**
+	 * A new edge changes the closure of every package that reaches its source
+	 */
+	public synchronized void edgeAdded(String vertex1, String vertex2) {
+		pending.add(vertex1);
+	}
+
+	/**
+	 * A removed edge changes the closure of every package that reaches its source
+	 */
+	public synchronized void edgeRemoved(String vertex1, String vertex2) {
+		pending.add(vertex1);
+	}
+
+	/**
+	 * A removed vertex changes the closure of every package that reaches it
+	 */
+	public synchronized void vertexRemoved(String vertex) {
+		pending.add(vertex);
+	}
+
+	/**
+	 * Returns the number of entries
+	 *
+	 * @return the number of cached results
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Returns the number of lookups that found a cached result
+	 *
+	 * @return the number of hits
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Returns the number of lookups that did not find a cached result
+	 *
+	 * @return the number of misses
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Returns the number of entries removed to keep the cache within its size
+	 *
+	 * @return the number of evictions
+	 */
+	public synchronized long getEvictions() {
+		return evictions;
+	}
+
+	/**
+	 * This helper method removes the least recently used entries while there are too many
+	 */
+	private void evict() {
+		while (entries.size() > maxSize) {
+			remove(entries.keySet().iterator().next());
+			evictions++;
+		}
+	}
+
+	/**
+	 * This helper method removes an entry and its keys from the index
+	 * @param key - the key of the entry
+	 */
+	private void remove(Object key) {
+		Entry entry = entries.remove(key);
+		if (entry == null)
+			return;
+		for (String vertex : entry.closure) {
+			Set<Object> keys = index.get(vertex);
+			if (keys != null) {
+				keys.remove(key);
+				if (keys.isEmpty())
+					index.remove(vertex);
+			}
+		}
+	}
+}
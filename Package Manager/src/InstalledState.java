@@ -0,0 +1,115 @@
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Filename:   InstalledState.java
+ * Project:    p4
+ *
+ * The packages installed on a host, together with the closure of everything they depend on.
+ *
+ * The closure is kept as a bitset over the vertex ids of one version of the graph. Installing
+ * another package only marks the part of its closure that is not marked yet, so the closure is
+ * never computed again from scratch unless a package is removed or the graph changes. An
+ * installed state is not thread-safe and should be used by one thread at a time.
+ */
+public class InstalledState {
+	/**
+	 * The installed packages, in the order they were added
+	 */
+	private final Set<String> packages;
+
+	/**
+	 * The version of the graph the closure is computed for, or null if it has to be computed
+	 */
+	private Graph graph;
+
+	/**
+	 * The ids of the installed packages and of all their dependencies in that version
+	 */
+	private BitSet closure;
+
+	/**
+	 * Creates a state with no installed package
+	 */
+	public InstalledState() {
+		packages = new LinkedHashSet<String>();
+	}
+
+	/**
+	 * Creates a state with installed packages
+	 *
+	 * @param installed the names of the installed packages
+	 */
+	public InstalledState(Collection<String> installed) {
+		this();
+		for (String pkg : installed) {
+			add(pkg);
+		}
+	}
+
+	/**
+	 * Marks a package as installed, which also marks its dependencies as installed
+	 *
+	 * @param pkg the name of the package
+	 */
+	public void add(String pkg) {
+		if (pkg == null || !packages.add(pkg))
+			return;
+		// extend the closure instead of computing it again
+		if (graph != null && graph.containsVertex(pkg))
+			mark(graph.idOf(pkg));
+	}
+
+	/**
+	 * Marks a package as no longer installed. Its dependencies stay installed if another
+	 * installed package depends on them.
+	 *
+	 * @param pkg the name of the package
+	 */
+	public void remove(String pkg) {
+		// a bitset cannot tell which packages still need a dependency, so the closure is
+		// computed again when it is next used
+		if (packages.remove(pkg))
+			graph = null;
+	}
+
+	/**
+	 * Returns the installed packages
+	 *
+	 * @return the names of the packages marked as installed, not including their dependencies
+	 */
+	public Set<String> getPackages() {
+		return Collections.unmodifiableSet(packages);
+	}
+
+	/**
+	 * Returns the closure of the installed packages in a version of the graph, computing it
+	 * again if it was computed for another version. Installed packages that are not in that
+	 * version are ignored. The bitset is shared and must not be modified.
+	 *
+	 * @param graph the version of the graph
+	 * @return the ids of the installed packages and of all their dependencies
+	 */
+	BitSet closure(Graph graph) {
+		if (this.graph != graph) {
+			this.graph = graph;
+			closure = new BitSet(graph.idBound());
+			for (String pkg : packages) {
+				if (graph.containsVertex(pkg))
+					mark(graph.idOf(pkg));
+			}
+		}
+		return closure;
+	}
+
+	/**
+	 * This helper method marks a vertex and every vertex it reaches that is not marked yet
+	 * @param root - the id of the vertex
+	 */
+	private void mark(int root) {
+		Traversal.get().mark(graph, root, closure);
+	}
+}
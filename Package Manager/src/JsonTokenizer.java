@@ -0,0 +1,438 @@
+import java.io.Closeable;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import org.json.simple.parser.ParseException;
+
+/**
+ * Filename:   JsonTokenizer.java
+ * Project:    p4
+ *
+ * Splits a json file into tokens one at a time, so that a json document can be processed without
+ * building the whole document tree in memory.
+ *
+ * The file is read through a buffered NIO channel and decoded as UTF-8, so only one buffer of
+ * bytes and one buffer of chars are held at any time.
+ */
+public class JsonTokenizer implements Closeable {
+	/**
+	 * The token types returned by nextToken
+	 */
+	public static final int END = 0;
+	public static final int BEGIN_OBJECT = 1;
+	public static final int END_OBJECT = 2;
+	public static final int BEGIN_ARRAY = 3;
+	public static final int END_ARRAY = 4;
+	public static final int COLON = 5;
+	public static final int COMMA = 6;
+	public static final int STRING = 7;
+	public static final int NUMBER = 8;
+	public static final int LITERAL = 9;
+
+	/**
+	 * The size of the byte and char buffers
+	 */
+	private static final int BUFFER_SIZE = 1 << 16;
+
+	/**
+	 * The channel the json file is read from
+	 */
+	private final FileChannel channel;
+
+	/**
+	 * The bytes read from the channel that have not been decoded yet
+	 */
+	private final ByteBuffer bytes;
+
+	/**
+	 * The decoded chars that have not been tokenized yet
+	 */
+	private final CharBuffer chars;
+
+	/**
+	 * The UTF-8 decoder
+	 */
+	private final CharsetDecoder decoder;
+
+	/**
+	 * The text of the last STRING, NUMBER or LITERAL token
+	 */
+	private final StringBuilder text;
+
+	/**
+	 * Whether the channel has reached the end of the file, and whether the decoder has been
+	 * flushed afterwards
+	 */
+	private boolean eof, flushed;
+
+	/**
+	 * The token returned by the next call to nextToken if it has been peeked at, or -1
+	 */
+	private int peeked;
+
+	/**
+	 * The number of chars consumed so far, used to report the position of parse errors
+	 */
+	private long position;
+
+	/**
+	 * The number of bytes read from the channel so far
+	 */
+	private long bytesRead;
+
+	/**
+	 * The offset in the file of the byte after the last char consumed
+	 */
+	private long bytePosition;
+
+	/**
+	 * The largest number of bytes read from the channel at once, smaller after a seek since
+	 * only one entry is usually read there
+	 */
+	private int readSize;
+
+	/**
+	 * Opens a json file for tokenizing
+	 *
+	 * @param jsonFilepath the path of the json file
+	 * @throws FileNotFoundException if file path is incorrect
+	 */
+	public JsonTokenizer(String jsonFilepath) throws FileNotFoundException {
+		channel = new FileInputStream(jsonFilepath).getChannel();
+		bytes = ByteBuffer.allocateDirect(BUFFER_SIZE);
+		bytes.flip();
+		chars = CharBuffer.allocate(BUFFER_SIZE);
+		chars.flip();
+		decoder = StandardCharsets.UTF_8.newDecoder()
+				.onMalformedInput(CodingErrorAction.REPLACE)
+				.onUnmappableCharacter(CodingErrorAction.REPLACE);
+		text = new StringBuilder();
+		peeked = -1;
+		readSize = BUFFER_SIZE;
+	}
+
+	/**
+	 * Returns the type of the next token without consuming it
+	 *
+	 * @return the type of the next token
+	 * @throws IOException if the file cannot be read
+	 * @throws ParseException if the next token is not valid json
+	 */
+	public int peekToken() throws IOException, ParseException {
+		if (peeked < 0)
+			peeked = readToken();
+		return peeked;
+	}
+
+	/**
+	 * Consumes and returns the type of the next token. The text of STRING, NUMBER and LITERAL
+	 * tokens is available through getText until the next token is read.
+	 *
+	 * @return the type of the next token
+	 * @throws IOException if the file cannot be read
+	 * @throws ParseException if the next token is not valid json
+	 */
+	public int nextToken() throws IOException, ParseException {
+		int token = peekToken();
+		peeked = -1;
+		return token;
+	}
+
+	/**
+	 * Consumes the next token and checks that it has the expected type
+	 *
+	 * @param expected the expected token type
+	 * @throws IOException if the file cannot be read
+	 * @throws ParseException if the next token is of another type
+	 */
+	public void expect(int expected) throws IOException, ParseException {
+		int token = nextToken();
+		if (token != expected)
+			throw error(ParseException.ERROR_UNEXPECTED_TOKEN, token);
+	}
+
+	/**
+	 * Consumes the next token, which has to be a string, and returns its text
+	 *
+	 * @return the value of the string
+	 * @throws IOException if the file cannot be read
+	 * @throws ParseException if the next token is not a string
+	 */
+	public String nextString() throws IOException, ParseException {
+		expect(STRING);
+		return text.toString();
+	}
+
+	/**
+	 * Returns the text of the last STRING, NUMBER or LITERAL token
+	 *
+	 * @return the text of the last token, without quotes or escapes for strings
+	 */
+	public CharSequence getText() {
+		return text;
+	}
+
+	/**
+	 * Consumes a whole json value, including any nested objects and arrays
+	 *
+	 * @throws IOException if the file cannot be read
+	 * @throws ParseException if the value is not valid json
+	 */
+	public void skipValue() throws IOException, ParseException {
+		int depth = 0;
+		do {
+			int token = nextToken();
+			switch (token) {
+			case BEGIN_OBJECT:
+			case BEGIN_ARRAY:
+				depth++;
+				break;
+			case END_OBJECT:
+			case END_ARRAY:
+				if (depth == 0)
+					throw error(ParseException.ERROR_UNEXPECTED_TOKEN, token);
+				depth--;
+				break;
+			case END:
+				throw error(ParseException.ERROR_UNEXPECTED_TOKEN, token);
+			default:
+				// strings, numbers, literals and the separators inside containers are consumed
+				break;
+			}
+		} while (depth > 0);
+	}
+
+	/**
+	 * Returns the number of bytes read from the file so far
+	 *
+	 * @return the number of bytes read
+	 */
+	public long getBytesRead() {
+		return bytesRead;
+	}
+
+	/**
+	 * Returns the offset in the file of the byte after the last char consumed, which is where 
+	 * the next token starts if no token has been peeked at. Offsets are only exact for files 
+	 * in valid UTF-8.
+	 *
+	 * @return the byte offset
+	 */
+	public long getBytePosition() {
+		return bytePosition;
+	}
+
+	/**
+	 * Moves the tokenizer to a byte offset of the file, dropping everything buffered, so that 
+	 * the next token is read from there. The offset must be the start of a char, such as one 
+	 * returned by getBytePosition.
+	 *
+	 * @param offset the byte offset
+	 * @throws IOException if the file cannot be read
+	 */
+	public void seek(long offset) throws IOException {
+		channel.position(offset);
+		bytes.clear();
+		bytes.flip();
+		chars.clear();
+		chars.flip();
+		decoder.reset();
+		eof = flushed = false;
+		peeked = -1;
+		position = bytePosition = offset;
+		readSize = 1 << 12;
+	}
+
+	/**
+	 * Creates a ParseException at the current position
+	 *
+	 * @param errorType one of the error types of ParseException
+	 * @param unexpected the unexpected token or char
+	 * @return the exception to be thrown
+	 */
+	public ParseException error(int errorType, Object unexpected) {
+		return new ParseException((int) Math.min(position, Integer.MAX_VALUE), errorType, unexpected);
+	}
+
+	/**
+	 * Closes the underlying channel
+	 */
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	/**
+	 * This helper method reads the next token from the chars
+	 * @return the type of the token
+	 */
+	private int readToken() throws IOException, ParseException {
+		int c = read();
+		// skip the whitespace between tokens
+		while (c == ' ' || c == '\t' || c == '\n' || c == '\r')
+			c = read();
+		switch (c) {
+		case -1:
+			return END;
+		case '{':
+			return BEGIN_OBJECT;
+		case '}':
+			return END_OBJECT;
+		case '[':
+			return BEGIN_ARRAY;
+		case ']':
+			return END_ARRAY;
+		case ':':
+			return COLON;
+		case ',':
+			return COMMA;
+		case '"':
+			readString();
+			return STRING;
+		default:
+			text.setLength(0);
+			if (c == '-' || (c >= '0' && c <= '9')) {
+				text.append((char) c);
+				// numbers are kept as text, their exact grammar is not checked
+				while (isNumberChar(peekChar()))
+					text.append((char) read());
+				return NUMBER;
+			}
+			if (c >= 'a' && c <= 'z') {
+				text.append((char) c);
+				while (peekChar() >= 'a' && peekChar() <= 'z')
+					text.append((char) read());
+				String literal = text.toString();
+				if (literal.equals("true") || literal.equals("false") || literal.equals("null"))
+					return LITERAL;
+				throw error(ParseException.ERROR_UNEXPECTED_TOKEN, literal);
+			}
+			throw error(ParseException.ERROR_UNEXPECTED_CHAR, Character.valueOf((char) c));
+		}
+	}
+
+	/**
+	 * This helper method reads the rest of a string after its opening quote into text
+	 */
+	private void readString() throws IOException, ParseException {
+		text.setLength(0);
+		while (true) {
+			int c = read();
+			if (c == '"')
+				return;
+			if (c == -1)
+				throw error(ParseException.ERROR_UNEXPECTED_TOKEN, null);
+			if (c != '\\') {
+				text.append((char) c);
+				continue;
+			}
+			// decode the escape sequence
+			c = read();
+			switch (c) {
+			case '"':
+			case '\\':
+			case '/':
+				text.append((char) c);
+				break;
+			case 'b':
+				text.append('\b');
+				break;
+			case 'f':
+				text.append('\f');
+				break;
+			case 'n':
+				text.append('\n');
+				break;
+			case 'r':
+				text.append('\r');
+				break;
+			case 't':
+				text.append('\t');
+				break;
+			case 'u':
+				int value = 0;
+				for (int i = 0; i < 4; i++) {
+					int digit = Character.digit(read(), 16);
+					if (digit < 0)
+						throw error(ParseException.ERROR_UNEXPECTED_CHAR, null);
+					value = value * 16 + digit;
+				}
+				text.append((char) value);
+				break;
+			default:
+				throw error(ParseException.ERROR_UNEXPECTED_CHAR, c < 0 ? null : Character.valueOf((char) c));
+			}
+		}
+	}
+
+	/**
+	 * This helper method checks if a char can be part of a number
+	 * @param c the char
+	 * @return true if the char can be part of a number
+	 */
+	private static boolean isNumberChar(int c) {
+		return (c >= '0' && c <= '9') || c == '.' || c == 'e' || c == 'E' || c == '+' || c == '-';
+	}
+
+	/**
+	 * This helper method returns the next char without consuming it
+	 * @return the next char, or -1 at the end of the file
+	 */
+	private int peekChar() throws IOException {
+		if (!chars.hasRemaining() && !fill())
+			return -1;
+		return chars.get(chars.position());
+	}
+
+	/**
+	 * This helper method consumes and returns the next char
+	 * @return the next char, or -1 at the end of the file
+	 */
+	private int read() throws IOException {
+		if (!chars.hasRemaining() && !fill())
+			return -1;
+		position++;
+		char c = chars.get();
+		// the length of the char in UTF-8, a surrogate being half of a 4-byte sequence
+		bytePosition += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+		return c;
+	}
+
+	/**
+	 * This helper method decodes the next chunk of chars, reading more bytes from the channel
+	 * when needed
+	 * @return false if the end of the file has been reached
+	 */
+	private boolean fill() throws IOException {
+		if (flushed)
+			return false;
+		chars.clear();
+		while (true) {
+			decoder.decode(bytes, chars, eof);
+			if (chars.position() > 0)
+				break;
+			if (eof) {
+				decoder.flush(chars);
+				flushed = true;
+				break;
+			}
+			// all the bytes have been decoded, so read more from the channel
+			bytes.compact();
+			bytes.limit(Math.min(bytes.capacity(), bytes.position() + readSize));
+			int read = channel.read(bytes);
+			bytes.flip();
+			if (read < 0)
+				eof = true;
+			else
+				bytesRead += read;
+		}
+		chars.flip();
+		return chars.hasRemaining();
+	}
+}
@@ -0,0 +1,421 @@
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.json.simple.parser.ParseException;
+
+/**
+ * Filename:   ManifestIndex.java
+ * Project:    p4
+ *
+ * The byte offsets of the package entries of a json package dependency file, so that the
+ * entries of a few packages can be read without parsing the rest of the file.
+ *
+ * The index is built by reading the file once, and saved beside it in a binary file holding,
+ * in big-endian order:
+ * 1. the magic number and the format version
+ * 2. the modification time and length of the json file
+ * 3. the number of names N, the number of entries E and the capacity C of the name index
+ * 4. the name table, as N + 1 byte offsets followed by the UTF-8 bytes of all names
+ * 5. the name index, as C slots holding id + 1 or 0, probed linearly from the hash of a name
+ * 6. the entries of every name, as N + 1 positions followed by the E byte offsets of the
+ *    entries in the json file, grouped by name in the order of the file
+ * 7. the CRC32 checksum of everything before it
+ *
+ * Every package of the file is named, including the dependencies without an entry of their
+ * own, which have no offsets. Like a snapshot, the saved index is opened through a read-only
+ * memory mapping and only used if its checksum is valid and the json file has not changed.
+ */
+public class ManifestIndex {
+	/**
+	 * The magic number at the start of every index
+	 */
+	public static final int MAGIC = 0x504D4958;
+
+	/**
+	 * The version of the file format
+	 */
+	public static final int FORMAT_VERSION = 1;
+
+	/**
+	 * The size of the fixed header in bytes
+	 */
+	static final int HEADER_SIZE = 4 + 4 + 8 + 8 + 4 + 4 + 4;
+
+	/**
+	 * The json file that was indexed
+	 */
+	private final String jsonFilepath;
+
+	/**
+	 * The whole index, mapped from the index file or built in memory
+	 */
+	private final ByteBuffer buffer;
+
+	/**
+	 * The number of names, of entries and of slots of the name index
+	 */
+	private final int names, entries, capacity;
+
+	/**
+	 * Where the name table, the name index, the positions of the entries and their offsets start
+	 */
+	private final int nameOffsetsStart, nameBytesStart, slotsStart, entryStartsStart, entryOffsetsStart;
+
+	/**
+	 * Whether the index was read from the index file rather than built
+	 */
+	private final boolean loaded;
+
+	/**
+	 * This helper constructor reads the header of a valid index
+	 */
+	private ManifestIndex(String jsonFilepath, ByteBuffer buffer, boolean loaded) {
+		this.jsonFilepath = jsonFilepath;
+		this.buffer = buffer;
+		this.loaded = loaded;
+		names = buffer.getInt(24);
+		entries = buffer.getInt(28);
+		capacity = buffer.getInt(32);
+		nameOffsetsStart = HEADER_SIZE;
+		nameBytesStart = nameOffsetsStart + 4 * (names + 1);
+		slotsStart = nameBytesStart + buffer.getInt(nameOffsetsStart + 4 * names);
+		entryStartsStart = slotsStart + 4 * capacity;
+		entryOffsetsStart = entryStartsStart + 4 * (names + 1);
+	}
+
+	/**
+	 * Returns the path of the index of a json file
+	 *
+	 * @param jsonFilepath the path of the json file
+	 * @return the path of the index beside it
+	 */
+	public static String indexPath(String jsonFilepath) {
+		return jsonFilepath + ".idx";
+	}
+
+	/**
+	 * Opens the index of a json file, reading it from beside the file if it is valid, or else
+	 * building it and saving it there for the next time. An index that cannot be saved is
+	 * still used.
+	 *
+	 * @param jsonFilepath the path of the json file
+	 * @return the index
+	 * @throws FileNotFoundException if file path is incorrect
+	 * @throws IOException if the json file cannot be read
+	 * @throws ParseException if the json file has to be indexed and cannot be parsed
+	 */
+	public static ManifestIndex open(String jsonFilepath) throws FileNotFoundException, IOException, ParseException {
+		MappedByteBuffer mapped = map(indexPath(jsonFilepath), jsonFilepath);
+		if (mapped != null) {
+			try {
+				return new ManifestIndex(jsonFilepath, mapped, true);
+			} catch (RuntimeException e) {
+				// an index with a valid checksum but inconsistent sizes is built again
+			}
+		}
+		ManifestIndex index = build(jsonFilepath);
+		try {
+			index.save(indexPath(jsonFilepath));
+		} catch (IOException e) {
+			// the directory may be read-only, the index is then built for every run
+		}
+		return index;
+	}
+
+	/**
+	 * Reads a json file and indexes its entries, without saving the index
+	 *
+	 * @param jsonFilepath the path of the json file
+	 * @return the index
+	 * @throws FileNotFoundException if file path is incorrect
+	 * @throws IOException if the json file cannot be read
+	 * @throws ParseException if the json file cannot be parsed
+	 */
+	public static ManifestIndex build(String jsonFilepath) throws FileNotFoundException, IOException, ParseException {
+		java.io.File source = new java.io.File(jsonFilepath);
+		// the time and length are taken first, so that a file changed while it is read is
+		// indexed again the next time
+		long modified = source.lastModified();
+		long sourceLength = source.length();
+		Map<String, Integer> ids = new HashMap<String, Integer>();
+		List<String> names = new ArrayList<String>();
+		long[] offsets = new long[16];
+		int[] owners = new int[16];
+		int entries = 0;
+		try (ManifestReader reader = new ManifestReader(jsonFilepath, new NameTable())) {
+			while (reader.next()) {
+				if (entries == offsets.length) {
+					offsets = Arrays.copyOf(offsets, 2 * entries);
+					owners = Arrays.copyOf(owners, 2 * entries);
+				}
+				offsets[entries] = reader.getEntryOffset();
+				owners[entries++] = idOf(reader.getName(), ids, names);
+				for (String dependency : reader.getDependencies()) {
+					idOf(dependency, ids, names);
+				}
+			}
+		}
+		int count = names.size();
+		byte[][] encoded = new byte[count][];
+		long nameBytes = 0;
+		for (int i = 0; i < count; i++) {
+			encoded[i] = names.get(i).getBytes(StandardCharsets.UTF_8);
+			nameBytes += encoded[i].length;
+		}
+		int capacity = indexCapacity(count);
+		long length = HEADER_SIZE + 4L * (count + 1) + nameBytes + 4L * capacity + 4L * (count + 1) + 8L * entries + 8;
+		if (length > Integer.MAX_VALUE)
+			throw new IOException("the json file has too many packages to be indexed");
+		ByteBuffer buffer = ByteBuffer.allocate((int) length);
+		buffer.putInt(MAGIC).putInt(FORMAT_VERSION);
+		buffer.putLong(modified).putLong(sourceLength);
+		buffer.putInt(count).putInt(entries).putInt(capacity);
+		int nameOffset = 0;
+		for (int i = 0; i < count; i++) {
+			buffer.putInt(nameOffset);
+			nameOffset += encoded[i].length;
+		}
+		buffer.putInt(nameOffset);
+		for (byte[] name : encoded) {
+			buffer.put(name);
+		}
+		int[] slots = new int[capacity];
+		for (int i = 0; i < count; i++) {
+			int slot = hash(names.get(i)) & (capacity - 1);
+			while (slots[slot] != 0)
+				slot = (slot + 1) & (capacity - 1);
+			slots[slot] = i + 1;
+		}
+		buffer.asIntBuffer().put(slots);
+		buffer.position(buffer.position() + 4 * capacity);
+		// group the entries by name, keeping the order of the file within every name
+		int[] starts = new int[count + 1];
+		for (int e = 0; e < entries; e++) {
+			starts[owners[e] + 1]++;
+		}
+		for (int i = 0; i < count; i++) {
+			starts[i + 1] += starts[i];
+		}
+		buffer.asIntBuffer().put(starts);
+		buffer.position(buffer.position() + 4 * (count + 1));
+		long[] grouped = new long[entries];
+		int[] next = Arrays.copyOf(starts, count);
+		for (int e = 0; e < entries; e++) {
+			grouped[next[owners[e]]++] = offsets[e];
+		}
+		buffer.asLongBuffer().put(grouped);
+		buffer.position(buffer.position() + 8 * entries);
+		CRC32 crc = new CRC32();
+		crc.update(buffer.array(), 0, buffer.position());
+		buffer.putLong(crc.getValue());
+		return new ManifestIndex(jsonFilepath, buffer, false);
+	}
+
+	/**
+	 * Returns the json file that was indexed
+	 *
+	 * @return the path of the json file
+	 */
+	public String getJsonFilepath() {
+		return jsonFilepath;
+	}
+
+	/**
+	 * Returns whether the index was read from the index file beside the json file
+	 *
+	 * @return true if it was read, false if it was built
+	 */
+	public boolean isLoaded() {
+		return loaded;
+	}
+
+	/**
+	 * Returns whether the json file is unchanged since it was indexed
+	 *
+	 * @return true if the offsets are still valid
+	 */
+	public boolean isCurrent() {
+		java.io.File source = new java.io.File(jsonFilepath);
+		return buffer.getLong(8) == source.lastModified() && buffer.getLong(16) == source.length();
+	}
+
+	/**
+	 * Returns the number of packages named in the json file
+	 *
+	 * @return the number of packages, with or without an entry
+	 */
+	public int size() {
+		return names;
+	}
+
+	/**
+	 * Returns the number of package entries of the json file
+	 *
+	 * @return the number of entries
+	 */
+	public int getEntryCount() {
+		return entries;
+	}
+
+	/**
+	 * Returns whether a package is named in the json file, by an entry or as a dependency
+	 *
+	 * @param pkg the name of the package
+	 * @return true if the package is in the file
+	 */
+	public boolean contains(String pkg) {
+		return idOf(pkg) >= 0;
+	}
+
+	/**
+	 * Returns where the entries of a package start in the json file
+	 *
+	 * @param pkg the name of the package
+	 * @return the byte offsets of its entries in the order of the file, empty for a package
+	 * that is only a dependency, or null if the package is not in the file
+	 */
+	public long[] getEntryOffsets(String pkg) {
+		int id = idOf(pkg);
+		if (id < 0)
+			return null;
+		int from = buffer.getInt(entryStartsStart + 4 * id);
+		int to = buffer.getInt(entryStartsStart + 4 * (id + 1));
+		long[] offsets = new long[to - from];
+		for (int i = from; i < to; i++) {
+			offsets[i - from] = buffer.getLong(entryOffsetsStart + 8 * i);
+		}
+		return offsets;
+	}
+
+	/**
+	 * Writes the index to a file, through a temporary file so that readers never see a
+	 * partial index
+	 *
+	 * @param indexPath the path of the index file
+	 * @throws IOException if the index cannot be written
+	 */
+	public void save(String indexPath) throws IOException {
+		java.io.File file = new java.io.File(indexPath);
+		java.io.File temp = new java.io.File(indexPath + ".tmp");
+		ByteBuffer content = buffer.duplicate();
+		content.clear();
+		try (RandomAccessFile out = new RandomAccessFile(temp, "rw")) {
+			out.setLength(0);
+			while (content.hasRemaining())
+				out.getChannel().write(content);
+		}
+		java.nio.file.Files.move(temp.toPath(), file.toPath(),
+				java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+	}
+
+	/**
+	 * This helper method finds the id of a name in the name index
+	 * @param pkg - the name
+	 * @return the id, or -1 if the name is not in the index
+	 */
+	private int idOf(String pkg) {
+		if (pkg == null)
+			return -1;
+		byte[] bytes = pkg.getBytes(StandardCharsets.UTF_8);
+		for (int slot = hash(pkg) & (capacity - 1); ; slot = (slot + 1) & (capacity - 1)) {
+			int entry = buffer.getInt(slotsStart + 4 * slot);
+			if (entry == 0)
+				return -1;
+			int id = entry - 1;
+			int start = buffer.getInt(nameOffsetsStart + 4 * id);
+			int end = buffer.getInt(nameOffsetsStart + 4 * (id + 1));
+			if (end - start != bytes.length)
+				continue;
+			int i = 0;
+			while (i < bytes.length && buffer.get(nameBytesStart + start + i) == bytes[i])
+				i++;
+			if (i == bytes.length)
+				return id;
+		}
+	}
+
+	/**
+	 * This helper method returns the id of a name while the index is built, adding the name
+	 * @param name - the name
+	 * @param ids - the ids of the names added so far
+	 * @param names - the names added so far, by id
+	 * @return the id of the name
+	 */
+	private static int idOf(String name, Map<String, Integer> ids, List<String> names) {
+		Integer id = ids.get(name);
+		if (id == null) {
+			id = names.size();
+			ids.put(name, id);
+			names.add(name);
+		}
+		return id;
+	}
+
+	/**
+	 * This helper method maps an index file into memory and checks that it is valid for a
+	 * json file
+	 * @param indexPath - the path of the index file
+	 * @param jsonFilepath - the json file the index should have been built from
+	 * @return the read-only mapping of the whole index, or null if the index is missing,
+	 * corrupt, of another format version, or older than the json file
+	 */
+	private static MappedByteBuffer map(String indexPath, String jsonFilepath) {
+		java.io.File source = new java.io.File(jsonFilepath);
+		try (RandomAccessFile file = new RandomAccessFile(indexPath, "r")) {
+			long length = file.length();
+			if (length < HEADER_SIZE + 8 || length > Integer.MAX_VALUE)
+				return null;
+			// the mapping stays valid after the channel is closed
+			MappedByteBuffer buffer = file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, length);
+			if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != FORMAT_VERSION)
+				return null;
+			if (buffer.getLong(8) != source.lastModified() || buffer.getLong(16) != source.length())
+				return null;
+			ByteBuffer content = buffer.duplicate();
+			content.limit((int) length - 8);
+			CRC32 crc = new CRC32();
+			crc.update(content);
+			if (crc.getValue() != buffer.getLong((int) length - 8))
+				return null;
+			return buffer;
+		} catch (IOException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Returns the capacity of the name index for a number of names, a power of two at least
+	 * twice the number of names
+	 *
+	 * @param names the number of names
+	 * @return the number of slots of the index
+	 */
+	static int indexCapacity(int names) {
+		int capacity = 2;
+		while (capacity < 2 * names)
+			capacity *= 2;
+		return capacity;
+	}
+
+	/**
+	 * Returns the hash of a name used by the name index
+	 *
+	 * @param name the name of a package
+	 * @return the spread hash code of the name
+	 */
+	static int hash(String name) {
+		int h = name.hashCode();
+		return h ^ (h >>> 16);
+	}
+}
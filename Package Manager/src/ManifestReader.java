@@ -0,0 +1,357 @@
+import java.io.Closeable;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.json.simple.parser.ParseException;
+
+/**
+ * Filename:   ManifestReader.java
+ * Project:    p4
+ *
+ * Reads the entries of the "packages" array of a json package dependency file one at a time.
+ *
+ * Only the current entry is held in memory, so a file of any size can be read with a bounded
+ * amount of memory. Keys other than "packages" in the document, and other than "name",
+ * "dependencies", the optional "version" and the optional install "cost" in each entry, are
+ * skipped. The dependencies are either an array of names or an object from names to the
+ * ranges of versions they accept. Names can be interned through a name table, so that a name
+ * read many times is only one String.
+ */
+public class ManifestReader implements Closeable {
+	/**
+	 * The states of the reader
+	 */
+	private static final int BEFORE_PACKAGES = 0;
+	private static final int FIRST_PACKAGE = 1;
+	private static final int NEXT_PACKAGE = 2;
+	private static final int DONE = 3;
+	private static final int SINGLE_PACKAGE = 4;
+
+	/**
+	 * The tokenizer of the json file
+	 */
+	private final JsonTokenizer tokenizer;
+
+	/**
+	 * The current state of the reader
+	 */
+	private int state;
+
+	/**
+	 * The name of the current package
+	 */
+	private String name;
+
+	/**
+	 * The dependencies of the current package, reused from entry to entry
+	 */
+	private final List<String> dependencies;
+
+	/**
+	 * The range of versions accepted for every dependency of the current package, "*" when
+	 * the dependencies are an array, reused from entry to entry
+	 */
+	private final List<String> ranges;
+
+	/**
+	 * The version of the current package, or null if the entry has no version
+	 */
+	private String version;
+
+	/**
+	 * The install cost of the current package, or NaN if the entry has no cost
+	 */
+	private double cost;
+
+	/**
+	 * The byte offset of the opening brace of the current entry in the file
+	 */
+	private long entryOffset;
+
+	/**
+	 * The table the names are interned in, or null to create a String for every name read
+	 */
+	private final NameTable names;
+
+	/**
+	 * Opens a json package dependency file
+	 *
+	 * @param jsonFilepath the name of json data file with package dependency information
+	 * @throws FileNotFoundException if file path is incorrect
+	 */
+	public ManifestReader(String jsonFilepath) throws FileNotFoundException {
+		this(jsonFilepath, null);
+	}
+
+	/**
+	 * Opens a json package dependency file whose names are interned in a name table
+	 *
+	 * @param jsonFilepath the name of json data file with package dependency information
+	 * @param names the table the names are interned in, or null not to intern them
+	 * @throws FileNotFoundException if file path is incorrect
+	 */
+	public ManifestReader(String jsonFilepath, NameTable names) throws FileNotFoundException {
+		tokenizer = new JsonTokenizer(jsonFilepath);
+		dependencies = new ArrayList<String>();
+		ranges = new ArrayList<String>();
+		this.names = names;
+		state = BEFORE_PACKAGES;
+	}
+
+	/**
+	 * Advances to the next entry of the "packages" array
+	 *
+	 * @return true if there is another entry, false if all entries have been read
+	 * @throws IOException if the file cannot be read
+	 * @throws ParseException if the file is not a valid package dependency file
+	 */
+	public boolean next() throws IOException, ParseException {
+		if (state == BEFORE_PACKAGES) {
+			tokenizer.expect(JsonTokenizer.BEGIN_OBJECT);
+			if (!findKey("packages")) {
+				// a document without packages has no entries
+				finish();
+				return false;
+			}
+			tokenizer.expect(JsonTokenizer.BEGIN_ARRAY);
+			state = FIRST_PACKAGE;
+		}
+		if (state == DONE)
+			return false;
+		if (state == SINGLE_PACKAGE) {
+			tokenizer.expect(JsonTokenizer.BEGIN_OBJECT);
+			readPackage();
+			state = DONE;
+			return true;
+		}
+		int token = tokenizer.nextToken();
+		if (token == JsonTokenizer.END_ARRAY) {
+			// the rest of the document after the packages array is checked and skipped
+			findKey(null);
+			finish();
+			return false;
+		}
+		if (state == NEXT_PACKAGE) {
+			if (token != JsonTokenizer.COMMA)
+				throw tokenizer.error(ParseException.ERROR_UNEXPECTED_TOKEN, token);
+			token = tokenizer.nextToken();
+		}
+		if (token != JsonTokenizer.BEGIN_OBJECT)
+			throw tokenizer.error(ParseException.ERROR_UNEXPECTED_TOKEN, token);
+		// the brace is one byte
+		entryOffset = tokenizer.getBytePosition() - 1;
+		readPackage();
+		state = NEXT_PACKAGE;
+		return true;
+	}
+
+	/**
+	 * Returns the name of the current package
+	 *
+	 * @return the name of the package
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the dependencies of the current package. The list is reused for the next entry.
+	 *
+	 * @return the names of the packages the current package depends upon
+	 */
+	public List<String> getDependencies() {
+		return dependencies;
+	}
+
+	/**
+	 * Returns the ranges of versions accepted for the dependencies of the current package. The
+	 * list is reused for the next entry.
+	 *
+	 * @return the range of every dependency, in the same order as getDependencies
+	 */
+	public List<String> getRanges() {
+		return ranges;
+	}
+
+	/**
+	 * Returns the version of the current package
+	 *
+	 * @return the "version" of the entry, or null if the entry has no version
+	 */
+	public String getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the install cost of the current package
+	 *
+	 * @return the "cost" of the entry, or NaN if the entry has no cost
+	 */
+	public double getCost() {
+		return cost;
+	}
+
+	/**
+	 * Returns where the current entry starts in the file, to be read again later through seek
+	 *
+	 * @return the byte offset of the opening brace of the entry
+	 */
+	public long getEntryOffset() {
+		return entryOffset;
+	}
+
+	/**
+	 * Moves the reader to an entry of the "packages" array, so that the next call to next 
+	 * reads that entry only and the following one returns false. The rest of the document is 
+	 * not checked.
+	 *
+	 * @param offset the byte offset of the entry, as returned by getEntryOffset
+	 * @throws IOException if the file cannot be read
+	 */
+	public void seek(long offset) throws IOException {
+		tokenizer.seek(offset);
+		entryOffset = offset;
+		state = SINGLE_PACKAGE;
+	}
+
+	/**
+	 * Returns the number of bytes read from the file so far
+	 *
+	 * @return the number of bytes read
+	 */
+	public long getBytesRead() {
+		return tokenizer.getBytesRead();
+	}
+
+	/**
+	 * Closes the file
+	 */
+	public void close() throws IOException {
+		tokenizer.close();
+	}
+
+	/**
+	 * This helper method reads the keys of the current package entry after its opening brace
+	 */
+	private void readPackage() throws IOException, ParseException {
+		name = version = null;
+		dependencies.clear();
+		ranges.clear();
+		cost = Double.NaN;
+		if (tokenizer.peekToken() == JsonTokenizer.END_OBJECT)
+			throw tokenizer.error(ParseException.ERROR_UNEXPECTED_TOKEN, "a package entry has no name");
+		while (true) {
+			// the key is compared in the buffer of the tokenizer, without creating a String
+			tokenizer.expect(JsonTokenizer.STRING);
+			CharSequence key = tokenizer.getText();
+			int member = "name".contentEquals(key) ? 0
+					: "dependencies".contentEquals(key) ? 1
+					: "cost".contentEquals(key) ? 2
+					: "version".contentEquals(key) ? 3 : -1;
+			tokenizer.expect(JsonTokenizer.COLON);
+			if (member == 0) {
+				name = nextName();
+			} else if (member == 1) {
+				readDependencies();
+			} else if (member == 2) {
+				int token = tokenizer.nextToken();
+				if (token != JsonTokenizer.NUMBER)
+					throw tokenizer.error(ParseException.ERROR_UNEXPECTED_TOKEN, token);
+				cost = Double.parseDouble(tokenizer.getText().toString());
+			} else if (member == 3) {
+				version = tokenizer.nextString();
+			} else {
+				tokenizer.skipValue();
+			}
+			int token = tokenizer.nextToken();
+			if (token == JsonTokenizer.END_OBJECT)
+				break;
+			if (token != JsonTokenizer.COMMA)
+				throw tokenizer.error(ParseException.ERROR_UNEXPECTED_TOKEN, token);
+		}
+		// an entry without a name is rejected, as by the parser of the document tree
+		if (name == null)
+			throw tokenizer.error(ParseException.ERROR_UNEXPECTED_TOKEN, "a package entry has no name");
+	}
+
+	/**
+	 * This helper method reads the array or the object of dependencies of the current package 
+	 * entry
+	 */
+	private void readDependencies() throws IOException, ParseException {
+		int open = tokenizer.nextToken();
+		if (open != JsonTokenizer.BEGIN_ARRAY && open != JsonTokenizer.BEGIN_OBJECT)
+			throw tokenizer.error(ParseException.ERROR_UNEXPECTED_TOKEN, open);
+		int close = open == JsonTokenizer.BEGIN_ARRAY ? JsonTokenizer.END_ARRAY : JsonTokenizer.END_OBJECT;
+		if (tokenizer.peekToken() == close) {
+			tokenizer.nextToken();
+			return;
+		}
+		while (true) {
+			dependencies.add(nextName());
+			// the members of an object give the range of the dependency
+			if (close == JsonTokenizer.END_OBJECT) {
+				tokenizer.expect(JsonTokenizer.COLON);
+				ranges.add(tokenizer.nextString());
+			} else {
+				ranges.add("*");
+			}
+			int token = tokenizer.nextToken();
+			if (token == close)
+				return;
+			if (token != JsonTokenizer.COMMA)
+				throw tokenizer.error(ParseException.ERROR_UNEXPECTED_TOKEN, token);
+		}
+	}
+
+	/**
+	 * This helper method reads a package name, interned in the name table if there is one
+	 * @return the name
+	 */
+	private String nextName() throws IOException, ParseException {
+		if (names == null)
+			return tokenizer.nextString();
+		tokenizer.expect(JsonTokenizer.STRING);
+		return names.intern(tokenizer.getText());
+	}
+
+	/**
+	 * This helper method skips the members of the current object until the given key, leaving
+	 * the tokenizer before the value of that key
+	 * @param key the key to look for, or null to skip all the remaining members
+	 * @return true if the key was found, false if the end of the object was reached
+	 */
+	private boolean findKey(String key) throws IOException, ParseException {
+		int token = tokenizer.nextToken();
+		// the members after a value are separated by commas
+		if (token == JsonTokenizer.COMMA)
+			token = tokenizer.nextToken();
+		while (token != JsonTokenizer.END_OBJECT) {
+			if (token != JsonTokenizer.STRING)
+				throw tokenizer.error(ParseException.ERROR_UNEXPECTED_TOKEN, token);
+			String current = tokenizer.getText().toString();
+			tokenizer.expect(JsonTokenizer.COLON);
+			if (current.equals(key))
+				return true;
+			tokenizer.skipValue();
+			token = tokenizer.nextToken();
+			if (token == JsonTokenizer.COMMA)
+				token = tokenizer.nextToken();
+			else if (token != JsonTokenizer.END_OBJECT)
+				throw tokenizer.error(ParseException.ERROR_UNEXPECTED_TOKEN, token);
+		}
+		return false;
+	}
+
+	/**
+	 * This helper method checks that nothing follows the document and marks the reader as done
+	 */
+	private void finish() throws IOException, ParseException {
+		int token = tokenizer.nextToken();
+		if (token != JsonTokenizer.END)
+			throw tokenizer.error(ParseException.ERROR_UNEXPECTED_TOKEN, token);
+		state = DONE;
+	}
+}
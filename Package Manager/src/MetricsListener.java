@@ -0,0 +1,65 @@
+/**
+ * Filename:   MetricsListener.java
+ * Project:    p4
+ *
+ * Receives the measurements of a PackageManager: how long reading every json file took and how
+ * much of that was spent changing the graph, and the latency, the number of visited vertices and
+ * the cycles found by every query. Every method does nothing by default.
+ *
+ * A package manager without a listener measures nothing. The methods are called on the thread
+ * that ran the ingest or the query, possibly from several threads at the same time, so they
+ * should be fast and thread-safe.
+ */
+public interface MetricsListener {
+
+	/**
+	 * The queries that are measured
+	 */
+	public enum Query {
+		/**
+		 * getInstallationOrder and getInstallationPlan
+		 */
+		INSTALLATION_ORDER,
+
+		/**
+		 * toInstall with one or more installed packages or an installed state
+		 */
+		TO_INSTALL,
+
+		/**
+		 * getInstallationOrderForAllPackages and getInstallationPlanForAllPackages
+		 */
+		FULL_ORDER
+	}
+
+	/**
+	 * Called after a call to constructGraph has read its json files and published the graph
+	 *
+	 * @param bytes the number of bytes read from the files
+	 * @param parseNanos the time spent parsing json
+	 * @param mutationNanos the time spent adding the packages to the graph
+	 * @param vertexInserts the number of vertices added to the graph
+	 * @param edgeInserts the number of edges added to the graph
+	 */
+	public default void ingestCompleted(long bytes, long parseNanos, long mutationNanos, long vertexInserts, long edgeInserts) {
+	}
+
+	/**
+	 * Called after a query has returned its result
+	 *
+	 * @param query the query
+	 * @param nanos the latency of the query
+	 * @param verticesVisited the number of vertices the query traversed, 0 if its result was
+	 * cached
+	 */
+	public default void queryCompleted(Query query, long nanos, long verticesVisited) {
+	}
+
+	/**
+	 * Called when a query throws a CycleException
+	 *
+	 * @param query the query
+	 */
+	public default void cycleDetected(Query query) {
+	}
+}
@@ -0,0 +1,176 @@
+import java.util.Arrays;
+
+/**
+ * Filename:   NameTable.java
+ * Project:    p4
+ *
+ * Interns the package names read from a json file, so that every distinct name is kept once
+ * however many times it appears as a package or as a dependency.
+ *
+ * Every name is kept as the String that is handed out for it, found through an open-addressing
+ * hash table of name numbers. A name is looked up straight from the chars of the tokenizer and
+ * compared with the chars of the String, so no String is created for a name that is already in
+ * the table; the String of a name is created once, the first time it is seen, and returned for
+ * all of its later occurrences. A name table is not thread-safe.
+ */
+public class NameTable {
+	/**
+	 * The hash of every name
+	 */
+	private int[] hashes;
+
+	/**
+	 * The String of every name, shared by all of its occurrences
+	 */
+	private String[] strings;
+
+	/**
+	 * The number of every name plus one in its slot of the hash table, or 0 for an empty slot
+	 */
+	private int[] slots;
+
+	/**
+	 * The number of names
+	 */
+	private int count;
+
+	/**
+	 * Creates an empty name table
+	 */
+	public NameTable() {
+		hashes = new int[64];
+		strings = new String[64];
+		slots = new int[128];
+	}
+
+	/**
+	 * Returns the String of a name, adding the name to the table if it is not in it yet
+	 *
+	 * @param chars the chars of the name, which are copied
+	 * @return the String of the name, the same instance for equal names
+	 */
+	public String intern(CharSequence chars) {
+		int hash = hash(chars);
+		int mask = slots.length - 1;
+		int slot = hash & mask;
+		// probe the slots until the name or an empty slot is found
+		while (slots[slot] != 0) {
+			int name = slots[slot] - 1;
+			if (hashes[name] == hash && matches(name, chars))
+				return strings[name];
+			slot = (slot + 1) & mask;
+		}
+		return add(chars, hash, slot);
+	}
+
+	/**
+	 * Returns the number of distinct names in the table
+	 *
+	 * @return the number of names
+	 */
+	public int size() {
+		return count;
+	}
+
+	/**
+	 * Returns an estimate of the memory used by the table, including the Strings of the names,
+	 * assuming compressed references and compact strings
+	 *
+	 * @return the number of bytes used by the table
+	 */
+	public long getFootprint() {
+		long bytes = 4L * (hashes.length + strings.length + slots.length);
+		// the header and the length of every array
+		bytes += 3 * 16;
+		for (int i = 0; i < count; i++) {
+			// every String has a 24-byte object and a byte array of its chars, one byte per char
+			// when they are all Latin-1
+			int length = strings[i].length();
+			bytes += 24 + 16 + (isLatin1(strings[i]) ? length : 2 * length);
+		}
+		return bytes;
+	}
+
+	/**
+	 * This helper method adds a name that is not in the table yet
+	 * @param chars - the chars of the name
+	 * @param hash - the hash of the name
+	 * @param slot - the empty slot where the name is to be added
+	 * @return the String of the new name
+	 */
+	private String add(CharSequence chars, int hash, int slot) {
+		if (count == hashes.length) {
+			int capacity = 2 * count;
+			hashes = Arrays.copyOf(hashes, capacity);
+			strings = Arrays.copyOf(strings, capacity);
+		}
+		int name = count++;
+		hashes[name] = hash;
+		strings[name] = chars.toString();
+		slots[slot] = name + 1;
+		// keep the table at most half full so that probes stay short
+		if (2 * count > slots.length)
+			rehash(2 * slots.length);
+		return strings[name];
+	}
+
+	/**
+	 * This helper method moves every name to a hash table of another size
+	 * @param capacity - the number of slots, a power of two
+	 */
+	private void rehash(int capacity) {
+		slots = new int[capacity];
+		int mask = capacity - 1;
+		for (int name = 0; name < count; name++) {
+			int slot = hashes[name] & mask;
+			while (slots[slot] != 0) {
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = name + 1;
+		}
+	}
+
+	/**
+	 * This helper method checks if a name has the given chars
+	 * @param name - the number of the name
+	 * @param chars - the chars to compare with
+	 * @return true if the name has exactly these chars
+	 */
+	private boolean matches(int name, CharSequence chars) {
+		String string = strings[name];
+		int length = chars.length();
+		if (string.length() != length)
+			return false;
+		for (int i = 0; i < length; i++) {
+			if (string.charAt(i) != chars.charAt(i))
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * This helper method computes the hash of a name from its chars, equal to String.hashCode
+	 * @param chars - the chars of the name
+	 * @return the hash, spread so that the low bits can index the hash table
+	 */
+	private static int hash(CharSequence chars) {
+		int hash = 0;
+		for (int i = 0; i < chars.length(); i++) {
+			hash = 31 * hash + chars.charAt(i);
+		}
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * This helper method checks if every char of a String is Latin-1
+	 * @param string - the String
+	 * @return true if the String can be stored with one byte per char
+	 */
+	private static boolean isLatin1(String string) {
+		for (int i = 0; i < string.length(); i++) {
+			if (string.charAt(i) > 0xFF)
+				return false;
+		}
+		return true;
+	}
+}
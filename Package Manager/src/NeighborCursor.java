@@ -0,0 +1,34 @@
+/**
+ * Filename:   NeighborCursor.java
+ * Project:    p4
+ *
+ * A read-only cursor over the neighbors of one vertex at a time, in case-insensitive order.
+ *
+ * A cursor can be moved from vertex to vertex, so one cursor can serve a whole traversal.
+ * It must not be used while the graph is being changed.
+ */
+public interface NeighborCursor {
+
+	/**
+	 * Moves the cursor before the first neighbor of a vertex
+	 *
+	 * @param vertex the vertex whose neighbors are walked
+	 * @return true if the vertex is in the graph, false otherwise, in which case the cursor
+	 * has no neighbors
+	 */
+	boolean reset(String vertex);
+
+	/**
+	 * Moves the cursor to the next neighbor
+	 *
+	 * @return true if there is another neighbor, false if all the neighbors have been walked
+	 */
+	boolean next();
+
+	/**
+	 * Returns the neighbor the cursor is on
+	 *
+	 * @return the name of the current neighbor
+	 */
+	String current();
+}
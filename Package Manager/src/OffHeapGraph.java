@@ -0,0 +1,1065 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.CRC32;
+
+/**
+ * Filename:   OffHeapGraph.java
+ * Project:    p4
+ *
+ * A read-only graph whose name table, hash index and packed adjacency are kept outside the
+ * Java heap, so that a registry of tens of millions of edges adds neither object headers nor
+ * garbage collection work.
+ *
+ * Every array is a region of fixed-size pages, either direct byte buffers or pages mapped from
+ * a temporary file in a spill directory. Direct buffers are limited by
+ * -XX:MaxDirectMemorySize, which defaults to the maximum heap size, while mapped pages are only
+ * limited by the disk, so a spilled graph can be larger than -Xmx and even than the memory of
+ * the machine. The layout is the packed layout of Graph: the UTF-8 bytes of every name, the
+ * offsets of the names, their hash codes, an open-addressing index from names to ids, the
+ * sorted successors and the predecessors of every vertex, and the case-insensitive rank of
+ * every vertex.
+ *
+ * The graph is built once by a Builder, or mapped in place from a GraphSnapshot, and never
+ * changes, so it can be read by any number of threads at the same time. It answers the same
+ * package-private queries as Graph, so that the traversals of PackageManager run on it
+ * unchanged. A new version is built by another Builder from this one and the changes, or
+ * copy() returns an ordinary Graph on the heap, which must be large enough for the whole
+ * graph, to be changed in place.
+ */
+public class OffHeapGraph extends Graph {
+	/**
+	 * The number of bits of the page size of the regions that grow while the graph is built
+	 */
+	private static final int GROWING_PAGE_BITS = 16;
+
+	/**
+	 * The number of bits of the largest page size
+	 */
+	private static final int MAX_PAGE_BITS = 27;
+
+	/**
+	 * The length of the runs of names sorted by insertion before they are merged
+	 */
+	private static final int SORTED_RUN = 32;
+
+	/**
+	 * The UTF-8 bytes of all the names
+	 */
+	private final Region arena;
+
+	/**
+	 * The offset of the name of every vertex in the arena, as longs, the name of vertex i
+	 * ending where the name of vertex i + 1 starts
+	 */
+	private final Region nameOffsets;
+
+	/**
+	 * The String hash code of the name of every vertex
+	 */
+	private final Region hashes;
+
+	/**
+	 * The open-addressing index from names to ids, holding id + 1 in every used slot
+	 */
+	private final Region slots;
+
+	/**
+	 * The number of slots of the index minus one
+	 */
+	private final int slotMask;
+
+	/**
+	 * The offsets and ids of the successors and of the predecessors of every vertex, as in
+	 * the packed layout of Graph
+	 */
+	private final Region offsets, targets, inOffsets, sources;
+
+	/**
+	 * The position of every vertex in the case-insensitive order of the names
+	 */
+	private final Region ranks;
+
+	/**
+	 * The ids of the vertices in the case-insensitive order of the names
+	 */
+	private final Region sorted;
+
+	/**
+	 * The number of vertices and edges
+	 */
+	private final int order, size;
+
+	/**
+	 * The sorted ids copied onto the heap, created on demand
+	 */
+	private volatile int[] sortedIds;
+
+	/**
+	 * The number of regions the graph is saved as in a snapshot
+	 */
+	static final int SECTIONS = 10;
+
+	/**
+	 * This helper constructor takes the regions filled by a builder
+	 */
+	private OffHeapGraph(Region arena, Region nameOffsets, Region hashes, Region slots, int slotMask,
+			Region offsets, Region targets, Region inOffsets, Region sources, Region ranks, Region sorted,
+			int order, int size) {
+		this.arena = arena;
+		this.nameOffsets = nameOffsets;
+		this.hashes = hashes;
+		this.slots = slots;
+		this.slotMask = slotMask;
+		this.offsets = offsets;
+		this.targets = targets;
+		this.inOffsets = inOffsets;
+		this.sources = sources;
+		this.ranks = ranks;
+		this.sorted = sorted;
+		this.order = order;
+		this.size = size;
+	}
+
+	/**
+	 * Copies a graph off the heap
+	 *
+	 * @param graph the graph to be copied
+	 * @param spillDirectory the directory of the files the pages are mapped from, or null to
+	 * keep the pages in direct buffers
+	 * @return the off-heap graph with the same vertices and edges
+	 */
+	public static OffHeapGraph of(Graph graph, File spillDirectory) {
+		if (graph instanceof OffHeapGraph)
+			return (OffHeapGraph) graph;
+		Builder builder = new Builder(spillDirectory);
+		builder.addGraph(graph);
+		return builder.build();
+	}
+
+	/**
+	 * This helper method maps a graph in place from the sections of a snapshot file, whose 
+	 * pages are checked against their checksums the first time they are read
+	 * @param file - the snapshot file
+	 * @param starts - the offset of every section in the file
+	 * @param lengths - the number of bytes of every section
+	 * @param pageBits - the number of bits of the page size of the checksums
+	 * @param checksums - the CRC32 of every page of every section, in the order of the sections
+	 * @param order - the number of vertices
+	 * @param size - the number of edges
+	 * @param slotMask - the number of slots of the index minus one
+	 * @return the graph
+	 */
+	static OffHeapGraph map(FileChannel file, long[] starts, long[] lengths, int pageBits, int[] checksums, 
+			int order, int size, int slotMask) throws IOException {
+		Region[] regions = new Region[SECTIONS];
+		int next = 0;
+		for (int section = 0; section < SECTIONS; section++) {
+			int pages = (int) ((lengths[section] + (1L << pageBits) - 1) >>> pageBits);
+			regions[section] = Region.map(file, starts[section], lengths[section], pageBits, 
+					Arrays.copyOfRange(checksums, next, next + pages));
+			next += pages;
+		}
+		return new OffHeapGraph(regions[0], regions[1], regions[2], regions[3], slotMask, regions[4], 
+				regions[5], regions[6], regions[7], regions[8], regions[9], order, size);
+	}
+
+	/**
+	 * Returns the number of bytes of every region of the graph, in the order they are saved 
+	 * in a snapshot
+	 */
+	long[] sectionLengths() {
+		return new long[] {nameOffsets.getLong(order), 8L * (order + 1), 4L * order, 4L * (slotMask + 1), 
+				4L * (order + 1), 4L * size, 4L * (order + 1), 4L * size, 4L * order, 4L * order};
+	}
+
+	/**
+	 * Returns the number of slots of the index minus one
+	 */
+	int slotMask() {
+		return slotMask;
+	}
+
+	/**
+	 * Writes every region of the graph to a file, at the offsets of the sections of a 
+	 * snapshot
+	 * @param out - the file
+	 * @param starts - the offset of every section in the file
+	 */
+	void writeSections(FileChannel out, long[] starts) throws IOException {
+		long[] lengths = sectionLengths();
+		Region[] regions = {arena, nameOffsets, hashes, slots, offsets, targets, inOffsets, sources, ranks, sorted};
+		for (int section = 0; section < SECTIONS; section++) {
+			regions[section].write(out, starts[section], lengths[section]);
+		}
+	}
+
+	/**
+	 * Returns the memory used outside the heap
+	 *
+	 * @return the number of bytes of all the pages of the graph
+	 */
+	public long getFootprint() {
+		long bytes = 0;
+		for (Region region : new Region[] {arena, nameOffsets, hashes, slots, offsets, targets, inOffsets, sources, ranks, sorted}) {
+			bytes += region.capacity();
+		}
+		return bytes;
+	}
+
+	/**
+	 * An off-heap graph cannot be changed, change a copy of it instead
+	 */
+	public void addVertex(String vertex) {
+		throw new UnsupportedOperationException("an off-heap graph cannot be changed");
+	}
+
+	/**
+	 * An off-heap graph cannot be changed, change a copy of it instead
+	 */
+	public void removeVertex(String vertex) {
+		throw new UnsupportedOperationException("an off-heap graph cannot be changed");
+	}
+
+	/**
+	 * An off-heap graph cannot be changed, change a copy of it instead
+	 */
+	public void addEdge(String vertex1, String vertex2) {
+		throw new UnsupportedOperationException("an off-heap graph cannot be changed");
+	}
+
+	/**
+	 * An off-heap graph cannot be changed, change a copy of it instead
+	 */
+	public void addEdges(String[] vertices1, String[] vertices2) {
+		throw new UnsupportedOperationException("an off-heap graph cannot be changed");
+	}
+
+	/**
+	 * An off-heap graph cannot be changed, change a copy of it instead
+	 */
+	public void removeEdge(String vertex1, String vertex2) {
+		throw new UnsupportedOperationException("an off-heap graph cannot be changed");
+	}
+
+	/**
+	 * Returns a Set that contains all the vertices, decoded onto the heap
+	 */
+	public Set<String> getAllVertices() {
+		Set<String> vertices = new HashSet<String>();
+		for (int id = 0; id < order; id++) {
+			vertices.add(nameOf(id));
+		}
+		return vertices;
+	}
+
+	/**
+	 * Returns whether the given vertex is in the graph
+	 */
+	public boolean containsVertex(String vertex) {
+		return idOf(vertex) >= 0;
+	}
+
+	/**
+	 * Get all the neighbor (adjacent) vertices of a vertex, in case-insensitive order
+	 */
+	public List<String> getAdjacentVerticesOf(String vertex) {
+		int id = idOf(vertex);
+		if (id < 0)
+			return null;
+		int degree = outDegree(id);
+		List<String> neighbors = new ArrayList<String>(degree);
+		for (int i = 0; i < degree; i++) {
+			neighbors.add(nameOf(successor(id, i)));
+		}
+		return neighbors;
+	}
+
+	/**
+	 * Returns a cursor walking the sorted successors of vertices in place
+	 */
+	public NeighborCursor neighborCursor() {
+		return new NeighborCursor() {
+			private int vertex = -1;
+			private int position;
+
+			public boolean reset(String name) {
+				vertex = idOf(name);
+				position = -1;
+				return vertex >= 0;
+			}
+
+			public boolean next() {
+				return vertex >= 0 && ++position < outDegree(vertex);
+			}
+
+			public String current() {
+				return nameOf(successor(vertex, position));
+			}
+		};
+	}
+
+	/**
+	 * Returns the number of edges in this graph.
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Returns the number of vertices in this graph.
+	 */
+	public int order() {
+		return order;
+	}
+
+	/**
+	 * An off-heap graph is always packed
+	 */
+	public void freeze() {
+	}
+
+	/**
+	 * An off-heap graph is always packed
+	 */
+	void settle() {
+	}
+
+	/**
+	 * Returns a copy of the graph on the heap, whose packed arrays can be written to a
+	 * snapshot
+	 */
+	Graph packed() {
+		return copy();
+	}
+
+	/**
+	 * Returns a copy of this graph on the heap, which can be changed. All the names and edges
+	 * are decoded, so the heap must be large enough for the whole graph.
+	 */
+	Graph copy() {
+		String[] names = new String[order];
+		for (int id = 0; id < order; id++) {
+			names[id] = nameOf(id);
+		}
+		int[] heapOffsets = new int[order + 1];
+		for (int id = 0; id <= order; id++) {
+			heapOffsets[id] = offsets.getInt(id);
+		}
+		int[] heapTargets = new int[size];
+		for (int i = 0; i < size; i++) {
+			heapTargets[i] = targets.getInt(i);
+		}
+		return Graph.fromPacked(names, heapOffsets, heapTargets);
+	}
+
+	/**
+	 * An off-heap graph never changes
+	 */
+	long version() {
+		return 0;
+	}
+
+	/**
+	 * Returns the number of vertices, all of which were inserted by the builder
+	 */
+	long vertexInserts() {
+		return order;
+	}
+
+	/**
+	 * Returns the number of edges, all of which were inserted by the builder
+	 */
+	long edgeInserts() {
+		return size;
+	}
+
+	/**
+	 * Returns the id of the given vertex, found through the off-heap index
+	 */
+	int idOf(String vertex) {
+		if (vertex == null)
+			return -1;
+		int hash = vertex.hashCode();
+		for (int slot = spread(hash) & slotMask; ; slot = (slot + 1) & slotMask) {
+			int entry = slots.getInt(slot);
+			if (entry == 0)
+				return -1;
+			int id = entry - 1;
+			if (hashes.getInt(id) == hash && matches(arena, nameOffsets, id, vertex))
+				return id;
+		}
+	}
+
+	/**
+	 * Returns the vertex with the given id, decoded from the arena
+	 */
+	String nameOf(int id) {
+		return decode(arena, nameOffsets, id);
+	}
+
+	/**
+	 * An off-heap graph has no tombstones
+	 */
+	boolean isVertex(int id) {
+		return true;
+	}
+
+	/**
+	 * An off-heap graph has no tombstones, so the ids are dense
+	 */
+	int idBound() {
+		return order;
+	}
+
+	/**
+	 * Returns the ids of all the vertices in case-insensitive order of their names, copied
+	 * onto the heap the first time
+	 */
+	int[] sortedIds() {
+		int[] result = sortedIds;
+		if (result == null) {
+			result = new int[order];
+			for (int i = 0; i < order; i++) {
+				result[i] = sorted.getInt(i);
+			}
+			sortedIds = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Returns the position of a vertex in the case-insensitive order of the names
+	 */
+	int rank(int id) {
+		return ranks.getInt(id);
+	}
+
+	/**
+	 * Returns the number of edges pointing to the vertex with the given id
+	 */
+	int inDegree(int id) {
+		return inOffsets.getInt(id + 1) - inOffsets.getInt(id);
+	}
+
+	/**
+	 * Returns the number of successors of the vertex with the given id
+	 */
+	int outDegree(int id) {
+		return offsets.getInt(id + 1) - offsets.getInt(id);
+	}
+
+	/**
+	 * Returns the id of the i-th successor of the vertex with the given id
+	 */
+	int successor(int id, int i) {
+		return targets.getInt(offsets.getInt(id) + i);
+	}
+
+	/**
+	 * Returns the id of the i-th predecessor of the vertex with the given id
+	 */
+	int predecessor(int id, int i) {
+		return sources.getInt(inOffsets.getInt(id) + i);
+	}
+
+	/**
+	 * This helper method spreads the bits of a hash code over the slots of the index
+	 * @param hash - the String hash code of a name
+	 * @return the spread hash
+	 */
+	private static int spread(int hash) {
+		return hash ^ (hash >>> 16);
+	}
+
+	/**
+	 * This helper method decodes the name of a vertex
+	 * @param arena - the UTF-8 bytes of the names
+	 * @param nameOffsets - the offsets of the names
+	 * @param id - the id of the vertex
+	 * @return the name
+	 */
+	private static String decode(Region arena, Region nameOffsets, int id) {
+		long start = nameOffsets.getLong(id);
+		byte[] bytes = new byte[(int) (nameOffsets.getLong(id + 1) - start)];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = arena.get(start + i);
+		}
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * This helper method compares the name of a vertex with a String, without decoding the
+	 * name unless it has bytes that are not ASCII
+	 * @param arena - the UTF-8 bytes of the names
+	 * @param nameOffsets - the offsets of the names
+	 * @param id - the id of the vertex
+	 * @param name - the String
+	 * @return true if the vertex has that name
+	 */
+	private static boolean matches(Region arena, Region nameOffsets, int id, String name) {
+		long start = nameOffsets.getLong(id);
+		long length = nameOffsets.getLong(id + 1) - start;
+		if (length < name.length())
+			return false;
+		for (int i = 0; i < length; i++) {
+			byte b = arena.get(start + i);
+			if (b < 0)
+				return decode(arena, nameOffsets, id).equals(name);
+			if (i >= name.length() || name.charAt(i) != b)
+				return false;
+		}
+		return length == name.length();
+	}
+
+	/**
+	 * Builds an off-heap graph from vertices and edges added one at a time, keeping everything
+	 * but the current vertex off the heap. Duplicate edges are dropped when the graph is built.
+	 * A builder builds one graph.
+	 */
+	public static class Builder {
+		/**
+		 * The directory of the files the pages are mapped from, or null for direct buffers
+		 */
+		private final File spillDirectory;
+
+		/**
+		 * The names, their offsets and hash codes, and the index, as in the graph
+		 */
+		private final Region arena, nameOffsets, hashes;
+		private Region slots;
+		private int slotMask;
+
+		/**
+		 * The number of bytes of the arena in use
+		 */
+		private long arenaSize;
+
+		/**
+		 * The number of vertices added
+		 */
+		private int vertices;
+
+		/**
+		 * The edges added, as pairs of the ids of the source and the target
+		 */
+		private final Region edges;
+
+		/**
+		 * The number of edges added, including duplicates
+		 */
+		private long edgeCount;
+
+		/**
+		 * Creates a builder whose pages are direct buffers
+		 */
+		public Builder() {
+			this(null);
+		}
+
+		/**
+		 * Creates a builder
+		 *
+		 * @param spillDirectory the directory of the temporary files the pages are mapped
+		 * from, or null to keep the pages in direct buffers
+		 */
+		public Builder(File spillDirectory) {
+			this.spillDirectory = spillDirectory;
+			arena = new Region(GROWING_PAGE_BITS, spillDirectory);
+			nameOffsets = new Region(GROWING_PAGE_BITS, spillDirectory);
+			hashes = new Region(GROWING_PAGE_BITS, spillDirectory);
+			edges = new Region(GROWING_PAGE_BITS, spillDirectory);
+			slotMask = 1023;
+			slots = new Region(pageBits(4L * (slotMask + 1)), spillDirectory);
+			slots.ensure(4L * (slotMask + 1));
+			nameOffsets.ensure(8);
+			nameOffsets.putLong(0, 0);
+		}
+
+		/**
+		 * Adds a vertex if it is not added yet
+		 *
+		 * @param name the name of the vertex
+		 * @return the id of the vertex
+		 */
+		public int addVertex(String name) {
+			int hash = name.hashCode();
+			int slot = spread(hash) & slotMask;
+			for (int entry = slots.getInt(slot); entry != 0; entry = slots.getInt(slot)) {
+				if (hashes.getInt(entry - 1) == hash && matches(arena, nameOffsets, entry - 1, name))
+					return entry - 1;
+				slot = (slot + 1) & slotMask;
+			}
+			byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+			arena.ensure(arenaSize + bytes.length);
+			for (byte b : bytes) {
+				arena.put(arenaSize++, b);
+			}
+			int id = vertices++;
+			nameOffsets.ensure(8L * (id + 2));
+			nameOffsets.putLong(id + 1, arenaSize);
+			hashes.ensure(4L * (id + 1));
+			hashes.putInt(id, hash);
+			slots.putInt(slot, id + 1);
+			// keep the index at most half full
+			if (2L * vertices > slotMask + 1)
+				rehash();
+			return id;
+		}
+
+		/**
+		 * Adds an edge, and its vertices if they are not added yet
+		 *
+		 * @param source the name of the dependent vertex
+		 * @param target the name of the dependency
+		 */
+		public void addEdge(String source, String target) {
+			int from = addVertex(source);
+			int to = addVertex(target);
+			edges.ensure(8 * (edgeCount + 1));
+			edges.putInt(2 * edgeCount, from);
+			edges.putInt(2 * edgeCount + 1, to);
+			edgeCount++;
+		}
+
+		/**
+		 * Adds all the vertices and edges of a graph
+		 *
+		 * @param graph the graph
+		 */
+		public void addGraph(Graph graph) {
+			int bound = graph.idBound();
+			for (int id = 0; id < bound; id++) {
+				if (graph.isVertex(id))
+					addVertex(graph.nameOf(id));
+			}
+			// the edges are added by target, so that the predecessors keep their order
+			for (int id = 0; id < bound; id++) {
+				if (!graph.isVertex(id))
+					continue;
+				String target = graph.nameOf(id);
+				for (int i = 0; i < graph.inDegree(id); i++) {
+					addEdge(graph.nameOf(graph.predecessor(id, i)), target);
+				}
+			}
+		}
+
+		/**
+		 * Builds the graph. The names are sorted where they are stored and the edges are
+		 * grouped in place, so nothing but the successors of one vertex at a time is copied
+		 * onto the heap.
+		 *
+		 * @return the off-heap graph
+		 * @throws IllegalStateException if there are more edges than an int can count
+		 */
+		public OffHeapGraph build() {
+			if (edgeCount > Integer.MAX_VALUE)
+				throw new IllegalStateException("too many edges: " + edgeCount);
+			int count = vertices;
+			// rank the vertices in case-insensitive order, ties broken by id as in Graph
+			Region sorted = sortByName(count);
+			Region ranks = exact(4L * count);
+			for (int i = 0; i < count; i++) {
+				ranks.putInt(sorted.getInt(i), i);
+			}
+			// scatter the edges by source
+			Region offsets = exact(4L * (count + 1));
+			for (long e = 0; e < edgeCount; e++) {
+				int from = edges.getInt(2 * e);
+				offsets.putInt(from + 1, offsets.getInt(from + 1) + 1);
+			}
+			for (int id = 0; id < count; id++) {
+				offsets.putInt(id + 1, offsets.getInt(id + 1) + offsets.getInt(id));
+			}
+			Region targets = exact(4 * edgeCount);
+			Region next = exact(4L * count);
+			for (int id = 0; id < count; id++) {
+				next.putInt(id, offsets.getInt(id));
+			}
+			for (long e = 0; e < edgeCount; e++) {
+				int from = edges.getInt(2 * e);
+				int position = next.getInt(from);
+				targets.putInt(position, edges.getInt(2 * e + 1));
+				next.putInt(from, position + 1);
+			}
+			// sort the successors of every vertex by rank and drop the duplicates, moving
+			// the rows down over the dropped edges
+			long[] row = new long[16];
+			int write = 0;
+			int start = 0;
+			for (int id = 0; id < count; id++) {
+				int end = offsets.getInt(id + 1);
+				if (end - start > row.length)
+					row = new long[Math.max(end - start, 2 * row.length)];
+				for (int i = start; i < end; i++) {
+					int target = targets.getInt(i);
+					row[i - start] = ((long) ranks.getInt(target) << 32) | target;
+				}
+				Arrays.sort(row, 0, end - start);
+				offsets.putInt(id, write);
+				for (int i = 0; i < end - start; i++) {
+					if (i == 0 || row[i] != row[i - 1])
+						targets.putInt(write++, (int) row[i]);
+				}
+				start = end;
+			}
+			offsets.putInt(count, write);
+			int size = write;
+			// collect the predecessors of every vertex in the order their edges were added, as
+			// Graph keeps them, skipping the edges already placed once
+			Region inOffsets = exact(4L * (count + 1));
+			for (int i = 0; i < size; i++) {
+				int target = targets.getInt(i);
+				inOffsets.putInt(target + 1, inOffsets.getInt(target + 1) + 1);
+			}
+			for (int id = 0; id < count; id++) {
+				inOffsets.putInt(id + 1, inOffsets.getInt(id + 1) + inOffsets.getInt(id));
+				next.putInt(id, inOffsets.getInt(id));
+			}
+			Region sources = exact(4L * size);
+			Region placed = exact(4L * ((size + 31) / 32));
+			for (long e = 0; e < edgeCount; e++) {
+				int from = edges.getInt(2 * e);
+				int to = edges.getInt(2 * e + 1);
+				int position = find(targets, offsets.getInt(from), offsets.getInt(from + 1), ranks, ranks.getInt(to));
+				int bits = placed.getInt(position >>> 5);
+				if ((bits & (1 << position)) != 0)
+					continue;
+				placed.putInt(position >>> 5, bits | (1 << position));
+				int index = next.getInt(to);
+				sources.putInt(index, from);
+				next.putInt(to, index + 1);
+			}
+			placed.seal();
+			for (Region region : new Region[] {arena, nameOffsets, hashes, slots, offsets, targets, inOffsets, sources, ranks, sorted}) {
+				region.seal();
+			}
+			next.seal();
+			edges.seal();
+			return new OffHeapGraph(arena, nameOffsets, hashes, slots, slotMask, offsets, targets, inOffsets, sources, ranks, sorted, count, size);
+		}
+
+		/**
+		 * This helper method sorts the ids of the vertices in case-insensitive order of their
+		 * names, ties broken by id, with a merge sort of runs that doubles in length on every
+		 * pass between two regions
+		 * @param count - the number of vertices
+		 * @return the region of the sorted ids
+		 */
+		private Region sortByName(int count) {
+			Region from = exact(4L * count);
+			Region to = exact(4L * count);
+			// sort short runs by insertion first
+			for (int start = 0; start < count; start += SORTED_RUN) {
+				int end = Math.min(start + SORTED_RUN, count);
+				for (int i = start; i < end; i++) {
+					int id = i;
+					int j = i;
+					for (; j > start && compareNames(from.getInt(j - 1), id) > 0; j--) {
+						from.putInt(j, from.getInt(j - 1));
+					}
+					from.putInt(j, id);
+				}
+			}
+			for (long width = SORTED_RUN; width < count; width *= 2) {
+				for (long start = 0; start < count; start += 2 * width) {
+					int middle = (int) Math.min(start + width, count);
+					int end = (int) Math.min(start + 2 * width, count);
+					int left = (int) start, right = middle;
+					for (int i = left; i < end; i++) {
+						if (right == end || (left < middle && compareNames(from.getInt(left), from.getInt(right)) <= 0))
+							to.putInt(i, from.getInt(left++));
+						else
+							to.putInt(i, from.getInt(right++));
+					}
+				}
+				Region swap = from;
+				from = to;
+				to = swap;
+			}
+			to.seal();
+			return from;
+		}
+
+		/**
+		 * This helper method compares the names of two vertices as String.CASE_INSENSITIVE_ORDER
+		 * does, then their ids. The ASCII prefix of the names is compared in the arena, and
+		 * the names are only decoded when one of them has other bytes.
+		 * @param a - the id of the first vertex
+		 * @param b - the id of the second vertex
+		 * @return a negative number, zero or a positive number as the first vertex comes
+		 * before, is or comes after the second one
+		 */
+		private int compareNames(int a, int b) {
+			long i = nameOffsets.getLong(a), endA = nameOffsets.getLong(a + 1);
+			long j = nameOffsets.getLong(b), endB = nameOffsets.getLong(b + 1);
+			for (; i < endA && j < endB; i++, j++) {
+				byte c1 = arena.get(i), c2 = arena.get(j);
+				if (c1 < 0 || c2 < 0) {
+					int result = String.CASE_INSENSITIVE_ORDER.compare(decode(arena, nameOffsets, a), decode(arena, nameOffsets, b));
+					return result != 0 ? result : Integer.compare(a, b);
+				}
+				if (c1 != c2) {
+					char u1 = Character.toUpperCase((char) c1), u2 = Character.toUpperCase((char) c2);
+					if (u1 != u2 && Character.toLowerCase(u1) != Character.toLowerCase(u2))
+						return Character.toLowerCase(u1) - Character.toLowerCase(u2);
+				}
+			}
+			// every byte left is part of at least one more char
+			if (i < endA || j < endB)
+				return i < endA ? 1 : -1;
+			return Integer.compare(a, b);
+		}
+
+		/**
+		 * This helper method finds a successor in a row sorted by rank
+		 * @param targets - the successors of all the vertices
+		 * @param from - the start of the row
+		 * @param to - the end of the row
+		 * @param ranks - the ranks of the vertices
+		 * @param rank - the rank of the successor
+		 * @return the position of the successor
+		 */
+		private static int find(Region targets, int from, int to, Region ranks, int rank) {
+			int low = from, high = to - 1;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (ranks.getInt(targets.getInt(middle)) < rank)
+					low = middle + 1;
+				else
+					high = middle;
+			}
+			return low;
+		}
+
+		/**
+		 * This helper method doubles the index and inserts every vertex again
+		 */
+		private void rehash() {
+			slots.seal();
+			slotMask = 2 * slotMask + 1;
+			slots = new Region(pageBits(4L * (slotMask + 1)), spillDirectory);
+			slots.ensure(4L * (slotMask + 1));
+			for (int id = 0; id < vertices; id++) {
+				int slot = spread(hashes.getInt(id)) & slotMask;
+				while (slots.getInt(slot) != 0)
+					slot = (slot + 1) & slotMask;
+				slots.putInt(slot, id + 1);
+			}
+		}
+
+		/**
+		 * This helper method creates a zeroed region of a known size
+		 * @param bytes - the size of the region
+		 * @return the region
+		 */
+		private Region exact(long bytes) {
+			Region region = new Region(pageBits(bytes), spillDirectory);
+			region.ensure(bytes);
+			return region;
+		}
+	}
+
+	/**
+	 * This helper method chooses the page size of a region of a known size, one page for a
+	 * small region
+	 * @param bytes - the size of the region
+	 * @return the number of bits of the page size
+	 */
+	private static int pageBits(long bytes) {
+		int bits = 6;
+		while (bits < MAX_PAGE_BITS && (1L << bits) < bytes)
+			bits++;
+		return bits;
+	}
+
+	/**
+	 * A zeroed memory region addressed by a long offset, made of pages of the same power of
+	 * two size so that an int or a long never straddles two pages
+	 */
+	private static class Region {
+		/**
+		 * The size of the parts a section of a snapshot is mapped in, a whole number of pages
+		 */
+		private static final long MAPPING_SIZE = 1L << 30;
+
+		private final int pageBits;
+		private final long pageMask;
+		private ByteBuffer[] pages;
+		private int pageCount;
+
+		/**
+		 * The CRC32 of every page mapped from a snapshot, and whether it was checked, or null
+		 * for the pages of a builder
+		 */
+		private final int[] checksums;
+		private final boolean[] checked;
+
+		/**
+		 * The temporary file the pages are mapped from, or null for direct buffers
+		 */
+		private RandomAccessFile file;
+
+		Region(int pageBits, File spillDirectory) {
+			this.pageBits = pageBits;
+			pageMask = (1L << pageBits) - 1;
+			pages = new ByteBuffer[4];
+			checksums = null;
+			checked = null;
+			if (spillDirectory != null) {
+				try {
+					File spill = File.createTempFile("graph", ".pages", spillDirectory);
+					file = new RandomAccessFile(spill, "rw");
+					// the pages stay mapped after the file is deleted where the system allows it
+					if (!spill.delete())
+						spill.deleteOnExit();
+				} catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+
+		/**
+		 * This helper constructor takes the read-only pages of a snapshot
+		 */
+		private Region(int pageBits, ByteBuffer[] pages, int[] checksums) {
+			this.pageBits = pageBits;
+			pageMask = (1L << pageBits) - 1;
+			this.pages = pages;
+			pageCount = checksums.length;
+			this.checksums = checksums;
+			checked = new boolean[checksums.length];
+		}
+
+		/**
+		 * Maps a section of a snapshot file read-only, in pages checked on their first read
+		 */
+		static Region map(FileChannel file, long start, long length, int pageBits, int[] checksums) throws IOException {
+			long pageSize = 1L << pageBits;
+			ByteBuffer[] pages = new ByteBuffer[Math.max(1, checksums.length)];
+			MappedByteBuffer mapping = null;
+			long mappingStart = 0;
+			for (int page = 0; page < checksums.length; page++) {
+				long offset = (long) page << pageBits;
+				if (mapping == null || offset - mappingStart >= MAPPING_SIZE) {
+					mappingStart = offset;
+					mapping = file.map(FileChannel.MapMode.READ_ONLY, start + offset, Math.min(MAPPING_SIZE, length - offset));
+				}
+				ByteBuffer slice = mapping.duplicate();
+				int from = (int) (offset - mappingStart);
+				slice.limit((int) Math.min(from + pageSize, mapping.capacity())).position(from);
+				pages[page] = slice.slice();
+			}
+			return new Region(pageBits, pages, checksums);
+		}
+
+		/**
+		 * Returns the page holding an offset, checking it first if it was mapped from a 
+		 * snapshot and was never read
+		 */
+		private ByteBuffer page(long offset) {
+			int page = (int) (offset >>> pageBits);
+			// threads racing on an unchecked page may each check it
+			if (checked != null && !checked[page]) {
+				CRC32 crc = new CRC32();
+				crc.update(pages[page].duplicate());
+				if ((int) crc.getValue() != checksums[page])
+					throw new UncheckedIOException(new IOException("page " + page + " of a snapshot section does not match its checksum"));
+				checked[page] = true;
+			}
+			return pages[page];
+		}
+
+		/**
+		 * Writes the first bytes of the region to a file
+		 */
+		void write(FileChannel out, long position, long length) throws IOException {
+			for (long offset = 0; offset < length; ) {
+				ByteBuffer page = page(offset).duplicate();
+				page.clear();
+				page.limit((int) Math.min(page.capacity(), length - offset));
+				offset += page.remaining();
+				while (page.hasRemaining()) {
+					position += out.write(page, position);
+				}
+			}
+		}
+
+		/**
+		 * Adds pages until the region holds a number of bytes
+		 */
+		void ensure(long bytes) {
+			while ((long) pageCount << pageBits < bytes) {
+				if (pageCount == pages.length)
+					pages = Arrays.copyOf(pages, 2 * pages.length);
+				long pageSize = 1L << pageBits;
+				if (file == null) {
+					pages[pageCount] = ByteBuffer.allocateDirect((int) pageSize);
+				} else {
+					try {
+						pages[pageCount] = file.getChannel().map(FileChannel.MapMode.READ_WRITE, pageCount * pageSize, pageSize);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+				}
+				pageCount++;
+			}
+		}
+
+		/**
+		 * Closes the file of the pages once no page will be added, the pages stay mapped
+		 */
+		void seal() {
+			if (file == null)
+				return;
+			try {
+				file.close();
+			} catch (IOException e) {
+				throw new UncheckedIOException(e);
+			}
+			file = null;
+		}
+
+		long capacity() {
+			return (long) pageCount << pageBits;
+		}
+
+		byte get(long offset) {
+			return page(offset).get((int) (offset & pageMask));
+		}
+
+		void put(long offset, byte value) {
+			pages[(int) (offset >>> pageBits)].put((int) (offset & pageMask), value);
+		}
+
+		int getInt(long index) {
+			long offset = index << 2;
+			return page(offset).getInt((int) (offset & pageMask));
+		}
+
+		void putInt(long index, int value) {
+			long offset = index << 2;
+			pages[(int) (offset >>> pageBits)].putInt((int) (offset & pageMask), value);
+		}
+
+		long getLong(long index) {
+			long offset = index << 3;
+			return page(offset).getLong((int) (offset & pageMask));
+		}
+
+		void putLong(long index, long value) {
+			long offset = index << 3;
+			pages[(int) (offset >>> pageBits)].putLong((int) (offset & pageMask), value);
+		}
+	}
+}
@@ -6,12 +6,15 @@
  * Class representation of the package object found in a json file.
  * 
  * A package is a package name and an array of the names of other packages
- * that this package depends upon.
+ * that this package depends upon. A package may also have a version and
+ * the range of versions it accepts for each of its dependencies.
  * 
  */
 public class Package {
 	private String name;	
 	private String[] dependencies;
+	private String version;
+	private String[] ranges;
 	
 	public Package() {
 		
@@ -30,6 +33,14 @@ public class Package {
 		return this.dependencies;
 	}
 	
+	public String getVersion() {
+		return this.version;
+	}
+	
+	public String[] getRanges() {
+		return this.ranges;
+	}
+	
 	public void setName(String name) {
 		this.name = name;
 	}
@@ -37,4 +48,12 @@ public class Package {
 	public void setDependencies(String[] dependencies) {
 		this.dependencies = dependencies;
 	}
+
+	public void setVersion(String version) {
+		this.version = version;
+	}
+
+	public void setRanges(String[] ranges) {
+		this.ranges = ranges;
+	}
 }
@@ -1,11 +1,22 @@
 import java.io.FileNotFoundException;
 import java.io.FileReader;
 import java.io.IOException;
+import java.nio.file.Path;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
-import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.json.simple.parser.ParseException;
 import org.json.simple.JSONArray;
@@ -36,51 +47,1298 @@ import org.json.simple.parser.JSONParser;
  * installed before any given package can be installed.
  * all of the packages in
  * 
+ * A PackageManager can be shared by any number of threads. Queries work on the version of 
+ * the graph published when they start and never wait for a graph being built, and the 
+ * methods building the graph publish the new version atomically once they are done.
+ * 
  * You may add a main method, but we will test all methods with
  * our own Test classes.
  */
 
 public class PackageManager {
 
-	private Graph graph;
+	/**
+	 * The published version of the graph. It is frozen and never changed: writers build the 
+	 * next version on a copy and publish it by replacing this reference, and every query reads 
+	 * this reference once and works on that version without locking.
+	 */
+	private volatile Graph graph;
+
+	/**
+	 * The lock that makes writers build the next version of the graph one at a time
+	 */
+	private final Object writeLock = new Object();
+
+	/**
+	 * Whether constructGraph reads the json file one package entry at a time
+	 */
+	private boolean streamingIngest;
+
+	/**
+	 * The number of bytes read and the time taken by the last call to constructGraph
+	 */
+	private long lastIngestBytes, lastIngestNanos;
+
+	/**
+	 * The memory used by the name tables of the last streamed call to constructGraph
+	 */
+	private long lastIngestNameFootprint;
+
+	/**
+	 * The listener receiving the measurements of every ingest and query, or null to measure 
+	 * nothing
+	 */
+	private volatile MetricsListener metrics;
+
+	/**
+	 * The number of threads used to parse json files when several files are loaded at once
+	 */
+	private int ingestParallelism;
+
+	/**
+	 * The transitive dependency counts of the graph, computed on demand
+	 */
+	private volatile DependencyClosure closure;
+
+	/**
+	 * The statistics of every package of the published graph, computed on demand
+	 */
+	private volatile RegistryStatistics statistics;
+
+	/**
+	 * The number of packages above which transitive dependencies are estimated instead of 
+	 * counted exactly, Integer.MAX_VALUE unless approximation is turned on
+	 */
+	private int approximationThreshold;
+
+	/**
+	 * The reachability index of the graph, built on demand
+	 */
+	private volatile ReachabilityIndex reachability;
+
+	/**
+	 * The number of bytes the reachability index may use for the closures of the packages
+	 */
+	private volatile long reachabilityBudget;
+
+	/**
+	 * The cache of the results of getInstallationOrder and toInstall
+	 */
+	private InstallationOrderCache resultCache;
+
+	/**
+	 * The install costs given by the "cost" of the package entries, for the packages that 
+	 * have one. The map is replaced with the graph and never changed once published.
+	 */
+	private volatile Map<String, Double> installCosts;
+
+	/**
+	 * The releases of the packages whose entries have a "version" or version ranges, from 
+	 * the highest version to the lowest. The map and its lists are replaced with the graph and 
+	 * never changed once published.
+	 */
+	private volatile Map<String, List<Release>> releases;
+
+	/**
+	 * The resolver of the versions of the graph, created on demand
+	 */
+	private volatile VersionResolver resolver;
+
+	/**
+	 * Whether every published version of the graph is kept off the heap
+	 */
+	private boolean offHeapStorage;
+
+	/**
+	 * The directory the pages of an off-heap graph are mapped from, or null for direct buffers
+	 */
+	private java.io.File offHeapSpillDirectory;
+
+	/**
+	 * Whether constructGraph indexes a json file and reads its packages as they are queried
+	 */
+	private boolean lazyLoading;
+
+	/**
+	 * The index of the json file whose packages are read as they are queried, or null once 
+	 * all of them have been read
+	 */
+	private volatile ManifestIndex lazyManifest;
+
+	/**
+	 * The packages of the lazy json file whose dependencies, direct or not, have all been read 
+	 * into the published graph
+	 */
+	private volatile Set<String> lazyLoaded = ConcurrentHashMap.newKeySet();
 
 	/*
 	 * Package Manager default no-argument constructor.
 	 */
 	public PackageManager() {
-		graph = new Graph();
+		streamingIngest = false;
+		ingestParallelism = Runtime.getRuntime().availableProcessors();
+		approximationThreshold = Integer.MAX_VALUE;
+		reachabilityBudget = 64L << 20;
+		resultCache = new InstallationOrderCache(10000);
+		setGraph(new Graph(), new HashMap<String, Double>(), new HashMap<String, List<Release>>());
+	}
+
+	/**
+	 * This helper method replaces the graph with an unrelated one, together with its install 
+	 * costs and releases, so that the cached results of the old graph are dropped
+	 * @param newGraph - the new graph
+	 * @param costs - the install costs of the new graph
+	 * @param nextReleases - the releases of the new graph
+	 */
+	private void setGraph(Graph newGraph, Map<String, Double> costs, Map<String, List<Release>> nextReleases) {
+		// the packages of a lazy json file are replaced too
+		lazyManifest = null;
+		newGraph.freeze();
+		if (offHeapStorage)
+			newGraph = OffHeapGraph.of(newGraph, offHeapSpillDirectory);
+		resultCache.reset(newGraph);
+		// the costs and releases are published before the graph, as in publish
+		installCosts = costs;
+		releases = nextReleases;
+		graph = newGraph;
+	}
+
+	/**
+	 * This helper method starts the next version of the graph as a copy of the published one, 
+	 * whose changes are recorded by the result cache. It must be called with the write lock.
+	 * @return the next version of the graph
+	 */
+	private Graph beginUpdate() {
+		Graph next = graph.copy();
+		next.setListener(resultCache);
+		return next;
+	}
+
+	/**
+	 * This helper method publishes the next version of the graph, its install costs and its 
+	 * releases, so that queries started from now on see them. It must be called with the 
+	 * write lock.
+	 * @param next - the next version of the graph
+	 * @param costs - the install costs of the next version
+	 * @param nextReleases - the releases of the next version
+	 */
+	private void publish(Graph next, Map<String, Double> costs, Map<String, List<Release>> nextReleases) {
+		next.setListener(null);
+		// pack the adjacency of the new version, unless only a few packages were changed
+		next.settle();
+		// an off-heap graph cannot be changed, so the changes were made on a copy on the heap
+		if (offHeapStorage)
+			next = OffHeapGraph.of(next, offHeapSpillDirectory);
+		resultCache.publish(next);
+		installCosts = costs;
+		releases = nextReleases;
+		graph = next;
+	}
+
+	/**
+	 * Sets the largest number of results of getInstallationOrder and toInstall that are 
+	 * cached. When the cache is full, the least recently used result is evicted. Changes to 
+	 * the graph only invalidate the results that depend on the changed packages.
+	 * 
+	 * @param maxSize the largest number of cached results, 0 to disable caching
+	 */
+	public void setResultCacheSize(int maxSize) {
+		resultCache.setMaxSize(maxSize);
+	}
+
+	/**
+	 * Returns the cache of the results of getInstallationOrder and toInstall, whose counters 
+	 * report its hits, misses and evictions.
+	 * 
+	 * @return the result cache
+	 */
+	public InstallationOrderCache getResultCache() {
+		return resultCache;
+	}
+
+	/**
+	 * Sets whether constructGraph reads the json file one package entry at a time and adds its
+	 * vertices and edges as it goes, instead of parsing the whole document tree first. In 
+	 * streaming mode the memory used scales with the graph, not with the size of the file.
+	 * 
+	 * @param streaming true to read json files as a stream
+	 */
+	public void setStreamingIngest(boolean streaming) {
+		streamingIngest = streaming;
+	}
+
+	/**
+	 * Sets the number of threads that parse json files in parallel when several files are 
+	 * loaded at once by constructGraph. It defaults to the number of available processors.
+	 * 
+	 * @param threads the number of parsing threads, at least 1
+	 */
+	public void setIngestParallelism(int threads) {
+		if (threads < 1)
+			throw new IllegalArgumentException("the number of threads must be at least 1");
+		ingestParallelism = threads;
+	}
+
+	/**
+	 * Sets the number of packages above which the transitive dependency counts are estimated 
+	 * with fixed-size sketches instead of counted exactly with one bitset per package. Exact 
+	 * counting needs memory quadratic in the number of packages in the worst case. By default 
+	 * the threshold is Integer.MAX_VALUE, so every count is exact unless a lower threshold is 
+	 * set.
+	 * 
+	 * @param packages the largest graph whose dependencies are counted exactly
+	 */
+	public void setApproximationThreshold(int packages) {
+		approximationThreshold = packages;
+		closure = null;
+		statistics = null;
+	}
+
+	/**
+	 * Sets the memory the reachability index behind dependsOn may use. If the closures of all 
+	 * packages need more, the index keeps a few interval labels per package instead, and 
+	 * some questions are answered with a search pruned by the labels.
+	 * 
+	 * @param bytes the budget of the index in bytes
+	 */
+	public void setReachabilityBudget(long bytes) {
+		if (bytes < 0)
+			throw new IllegalArgumentException("the budget must not be negative");
+		reachabilityBudget = bytes;
+		reachability = null;
+	}
+
+	/**
+	 * Sets whether the graph is kept outside the Java heap, in direct buffers or in pages 
+	 * mapped from temporary files in the spill directory, and moves the current graph there 
+	 * or back. An off-heap graph adds nothing to garbage collection, and with a spill 
+	 * directory it can be larger than the heap. The install costs and the releases stay on 
+	 * the heap.
+	 * 
+	 * Every query works on an off-heap graph unchanged. constructGraph with a single file and 
+	 * applyDelta build the next version off the heap directly, from the published one, so 
+	 * only the changes are held on the heap; the time they take is proportional to the size 
+	 * of the graph. The other changes, loading several files and reading the packages of a 
+	 * lazily loaded file, make them on a copy of the graph on the heap, which must be large 
+	 * enough for it.
+	 * 
+	 * @param offHeap true to keep the graph off the heap
+	 */
+	public void setOffHeapStorage(boolean offHeap) {
+		synchronized (writeLock) {
+			offHeapStorage = offHeap;
+			Graph current = graph;
+			Graph next = offHeap ? OffHeapGraph.of(current, offHeapSpillDirectory) : current;
+			if (!offHeap && current instanceof OffHeapGraph) {
+				next = current.copy();
+				next.freeze();
+			}
+			// the packages are the same, so the cached results stay valid
+			resultCache.publish(next);
+			graph = next;
+		}
+	}
+
+	/**
+	 * Sets the directory the pages of an off-heap graph are mapped from. The files are 
+	 * deleted as soon as they are mapped where the system allows it, and on exit otherwise. 
+	 * Without a directory the pages are direct buffers, which are limited by 
+	 * -XX:MaxDirectMemorySize.
+	 * 
+	 * @param directory the spill directory, or null to use direct buffers
+	 */
+	public void setOffHeapSpillDirectory(java.io.File directory) {
+		synchronized (writeLock) {
+			offHeapSpillDirectory = directory;
+		}
+	}
+
+	/**
+	 * Sets whether constructGraph with a single file only indexes where the entry of every 
+	 * package starts in the file, and reads the entries of a package and of its dependencies 
+	 * the first time a query needs them. The index is saved beside the json file, as the file 
+	 * name followed by .idx, so that later runs do not read the whole file at all.
+	 * 
+	 * getInstallationOrder, toInstall, getInstallationPlan, install, dependsOn, 
+	 * resolveVersions and getInstallCost only read the packages they reach. The queries 
+	 * about all the packages or about the dependents of a package, and the other ways of 
+	 * changing the graph, read the rest of the file first. Turning lazy loading off reads 
+	 * the rest of the file. The edges are added in another order than by reading the file 
+	 * at once, so getTransitiveDependents may list the dependents at the same distance in 
+	 * another order.
+	 * 
+	 * @param lazy true to read the packages as they are queried
+	 * @throws IOException if the rest of a lazy json file has to be read and cannot be
+	 * @throws ParseException if the rest of a lazy json file has to be read and cannot be parsed
+	 */
+	public void setLazyLoading(boolean lazy) throws IOException, ParseException {
+		synchronized (writeLock) {
+			if (!lazy)
+				loadAllPackages();
+			lazyLoading = lazy;
+		}
+	}
+
+	/**
+	 * Returns the memory the graph uses outside the Java heap.
+	 * 
+	 * @return the number of bytes of the pages of the graph, or 0 if it is on the heap
+	 */
+	public long getOffHeapFootprint() {
+		Graph current = graph;
+		return current instanceof OffHeapGraph ? ((OffHeapGraph) current).getFootprint() : 0;
+	}
+
+	/**
+	 * Returns the throughput of the last call to constructGraph.
+	 * 
+	 * @return the number of megabytes of json read per second, or 0 if no file has been read
+	 */
+	public double getLastIngestThroughput() {
+		if (lastIngestNanos == 0)
+			return 0;
+		return (lastIngestBytes / (1024.0 * 1024.0)) / (lastIngestNanos / 1e9);
+	}
+
+	/**
+	 * Sets the listener receiving the measurements of every call to constructGraph and of 
+	 * every installation order query, such as a PackageManagerMetrics. Without a listener 
+	 * nothing is measured.
+	 * 
+	 * @param listener the listener, or null to stop measuring
+	 */
+	public void setMetricsListener(MetricsListener listener) {
+		metrics = listener;
+	}
+
+	/**
+	 * Returns the memory used by the name tables that interned the package names of the last 
+	 * call to constructGraph. Only streamed ingest on the heap interns names, one table per 
+	 * file; a graph kept off the heap stores its names once, off the heap.
+	 * 
+	 * @return the estimated number of bytes of the name tables, or 0 if the last file was not 
+	 * streamed onto the heap
+	 */
+	public long getLastIngestNameFootprint() {
+		return lastIngestNameFootprint;
 	}
 
 	/**
 	 * Takes in a file path for a json file and builds the
 	 * package dependency graph from it. 
 	 * 
+	 * The packages are added to a new version of the graph, which is published once the 
+	 * whole file has been read, so queries running meanwhile are not blocked and never see 
+	 * a partly read file. If the file cannot be read, the graph is left unchanged.
+	 * 
 	 * @param jsonFilepath the name of json data file with package dependency information
 	 * @throws FileNotFoundException if file path is incorrect
 	 * @throws IOException if the give file cannot be read
-	 * @throws ParseException if the given json cannot be parsed 
+	 * @throws ParseException if the given json cannot be parsed, an entry has no name, or a 
+	 * cost is not a number
 	 */
 	public void constructGraph(String jsonFilepath) throws FileNotFoundException, IOException, ParseException {
+		synchronized (writeLock) {
+			// the files are merged in order, so the rest of an earlier lazy file is read first
+			loadAllPackages();
+			if (lazyLoading) {
+				long start = System.nanoTime();
+				ManifestIndex index = ManifestIndex.open(jsonFilepath);
+				lazyLoaded = ConcurrentHashMap.newKeySet();
+				lazyManifest = index;
+				lastIngestBytes = index.isLoaded() ? 0 : new java.io.File(jsonFilepath).length();
+				lastIngestNanos = System.nanoTime() - start;
+				lastIngestNameFootprint = 0;
+				return;
+			}
+			if (offHeapStorage) {
+				constructOffHeapGraph(jsonFilepath);
+				return;
+			}
+			long start = System.nanoTime();
+			Graph next = beginUpdate();
+			Map<String, Double> costs = new HashMap<String, Double>(installCosts);
+			Map<String, List<Release>> nextReleases = new HashMap<String, List<Release>>(releases);
+			MetricsListener metrics = this.metrics;
+			IngestStats stats = new IngestStats(metrics != null, next);
+			boolean done = false;
+			try {
+				readGraph(jsonFilepath, next, costs, nextReleases, stats);
+				done = true;
+			} finally {
+				if (done)
+					publish(next, costs, nextReleases);
+				else
+					resultCache.discard();
+			}
+			lastIngestBytes = stats.bytes;
+			lastIngestNanos = System.nanoTime() - start;
+			if (metrics != null)
+				reportIngest(metrics, stats, next);
+		}
+	}
+
+	/**
+	 * This helper method reads a json file into a version of the graph that is not published, 
+	 * streamed or parsed as a tree depending on the ingest mode
+	 * @param jsonFilepath - the name of json data file with package dependency information
+	 * @param next - the graph the packages are added to
+	 * @param costs - the map the install costs are added to
+	 * @param nextReleases - the map the releases are added to
+	 * @param stats - the measurements of the ingest
+	 */
+	private void readGraph(String jsonFilepath, Graph next, Map<String, Double> costs, Map<String, List<Release>> nextReleases, IngestStats stats) throws FileNotFoundException, IOException, ParseException {
+		if (streamingIngest) {
+			NameTable names = new NameTable();
+			streamGraph(jsonFilepath, next, costs, nextReleases, names, stats);
+			lastIngestNameFootprint = names.getFootprint();
+		} else {
+			parseGraph(jsonFilepath, next, costs, nextReleases, stats);
+			stats.bytes = new java.io.File(jsonFilepath).length();
+			lastIngestNameFootprint = 0;
+		}
+	}
+
+	/**
+	 * This helper method streams a json file into a new off-heap version of the graph, which 
+	 * starts with the vertices and edges of the published one, so that the graph is never 
+	 * held on the heap. The cached results are dropped, since the changes are not recorded. 
+	 * It must be called with the write lock.
+	 * @param jsonFilepath - the name of json data file with package dependency information
+	 */
+	private void constructOffHeapGraph(String jsonFilepath) throws FileNotFoundException, IOException, ParseException {
+		long start = System.nanoTime();
+		Graph current = graph;
+		Map<String, Double> costs = new HashMap<String, Double>(installCosts);
+		Map<String, List<Release>> nextReleases = new HashMap<String, List<Release>>(releases);
+		MetricsListener metrics = this.metrics;
+		IngestStats stats = new IngestStats(metrics != null, current);
+		// the built graph counts its vertices and edges as inserts
+		stats.vertexInserts = current.order();
+		stats.edgeInserts = current.size();
+		OffHeapGraph.Builder builder = new OffHeapGraph.Builder(offHeapSpillDirectory);
+		builder.addGraph(current);
+		// the names are stored once, in the arena of the builder, so they are not interned
+		try (ManifestReader reader = new ManifestReader(jsonFilepath, null)) {
+			while (reader.next()) {
+				long mutation = stats.timed ? System.nanoTime() : 0;
+				String name = reader.getName();
+				builder.addVertex(name);
+				if (!Double.isNaN(reader.getCost()))
+					costs.put(name, reader.getCost());
+				Release release = newRelease(name, reader.getVersion(), reader.getDependencies(), reader.getRanges());
+				if (release != null)
+					putRelease(nextReleases, release);
+				for (String dependency : reader.getDependencies()) {
+					builder.addEdge(name, dependency);
+				}
+				if (stats.timed)
+					stats.mutationNanos += System.nanoTime() - mutation;
+			}
+			stats.bytes = reader.getBytesRead();
+		}
+		OffHeapGraph next = builder.build();
+		resultCache.reset(next);
+		installCosts = costs;
+		releases = nextReleases;
+		graph = next;
+		lastIngestNameFootprint = 0;
+		lastIngestBytes = stats.bytes;
+		lastIngestNanos = System.nanoTime() - start;
+		if (metrics != null)
+			reportIngest(metrics, stats, next);
+	}
+
+	/**
+	 * Saves the current graph, with the install costs and the releases of its packages, to a 
+	 * binary snapshot file, which can be loaded back by constructGraphFromSnapshot much faster 
+	 * than parsing the json file again.
+	 * 
+	 * @param snapshotPath the path of the snapshot file
+	 * @param jsonFilepath the json file the graph was built from, whose modification time is 
+	 * recorded so that the snapshot is not used once the json file changes
+	 * @throws IOException if the snapshot cannot be written
+	 */
+	public void saveSnapshot(String snapshotPath, String jsonFilepath) throws IOException {
+		// the costs and releases are published before the graph, so the lock keeps them 
+		// from belonging to a newer version than the graph
+		synchronized (writeLock) {
+			GraphSnapshot.save(wholeGraph(), installCosts, releases, snapshotPath, jsonFilepath);
+		}
+	}
+
+	/**
+	 * Replaces the package dependency graph with the one saved in a snapshot file for a json 
+	 * file. The graph is served in place from a read-only memory mapping of the snapshot, so 
+	 * loading takes about the same time for any size of graph, and processes loading the same 
+	 * snapshot share its pages. Every page is checked against its checksum the first time it 
+	 * is read, and a query reading a corrupt page throws an UncheckedIOException. The graph 
+	 * cannot be changed in place, so the first change to it copies it onto the heap.
+	 * 
+	 * If the snapshot is missing, corrupt, or older than the json file, the graph is built 
+	 * from the json file instead, and the snapshot is written again for the next time. The 
+	 * graph built from the json file is published once the whole file has been read, so the 
+	 * graph is left unchanged if the file cannot be read.
+	 * 
+	 * @param jsonFilepath the name of json data file with package dependency information
+	 * @param snapshotPath the path of the snapshot file
+	 * @return true if the graph was loaded from the snapshot, false if the json file was parsed
+	 * @throws FileNotFoundException if the json file has to be parsed and its path is incorrect
+	 * @throws IOException if the json file cannot be read or the snapshot cannot be written
+	 * @throws ParseException if the json file has to be parsed and cannot be parsed
+	 */
+	public boolean constructGraphFromSnapshot(String jsonFilepath, String snapshotPath) throws FileNotFoundException, IOException, ParseException {
+		synchronized (writeLock) {
+			long start = System.nanoTime();
+			Map<String, Double> loadedCosts = new HashMap<String, Double>();
+			Map<String, List<Release>> loadedReleases = new HashMap<String, List<Release>>();
+			Graph loaded = GraphSnapshot.load(snapshotPath, jsonFilepath, loadedCosts, loadedReleases);
+			if (loaded != null) {
+				setGraph(loaded, loadedCosts, loadedReleases);
+				lastIngestBytes = new java.io.File(snapshotPath).length();
+				lastIngestNanos = System.nanoTime() - start;
+				return true;
+			}
+			// fall back to the json file, read into a new graph that is only published once the 
+			// whole file has been read, and refresh the snapshot
+			Graph next = new Graph();
+			Map<String, Double> costs = new HashMap<String, Double>();
+			Map<String, List<Release>> nextReleases = new HashMap<String, List<Release>>();
+			MetricsListener metrics = this.metrics;
+			IngestStats stats = new IngestStats(metrics != null, next);
+			readGraph(jsonFilepath, next, costs, nextReleases, stats);
+			setGraph(next, costs, nextReleases);
+			lastIngestBytes = stats.bytes;
+			lastIngestNanos = System.nanoTime() - start;
+			if (metrics != null)
+				reportIngest(metrics, stats, next);
+			saveSnapshot(snapshotPath, jsonFilepath);
+			return false;
+		}
+	}
+
+	/**
+	 * Takes in the file paths of several json files and builds one package dependency graph 
+	 * from all of them.
+	 * 
+	 * The files are read as streams in parallel, and the packages of every file are merged 
+	 * into the next version of the graph as one batch of edges as soon as the file has been 
+	 * read, in the order of the collection. The new version is published once all the files 
+	 * are merged. If any file fails, the remaining files are cancelled, and the graph is left 
+	 * unchanged.
+	 * 
+	 * @param jsonFilepaths the json data files with package dependency information
+	 * @throws FileNotFoundException if any file path is incorrect
+	 * @throws IOException if any file cannot be read
+	 * @throws ParseException if the json of any file cannot be parsed, an entry has no name, 
+	 * or a cost is not a number
+	 */
+	public void constructGraph(Collection<Path> jsonFilepaths) throws FileNotFoundException, IOException, ParseException {
+		synchronized (writeLock) {
+			loadAllPackages();
+			Graph next = beginUpdate();
+			Map<String, Double> costs = new HashMap<String, Double>(installCosts);
+			Map<String, List<Release>> nextReleases = new HashMap<String, List<Release>>(releases);
+			MetricsListener metrics = this.metrics;
+			IngestStats stats = new IngestStats(metrics != null, next);
+			boolean done = false;
+			try {
+				mergeGraphs(jsonFilepaths, next, costs, nextReleases, stats);
+				done = true;
+			} finally {
+				if (done)
+					publish(next, costs, nextReleases);
+				else
+					resultCache.discard();
+			}
+			if (metrics != null)
+				reportIngest(metrics, stats, next);
+		}
+	}
+
+	/**
+	 * Applies a delta file of the changes to the registry to the package dependency graph, 
+	 * without reading the packages that did not change. The delta is a json object with up to 
+	 * three arrays, applied in this order:
+	 * - "removed": the names of the packages removed, which are removed from the graph with 
+	 *   all the edges from and to them
+	 * - "added": the entries of the new packages, in the format of the "packages" array
+	 * - "changed": the entries of the packages whose dependencies changed, which replace the 
+	 *   dependencies, the install cost and the release of the entry
+	 * An added entry for a package already in the graph is applied as a changed one, and a 
+	 * changed entry for a missing package adds it. The dependencies of a package with 
+	 * releases are those of all its releases.
+	 * 
+	 * The changes are applied to a new version of the graph, which is published once the 
+	 * whole delta has been applied, as in constructGraph. Only the packages named in the
+	 * delta and their dependencies are visited, but the new version starts as a copy of the
+	 * arrays of the graph, and of its map of names to ids once a package is added or removed,
+	 * and the install costs and the releases are copied once the delta changes them. Every
+	 * delta therefore takes time and memory in proportion to the number of packages, however
+	 * small it is. If the graph was built lazily, the packages that were not read yet are all
+	 * read from the json file first. If the graph is kept off the heap, the new version is
+	 * built off the heap from the published one and the changes, without copying the graph
+	 * onto the heap, and the cached results are dropped. If the delta cannot be read, the
+	 * graph is left unchanged.
+	 * 
+	 * @param jsonFilepath the name of the json delta file
+	 * @throws FileNotFoundException if file path is incorrect
+	 * @throws IOException if the give file cannot be read
+	 * @throws ParseException if the given json cannot be parsed, an entry has no name, or a 
+	 * cost is not a number
+	 */
+	public void applyDelta(String jsonFilepath) throws FileNotFoundException, IOException, ParseException {
+		long start = System.nanoTime();
+		// a delta is small, so it is parsed as a tree before the write lock is taken
+		JSONObject delta;
+		try (FileReader reader = new FileReader(jsonFilepath)) {
+			delta = (JSONObject) new JSONParser().parse(reader);
+		}
+		synchronized (writeLock) {
+			// a package changed by the delta must not be read from the json file later
+			loadAllPackages();
+			// a graph kept off the heap is rebuilt off the heap rather than copied onto it
+			Graph current = graph;
+			boolean rebuild = offHeapStorage;
+			DeltaUpdate update = new DeltaUpdate(rebuild ? null : beginUpdate(), installCosts, releases);
+			MetricsListener metrics = this.metrics;
+			IngestStats stats = new IngestStats(metrics != null, rebuild ? current : update.graph);
+			long mutationStart = System.nanoTime();
+			Graph next = update.graph;
+			boolean done = false;
+			try {
+				JSONArray removed = (JSONArray) delta.get("removed");
+				for (int i = 0; removed != null && i < removed.size(); i++) {
+					update.remove((String) removed.get(i));
+				}
+				for (String section : new String[] {"added", "changed"}) {
+					JSONArray entries = (JSONArray) delta.get(section);
+					for (int i = 0; entries != null && i < entries.size(); i++) {
+						update.apply((JSONObject) entries.get(i));
+					}
+				}
+				if (rebuild)
+					next = update.build(current, offHeapSpillDirectory);
+				done = true;
+			} finally {
+				if (!done) {
+					resultCache.discard();
+				} else if (rebuild) {
+					// the changes are not recorded, so the cached results are dropped
+					resultCache.reset(next);
+					installCosts = update.costs;
+					releases = update.releases;
+					graph = next;
+				} else {
+					publish(next, update.costs, update.releases);
+				}
+			}
+			stats.mutationNanos = System.nanoTime() - mutationStart;
+			stats.bytes = new java.io.File(jsonFilepath).length();
+			lastIngestBytes = stats.bytes;
+			lastIngestNanos = System.nanoTime() - start;
+			lastIngestNameFootprint = 0;
+			if (metrics != null)
+				reportIngest(metrics, stats, next);
+		}
+	}
+
+	/**
+	 * The next version of the graph, the install costs and the releases while a delta is 
+	 * applied. The maps of the published version are only copied once the delta changes them.
+	 * A graph kept off the heap is not copied at all: the changes to its packages are 
+	 * recorded, and the next version is built off the heap from the published one.
+	 */
+	private static class DeltaUpdate {
+		final Graph graph;
+		Map<String, Double> costs;
+		Map<String, List<Release>> releases;
+		boolean costsCopied, releasesCopied;
+
+		/**
+		 * The packages removed, and the package of every entry applied with the dependencies 
+		 * it asked for, in order, when the changes are recorded
+		 */
+		final Set<String> removed = new java.util.HashSet<String>();
+		final List<String> appliedNames = new ArrayList<String>();
+		final List<Set<String>> appliedDependencies = new ArrayList<Set<String>>();
+
+		/**
+		 * Creates an update that changes a copy of the graph, or records the changes if the 
+		 * graph is null
+		 */
+		DeltaUpdate(Graph graph, Map<String, Double> costs, Map<String, List<Release>> releases) {
+			this.graph = graph;
+			this.costs = costs;
+			this.releases = releases;
+		}
+
+		/**
+		 * Removes a package with all the edges from and to it, its install cost and its 
+		 * releases
+		 */
+		void remove(String name) {
+			if (graph != null)
+				graph.removeVertex(name);
+			else
+				removed.add(name);
+			if (costs.containsKey(name))
+				costs().remove(name);
+			if (releases.containsKey(name))
+				releases().remove(name);
+		}
+
+		/**
+		 * Adds a package entry, or replaces the dependencies, the install cost and the release 
+		 * of the package
+		 */
+		void apply(JSONObject entry) throws ParseException {
+			String name = (String) entry.get("name");
+			if (name == null)
+				throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, "a delta entry has no name");
+			if (graph != null)
+				graph.addVertex(name);
+			Object cost = entry.get("cost");
+			if (cost instanceof Number)
+				costs().put(name, ((Number) cost).doubleValue());
+			else if (entry.containsKey("cost"))
+				throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, "the cost of " + name + " is not a number");
+			else if (costs.containsKey(name))
+				costs().remove(name);
+			List<String> dependencies = new ArrayList<String>();
+			List<String> ranges = new ArrayList<String>();
+			Object listed = entry.get("dependencies");
+			if (listed != null)
+				readDependencies(listed, dependencies, ranges);
+			// the edges of a package with releases are the dependencies of all its releases, 
+			// and an entry without a version or ranges drops the releases
+			Set<String> wanted = new java.util.LinkedHashSet<String>(dependencies);
+			Release release = newRelease(name, (String) entry.get("version"), dependencies, ranges);
+			if (release != null) {
+				putRelease(releases(), release);
+				for (Release each : releases.get(name)) {
+					wanted.addAll(each.getDependencies().keySet());
+				}
+			} else if (releases.containsKey(name)) {
+				releases().remove(name);
+			}
+			if (graph == null) {
+				appliedNames.add(name);
+				appliedDependencies.add(wanted);
+				return;
+			}
+			// only the edges that are no longer wanted are removed, the others are kept
+			for (String dependency : graph.getAdjacentVerticesOf(name)) {
+				if (!wanted.contains(dependency))
+					graph.removeEdge(name, dependency);
+			}
+			for (String dependency : wanted) {
+				graph.addEdge(name, dependency);
+			}
+		}
+
+		/**
+		 * Builds the next version of a graph kept off the heap from the published version and 
+		 * the recorded changes, with the ids and the edges that changing a copy would give. 
+		 * The edges kept keep their place among the predecessors, and the new ones follow.
+		 */
+		OffHeapGraph build(Graph current, java.io.File spillDirectory) {
+			// a package ends with the edges of its last entry, and an edge asked for by an 
+			// entry is there from then on only if every later entry of the package asks for it
+			List<Set<String>> kept = new ArrayList<Set<String>>(appliedNames.size());
+			Map<String, Set<String>> later = new HashMap<String, Set<String>>();
+			for (int i = appliedNames.size() - 1; i >= 0; i--) {
+				Set<String> wanted = new java.util.HashSet<String>(appliedDependencies.get(i));
+				Set<String> after = later.get(appliedNames.get(i));
+				if (after != null)
+					wanted.retainAll(after);
+				later.put(appliedNames.get(i), wanted);
+				kept.add(wanted);
+			}
+			Collections.reverse(kept);
+			OffHeapGraph.Builder builder = new OffHeapGraph.Builder(spillDirectory);
+			int bound = current.idBound();
+			for (int id = 0; id < bound; id++) {
+				if (current.isVertex(id) && !removed.contains(current.nameOf(id)))
+					builder.addVertex(current.nameOf(id));
+			}
+			// the edges kept from the published version keep their place among the predecessors
+			for (int id = 0; id < bound; id++) {
+				if (!current.isVertex(id))
+					continue;
+				String target = current.nameOf(id);
+				if (removed.contains(target))
+					continue;
+				for (int i = 0; i < current.inDegree(id); i++) {
+					String source = current.nameOf(current.predecessor(id, i));
+					Set<String> wanted = later.get(source);
+					if (!removed.contains(source) && (wanted == null || wanted.contains(target)))
+						builder.addEdge(source, target);
+				}
+			}
+			// the entries add their packages, dependencies and edges in order
+			for (int i = 0; i < appliedNames.size(); i++) {
+				String name = appliedNames.get(i);
+				builder.addVertex(name);
+				for (String dependency : appliedDependencies.get(i)) {
+					if (kept.get(i).contains(dependency))
+						builder.addEdge(name, dependency);
+					else
+						builder.addVertex(dependency);
+				}
+			}
+			return builder.build();
+		}
+
+		/**
+		 * Returns the install costs, copied from the published version on the first change
+		 */
+		Map<String, Double> costs() {
+			if (!costsCopied) {
+				costs = new HashMap<String, Double>(costs);
+				costsCopied = true;
+			}
+			return costs;
+		}
+
+		/**
+		 * Returns the releases, copied from the published version on the first change
+		 */
+		Map<String, List<Release>> releases() {
+			if (!releasesCopied) {
+				releases = new HashMap<String, List<Release>>(releases);
+				releasesCopied = true;
+			}
+			return releases;
+		}
+	}
+
+	/**
+	 * The bytes read by one call to constructGraph and the time it spent changing the graph
+	 */
+	private static class IngestStats {
+		/**
+		 * Whether the changes made while streaming a file are timed, one entry at a time
+		 */
+		final boolean timed;
+		long bytes;
+		long mutationNanos;
+		/**
+		 * The inserts counted by the graph before the ingest
+		 */
+		long vertexInserts, edgeInserts;
+
+		IngestStats(boolean timed, Graph next) {
+			this.timed = timed;
+			vertexInserts = next.vertexInserts();
+			edgeInserts = next.edgeInserts();
+		}
+	}
+
+	/**
+	 * This helper method reports the measurements of an ingest to the metrics listener
+	 * @param metrics - the listener
+	 * @param stats - the measurements of the ingest
+	 * @param next - the version of the graph the ingest built
+	 */
+	private void reportIngest(MetricsListener metrics, IngestStats stats, Graph next) {
+		metrics.ingestCompleted(stats.bytes, Math.max(0, lastIngestNanos - stats.mutationNanos), stats.mutationNanos, 
+				next.vertexInserts() - stats.vertexInserts, next.edgeInserts() - stats.edgeInserts);
+	}
+
+	/**
+	 * This helper method reads several json files in parallel and merges them into a graph
+	 * @param jsonFilepaths - the json data files with package dependency information
+	 * @param graph - the graph the packages are added to
+	 * @param costs - the map the install costs are added to
+	 * @param releases - the map the releases are added to
+	 * @param stats - the measurements of the ingest
+	 */
+	private void mergeGraphs(Collection<Path> jsonFilepaths, Graph graph, Map<String, Double> costs, Map<String, List<Release>> releases, IngestStats stats) throws FileNotFoundException, IOException, ParseException {
+		long start = System.nanoTime();
+		long bytes = 0, nameFootprint = 0;
+		ExecutorService pool = Executors.newFixedThreadPool(Math.max(1, Math.min(ingestParallelism, jsonFilepaths.size())));
+		try {
+			List<Future<ManifestBatch>> parsed = new ArrayList<Future<ManifestBatch>>(jsonFilepaths.size());
+			for (Path path : jsonFilepaths) {
+				parsed.add(pool.submit(() -> readBatch(path.toString())));
+			}
+			// merge the files into the graph in the given order, so that a later file wins, 
+			// while the files after the one being merged are still parsed
+			for (Future<ManifestBatch> file : parsed) {
+				ManifestBatch batch = file.get();
+				long merge = System.nanoTime();
+				for (String vertex : batch.vertices) {
+					graph.addVertex(vertex);
+				}
+				graph.addEdges(batch.sources.toArray(new String[0]), batch.targets.toArray(new String[0]));
+				costs.putAll(batch.costs);
+				for (Release release : batch.releases) {
+					putRelease(releases, release);
+				}
+				stats.mutationNanos += System.nanoTime() - merge;
+				bytes += batch.bytes;
+				nameFootprint += batch.nameFootprint;
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("interrupted while reading the json files", e);
+		} catch (ExecutionException e) {
+			// rethrow the exception of the file that failed
+			Throwable cause = e.getCause();
+			if (cause instanceof IOException)
+				throw (IOException) cause;
+			if (cause instanceof ParseException)
+				throw (ParseException) cause;
+			if (cause instanceof RuntimeException)
+				throw (RuntimeException) cause;
+			throw new IOException(cause);
+		} finally {
+			pool.shutdownNow();
+		}
+		lastIngestBytes = stats.bytes = bytes;
+		lastIngestNameFootprint = nameFootprint;
+		lastIngestNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * The packages and edges read from one json file, to be merged into the graph at once
+	 */
+	private static class ManifestBatch {
+		List<String> vertices = new ArrayList<String>();
+		List<String> sources = new ArrayList<String>();
+		List<String> targets = new ArrayList<String>();
+		Map<String, Double> costs = new HashMap<String, Double>();
+		List<Release> releases = new ArrayList<Release>();
+		long bytes;
+		long nameFootprint;
+	}
+
+	/**
+	 * This helper method reads all the packages of a json file into a batch, without touching 
+	 * the graph, so that several files can be read at the same time
+	 * @param jsonFilepath - the name of json data file with package dependency information
+	 * @return the packages and edges of the file
+	 */
+	private static ManifestBatch readBatch(String jsonFilepath) throws FileNotFoundException, IOException, ParseException {
+		ManifestBatch batch = new ManifestBatch();
+		// the names of the batch are interned, so that a popular dependency is one String
+		NameTable names = new NameTable();
+		try (ManifestReader reader = new ManifestReader(jsonFilepath, names)) {
+			while (reader.next()) {
+				String name = reader.getName();
+				batch.vertices.add(name);
+				if (!Double.isNaN(reader.getCost()))
+					batch.costs.put(name, reader.getCost());
+				Release release = newRelease(name, reader.getVersion(), reader.getDependencies(), reader.getRanges());
+				if (release != null)
+					batch.releases.add(release);
+				for (String dependency : reader.getDependencies()) {
+					batch.sources.add(name);
+					batch.targets.add(dependency);
+				}
+			}
+			batch.bytes = reader.getBytesRead();
+		}
+		batch.nameFootprint = names.getFootprint();
+		return batch;
+	}
+
+	/**
+	 * This helper method parses the whole json file at once and builds the graph from the 
+	 * document tree
+	 * @param jsonFilepath - the name of json data file with package dependency information
+	 * @param graph - the graph the packages are added to
+	 * @param costs - the map the install costs are added to
+	 * @param releases - the map the releases are added to
+	 * @param stats - the measurements of the ingest
+	 */
+	private static void parseGraph(String jsonFilepath, Graph graph, Map<String, Double> costs, Map<String, List<Release>> releases, IngestStats stats) throws FileNotFoundException, IOException, ParseException {
 		// parse the json file at the path and retrieve the array of all packages
-		Object obj = new JSONParser().parse(new FileReader(jsonFilepath));
+		Object obj;
+		try (FileReader reader = new FileReader(jsonFilepath)) {
+			obj = new JSONParser().parse(reader);
+		}
 		JSONObject jo = (JSONObject) obj;
 		JSONArray packages = (JSONArray) jo.get("packages");
+		long start = System.nanoTime();
 
 		// Retrieve the name and dependencies of every package 
 		for (int i = 0; i < packages.size(); i++) {
 			JSONObject eachPackage = (JSONObject) packages.get(i);
 			// Store this package in the graph
 			String name = (String) eachPackage.get("name");
+			if (name == null)
+				throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, "a package entry has no name");
 			graph.addVertex(name);
-			// retrieve every package in its dependencies list and store it and the 
-			// edge connecting it and current package in the graph
-			JSONArray dependencies = (JSONArray) eachPackage.get("dependencies");
-			for (int j = 0; j < dependencies.size(); j++) {
-				String dependency = (String)dependencies.get(j);
+			// the install cost is optional, but must be a number, as when the file is streamed
+			Object cost = eachPackage.get("cost");
+			if (cost instanceof Number)
+				costs.put(name, ((Number) cost).doubleValue());
+			else if (eachPackage.containsKey("cost"))
+				throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, "the cost of " + name + " is not a number");
+			List<String> dependencies = new ArrayList<String>();
+			List<String> ranges = new ArrayList<String>();
+			readDependencies(eachPackage.get("dependencies"), dependencies, ranges);
+			Release release = newRelease(name, (String) eachPackage.get("version"), dependencies, ranges);
+			if (release != null)
+				putRelease(releases, release);
+			// store every package in its dependencies list and the edge connecting it and 
+			// current package in the graph
+			for (String dependency : dependencies) {
 				graph.addVertex(dependency);
 				graph.addEdge(name, dependency);
 			}
 		}
+		stats.mutationNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * This helper method reads the json file one package entry at a time and adds each entry 
+	 * to the graph as soon as it is read
+	 * @param jsonFilepath - the name of json data file with package dependency information
+	 * @param graph - the graph the packages are added to
+	 * @param costs - the map the install costs are added to
+	 * @param releases - the map the releases are added to
+	 * @param names - the table the package names are interned in
+	 * @param stats - the measurements of the ingest, to which the bytes read are added
+	 */
+	private static void streamGraph(String jsonFilepath, Graph graph, Map<String, Double> costs, Map<String, List<Release>> releases, NameTable names, IngestStats stats) throws FileNotFoundException, IOException, ParseException {
+		try (ManifestReader reader = new ManifestReader(jsonFilepath, names)) {
+			while (reader.next()) {
+				// parsing and changing the graph alternate, so the changes are only timed 
+				// when they are measured
+				long start = stats.timed ? System.nanoTime() : 0;
+				addEntry(reader, graph, costs, releases);
+				if (stats.timed)
+					stats.mutationNanos += System.nanoTime() - start;
+			}
+			stats.bytes = reader.getBytesRead();
+		}
+	}
+
+	/**
+	 * This helper method adds the package entry a reader is on to a graph
+	 * @param reader - the reader
+	 * @param graph - the graph the package is added to
+	 * @param costs - the map the install cost is added to
+	 * @param releases - the map the release is added to
+	 */
+	private static void addEntry(ManifestReader reader, Graph graph, Map<String, Double> costs, Map<String, List<Release>> releases) throws ParseException {
+		String name = reader.getName();
+		graph.addVertex(name);
+		if (!Double.isNaN(reader.getCost()))
+			costs.put(name, reader.getCost());
+		Release release = newRelease(name, reader.getVersion(), reader.getDependencies(), reader.getRanges());
+		if (release != null)
+			putRelease(releases, release);
+		for (String dependency : reader.getDependencies()) {
+			graph.addEdge(name, dependency);
+		}
+	}
+
+	/**
+	 * This helper method returns the published graph once the packages given and all their 
+	 * dependencies have been read from the lazy json file, if there is one
+	 * @param packages - the names of the packages, which may be null or missing
+	 * @return the published graph
+	 */
+	private Graph graphFor(String... packages) {
+		ManifestIndex index = lazyManifest;
+		if (index == null)
+			return graph;
+		// the packages are added to the set once the graph holding their closure is published, 
+		// and a name without an entry is looked up in the index, so it never takes the lock
+		Set<String> loaded = lazyLoaded;
+		boolean missing = false;
+		for (String pkg : packages) {
+			missing |= pkg != null && !loaded.contains(pkg) && index.contains(pkg);
+		}
+		if (!missing)
+			return graph;
+		synchronized (writeLock) {
+			try {
+				loadPackages(packages);
+			} catch (IOException e) {
+				throw new java.io.UncheckedIOException(e);
+			} catch (ParseException e) {
+				throw new IllegalStateException("cannot parse the entries of " + lazyManifest.getJsonFilepath(), e);
+			}
+			return graph;
+		}
+	}
+
+	/**
+	 * This helper method returns the published graph once all the packages have been read 
+	 * from the lazy json file, if there is one
+	 * @return the published graph
+	 */
+	private Graph wholeGraph() {
+		if (lazyManifest == null)
+			return graph;
+		synchronized (writeLock) {
+			ManifestIndex index = lazyManifest;
+			try {
+				loadAllPackages();
+			} catch (IOException e) {
+				throw new java.io.UncheckedIOException(e);
+			} catch (ParseException e) {
+				throw new IllegalStateException("cannot parse " + index.getJsonFilepath(), e);
+			}
+			return graph;
+		}
+	}
+
+	/**
+	 * This helper method reads the entries of some packages and of all their dependencies 
+	 * from the lazy json file, through its index, and publishes them at once. Only the 
+	 * packages not read yet are visited. It must be called with the write lock.
+	 * @param packages - the names of the packages, which may be null or missing
+	 */
+	private void loadPackages(String... packages) throws IOException, ParseException {
+		ManifestIndex index = lazyManifest;
+		if (index == null)
+			return;
+		if (!index.isCurrent())
+			throw new IOException(index.getJsonFilepath() + " changed since it was indexed");
+		Set<String> loaded = lazyLoaded;
+		Set<String> seen = new java.util.HashSet<String>();
+		java.util.ArrayDeque<String> queue = new java.util.ArrayDeque<String>();
+		for (String pkg : packages) {
+			if (pkg != null && !loaded.contains(pkg) && index.contains(pkg) && seen.add(pkg))
+				queue.add(pkg);
+		}
+		if (queue.isEmpty())
+			return;
+		Graph next = beginUpdate();
+		Map<String, Double> costs = new HashMap<String, Double>(installCosts);
+		Map<String, List<Release>> nextReleases = new HashMap<String, List<Release>>(releases);
+		boolean done = false;
+		try (ManifestReader reader = new ManifestReader(index.getJsonFilepath(), new NameTable())) {
+			while (!queue.isEmpty()) {
+				String pkg = queue.poll();
+				// a package that is only a dependency has no entry, but is in the graph
+				next.addVertex(pkg);
+				for (long offset : index.getEntryOffsets(pkg)) {
+					reader.seek(offset);
+					if (!reader.next() || !pkg.equals(reader.getName()))
+						throw new IOException(index.getJsonFilepath() + " changed since it was indexed");
+					addEntry(reader, next, costs, nextReleases);
+					for (String dependency : reader.getDependencies()) {
+						if (!loaded.contains(dependency) && seen.add(dependency))
+							queue.add(dependency);
+					}
+				}
+			}
+			done = true;
+		} finally {
+			if (done)
+				publish(next, costs, nextReleases);
+			else
+				resultCache.discard();
+		}
+		loaded.addAll(seen);
+	}
+
+	/**
+	 * This helper method reads the entries of the lazy json file that have not been read yet 
+	 * and publishes them, so that the graph holds the whole file. It must be called with the 
+	 * write lock.
+	 */
+	private void loadAllPackages() throws IOException, ParseException {
+		ManifestIndex index = lazyManifest;
+		if (index == null)
+			return;
+		// the packages read so far came from the indexed file, so a changed one is not mixed in
+		if (!index.isCurrent())
+			throw new IOException(index.getJsonFilepath() + " changed since it was indexed");
+		Set<String> loaded = lazyLoaded;
+		Graph next = beginUpdate();
+		Map<String, Double> costs = new HashMap<String, Double>(installCosts);
+		Map<String, List<Release>> nextReleases = new HashMap<String, List<Release>>(releases);
+		boolean done = false;
+		try (ManifestReader reader = new ManifestReader(index.getJsonFilepath(), new NameTable())) {
+			while (reader.next()) {
+				if (!loaded.contains(reader.getName()))
+					addEntry(reader, next, costs, nextReleases);
+			}
+			done = true;
+		} finally {
+			if (done)
+				publish(next, costs, nextReleases);
+			else
+				resultCache.discard();
+		}
+		lazyManifest = null;
+	}
+
+	/**
+	 * This helper method reads the dependencies of a parsed package entry, which are an array 
+	 * of names, or an object from names to ranges
+	 * @param listed - the "dependencies" of the entry
+	 * @param dependencies - the list the names of the dependencies are added to
+	 * @param ranges - the list the range of every dependency is added to, "*" for an array
+	 */
+	private static void readDependencies(Object listed, List<String> dependencies, List<String> ranges) {
+		if (listed instanceof JSONObject) {
+			for (Object entry : ((JSONObject) listed).entrySet()) {
+				dependencies.add((String) ((Map.Entry<?, ?>) entry).getKey());
+				ranges.add((String) ((Map.Entry<?, ?>) entry).getValue());
+			}
+		} else {
+			JSONArray array = (JSONArray) listed;
+			for (int j = 0; j < array.size(); j++) {
+				dependencies.add((String) array.get(j));
+				ranges.add("*");
+			}
+		}
+	}
+
+	/**
+	 * This helper method creates the release of a package entry that has a version or gives 
+	 * the ranges of its dependencies
+	 * @param name - the name of the package
+	 * @param version - the "version" of the entry, or null
+	 * @param dependencies - the names of the dependencies
+	 * @param ranges - the range of every dependency, "*" for any version
+	 * @return the release, or null if the entry has no version and no range
+	 */
+	private static Release newRelease(String name, String version, List<String> dependencies, List<String> ranges) throws ParseException {
+		boolean constrained = version != null;
+		for (String range : ranges) {
+			constrained |= !range.trim().equals("*");
+		}
+		if (!constrained || name == null)
+			return null;
+		try {
+			Map<String, VersionRange> accepted = new LinkedHashMap<String, VersionRange>();
+			for (int i = 0; i < dependencies.size(); i++) {
+				accepted.put(dependencies.get(i), VersionRange.parse(ranges.get(i)));
+			}
+			return new Release(name, version == null ? Version.ZERO : Version.parse(version), accepted);
+		} catch (IllegalArgumentException e) {
+			throw new ParseException(ParseException.ERROR_UNEXPECTED_TOKEN, e.getMessage());
+		}
+	}
+
+	/**
+	 * This helper method adds a release to the releases of its package, replacing a release 
+	 * of the same version. The list of the package is copied, since it may be published.
+	 * @param releases - the releases of every package
+	 * @param release - the release
+	 */
+	private static void putRelease(Map<String, List<Release>> releases, Release release) {
+		List<Release> list = new ArrayList<Release>();
+		List<Release> old = releases.get(release.getName());
+		if (old != null) {
+			for (Release each : old) {
+				if (!each.getVersion().equals(release.getVersion()))
+					list.add(each);
+			}
+		}
+		list.add(release);
+		list.sort((a, b) -> b.getVersion().compareTo(a.getVersion()));
+		releases.put(release.getName(), Collections.unmodifiableList(list));
 	}
 
 	/**
@@ -89,7 +1347,58 @@ public class PackageManager {
 	 * @return Set<String> of all the packages
 	 */
 	public Set<String> getAllPackages() {
-		return graph.getAllVertices();
+		return wholeGraph().getAllVertices();
+	}
+
+	/**
+	 * Returns whether a package is in the dependency graph, without copying the set of all 
+	 * packages.
+	 * 
+	 * @param pkg the name of the package
+	 * @return true if the package is in the graph, false otherwise
+	 */
+	public boolean containsPackage(String pkg) {
+		ManifestIndex index = lazyManifest;
+		return graph.containsVertex(pkg) || (index != null && index.contains(pkg));
+	}
+
+	/**
+	 * Returns the packages that depend directly on a package, in case-insensitive alphabetic 
+	 * order. The dependents are kept by the graph, so only they are visited.
+	 * 
+	 * @param pkg the name of the package
+	 * @return the packages listing the package among their dependencies
+	 * @throws PackageNotFoundException if the package does not exist in the dependency graph
+	 */
+	public List<String> getDirectDependents(String pkg) throws PackageNotFoundException {
+		Graph graph = wholeGraph();
+		if (!graph.containsVertex(pkg))
+			throw new PackageNotFoundException();
+		int id = graph.idOf(pkg);
+		List<String> dependents = new ArrayList<String>(graph.inDegree(id));
+		for (int i = 0; i < graph.inDegree(id); i++) {
+			dependents.add(graph.nameOf(graph.predecessor(id, i)));
+		}
+		dependents.sort(String.CASE_INSENSITIVE_ORDER);
+		return dependents;
+	}
+
+	/**
+	 * Returns every package that depends on a package, directly or through its dependencies, 
+	 * i.e. every package affected if that package is broken. The packages are listed by 
+	 * distance, the direct dependents first, and the time taken is proportional to the number 
+	 * of dependents and of their edges. Cycles are allowed.
+	 * 
+	 * @param pkg the name of the package
+	 * @return the packages depending on the package, not including the package itself
+	 * @throws PackageNotFoundException if the package does not exist in the dependency graph
+	 */
+	public List<String> getTransitiveDependents(String pkg) throws PackageNotFoundException {
+		Graph graph = wholeGraph();
+		if (!graph.containsVertex(pkg))
+			throw new PackageNotFoundException();
+		// breadth-first search over the predecessors
+		return Traversal.get().dependents(graph, graph.idOf(pkg));
 	}
 
 	/**
@@ -110,39 +1419,74 @@ public class PackageManager {
 	 * dependency graph.
 	 */
 	public List<String> getInstallationOrder(String pkg) throws CycleException, PackageNotFoundException {
+		return getInstallationOrder(graphFor(pkg), pkg);
+	}
+
+	/**
+	 * A query on one version of the graph, to be measured
+	 */
+	private interface Query<E extends Exception> {
+		List<String> run() throws CycleException, E;
+	}
+
+	/**
+	 * This helper method runs a query and reports its latency, the vertices it visited and the 
+	 * cycle it found, if any, to the metrics listener
+	 * @param metrics - the listener
+	 * @param kind - the kind of query
+	 * @param query - the query
+	 * @return the result of the query
+	 */
+	private static <E extends Exception> List<String> measure(MetricsListener metrics, MetricsListener.Query kind, Query<E> query) throws CycleException, E {
+		Traversal traversal = Traversal.get();
+		long visited = traversal.getVisitedCount();
+		long start = System.nanoTime();
+		List<String> result;
+		try {
+			result = query.run();
+		} catch (CycleException e) {
+			metrics.cycleDetected(kind);
+			throw e;
+		}
+		long nanos = System.nanoTime() - start;
+		// the topological sort of all the packages visits every vertex once, without the 
+		// traversal context
+		visited = kind == MetricsListener.Query.FULL_ORDER ? result.size() : traversal.getVisitedCount() - visited;
+		metrics.queryCompleted(kind, nanos, visited);
+		return result;
+	}
+
+	/**
+	 * This helper method finds the installation order of a package in one version of the 
+	 * graph, measuring it if there is a metrics listener
+	 * @param graph - the version of the graph
+	 * @param pkg - the name of the package
+	 * @return the order in which the packages have to be installed
+	 */
+	private List<String> getInstallationOrder(Graph graph, String pkg) throws CycleException, PackageNotFoundException {
+		MetricsListener metrics = this.metrics;
+		if (metrics == null)
+			return findInstallationOrder(graph, pkg);
+		return measure(metrics, MetricsListener.Query.INSTALLATION_ORDER, () -> findInstallationOrder(graph, pkg));
+	}
+
+	/**
+	 * This helper method finds the installation order of a package in one version of the graph
+	 * @param graph - the version of the graph
+	 * @param pkg - the name of the package
+	 * @return the order in which the packages have to be installed
+	 */
+	private List<String> findInstallationOrder(Graph graph, String pkg) throws CycleException, PackageNotFoundException {
 		// check if the package exists in the graph
-		if (!getAllPackages().contains(pkg))
+		if (!graph.containsVertex(pkg))
 			throw new PackageNotFoundException();
-		// the helper stack for depth-first search
-		Stack<String> stack = new Stack<String>();
-		// the helper list indicating visited vertices
-		List<String> visited = new ArrayList<String>();
-		// the list storing the installation order
-		List <String> order = new ArrayList<String>();
-
-		stack.push(pkg);
-		visited.add(pkg);
-
-		outerloop:
-			while (!stack.isEmpty()) {
-				String current = stack.peek();
-				List<String> successors= graph.getAdjacentVerticesOf(current);
-				// look for an unvisited successor of current vertex
-				for (int i = 0; i < successors.size(); i++) {
-					String temp = successors.get(i);
-					if (!visited.contains(temp)) {
-						stack.push(temp);
-						visited.add(temp);
-						continue outerloop;
-					}
-					// If the vertex has been visited and it is in the stack, it means that there is a cycle
-					else if (stack.contains(temp)) {
-						throw new CycleException();
-					}
-				}
-				// if all successors are visited, the vertex would be popped out of the stack and stored
-				order.add(stack.pop());
-			}
+		List<String> cached = resultCache.get(pkg, graph);
+		if (cached != null)
+			return cached;
+		// depth-first search over the ids, every package listed once all its dependencies are
+		List<String> order = Traversal.get().installationOrder(graph, graph.idOf(pkg));
+		// the order holds every package it depends on
+		resultCache.put(pkg, order, order, graph);
 		return order;
 	}
 
@@ -167,37 +1511,120 @@ public class PackageManager {
 	 * do not exist in the dependency graph.
 	 */
 	public List<String> toInstall(String newPkg, String installedPkg) throws CycleException, PackageNotFoundException {
+		Graph graph = graphFor(newPkg, installedPkg);
+		MetricsListener metrics = this.metrics;
+		if (metrics == null)
+			return toInstall(graph, newPkg, installedPkg);
+		return measure(metrics, MetricsListener.Query.TO_INSTALL, () -> toInstall(graph, newPkg, installedPkg));
+	}
+
+	/**
+	 * This helper method finds the packages that need to be newly installed in one version of 
+	 * the graph when one package is installed, caching the result
+	 * @param graph - the version of the graph
+	 * @param newPkg - the package to be installed
+	 * @param installedPkg - the installed package
+	 * @return the packages that need to be newly installed
+	 */
+	private List<String> toInstall(Graph graph, String newPkg, String installedPkg) throws CycleException, PackageNotFoundException {
 		// check if the package exists in the graph
-		if (!(getAllPackages().contains(newPkg) && getAllPackages().contains(installedPkg)))
+		if (!(graph.containsVertex(newPkg) && graph.containsVertex(installedPkg)))
 			throw new PackageNotFoundException();
-		// the helper stack for depth-first search
-		Stack<String> stack = new Stack<String>();
-		// the helper list indicating visited vertices
-		List<String> visited = new ArrayList<String>();
-		// the list storing the installation order
-		List <String> toInstall = new ArrayList<String>();
-
-		visited.add(installedPkg);
-		stack.push(installedPkg);
-
-		// Put all dependencies of installed package into the list of visited vertices
-		while (!stack.isEmpty()) {
-			String current = stack.pop();
-			List<String> successors= graph.getAdjacentVerticesOf(current);
-			// check all the unvisited successors
-			for (int i = 0; i < successors.size(); i++) {
-				if (!visited.contains(successors.get(i))) {
-					stack.push(successors.get(i));
-					visited.add(successors.get(i));
-				} 
-			}
+		List<String> key = java.util.Arrays.asList(newPkg, installedPkg);
+		List<String> cached = resultCache.get(key, graph);
+		if (cached != null)
+			return cached;
+		InstalledState installed = new InstalledState();
+		installed.add(installedPkg);
+		List<String> toInstall = toInstall(graph, newPkg, installed);
+
+		// the result depends on the dependencies of both packages
+		List<String> closure = new ArrayList<String>(toInstall);
+		BitSet marked = installed.closure(graph);
+		for (int id = marked.nextSetBit(0); id >= 0; id = marked.nextSetBit(id + 1)) {
+			closure.add(graph.nameOf(id));
 		}
+		resultCache.put(key, toInstall, closure, graph);
+		return toInstall;
+	}
 
-		// the remaining dependencies that are not in the visited list would be packages that need to 
-		// be installed, and the order would be acquire through DFS
-		DFS(newPkg, visited, stack, toInstall);
+	/**
+	 * Given a package to be installed and all the packages already installed, returns the 
+	 * packages that need to be newly installed, in the same order as toInstall with one 
+	 * installed package.
+	 * 
+	 * @param newPkg the package to be installed
+	 * @param installed the packages already installed
+	 * @return List<String>, packages that need to be newly installed.
+	 * @throws CycleException if you encounter a cycle among the dependencies that need to be 
+	 * newly installed
+	 * @throws PackageNotFoundException if any of the packages passed do not exist in the 
+	 * dependency graph.
+	 */
+	public List<String> toInstall(String newPkg, Collection<String> installed) throws CycleException, PackageNotFoundException {
+		List<String> packages = new ArrayList<String>(installed);
+		packages.add(newPkg);
+		Graph graph = graphFor(packages.toArray(new String[0]));
+		for (String pkg : installed) {
+			if (!graph.containsVertex(pkg))
+				throw new PackageNotFoundException();
+		}
+		if (!graph.containsVertex(newPkg))
+			throw new PackageNotFoundException();
+		return toInstall(graph, newPkg, new InstalledState(installed), this.metrics);
+	}
 
-		return toInstall;
+	/**
+	 * Given a package to be installed and the state of a host, returns the packages that need 
+	 * to be newly installed. The closure of the installed packages is kept in the state, so 
+	 * repeated queries against the same state only traverse the part of the closure of the 
+	 * new package that is not installed. Installed packages that are not in the dependency 
+	 * graph are ignored.
+	 * 
+	 * @param newPkg the package to be installed
+	 * @param installed the packages already installed
+	 * @return List<String>, packages that need to be newly installed.
+	 * @throws CycleException if you encounter a cycle among the dependencies that need to be 
+	 * newly installed
+	 * @throws PackageNotFoundException if the package to be installed does not exist in the 
+	 * dependency graph.
+	 */
+	public List<String> toInstall(String newPkg, InstalledState installed) throws CycleException, PackageNotFoundException {
+		List<String> packages = new ArrayList<String>(installed.getPackages());
+		packages.add(newPkg);
+		Graph graph = graphFor(packages.toArray(new String[0]));
+		if (!graph.containsVertex(newPkg))
+			throw new PackageNotFoundException();
+		return toInstall(graph, newPkg, installed, this.metrics);
+	}
+
+	/**
+	 * This helper method finds the packages that need to be newly installed in one version of 
+	 * the graph, measuring it if there is a metrics listener
+	 * @param graph - the version of the graph
+	 * @param newPkg - the package to be installed
+	 * @param installed - the packages already installed
+	 * @param metrics - the metrics listener, or null
+	 * @return the packages that need to be newly installed
+	 */
+	private static List<String> toInstall(Graph graph, String newPkg, InstalledState installed, MetricsListener metrics) throws CycleException, PackageNotFoundException {
+		if (metrics == null)
+			return toInstall(graph, newPkg, installed);
+		return measure(metrics, MetricsListener.Query.TO_INSTALL, () -> toInstall(graph, newPkg, installed));
+	}
+
+	/**
+	 * This helper method finds the packages that need to be newly installed in one version of 
+	 * the graph
+	 * @param graph - the version of the graph
+	 * @param newPkg - the package to be installed
+	 * @param installed - the packages already installed
+	 * @return the packages that need to be newly installed
+	 */
+	private static List<String> toInstall(Graph graph, String newPkg, InstalledState installed) throws CycleException {
+		// the packages that are not in the closure of the installed packages would be packages 
+		// that need to be installed, and the order would be acquired through DFS
+		return Traversal.get().preorder(graph, graph.idOf(newPkg), installed.closure(graph));
 	}
 
 	/**
@@ -209,102 +1636,102 @@ public class PackageManager {
 	 * 
 	 * returns a valid installation order that will not violate any dependencies
 	 * 
+	 * the order is the post-order of a depth-first search from the packages no other package 
+	 * depends on, the search starting from the last of them in case-insensitive alphabetic 
+	 * order and following the dependencies of every package in that order
+	 * 
 	 * @return List<String>, order in which all the packages have to be installed
 	 * @throws CycleException if you encounter a cycle in the graph
 	 */
 	public List<String> getInstallationOrderForAllPackages() throws CycleException {
-		// the helper stack for depth-first search
-		Stack<String> stack = new Stack<String>();
-		// the helper list indicating visited vertices
-		List<String> visited = new ArrayList<String>();
-		// the list storing the installation order
-		List <String> order = new ArrayList<String>();
-		// the list storing all vertices
-		List<String> vertices = new ArrayList<String>(getAllPackages());
-		vertices.sort(String.CASE_INSENSITIVE_ORDER);
-
-		// DFS to detect cycles
-		for (String temp : vertices) {
-			Stack<String> DFSStack = new Stack<String>();
-			List<String> DFSVisited = new ArrayList<String>();
-			List<String> DFSOrder = new ArrayList<String>();
-			DFS(temp, DFSVisited, DFSStack, DFSOrder);
-		}
-
-		// find all vertices with no predecessors to begin Topological Ordering
-		List<List<String>> allAdjacency = new ArrayList<List<String>>();
-		//store the adjacency list of every vertex in a list
-		for (int i = 0; i < vertices.size(); i++) {
-			allAdjacency.add(graph.getAdjacentVerticesOf(vertices.get(i)));
-		}
-		outerloop:
-			for (int i = 0; i < vertices.size(); i++) {
-				String vertex = vertices.get(i);
-				// for every vertex in the graph, check all adjacency lists and see if it is present; and if
-				// it is not in any of the lists, this vertex does not have predecessors
-				for (int j = 0; j < allAdjacency.size(); j++) {
-					if (allAdjacency.get(j).contains(vertex)) {
-						continue outerloop;
-					}
-				}
-				stack.push(vertex);
-				visited.add(vertex);
-			}
+		return getInstallationOrderForAllPackages(wholeGraph());
+	}
 
-		// Topological Ordering begins
-		outerloop:
-			while (!stack.isEmpty()) {
-				List<String> successors= graph.getAdjacentVerticesOf(stack.peek());
-				// look for an unvisited successor of current vertex
-				for (int i = 0; i < successors.size(); i++) {
-					String temp = successors.get(i);
-					if (!visited.contains(temp)) {
-						stack.push(temp);
-						visited.add(temp);
-						continue outerloop;
-					}
-				}
-				// if all successors are visited, the vertex would be popped out of the stack and stored
-				order.add(stack.pop());
-			}
-			return order;
-	}
-
-	/**
-	 * This helper method uses depth-first search to acquire traversal order and detect cycle in the graph
-	 * @param vertex - current vertex
-	 * @param visited - the list of visited vertex
-	 * @param stack - the stack to help depth-first traversal
-	 * @param order - the list containing traversal order
-	 */
-	private void DFS(String vertex, List<String> visited, Stack<String> stack, List<String> order) throws CycleException {
-		// vertices in the stack are vertices in current path that have been visited, so if the 
-		// current vertex, as a successor of its predecessor, is already in the path, then there
-		// is a cycle
-		if (stack.contains(vertex))
-			throw new CycleException();
-		if (!visited.contains(vertex)) {
-			// If current vertex has not been visited, it would be the next vertex in the traversal of 
-			// current path, so it should be marked as visited and pushed to the stack
-			stack.push(vertex);
-			visited.add(vertex);
-			order.add(vertex);
-		} else {
-			// if current vertex has been visited but not in the stack, it has to be in a path that has 
-			// already been traversed, so it would not cause a cycle and represent the end of traversal
-			// of current path
-			return;
-		}
+	/**
+	 * This helper method finds the installation order of all the packages of one version of 
+	 * the graph, measuring it if there is a metrics listener
+	 * @param graph - the version of the graph
+	 * @return the order in which all the packages have to be installed
+	 */
+	private List<String> getInstallationOrderForAllPackages(Graph graph) throws CycleException {
+		MetricsListener metrics = this.metrics;
+		if (metrics == null)
+			return sortAllPackages(graph);
+		return measure(metrics, MetricsListener.Query.FULL_ORDER, () -> sortAllPackages(graph));
+	}
 
-		// Retrieve all the successors of current vertex and check if any of them would cause a cycle
-		List<String> successors= graph.getAdjacentVerticesOf(stack.peek());
-		for (int i = 0; i < successors.size(); i++) {
-			DFS(successors.get(i), visited, stack, order);
+	/**
+	 * This helper method finds the installation order of all the packages of one version of 
+	 * the graph
+	 * @param graph - the version of the graph
+	 * @return the order in which all the packages have to be installed
+	 */
+	private static List<String> sortAllPackages(Graph graph) throws CycleException {
+		// sort the whole graph at once, in one depth-first search
+		int[] sorted = TopologicalOrder.sort(graph);
+		List<String> order = new ArrayList<String>(sorted.length);
+		for (int id : sorted) {
+			order.add(graph.nameOf(id));
 		}
+		return order;
+	}
 
-		// After all its successors in current path have been traversed, back trace should begin by 
-		// removing current vertex out of stack, and no cycle would be caused by current vertex
-		stack.pop();
+	/**
+	 * Returns the plan for installing a package and its dependencies in parallel: the waves 
+	 * of packages that can be installed at the same time, the critical path weighted by the 
+	 * "cost" of every package entry (1 if the entry has none), and schedules for any number 
+	 * of workers.
+	 * 
+	 * @param pkg the name of the package
+	 * @return the installation plan of the package
+	 * @throws CycleException if there is a cycle among the dependencies of the package
+	 * @throws PackageNotFoundException if the package does not exist in the dependency graph
+	 */
+	public InstallPlan getInstallationPlan(String pkg) throws CycleException, PackageNotFoundException {
+		Graph graph = graphFor(pkg);
+		return new InstallPlan(graph, getInstallationOrder(graph, pkg), installCosts);
+	}
+
+	/**
+	 * Returns the plan for installing all the packages in parallel.
+	 * 
+	 * @return the installation plan of all the packages
+	 * @throws CycleException if you encounter a cycle in the graph
+	 */
+	public InstallPlan getInstallationPlanForAllPackages() throws CycleException {
+		Graph graph = wholeGraph();
+		return new InstallPlan(graph, getInstallationOrderForAllPackages(graph), installCosts);
+	}
+
+	/**
+	 * Installs a package and all of its dependencies by calling an install action for every 
+	 * one of them. Each package is started as soon as all of its dependencies are installed, 
+	 * with at most the given number of installs running at the same time. If an install 
+	 * fails, the packages that depend on it are cancelled and the others are still installed.
+	 * 
+	 * @param pkg the name of the package
+	 * @param action the action installing one package
+	 * @param concurrency the largest number of installs running at the same time
+	 * @return the installed, failed and cancelled packages
+	 * @throws CycleException if there is a cycle among the dependencies of the package
+	 * @throws PackageNotFoundException if the package does not exist in the dependency graph
+	 * @throws InterruptedException if the calling thread is interrupted while installing
+	 */
+	public InstallExecutor.Report install(String pkg, InstallAction action, int concurrency) throws CycleException, PackageNotFoundException, InterruptedException {
+		return new InstallExecutor(concurrency).run(getInstallationPlan(pkg), action);
+	}
+
+	/**
+	 * Returns the install cost of a package, given by the "cost" of its entry in the json 
+	 * file.
+	 * 
+	 * @param pkg the name of the package
+	 * @return the cost of the package, 1 if its entry has no cost
+	 */
+	public double getInstallCost(String pkg) {
+		graphFor(pkg);
+		Double cost = installCosts.get(pkg);
+		return cost == null ? 1 : cost;
 	}
 
 	/**
@@ -317,29 +1744,208 @@ public class PackageManager {
 	 * Example: if A depends on B and C, and B depends on C, and C depends on D.  
 	 * Then,  A has 3 dependencies - B,C and D.
 	 * 
+	 * The counts are exact, unless the graph has more packages than the threshold set by 
+	 * setApproximationThreshold, in which case they are estimated and the package returned 
+	 * may not have the most dependencies.
+	 * 
 	 * @return String, name of the package with most dependencies.
 	 * @throws CycleException if you encounter a cycle in the graph
 	 */
 	public String getPackageWithMaxDependencies() throws CycleException {
-		List<String> allPackages = new ArrayList<String>(getAllPackages());
-		String max = "";
-		int val = -1;
-		// for every vertex, gets its installation order, and the size of its order
-		// would be its number of dependencies
-		for (int i = 0; i < allPackages.size(); i++) {
-			try {
-				String current = allPackages.get(i);
-				int tempVal = getInstallationOrder(current).size();
-				// compare the size to the currently largest size, update it it current size is larger
-				if (tempVal > val) {
-					val = tempVal;
-					max = current;
-				}
-			} catch (PackageNotFoundException e) {
-				e.printStackTrace();
-			}
+		List<String> top = getPackagesWithMostDependencies(1);
+		return top.isEmpty() ? "" : top.get(0);
+	}
+
+	/**
+	 * Returns the number of distinct packages a package depends on, directly or through its 
+	 * dependencies. The counts of all packages are computed together in one pass and kept 
+	 * until the graph changes. If the graph has more packages than the threshold set by 
+	 * setApproximationThreshold, the count is an estimate.
+	 * 
+	 * @param pkg the name of the package
+	 * @return the number of transitive dependencies of the package
+	 * @throws CycleException if there is a cycle in the graph
+	 * @throws PackageNotFoundException if the package does not exist in the dependency graph
+	 */
+	public int getTransitiveDependencyCount(String pkg) throws CycleException, PackageNotFoundException {
+		Graph graph = wholeGraph();
+		if (!graph.containsVertex(pkg))
+			throw new PackageNotFoundException();
+		return getClosure(graph).getCount(graph.idOf(pkg));
+	}
+
+	/**
+	 * Returns the k packages with the most transitive dependencies, from the most to the 
+	 * least. Packages with the same number of dependencies are listed in case-insensitive 
+	 * alphabetic order. If the graph has more packages than the threshold set by 
+	 * setApproximationThreshold, the packages are ranked by estimated counts.
+	 * 
+	 * @param k the number of packages to return
+	 * @return the names of at most k packages
+	 * @throws CycleException if there is a cycle in the graph
+	 */
+	public List<String> getPackagesWithMostDependencies(int k) throws CycleException {
+		if (k < 0)
+			throw new IllegalArgumentException("k must not be negative");
+		return getClosure(wholeGraph()).getTop(k);
+	}
+
+	/**
+	 * This helper method returns the transitive dependency counts of a version of the graph, 
+	 * computing them again if they were computed for another version. Readers racing on a new 
+	 * version may each compute the counts, and the last one is kept.
+	 * @param graph - the version of the graph
+	 * @return the transitive dependency counts
+	 */
+	private DependencyClosure getClosure(Graph graph) throws CycleException {
+		DependencyClosure counts = closure;
+		if (counts == null || !counts.isCurrent(graph)) {
+			counts = new DependencyClosure(graph, graph.order() > approximationThreshold);
+			closure = counts;
+		}
+		return counts;
+	}
+
+	/**
+	 * Returns the dependency statistics of every package: the number of transitive 
+	 * dependencies and dependents, the longest chain of dependencies, and the number of direct 
+	 * dependents and dependencies. They are computed in a few parallel passes over the whole 
+	 * graph on the common fork-join pool, and kept until the graph changes. Above the 
+	 * approximation threshold, the transitive counts are estimated.
+	 * 
+	 * @return the statistics of the published graph
+	 * @throws CycleException if there is a cycle in the graph
+	 */
+	public RegistryStatistics getRegistryStatistics() throws CycleException {
+		Graph graph = wholeGraph();
+		// readers racing on a new version may each compute the statistics, and the last one is kept
+		RegistryStatistics result = statistics;
+		if (result == null || !result.isCurrent(graph)) {
+			result = new RegistryStatistics(graph, graph.order() > approximationThreshold, ForkJoinPool.commonPool());
+			statistics = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Writes the dependency statistics of every package to a file, as json if the name of the 
+	 * file ends with .json and as CSV otherwise. The report is written one package at a time.
+	 * 
+	 * @param filepath the path of the report
+	 * @throws CycleException if there is a cycle in the graph
+	 * @throws IOException if the report cannot be written
+	 */
+	public void exportStatistics(String filepath) throws CycleException, IOException {
+		RegistryStatistics report = getRegistryStatistics();
+		try (java.io.Writer out = java.nio.file.Files.newBufferedWriter(java.nio.file.Paths.get(filepath), java.nio.charset.StandardCharsets.UTF_8)) {
+			if (filepath.toLowerCase().endsWith(".json"))
+				report.writeJson(out);
+			else
+				report.writeCsv(out);
+		}
+	}
+
+	/**
+	 * Chooses one version of a package and of every package it depends on, directly or 
+	 * through its dependencies, such that every chosen release accepts the chosen versions of 
+	 * its dependencies. The highest versions are preferred, and a conflict backtracks to the 
+	 * choice that caused it. Packages whose entries have no version count as version 0.
+	 * 
+	 * @param pkg the name of the package
+	 * @return the chosen version of every package, from the package to its dependencies
+	 * @throws PackageNotFoundException if the package does not exist in the dependency graph
+	 * @throws ResolutionException if no choice satisfies all the constraints
+	 */
+	public Map<String, Version> resolveVersions(String pkg) throws PackageNotFoundException, ResolutionException {
+		return resolveVersions(pkg, "*");
+	}
+
+	/**
+	 * Chooses one version of a package within a range and of every package it depends on, 
+	 * directly or through its dependencies, such that every chosen release accepts the chosen 
+	 * versions of its dependencies. The conflicts learned are kept until the graph changes, 
+	 * so later resolutions do not explore them again.
+	 * 
+	 * @param pkg the name of the package
+	 * @param range the versions of the package that are accepted, such as "^1.2"
+	 * @return the chosen version of every package, from the package to its dependencies
+	 * @throws PackageNotFoundException if the package does not exist in the dependency graph
+	 * @throws ResolutionException if no choice satisfies all the constraints
+	 * @throws IllegalArgumentException if the range cannot be parsed
+	 */
+	public Map<String, Version> resolveVersions(String pkg, String range) throws PackageNotFoundException, ResolutionException {
+		VersionRange accepted = VersionRange.parse(range);
+		Graph graph = graphFor(pkg);
+		if (!graph.containsVertex(pkg))
+			throw new PackageNotFoundException();
+		return getResolver(graph).resolve(pkg, accepted);
+	}
+
+	/**
+	 * This helper method returns the version resolver of a version of the graph, creating it 
+	 * again if it was created for another version
+	 * @param graph - the version of the graph
+	 * @return the resolver
+	 */
+	private VersionResolver getResolver(Graph graph) {
+		VersionResolver current = resolver;
+		if (current == null || !current.isCurrent(graph)) {
+			// the releases are published before the graph, so they belong to this version 
+			// unless a newer one has been published since
+			Map<String, List<Release>> published = releases;
+			if (graph != this.graph)
+				return new VersionResolver(graph, published);
+			current = new VersionResolver(graph, published);
+			resolver = current;
+		}
+		return current;
+	}
+
+	/**
+	 * Returns whether a package depends on another one, directly or through its 
+	 * dependencies, without computing its installation order. The answers come from a 
+	 * reachability index over the strongly connected components of the graph, which is 
+	 * built on the first question after the graph changes. Packages on a cycle depend on 
+	 * each other and on themselves.
+	 * 
+	 * @param pkg the name of the dependent package
+	 * @param dependency the name of the dependency
+	 * @return true if the dependency is in the closure of the package
+	 * @throws PackageNotFoundException if either package does not exist in the dependency graph
+	 */
+	public boolean dependsOn(String pkg, String dependency) throws PackageNotFoundException {
+		Graph graph = graphFor(pkg, dependency);
+		int from = graph.idOf(pkg);
+		int to = graph.idOf(dependency);
+		if (from < 0 || to < 0)
+			throw new PackageNotFoundException();
+		return getReachabilityIndex(graph).reaches(from, to);
+	}
+
+	/**
+	 * Returns the reachability index of the current graph, building it if the graph changed 
+	 * since it was built, so that its build time and footprint can be reported.
+	 * 
+	 * @return the reachability index
+	 */
+	public ReachabilityIndex getReachabilityIndex() {
+		return getReachabilityIndex(wholeGraph());
+	}
+
+	/**
+	 * This helper method returns the reachability index of a version of the graph, building 
+	 * it again if it was built for another version. Readers racing on a new version may each 
+	 * build the index, and the last one is kept.
+	 * @param graph - the version of the graph
+	 * @return the reachability index
+	 */
+	private ReachabilityIndex getReachabilityIndex(Graph graph) {
+		ReachabilityIndex index = reachability;
+		if (index == null || !index.isCurrent(graph)) {
+			index = new ReachabilityIndex(graph, reachabilityBudget);
+			reachability = index;
 		}
-		return max;
+		return index;
 	}
 
 	public static void main (String [] args) {
@@ -0,0 +1,350 @@
+import java.lang.management.ManagementFactory;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Filename:   PackageManagerMetrics.java
+ * Project:    p4
+ *
+ * Collects the measurements of a PackageManager and exposes them through JMX.
+ *
+ * The latencies and the visited vertices of every kind of query are kept in histograms with one
+ * bucket per power of two, so recording a value is a few atomic increments and never allocates,
+ * and any number of threads can record at the same time. Attach the metrics with
+ * PackageManager.setMetricsListener, and register them with the platform MBean server to read
+ * them from jconsole or any other JMX client.
+ */
+public class PackageManagerMetrics implements MetricsListener, PackageManagerMetricsMBean {
+	/**
+	 * The counters of the ingests
+	 */
+	private final LongAdder ingests = new LongAdder();
+	private final LongAdder ingestBytes = new LongAdder();
+	private final LongAdder parseNanos = new LongAdder();
+	private final LongAdder mutationNanos = new LongAdder();
+	private final LongAdder vertexInserts = new LongAdder();
+	private final LongAdder edgeInserts = new LongAdder();
+
+	/**
+	 * The number of queries that found a cycle
+	 */
+	private final LongAdder cycleDetections = new LongAdder();
+
+	/**
+	 * The latencies in nanoseconds and the visited vertices of every kind of query
+	 */
+	private final Map<Query, Histogram> latencies = new EnumMap<Query, Histogram>(Query.class);
+	private final Map<Query, Histogram> visited = new EnumMap<Query, Histogram>(Query.class);
+
+	/**
+	 * Creates empty metrics
+	 */
+	public PackageManagerMetrics() {
+		for (Query query : Query.values()) {
+			latencies.put(query, new Histogram());
+			visited.put(query, new Histogram());
+		}
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server
+	 *
+	 * @param name the name the metrics are registered under, to tell package managers apart
+	 * @return the object name of the MBean
+	 * @throws JMException if the name is not valid or is already registered
+	 */
+	public ObjectName register(String name) throws JMException {
+		ObjectName objectName = new ObjectName("p4:type=PackageManager,name=" + ObjectName.quote(name));
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+		return objectName;
+	}
+
+	/**
+	 * Adds the measurements of an ingest to the counters
+	 */
+	public void ingestCompleted(long bytes, long parseNanos, long mutationNanos, long vertexInserts, long edgeInserts) {
+		ingests.increment();
+		ingestBytes.add(bytes);
+		this.parseNanos.add(parseNanos);
+		this.mutationNanos.add(mutationNanos);
+		this.vertexInserts.add(vertexInserts);
+		this.edgeInserts.add(edgeInserts);
+	}
+
+	/**
+	 * Records the latency and the visited vertices of a query in its histograms
+	 */
+	public void queryCompleted(Query query, long nanos, long verticesVisited) {
+		latencies.get(query).record(nanos);
+		visited.get(query).record(verticesVisited);
+	}
+
+	/**
+	 * Counts a query that found a cycle
+	 */
+	public void cycleDetected(Query query) {
+		cycleDetections.increment();
+	}
+
+	/**
+	 * Returns the histogram of the latencies of a kind of query
+	 *
+	 * @param query the kind of query
+	 * @return the latencies in nanoseconds
+	 */
+	public Histogram getLatencies(Query query) {
+		return latencies.get(query);
+	}
+
+	/**
+	 * Returns the histogram of the number of vertices visited by a kind of query
+	 *
+	 * @param query the kind of query
+	 * @return the numbers of visited vertices
+	 */
+	public Histogram getVisited(Query query) {
+		return visited.get(query);
+	}
+
+	/**
+	 * Returns the number of ingests
+	 */
+	public long getIngestCount() {
+		return ingests.sum();
+	}
+
+	/**
+	 * Returns the number of bytes read by all ingests
+	 */
+	public long getIngestBytes() {
+		return ingestBytes.sum();
+	}
+
+	/**
+	 * Returns the time spent parsing json in milliseconds
+	 */
+	public double getParseMillis() {
+		return parseNanos.sum() / 1e6;
+	}
+
+	/**
+	 * Returns the time spent changing the graph in milliseconds
+	 */
+	public double getMutationMillis() {
+		return mutationNanos.sum() / 1e6;
+	}
+
+	/**
+	 * Returns the number of vertices added by all ingests
+	 */
+	public long getVertexInserts() {
+		return vertexInserts.sum();
+	}
+
+	/**
+	 * Returns the number of edges added by all ingests
+	 */
+	public long getEdgeInserts() {
+		return edgeInserts.sum();
+	}
+
+	/**
+	 * Returns the number of queries that found a cycle
+	 */
+	public long getCycleDetections() {
+		return cycleDetections.sum();
+	}
+
+	/**
+	 * Returns the number of getInstallationOrder queries
+	 */
+	public long getInstallationOrderCount() {
+		return latencies.get(Query.INSTALLATION_ORDER).getCount();
+	}
+
+	/**
+	 * Returns the mean latency of getInstallationOrder in microseconds
+	 */
+	public double getInstallationOrderMeanMicros() {
+		return latencies.get(Query.INSTALLATION_ORDER).getMean() / 1e3;
+	}
+
+	/**
+	 * Returns the 99th percentile latency of getInstallationOrder in microseconds
+	 */
+	public double getInstallationOrderP99Micros() {
+		return latencies.get(Query.INSTALLATION_ORDER).getPercentile(99) / 1e3;
+	}
+
+	/**
+	 * Returns the mean number of vertices visited by getInstallationOrder
+	 */
+	public double getInstallationOrderMeanVisited() {
+		return visited.get(Query.INSTALLATION_ORDER).getMean();
+	}
+
+	/**
+	 * Returns the number of toInstall queries
+	 */
+	public long getToInstallCount() {
+		return latencies.get(Query.TO_INSTALL).getCount();
+	}
+
+	/**
+	 * Returns the mean latency of toInstall in microseconds
+	 */
+	public double getToInstallMeanMicros() {
+		return latencies.get(Query.TO_INSTALL).getMean() / 1e3;
+	}
+
+	/**
+	 * Returns the 99th percentile latency of toInstall in microseconds
+	 */
+	public double getToInstallP99Micros() {
+		return latencies.get(Query.TO_INSTALL).getPercentile(99) / 1e3;
+	}
+
+	/**
+	 * Returns the mean number of vertices visited by toInstall
+	 */
+	public double getToInstallMeanVisited() {
+		return visited.get(Query.TO_INSTALL).getMean();
+	}
+
+	/**
+	 * Returns the number of full installation order queries
+	 */
+	public long getFullOrderCount() {
+		return latencies.get(Query.FULL_ORDER).getCount();
+	}
+
+	/**
+	 * Returns the mean latency of the full installation order in microseconds
+	 */
+	public double getFullOrderMeanMicros() {
+		return latencies.get(Query.FULL_ORDER).getMean() / 1e3;
+	}
+
+	/**
+	 * Returns the 99th percentile latency of the full installation order in microseconds
+	 */
+	public double getFullOrderP99Micros() {
+		return latencies.get(Query.FULL_ORDER).getPercentile(99) / 1e3;
+	}
+
+	/**
+	 * Returns the mean number of vertices visited by the full installation order
+	 */
+	public double getFullOrderMeanVisited() {
+		return visited.get(Query.FULL_ORDER).getMean();
+	}
+
+	/**
+	 * Clears all the counters and histograms
+	 */
+	public void reset() {
+		for (LongAdder counter : new LongAdder[] {ingests, ingestBytes, parseNanos, mutationNanos,
+				vertexInserts, edgeInserts, cycleDetections}) {
+			counter.reset();
+		}
+		for (Query query : Query.values()) {
+			latencies.get(query).reset();
+			visited.get(query).reset();
+		}
+	}
+
+	/**
+	 * A histogram of non-negative values with one bucket per power of two: bucket 0 counts the
+	 * zeros, and bucket i counts the values from 2^(i-1) to 2^i - 1
+	 */
+	public static class Histogram {
+		/**
+		 * The number of values in every bucket
+		 */
+		private final AtomicLongArray buckets = new AtomicLongArray(65);
+
+		/**
+		 * The sum of the values
+		 */
+		private final LongAdder sum = new LongAdder();
+
+		/**
+		 * Records a value
+		 *
+		 * @param value the value, negative values are counted as 0
+		 */
+		public void record(long value) {
+			value = Math.max(0, value);
+			buckets.incrementAndGet(64 - Long.numberOfLeadingZeros(value));
+			sum.add(value);
+		}
+
+		/**
+		 * Returns the number of recorded values
+		 *
+		 * @return the number of values
+		 */
+		public long getCount() {
+			long count = 0;
+			for (int i = 0; i < buckets.length(); i++) {
+				count += buckets.get(i);
+			}
+			return count;
+		}
+
+		/**
+		 * Returns the mean of the recorded values
+		 *
+		 * @return the mean, or 0 if no value was recorded
+		 */
+		public double getMean() {
+			long count = getCount();
+			return count == 0 ? 0 : (double) sum.sum() / count;
+		}
+
+		/**
+		 * Returns an upper bound of a percentile of the recorded values
+		 *
+		 * @param percentile the percentile, from 0 to 100
+		 * @return the largest value of the bucket holding the percentile, or 0 if no value was
+		 * recorded
+		 */
+		public long getPercentile(double percentile) {
+			long count = getCount();
+			// the rank of the value at the percentile, from 1 to count
+			long rank = Math.max(1, (long) Math.ceil(percentile / 100 * count));
+			long seen = 0;
+			for (int i = 0; i < buckets.length(); i++) {
+				seen += buckets.get(i);
+				if (seen >= rank)
+					return i == 0 ? 0 : i == 64 ? Long.MAX_VALUE : (1L << i) - 1;
+			}
+			return 0;
+		}
+
+		/**
+		 * Returns the number of values in a bucket
+		 *
+		 * @param bucket the bucket, from 0 to 64
+		 * @return the number of values from 2^(bucket-1) to 2^bucket - 1, or of zeros for bucket 0
+		 */
+		public long getBucket(int bucket) {
+			return buckets.get(bucket);
+		}
+
+		/**
+		 * This helper method clears the histogram
+		 */
+		private void reset() {
+			for (int i = 0; i < buckets.length(); i++) {
+				buckets.set(i, 0);
+			}
+			sum.reset();
+		}
+	}
+}
@@ -0,0 +1,148 @@
+/**
+ * Filename:   PackageManagerMetricsMBean.java
+ * Project:    p4
+ *
+ * The JMX management interface of PackageManagerMetrics. The latencies are in microseconds and
+ * the percentiles are the upper bounds of power-of-two buckets, so they are at most twice the
+ * exact value.
+ */
+public interface PackageManagerMetricsMBean {
+
+	/**
+	 * Returns the number of calls to constructGraph
+	 *
+	 * @return the number of ingests
+	 */
+	public long getIngestCount();
+
+	/**
+	 * Returns the number of bytes of json read by all ingests
+	 *
+	 * @return the number of bytes read
+	 */
+	public long getIngestBytes();
+
+	/**
+	 * Returns the time spent parsing json by all ingests
+	 *
+	 * @return the parse time in milliseconds
+	 */
+	public double getParseMillis();
+
+	/**
+	 * Returns the time spent adding packages to the graph by all ingests
+	 *
+	 * @return the mutation time in milliseconds
+	 */
+	public double getMutationMillis();
+
+	/**
+	 * Returns the number of vertices added by all ingests
+	 *
+	 * @return the number of vertex inserts
+	 */
+	public long getVertexInserts();
+
+	/**
+	 * Returns the number of edges added by all ingests
+	 *
+	 * @return the number of edge inserts
+	 */
+	public long getEdgeInserts();
+
+	/**
+	 * Returns the number of queries that found a cycle
+	 *
+	 * @return the number of cycle detections
+	 */
+	public long getCycleDetections();
+
+	/**
+	 * Returns the number of calls to getInstallationOrder
+	 *
+	 * @return the number of queries
+	 */
+	public long getInstallationOrderCount();
+
+	/**
+	 * Returns the mean latency of getInstallationOrder
+	 *
+	 * @return the mean latency in microseconds
+	 */
+	public double getInstallationOrderMeanMicros();
+
+	/**
+	 * Returns the 99th percentile latency of getInstallationOrder
+	 *
+	 * @return the latency in microseconds
+	 */
+	public double getInstallationOrderP99Micros();
+
+	/**
+	 * Returns the mean number of vertices visited by getInstallationOrder
+	 *
+	 * @return the mean number of visited vertices
+	 */
+	public double getInstallationOrderMeanVisited();
+
+	/**
+	 * Returns the number of calls to toInstall
+	 *
+	 * @return the number of queries
+	 */
+	public long getToInstallCount();
+
+	/**
+	 * Returns the mean latency of toInstall
+	 *
+	 * @return the mean latency in microseconds
+	 */
+	public double getToInstallMeanMicros();
+
+	/**
+	 * Returns the 99th percentile latency of toInstall
+	 *
+	 * @return the latency in microseconds
+	 */
+	public double getToInstallP99Micros();
+
+	/**
+	 * Returns the mean number of vertices visited by toInstall
+	 *
+	 * @return the mean number of visited vertices
+	 */
+	public double getToInstallMeanVisited();
+
+	/**
+	 * Returns the number of calls to getInstallationOrderForAllPackages
+	 *
+	 * @return the number of queries
+	 */
+	public long getFullOrderCount();
+
+	/**
+	 * Returns the mean latency of getInstallationOrderForAllPackages
+	 *
+	 * @return the mean latency in microseconds
+	 */
+	public double getFullOrderMeanMicros();
+
+	/**
+	 * Returns the 99th percentile latency of getInstallationOrderForAllPackages
+	 *
+	 * @return the latency in microseconds
+	 */
+	public double getFullOrderP99Micros();
+
+	/**
+	 * Returns the mean number of vertices visited by getInstallationOrderForAllPackages
+	 *
+	 * @return the mean number of visited vertices
+	 */
+	public double getFullOrderMeanVisited();
+
+	/**
+	 * Clears all the counters and histograms
+	 */
+	public void reset();
+}
@@ -40,6 +40,8 @@ import java.util.*;
 
 import java.io.FileNotFoundException;
 
+import org.json.simple.parser.ParseException;
+
 /**
  * This class contains test methods for PackageManager class
  */
@@ -56,6 +58,27 @@ public class PackageManagerTest {
 		pm = null;
 	}
 
+	/**
+	 * Returns the path of a json fixture, found in the working directory, in its src 
+	 * directory, or beside the compiled test class, so the tests run from any checkout
+	 * @param name - the file name of the fixture
+	 * @return the path of the fixture, or the name itself if it is not found
+	 */
+	private static String fixture(String name) {
+		java.io.File[] candidates = {new java.io.File(name), new java.io.File("src", name), null};
+		try {
+			java.io.File classes = new java.io.File(PackageManagerTest.class.getProtectionDomain().getCodeSource().getLocation().toURI());
+			candidates[2] = new java.io.File(classes, name);
+		} catch (Exception e) {
+			// the location of the classes is unknown, only the working directory is searched
+		}
+		for (java.io.File candidate : candidates) {
+			if (candidate != null && candidate.isFile())
+				return candidate.getPath();
+		}
+		return name;
+	}
+
 	/**
 	 * This tests if a FileNotFoundException would be thrown if a file that does not exist is to be read
 	 */
@@ -77,7 +100,7 @@ public class PackageManagerTest {
 	@Test
 	public void test02_check_all_vertices_present() {
 		try {
-			pm.constructGraph("E:\\CS400\\Package Manager\\src\\topo.json");
+			pm.constructGraph(fixture("topo.json"));
 			Set<String> vertices = pm.getAllPackages();
 			for (int i = 65; i < 74; i++) {
 				char temp = (char)i;
@@ -96,7 +119,7 @@ public class PackageManagerTest {
 	@Test
 	public void test03_installation_order_of_a_package() {
 		try {
-			pm.constructGraph("E:\\CS400\\Package Manager\\src\\topo.json");
+			pm.constructGraph(fixture("topo.json"));
 			// the expected installation order
 			List<String> expected = new ArrayList<String>();
 			expected.add("E");
@@ -121,7 +144,7 @@ public class PackageManagerTest {
 	@Test
 	public void test04_PackageNotFoundException_is_thrown() {
 		try {
-			pm.constructGraph("E:\\CS400\\Package Manager\\src\\topo.json");
+			pm.constructGraph(fixture("topo.json"));
 			try {
 				pm.getInstallationOrder("Z");
 				fail("A PackageNotFoundException should have been thrown");
@@ -141,7 +164,7 @@ public class PackageManagerTest {
 	@Test
 	public void test05_right_package_with_max_dependency() {
 		try {
-			pm.constructGraph("E:\\CS400\\Package Manager\\src\\topo.json");
+			pm.constructGraph(fixture("topo.json"));
 			if (!(pm.getPackageWithMaxDependencies().equals("D") || 
 					pm.getPackageWithMaxDependencies().equals("H")))
 				fail("The right package has not been thrown");
@@ -156,7 +179,7 @@ public class PackageManagerTest {
 	@Test
 	public void test06_order_of_all_packages_correct() {
 		try {
-			pm.constructGraph("E:\\CS400\\Package Manager\\src\\shared_dependencies.json");
+			pm.constructGraph(fixture("shared_dependencies.json"));
 			// the expected installation order
 			List<String> expected = new ArrayList<String>();
 			expected.add("D");
@@ -182,7 +205,7 @@ public class PackageManagerTest {
 	@Test
 	public void test07_CycleException_are_thrown() {
 		try {
-			pm.constructGraph("E:\\CS400\\Package Manager\\src\\cycle.json");
+			pm.constructGraph(fixture("cycle.json"));
 			try {
 				pm.getInstallationOrderForAllPackages();
 				fail("A CycleException should have been thrown");
@@ -196,4 +219,969 @@ public class PackageManagerTest {
 		}
 	}
 
+	/**
+	 * This tests if streaming ingest builds the same graph as parsing the whole file
+	 */
+	@Test
+	public void test08_streaming_ingest_builds_same_graph() {
+		try {
+			pm.constructGraph(fixture("topo.json"));
+			PackageManager streamed = new PackageManager();
+			streamed.setStreamingIngest(true);
+			streamed.constructGraph(fixture("topo.json"));
+			if (!streamed.getAllPackages().equals(pm.getAllPackages()))
+				fail("The streamed graph does not have the same packages");
+			for (String pkg : pm.getAllPackages()) {
+				if (!streamed.getInstallationOrder(pkg).equals(pm.getInstallationOrder(pkg)))
+					fail("The installation order of " + pkg + " is not the same in the streamed graph");
+			}
+			if (streamed.getLastIngestThroughput() <= 0)
+				fail("The throughput of the streamed ingest should be reported");
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if streaming ingest keeps throwing FileNotFoundException and ParseException
+	 */
+	@Test
+	public void test09_streaming_ingest_exceptions() {
+		pm.setStreamingIngest(true);
+		try {
+			pm.constructGraph("abc");
+			fail("A FileNotFoundException should be thrown when a file that does not exist is to be read");
+		} catch (FileNotFoundException e) {
+			// passed
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+		try {
+			pm.constructGraph(fixture("malformed.json"));
+			fail("A ParseException should be thrown when the json is not valid");
+		} catch (ParseException e) {
+			// passed
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if loading several files in parallel builds the same graph as loading them 
+	 * one after another
+	 */
+	@Test
+	public void test10_parallel_ingest_of_several_files() {
+		try {
+			pm.constructGraph(fixture("shared_dependencies.json"));
+			pm.constructGraph(fixture("valid.json"));
+			PackageManager parallel = new PackageManager();
+			parallel.setIngestParallelism(2);
+			parallel.constructGraph(Arrays.asList(
+					java.nio.file.Paths.get(fixture("shared_dependencies.json")), 
+					java.nio.file.Paths.get(fixture("valid.json"))));
+			if (!parallel.getAllPackages().equals(pm.getAllPackages()))
+				fail("The merged graph does not have the same packages");
+			for (String pkg : pm.getAllPackages()) {
+				if (!parallel.getInstallationOrder(pkg).equals(pm.getInstallationOrder(pkg)))
+					fail("The installation order of " + pkg + " is not the same in the merged graph");
+			}
+			// a file that fails leaves the graph unchanged, even if other files were merged
+			PackageManager failed = new PackageManager();
+			failed.setIngestParallelism(2);
+			try {
+				failed.constructGraph(Arrays.asList(
+						java.nio.file.Paths.get(fixture("valid.json")), 
+						java.nio.file.Paths.get(fixture("malformed.json"))));
+				fail("A ParseException should be thrown when the json of a file is not valid");
+			} catch (ParseException e) {
+				// passed
+			}
+			if (!failed.getAllPackages().isEmpty())
+				fail("The files merged before the one that failed were published");
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if the installation order of all packages installs every package after its 
+	 * dependencies, in the order the depth-first search has always given
+	 */
+	@Test
+	public void test11_order_of_all_packages_is_topological() {
+		try {
+			pm.constructGraph(fixture("topo.json"));
+			List<String> order = pm.getInstallationOrderForAllPackages();
+			if (!order.equals(Arrays.asList("E", "G", "I", "C", "B", "F", "D", "H", "A")))
+				fail("The installation order of all packages is not as expected: " + order);
+			PackageManager valid = new PackageManager();
+			valid.constructGraph(fixture("valid.json"));
+			order = valid.getInstallationOrderForAllPackages();
+			if (!order.equals(Arrays.asList("C", "D", "B", "E", "A")))
+				fail("The installation order of all packages is not as expected: " + order);
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if the CycleException reports the cyclic component and a cycle through it
+	 */
+	@Test
+	public void test12_CycleException_reports_cycles() {
+		try {
+			pm.constructGraph(fixture("cycle.json"));
+			try {
+				pm.getInstallationOrderForAllPackages();
+				fail("A CycleException should have been thrown");
+			} catch (CycleException e) {
+				if (!e.getComponents().equals(Arrays.asList(Arrays.asList("B", "E", "F"))))
+					fail("The cyclic component is not as expected: " + e.getComponents());
+				if (!e.getCycles().equals(Arrays.asList(Arrays.asList("B", "F", "E", "B"))))
+					fail("The cycle is not as expected: " + e.getCycles());
+			}
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if a cycle at the end of a very long chain of dependencies is found without 
+	 * overflowing the stack
+	 */
+	@Test
+	public void test13_cycle_at_end_of_long_chain() {
+		try {
+			java.nio.file.Path file = java.nio.file.Files.createTempFile("chain", ".json");
+			StringBuilder json = new StringBuilder("{\"packages\": [");
+			for (int i = 0; i < 50000; i++) {
+				json.append("{\"name\": \"p" + i + "\", \"dependencies\": [\"p" + (i + 1) + "\"]},");
+			}
+			json.append("{\"name\": \"p50000\", \"dependencies\": [\"p49999\"]}]}");
+			java.nio.file.Files.write(file, json.toString().getBytes());
+			pm.constructGraph(file.toString());
+			java.nio.file.Files.delete(file);
+			try {
+				pm.getInstallationOrder("p0");
+				fail("A CycleException should have been thrown");
+			} catch (CycleException e) {
+				if (!e.getCycles().equals(Arrays.asList(Arrays.asList("p49999", "p50000", "p49999"))))
+					fail("The cycle is not as expected: " + e.getCycles());
+			}
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if the transitive dependency counts and the packages with the most 
+	 * dependencies are as expected
+	 */
+	@Test
+	public void test14_transitive_dependency_counts() {
+		try {
+			pm.constructGraph(fixture("topo.json"));
+			if (pm.getTransitiveDependencyCount("H") != 7 || pm.getTransitiveDependencyCount("A") != 3 
+					|| pm.getTransitiveDependencyCount("E") != 0)
+				fail("The transitive dependency counts are not as expected");
+			if (!pm.getPackagesWithMostDependencies(3).equals(Arrays.asList("H", "D", "B")))
+				fail("The packages with most dependencies are not as expected");
+			if (!pm.getPackageWithMaxDependencies().equals("H"))
+				fail("The package with most dependencies is not as expected");
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if the transitive dependency counts are exact by default, and if the 
+	 * estimated counts are close to the exact counts
+	 */
+	@Test
+	public void test15_approximate_dependency_counts() {
+		try {
+			java.nio.file.Path file = java.nio.file.Files.createTempFile("chain", ".json");
+			StringBuilder json = new StringBuilder("{\"packages\": [");
+			for (int i = 0; i < 5000; i++) {
+				json.append("{\"name\": \"p" + i + "\", \"dependencies\": [\"p" + (i + 1) + "\", \"p" + (i + 2) + "\"]},");
+			}
+			json.append("{\"name\": \"p5000\", \"dependencies\": [\"p5001\"]}]}");
+			java.nio.file.Files.write(file, json.toString().getBytes());
+			pm.constructGraph(file.toString());
+			java.nio.file.Files.delete(file);
+			// the counts are exact unless approximation is turned on
+			if (pm.getTransitiveDependencyCount("p0") != 5001 || pm.getRegistryStatistics().isApproximate())
+				fail("The counts should be exact by default");
+			pm.setApproximationThreshold(0);
+			int estimate = pm.getTransitiveDependencyCount("p0");
+			if (Math.abs(estimate - 5001) > 500)
+				fail("The estimated count " + estimate + " is too far from 5001");
+			if (pm.getTransitiveDependencyCount("p4900") != 101)
+				fail("Small counts should be exact in approximate mode");
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if a graph loaded from a snapshot is the same as the graph parsed from json, 
+	 * if its pages are checked when they are read, and if a snapshot is no longer used once 
+	 * the json file changes
+	 */
+	@Test
+	public void test16_snapshot_round_trip() {
+		try {
+			java.nio.file.Path json = java.nio.file.Files.createTempFile("topo", ".json");
+			java.nio.file.Path snapshot = java.nio.file.Files.createTempFile("topo", ".snapshot");
+			java.nio.file.Files.copy(java.nio.file.Paths.get(fixture("topo.json")), 
+					json, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+			java.nio.file.Files.delete(snapshot);
+			// the first load parses the json file and writes the snapshot
+			if (pm.constructGraphFromSnapshot(json.toString(), snapshot.toString()))
+				fail("A missing snapshot should not be used");
+			PackageManager loaded = new PackageManager();
+			if (!loaded.constructGraphFromSnapshot(json.toString(), snapshot.toString()))
+				fail("A valid snapshot should be used");
+			if (!loaded.getAllPackages().equals(pm.getAllPackages()))
+				fail("The loaded graph does not have the same packages");
+			for (String pkg : pm.getAllPackages()) {
+				if (!loaded.getInstallationOrder(pkg).equals(pm.getInstallationOrder(pkg)))
+					fail("The installation order of " + pkg + " is not the same in the loaded graph");
+			}
+			// the graph is served from the mapping of the snapshot, and copied onto the heap 
+			// by the first change
+			if (loaded.getOffHeapFootprint() == 0)
+				fail("The loaded graph should be mapped from the snapshot");
+			PackageManager corrupt = new PackageManager();
+			byte[] bytes = java.nio.file.Files.readAllBytes(snapshot);
+			bytes[GraphSnapshot.HEADER_SIZE] ^= 1;
+			java.nio.file.Files.write(snapshot, bytes);
+			if (!corrupt.constructGraphFromSnapshot(json.toString(), snapshot.toString()))
+				fail("The pages of the graph should only be checked when they are read");
+			try {
+				corrupt.getInstallationOrder("A");
+				fail("An UncheckedIOException should be thrown when a corrupt page is read");
+			} catch (java.io.UncheckedIOException e) {
+				// passed
+			}
+			bytes[GraphSnapshot.HEADER_SIZE] ^= 1;
+			java.nio.file.Files.write(snapshot, bytes);
+			java.nio.file.Path delta = java.nio.file.Files.createTempFile("delta", ".json");
+			java.nio.file.Files.write(delta, "{\"added\": [{\"name\": \"Y\", \"dependencies\": [\"A\"]}]}".getBytes());
+			loaded.applyDelta(delta.toString());
+			java.nio.file.Files.delete(delta);
+			List<String> expected = new ArrayList<String>(pm.getInstallationOrder("A"));
+			expected.add("Y");
+			if (loaded.getOffHeapFootprint() != 0 || !loaded.getInstallationOrder("Y").equals(expected))
+				fail("A change should copy the graph onto the heap");
+			// a changed json file makes the snapshot out of date
+			java.nio.file.Files.write(json, "{\"packages\": [{\"name\": \"Z\", \"dependencies\": []}]}".getBytes());
+			PackageManager reloaded = new PackageManager();
+			if (reloaded.constructGraphFromSnapshot(json.toString(), snapshot.toString()))
+				fail("An out of date snapshot should not be used");
+			if (!reloaded.getAllPackages().equals(new HashSet<String>(Arrays.asList("Z"))))
+				fail("The graph should have been parsed from the changed json file");
+			// a json file that cannot be parsed leaves the graph unchanged
+			java.nio.file.Files.write(json, "{\"packages\": [{\"name\": \"Y\", ".getBytes());
+			try {
+				reloaded.constructGraphFromSnapshot(json.toString(), snapshot.toString());
+				fail("A ParseException should be thrown when the json is not valid");
+			} catch (ParseException e) {
+				// passed
+			}
+			if (!reloaded.getAllPackages().equals(new HashSet<String>(Arrays.asList("Z"))))
+				fail("The graph should be left unchanged when the json file cannot be parsed");
+			java.nio.file.Files.delete(json);
+			java.nio.file.Files.delete(snapshot);
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if cached installation orders are reused, and only invalidated when a package 
+	 * in their closure changes
+	 */
+	@Test
+	public void test17_result_cache_invalidation() {
+		try {
+			pm.constructGraph(fixture("topo.json"));
+			List<String> order = pm.getInstallationOrder("A");
+			pm.getInstallationOrder("E");
+			if (!pm.getInstallationOrder("A").equals(order) || pm.getResultCache().getHits() != 1)
+				fail("The installation order of A should have been cached");
+			java.nio.file.Path file = java.nio.file.Files.createTempFile("delta", ".json");
+			// a new package depending on E does not change the closure of A
+			java.nio.file.Files.write(file, "{\"packages\": [{\"name\": \"X\", \"dependencies\": [\"E\"]}]}".getBytes());
+			pm.constructGraph(file.toString());
+			pm.getInstallationOrder("A");
+			if (pm.getResultCache().getHits() != 2)
+				fail("The installation order of A should still be cached");
+			// a new dependency of G changes the closure of A but not the one of E
+			java.nio.file.Files.write(file, "{\"packages\": [{\"name\": \"G\", \"dependencies\": [\"Z\"]}]}".getBytes());
+			pm.constructGraph(file.toString());
+			java.nio.file.Files.delete(file);
+			if (!pm.getInstallationOrder("A").equals(Arrays.asList("E", "Z", "G", "I", "A")))
+				fail("The installation order of A should have been computed again");
+			pm.getInstallationOrder("E");
+			if (pm.getResultCache().getHits() != 3 || pm.getResultCache().getMisses() != 3)
+				fail("The cache counters are not as expected");
+			pm.setResultCacheSize(1);
+			if (pm.getResultCache().size() != 1 || pm.getResultCache().getEvictions() != 1)
+				fail("The cache should have evicted the least recently used entry");
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if the waves, the critical path and the schedules of the installation plan 
+	 * of all packages are as expected
+	 */
+	@Test
+	public void test18_installation_plan_waves() {
+		try {
+			pm.constructGraph(fixture("topo.json"));
+			InstallPlan plan = pm.getInstallationPlanForAllPackages();
+			List<List<String>> waves = Arrays.asList(Arrays.asList("E"), Arrays.asList("F", "G"), 
+					Arrays.asList("I"), Arrays.asList("A", "C"), Arrays.asList("B"), Arrays.asList("D"), 
+					Arrays.asList("H"));
+			if (!plan.getWaves().equals(waves))
+				fail("The waves are not as expected: " + plan.getWaves());
+			if (!plan.getCriticalPath().equals(Arrays.asList("E", "G", "I", "C", "B", "D", "H")))
+				fail("The critical path is not as expected: " + plan.getCriticalPath());
+			if (plan.schedule(1).getMakespan() != 9 || plan.schedule(4).getMakespan() != 7)
+				fail("The makespans are not as expected");
+			if (!pm.getInstallationPlan("B").getWaves().equals(Arrays.asList(Arrays.asList("E"), 
+					Arrays.asList("G"), Arrays.asList("I"), Arrays.asList("C"), Arrays.asList("B"))))
+				fail("The waves of B are not as expected");
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if the install costs of the json file weight the critical path and the 
+	 * schedules, with both ways of reading the file
+	 */
+	@Test
+	public void test19_installation_plan_costs() {
+		try {
+			java.nio.file.Path file = java.nio.file.Files.createTempFile("costs", ".json");
+			java.nio.file.Files.write(file, ("{\"packages\": [{\"name\": \"A\", \"cost\": 2, \"dependencies\": [\"B\", \"C\"]}, "
+					+ "{\"name\": \"B\", \"cost\": 5.5, \"dependencies\": []}, {\"name\": \"C\", \"dependencies\": []}]}").getBytes());
+			for (boolean streaming : new boolean[] {false, true}) {
+				PackageManager manager = new PackageManager();
+				manager.setStreamingIngest(streaming);
+				manager.constructGraph(file.toString());
+				InstallPlan plan = manager.getInstallationPlan("A");
+				if (!plan.getCriticalPath().equals(Arrays.asList("B", "A")) || plan.getCriticalPathCost() != 7.5)
+					fail("The critical path is not as expected: " + plan.getCriticalPath());
+				if (plan.schedule(1).getMakespan() != 8.5 || plan.schedule(2).getMakespan() != 7.5)
+					fail("The makespans are not as expected");
+				if (plan.schedule(2).getStartTime("A") != 5.5)
+					fail("A should start once B is installed");
+			}
+			// the costs are dropped when the graph is replaced by the one of a snapshot
+			PackageManager manager = new PackageManager();
+			manager.constructGraph(file.toString());
+			java.nio.file.Files.delete(file);
+			java.nio.file.Path json = java.nio.file.Files.createTempFile("topo", ".json");
+			java.nio.file.Path snapshot = java.nio.file.Files.createTempFile("topo", ".snapshot");
+			java.nio.file.Files.copy(java.nio.file.Paths.get(fixture("topo.json")), 
+					json, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+			java.nio.file.Files.delete(snapshot);
+			new PackageManager().constructGraphFromSnapshot(json.toString(), snapshot.toString());
+			if (!manager.constructGraphFromSnapshot(json.toString(), snapshot.toString()))
+				fail("A valid snapshot should be used");
+			if (manager.getInstallCost("A") != 1)
+				fail("The cost of the replaced graph should be dropped");
+			java.nio.file.Files.delete(json);
+			java.nio.file.Files.delete(snapshot);
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if the executor installs every package after its dependencies, and cancels 
+	 * the packages depending on a failed install
+	 */
+	@Test
+	public void test20_install_executor() {
+		try {
+			pm.constructGraph(fixture("topo.json"));
+			InstallExecutor.Report report = pm.install("H", InstallAction.sleeping(5), 3);
+			List<String> installed = report.getInstalled();
+			if (!report.isSuccessful() || installed.size() != 8)
+				fail("Every package should have been installed");
+			for (String pkg : installed) {
+				for (String dependency : pm.getInstallationOrder(pkg)) {
+					if (installed.indexOf(dependency) > installed.indexOf(pkg))
+						fail(pkg + " was installed before its dependency " + dependency);
+				}
+			}
+			report = pm.install("H", pkg -> {
+				if (pkg.equals("C"))
+					throw new IllegalStateException("C cannot be installed");
+			}, 2);
+			if (!report.getFailed().keySet().equals(Collections.singleton("C")))
+				fail("Only C should have failed");
+			if (!new HashSet<String>(report.getCancelled()).equals(new HashSet<String>(Arrays.asList("B", "D", "H"))))
+				fail("The cancelled packages are not as expected: " + report.getCancelled());
+			if (!new HashSet<String>(report.getInstalled()).equals(new HashSet<String>(Arrays.asList("E", "F", "G", "I"))))
+				fail("The installed packages are not as expected: " + report.getInstalled());
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if queries running while graphs are built only ever see complete versions of 
+	 * the graph
+	 */
+	@Test
+	public void test21_concurrent_queries_during_ingest() {
+		try {
+			pm.constructGraph(fixture("topo.json"));
+			List<String> order = pm.getInstallationOrder("H");
+			java.util.concurrent.atomic.AtomicReference<String> failure = new java.util.concurrent.atomic.AtomicReference<String>();
+			java.util.concurrent.atomic.AtomicBoolean ingesting = new java.util.concurrent.atomic.AtomicBoolean(true);
+			List<Thread> readers = new ArrayList<Thread>();
+			for (int i = 0; i < 4; i++) {
+				Thread reader = new Thread(() -> {
+					try {
+						while (ingesting.get()) {
+							if (!pm.getInstallationOrder("H").equals(order))
+								failure.set("The installation order of H changed");
+							// a version is either without the new packages or with all of them
+							Set<String> packages = pm.getAllPackages();
+							if (packages.contains("N0") != packages.contains("N99"))
+								failure.set("A partly read file was published");
+						}
+					} catch (Exception e) {
+						failure.set(e.getClass().getName());
+					}
+				});
+				reader.start();
+				readers.add(reader);
+			}
+			java.nio.file.Path file = java.nio.file.Files.createTempFile("new", ".json");
+			StringBuilder json = new StringBuilder("{\"packages\": [");
+			for (int i = 0; i < 100; i++) {
+				json.append((i > 0 ? ", " : "") + "{\"name\": \"N" + i + "\", \"dependencies\": [\"H\"]}");
+			}
+			java.nio.file.Files.write(file, json.append("]}").toString().getBytes());
+			for (int i = 0; i < 20; i++) {
+				pm.setStreamingIngest(i % 2 == 0);
+				pm.constructGraph(file.toString());
+			}
+			ingesting.set(false);
+			for (Thread reader : readers) {
+				reader.join();
+			}
+			java.nio.file.Files.delete(file);
+			if (failure.get() != null)
+				fail(failure.get());
+			if (pm.getAllPackages().size() != 109)
+				fail("The graph should have all the packages");
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if the packages to install are as expected against several installed 
+	 * packages, and against an installed state that changes
+	 */
+	@Test
+	public void test22_toInstall_with_installed_set() {
+		try {
+			pm.constructGraph(fixture("topo.json"));
+			if (!pm.toInstall("H", Arrays.asList("B", "F")).equals(Arrays.asList("H", "D")))
+				fail("The packages to install for H are not as expected");
+			if (!pm.toInstall("A", Arrays.asList("B")).equals(pm.toInstall("A", "B")))
+				fail("One installed package should give the same result as toInstall");
+			InstalledState state = new InstalledState();
+			state.add("E");
+			if (!pm.toInstall("D", state).equals(Arrays.asList("D", "B", "C", "G", "I", "F")))
+				fail("The packages to install for D are not as expected");
+			state.add("C");
+			if (!pm.toInstall("D", state).equals(Arrays.asList("D", "B", "F")))
+				fail("The installed state should include the closure of C");
+			state.remove("C");
+			if (!pm.toInstall("D", state).equals(Arrays.asList("D", "B", "C", "G", "I", "F")))
+				fail("The installed state should no longer include the closure of C");
+			try {
+				pm.toInstall("A", Arrays.asList("B", "Z"));
+				fail("A PackageNotFoundException should have been thrown");
+			} catch (PackageNotFoundException e) {
+			}
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if the direct and transitive dependents of packages are as expected
+	 */
+	@Test
+	public void test23_dependents() {
+		try {
+			pm.constructGraph(fixture("topo.json"));
+			if (!pm.getDirectDependents("C").equals(Arrays.asList("B", "D", "H")))
+				fail("The direct dependents of C are not as expected: " + pm.getDirectDependents("C"));
+			if (!pm.getDirectDependents("H").isEmpty())
+				fail("H should have no dependents");
+			if (!new HashSet<String>(pm.getTransitiveDependents("G")).equals(
+					new HashSet<String>(Arrays.asList("A", "B", "C", "D", "H", "I"))))
+				fail("The transitive dependents of G are not as expected: " + pm.getTransitiveDependents("G"));
+			List<String> dependents = pm.getTransitiveDependents("E");
+			if (dependents.size() != 8 || !new HashSet<String>(dependents.subList(0, 3)).equals(
+					new HashSet<String>(Arrays.asList("B", "F", "G"))))
+				fail("The dependents of E should be listed by distance: " + dependents);
+			pm.constructGraph(fixture("cycle.json"));
+			if (!pm.getTransitiveDependents("E").containsAll(Arrays.asList("B", "F")))
+				fail("The dependents in a cycle are not as expected");
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if the names are interned once each during streaming ingest, and if the name 
+	 * table finds names that are not ASCII
+	 */
+	@Test
+	public void test24_interned_names() {
+		try {
+			pm.setStreamingIngest(true);
+			pm.constructGraph(fixture("topo.json"));
+			if (pm.getLastIngestNameFootprint() <= 0)
+				fail("The footprint of the name table should be reported");
+			NameTable names = new NameTable();
+			String[] distinct = {"A", "a", "caf\u00e9", "\u65e5\u672c", "\ud83d\udce6pkg", ""};
+			for (String name : distinct) {
+				names.intern(name);
+			}
+			for (int i = 0; i < 1000; i++) {
+				names.intern("pkg" + i);
+			}
+			for (String name : distinct) {
+				String interned = names.intern(new StringBuilder(name));
+				if (!interned.equals(name) || interned != names.intern(name))
+					fail("The name table did not find " + name);
+			}
+			if (names.size() != 1006 || names.intern(new StringBuilder("pkg999")) != names.intern("pkg999"))
+				fail("The name table should hold every distinct name once");
+			long footprint = names.getFootprint();
+			for (int i = 0; i < 1000; i++) {
+				names.intern(new StringBuilder("pkg" + i));
+			}
+			if (names.getFootprint() != footprint)
+				fail("Interning names again should not keep them twice: " + names.getFootprint());
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if the metrics count the ingests, the queries, the vertices they visit and 
+	 * the cycles they find, and if they can be read through JMX
+	 */
+	@Test
+	public void test25_metrics() {
+		try {
+			PackageManagerMetrics metrics = new PackageManagerMetrics();
+			pm.setMetricsListener(metrics);
+			pm.setStreamingIngest(true);
+			pm.constructGraph(fixture("topo.json"));
+			if (metrics.getIngestCount() != 1 || metrics.getVertexInserts() != 9 || metrics.getEdgeInserts() != 14
+					|| metrics.getIngestBytes() <= 0)
+				fail("The ingest was not measured as expected");
+			List<String> order = pm.getInstallationOrder("D");
+			// the second query is served from the cache without visiting any vertex
+			pm.getInstallationOrder("D");
+			PackageManagerMetrics.Histogram visited = metrics.getVisited(MetricsListener.Query.INSTALLATION_ORDER);
+			if (metrics.getInstallationOrderCount() != 2 || visited.getBucket(0) != 1
+					|| visited.getMean() != order.size() / 2.0)
+				fail("The installation order queries were not measured as expected");
+			pm.toInstall("D", "C");
+			pm.getInstallationOrderForAllPackages();
+			if (metrics.getToInstallCount() != 1 || metrics.getFullOrderMeanVisited() != 9)
+				fail("The other queries were not measured as expected");
+			pm.setMetricsListener(null);
+			pm.getInstallationOrder("B");
+			if (metrics.getInstallationOrderCount() != 2)
+				fail("Nothing should be measured without a listener");
+			pm.setMetricsListener(metrics);
+			pm.constructGraph(fixture("cycle.json"));
+			try {
+				pm.getInstallationOrderForAllPackages();
+				fail("A CycleException should have been thrown");
+			} catch (CycleException e) {
+			}
+			if (metrics.getCycleDetections() != 1 || metrics.getIngestCount() != 2)
+				fail("The cycle was not counted");
+			javax.management.ObjectName name = metrics.register("test25");
+			try {
+				Object count = java.lang.management.ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ToInstallCount");
+				if (!Long.valueOf(1).equals(count))
+					fail("The metrics should be readable through JMX");
+			} finally {
+				java.lang.management.ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+			}
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if the resolver chooses the highest compatible versions, backtracks out of a 
+	 * conflict, explains a package that cannot be resolved, and counts unversioned packages 
+	 * as version 0
+	 */
+	@Test
+	public void test26_resolve_versions() {
+		for (boolean streaming : new boolean[] {false, true}) {
+			try {
+				pm = new PackageManager();
+				pm.setStreamingIngest(streaming);
+				pm.constructGraph(fixture("versions.json"));
+				// app 2.0.0 needs util ^2 through lib 2.0.0 and util <2 itself
+				Map<String, Version> chosen = pm.resolveVersions("app");
+				if (!chosen.toString().equals("{app=1.0.0, lib=1.5.0, util=2.1.0}"))
+					fail("The highest compatible versions should be chosen: " + chosen);
+				chosen = pm.resolveVersions("lib", "~1.0");
+				if (!chosen.toString().equals("{lib=1.0.0, util=2.1.0}"))
+					fail("The range of the package should be respected: " + chosen);
+				try {
+					pm.resolveVersions("broken");
+					fail("A ResolutionException should be thrown");
+				} catch (ResolutionException e) {
+					if (!e.getPackage().equals("broken") || e.getReasons().isEmpty())
+						fail("The exception should explain the conflict");
+				}
+				try {
+					pm.resolveVersions("app", ">=3");
+					fail("A ResolutionException should be thrown");
+				} catch (ResolutionException e) {
+				}
+				try {
+					pm.resolveVersions("nothing");
+					fail("A PackageNotFoundException should be thrown");
+				} catch (PackageNotFoundException e) {
+				}
+				// the conflicts learned before are kept
+				if (!pm.resolveVersions("app").get("app").equals(Version.parse("1")))
+					fail("app 1.0.0 should still be chosen");
+				pm.constructGraph(fixture("topo.json"));
+				chosen = pm.resolveVersions("A");
+				if (!chosen.keySet().equals(new HashSet<String>(pm.getInstallationOrder("A"))) || !chosen.get("A").equals(Version.ZERO))
+					fail("Unversioned packages should resolve as version 0: " + chosen);
+			} catch (Exception e) {
+				fail("Unexpected exception: " + e.getClass().getName());
+			}
+		}
+		// the releases are kept in snapshots
+		try {
+			java.nio.file.Path json = java.nio.file.Files.createTempFile("versions", ".json");
+			java.nio.file.Path snapshot = java.nio.file.Files.createTempFile("versions", ".snapshot");
+			java.nio.file.Files.copy(java.nio.file.Paths.get(fixture("versions.json")), 
+					json, java.nio.file.StandardCopyOption.REPLACE_EXISTING);
+			java.nio.file.Files.delete(snapshot);
+			new PackageManager().constructGraphFromSnapshot(json.toString(), snapshot.toString());
+			PackageManager loaded = new PackageManager();
+			if (!loaded.constructGraphFromSnapshot(json.toString(), snapshot.toString()))
+				fail("A valid snapshot should be used");
+			Map<String, Version> chosen = loaded.resolveVersions("app");
+			if (!chosen.toString().equals("{app=1.0.0, lib=1.5.0, util=2.1.0}"))
+				fail("The releases of the snapshot should be resolved: " + chosen);
+			java.nio.file.Files.delete(json);
+			java.nio.file.Files.delete(snapshot);
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if a delta removes, adds and changes packages in place, dropping the 
+	 * dependencies that are no longer listed, and if a delta with an invalid entry leaves the 
+	 * graph unchanged
+	 */
+	@Test
+	public void test27_apply_delta() {
+		try {
+			pm.constructGraph(fixture("topo.json"));
+			if (!pm.getInstallationOrder("C").equals(Arrays.asList("E", "G", "I", "C")))
+				fail("The installation order of C is not as expected before the delta");
+			pm.applyDelta(fixture("delta.json"));
+			if (pm.getAllPackages().contains("H") || pm.getAllPackages().size() != 9)
+				fail("H should be removed and J added");
+			if (!pm.getInstallationOrder("C").equals(Arrays.asList("E", "G", "C")))
+				fail("The dependency of C on I should be removed: " + pm.getInstallationOrder("C"));
+			if (!pm.getInstallationOrder("J").equals(Arrays.asList("E", "G", "I", "A", "J")))
+				fail("The installation order of J is not as expected: " + pm.getInstallationOrder("J"));
+			if (!pm.getInstallationOrder("D").equals(Arrays.asList("E", "G", "C", "B", "I", "A", "F", "D")))
+				fail("The installation order of D is not as expected: " + pm.getInstallationOrder("D"));
+			if (pm.getInstallCost("F") != 2.5)
+				fail("The install cost of F should be changed");
+			try {
+				pm.applyDelta(fixture("delta_invalid.json"));
+				fail("A ParseException should be thrown");
+			} catch (ParseException e) {
+			}
+			if (!pm.getInstallationOrder("C").equals(Arrays.asList("E", "G", "C")) || pm.getAllPackages().size() != 9)
+				fail("A delta with an invalid entry should leave the graph unchanged");
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if dependsOn agrees with the installation orders, with the closures kept 
+	 * and with the interval labels used when the closures do not fit the budget
+	 */
+	@Test
+	public void test28_depends_on() {
+		try {
+			pm.constructGraph(fixture("topo.json"));
+			for (long budget : new long[] {64L << 20, 0}) {
+				pm.setReachabilityBudget(budget);
+				for (String pkg : pm.getAllPackages()) {
+					Set<String> closure = new HashSet<String>(pm.getInstallationOrder(pkg));
+					closure.remove(pkg);
+					for (String dependency : pm.getAllPackages()) {
+						if (pm.dependsOn(pkg, dependency) != closure.contains(dependency))
+							fail("dependsOn(" + pkg + ", " + dependency + ") is wrong with a budget of " + budget);
+					}
+				}
+				ReachabilityIndex index = pm.getReachabilityIndex();
+				if (index.isExact() != (budget > 0) || index.getComponentCount() != 9 || index.getBuildNanos() <= 0)
+					fail("The index does not report how it was built");
+			}
+			try {
+				pm.dependsOn("A", "Z");
+				fail("A PackageNotFoundException should be thrown");
+			} catch (PackageNotFoundException e) {
+			}
+			// the packages of a cycle depend on each other and on themselves
+			pm = new PackageManager();
+			pm.constructGraph(fixture("cycle.json"));
+			if (!pm.dependsOn("B", "E") || !pm.dependsOn("E", "F") || !pm.dependsOn("F", "F") || pm.dependsOn("C", "C")
+					|| pm.dependsOn("E", "A") || !pm.dependsOn("A", "E"))
+				fail("dependsOn is wrong on a cycle");
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if the queries give the same answers on a graph kept off the heap, in 
+	 * direct buffers and in pages spilled to files, and if a delta is applied off the heap
+	 */
+	@Test
+	public void test29_off_heap_storage() {
+		try {
+			pm.constructGraph(fixture("topo.json"));
+			java.io.File spill = java.nio.file.Files.createTempDirectory("spill").toFile();
+			for (java.io.File directory : new java.io.File[] {null, spill}) {
+				PackageManager offHeap = new PackageManager();
+				offHeap.setOffHeapSpillDirectory(directory);
+				offHeap.setOffHeapStorage(true);
+				offHeap.constructGraph(fixture("topo.json"));
+				if (offHeap.getOffHeapFootprint() <= 0)
+					fail("The off-heap footprint should be reported");
+				if (!offHeap.getAllPackages().equals(pm.getAllPackages()) 
+						|| !offHeap.getInstallationOrderForAllPackages().equals(pm.getInstallationOrderForAllPackages()))
+					fail("The packages should be the same off the heap");
+				for (String pkg : pm.getAllPackages()) {
+					if (!offHeap.getInstallationOrder(pkg).equals(pm.getInstallationOrder(pkg))
+							|| !offHeap.getTransitiveDependents(pkg).equals(pm.getTransitiveDependents(pkg))
+							|| !offHeap.toInstall(pkg, "C").equals(pm.toInstall(pkg, "C"))
+							|| offHeap.dependsOn(pkg, "E") != pm.dependsOn(pkg, "E"))
+						fail("The queries of " + pkg + " should be the same off the heap");
+				}
+				offHeap.applyDelta(fixture("delta.json"));
+				pm.applyDelta(fixture("delta.json"));
+				if (offHeap.getOffHeapFootprint() <= 0 || !offHeap.getAllPackages().equals(pm.getAllPackages()))
+					fail("A delta should be applied to an off-heap graph without moving it to the heap");
+				for (String pkg : pm.getAllPackages()) {
+					if (!offHeap.getInstallationOrder(pkg).equals(pm.getInstallationOrder(pkg))
+							|| !offHeap.getDirectDependents(pkg).equals(pm.getDirectDependents(pkg)))
+						fail("The queries of " + pkg + " should be the same after a delta off the heap");
+				}
+				offHeap.setOffHeapStorage(false);
+				if (offHeap.getOffHeapFootprint() != 0 || !offHeap.getAllPackages().equals(pm.getAllPackages()))
+					fail("The graph should be moved back to the heap");
+				pm = new PackageManager();
+				pm.constructGraph(fixture("topo.json"));
+			}
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if the registry statistics agree with the queries of every package, counted 
+	 * exactly and with sketches, and if they are exported as CSV and json
+	 */
+	@Test
+	public void test30_registry_statistics() {
+		try {
+			pm.constructGraph(fixture("topo.json"));
+			for (int threshold : new int[] {200000, 0}) {
+				pm.setApproximationThreshold(threshold);
+				RegistryStatistics statistics = pm.getRegistryStatistics();
+				if (statistics.isApproximate() != (threshold == 0) || pm.getRegistryStatistics() != statistics)
+					fail("The statistics should be kept until the graph changes");
+				int fanIn = 0, fanOut = 0;
+				for (String pkg : pm.getAllPackages()) {
+					int dependencies = pm.getInstallationOrder(pkg).size() - 1;
+					if (statistics.getDependencyCount(pkg) != dependencies
+							|| statistics.getDependentCount(pkg) != pm.getTransitiveDependents(pkg).size()
+							|| statistics.getFanIn(pkg) != pm.getDirectDependents(pkg).size()
+							|| (statistics.getDepth(pkg) == 0) != (dependencies == 0))
+						fail("The statistics of " + pkg + " are wrong");
+					fanIn += statistics.getFanIn(pkg);
+					fanOut += statistics.getFanOut(pkg);
+				}
+				if (fanIn != fanOut || statistics.getDepth("H") != 6)
+					fail("The fan-in, fan-out or depth is wrong");
+			}
+			java.io.File csv = java.io.File.createTempFile("statistics", ".csv");
+			java.io.File json = java.io.File.createTempFile("statistics", ".json");
+			pm.exportStatistics(csv.getPath());
+			pm.exportStatistics(json.getPath());
+			List<String> lines = java.nio.file.Files.readAllLines(csv.toPath());
+			org.json.simple.JSONArray packages = (org.json.simple.JSONArray) ((org.json.simple.JSONObject) new org.json.simple.parser.JSONParser().parse(new java.io.FileReader(json))).get("packages");
+			if (lines.size() != 10 || !lines.get(0).startsWith("package,dependencies") || packages.size() != 9)
+				fail("The report should have one entry per package");
+			csv.delete();
+			json.delete();
+			try {
+				pm.getRegistryStatistics().getDepth("Z");
+				fail("A PackageNotFoundException should be thrown");
+			} catch (PackageNotFoundException e) {
+			}
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if a lazily loaded json file gives the same answers as one read eagerly, 
+	 * and if its index is saved beside it and read back
+	 */
+	@Test
+	public void test31_lazy_loading() {
+		try {
+			pm.constructGraph(fixture("topo.json"));
+			java.nio.file.Path directory = java.nio.file.Files.createTempDirectory("lazy");
+			java.nio.file.Path json = directory.resolve("topo.json");
+			java.nio.file.Files.copy(java.nio.file.Paths.get(fixture("topo.json")), json);
+			PackageManager lazy = new PackageManager();
+			lazy.setLazyLoading(true);
+			lazy.constructGraph(json.toString());
+			ManifestIndex index = ManifestIndex.open(json.toString());
+			if (!index.isLoaded() || index.size() != 9 || index.getEntryOffsets("A").length != 1 || index.contains("Z"))
+				fail("The index should be saved beside the json file");
+			if (!lazy.containsPackage("H") || lazy.containsPackage("Z"))
+				fail("The packages should be found through the index");
+			for (String pkg : new String[] {"A", "D", "H", "B", "E"}) {
+				if (!lazy.getInstallationOrder(pkg).equals(pm.getInstallationOrder(pkg))
+						|| !lazy.toInstall(pkg, "C").equals(pm.toInstall(pkg, "C"))
+						|| lazy.dependsOn(pkg, "G") != pm.dependsOn(pkg, "G"))
+					fail("The queries of " + pkg + " should be the same when loaded lazily");
+			}
+			try {
+				lazy.getInstallationOrder("Z");
+				fail("A PackageNotFoundException should be thrown");
+			} catch (PackageNotFoundException e) {
+			}
+			if (!lazy.getAllPackages().equals(pm.getAllPackages()) 
+					|| !new HashSet<String>(lazy.getTransitiveDependents("E")).equals(new HashSet<String>(pm.getTransitiveDependents("E"))))
+				fail("The whole file should be read for the queries about all the packages");
+			// the rest of a file changed since it was indexed is not read
+			PackageManager changed = new PackageManager();
+			changed.setLazyLoading(true);
+			changed.constructGraph(json.toString());
+			changed.getInstallationOrder("D");
+			java.nio.file.Files.write(json, "\n".getBytes(), java.nio.file.StandardOpenOption.APPEND);
+			try {
+				changed.getAllPackages();
+				fail("An UncheckedIOException should be thrown when the file changed");
+			} catch (java.io.UncheckedIOException e) {
+				// passed
+			}
+			java.nio.file.Files.delete(json);
+			java.nio.file.Files.delete(directory.resolve("topo.json.idx"));
+			java.nio.file.Files.delete(directory);
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if an entry without a name is rejected by every way of reading a json file
+	 */
+	@Test
+	public void test32_entry_without_name() {
+		try {
+			java.nio.file.Path file = java.nio.file.Files.createTempFile("unnamed", ".json");
+			java.nio.file.Files.write(file, ("{\"packages\": [{\"dependencies\": [\"B\"]}, "
+					+ "{\"name\": \"C\", \"dependencies\": []}]}").getBytes());
+			for (int mode = 0; mode < 3; mode++) {
+				PackageManager manager = new PackageManager();
+				manager.setStreamingIngest(mode == 1);
+				try {
+					if (mode == 2)
+						manager.constructGraph(Arrays.asList(file));
+					else
+						manager.constructGraph(file.toString());
+					fail("A ParseException should be thrown when an entry has no name");
+				} catch (ParseException e) {
+					// passed
+				}
+				if (!manager.getAllPackages().isEmpty())
+					fail("The graph should be left unchanged");
+			}
+			java.nio.file.Files.delete(file);
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
+
+	/**
+	 * This tests if a cost that is not a number is rejected by every way of reading a json 
+	 * file and by deltas
+	 */
+	@Test
+	public void test33_cost_not_a_number() {
+		try {
+			java.nio.file.Path file = java.nio.file.Files.createTempFile("cost", ".json");
+			java.nio.file.Files.write(file, "{\"packages\": [{\"name\": \"A\", \"cost\": \"3\", \"dependencies\": []}]}".getBytes());
+			for (boolean streaming : new boolean[] {false, true}) {
+				PackageManager manager = new PackageManager();
+				manager.setStreamingIngest(streaming);
+				try {
+					manager.constructGraph(file.toString());
+					fail("A ParseException should be thrown when a cost is not a number");
+				} catch (ParseException e) {
+					// passed
+				}
+			}
+			java.nio.file.Files.write(file, "{\"added\": [{\"name\": \"A\", \"cost\": \"3\", \"dependencies\": []}]}".getBytes());
+			try {
+				pm.applyDelta(file.toString());
+				fail("A ParseException should be thrown when a cost in a delta is not a number");
+			} catch (ParseException e) {
+				// passed
+			}
+			java.nio.file.Files.delete(file);
+		} catch (Exception e) {
+			fail("Unexpected exception: " + e.getClass().getName());
+		}
+	}
 }
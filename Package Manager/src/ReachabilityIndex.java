@@ -0,0 +1,492 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Filename:   ReachabilityIndex.java
+ * Project:    p4
+ *
+ * Answers whether a vertex depends on another one, directly or through its dependencies,
+ * without walking the graph for every question.
+ *
+ * The strongly connected components of the graph are condensed into a DAG, numbered so that
+ * every dependency of a component has a smaller number. If the memory budget allows it, the
+ * closure of every component is kept as a sorted list of intervals of component numbers, which
+ * is short since the components below a vertex are mostly numbered together, and a question
+ * is a binary search in it. Otherwise every component gets a few interval labels from
+ * randomized depth-first searches: a component that reaches another one has an interval that
+ * contains the interval of the other one in every labeling, so most negative answers take a
+ * few comparisons. A component below another one in the tree of a search is reached by it, so
+ * many positive answers are just as quick, and the others are settled by a depth-first search
+ * pruned by the labels.
+ *
+ * An index can be read by any number of threads at the same time.
+ */
+public class ReachabilityIndex {
+	/**
+	 * The largest number of labelings given to every component when the closures do not fit
+	 */
+	private static final int MAX_LABELS = 5;
+
+	/**
+	 * The scratch state of the pruned searches of the current thread, shared by all indexes
+	 */
+	private static final ThreadLocal<Scratch> SCRATCH = ThreadLocal.withInitial(Scratch::new);
+
+	/**
+	 * The graph the index was built from
+	 */
+	private final Graph graph;
+
+	/**
+	 * The version of the graph the index was built from
+	 */
+	private final long version;
+
+	/**
+	 * The number of the component of every vertex, indexed by id, -1 for removed vertices
+	 */
+	private final int[] componentOf;
+
+	/**
+	 * The number of components
+	 */
+	private final int components;
+
+	/**
+	 * Whether every component has an edge inside it, so that its vertices depend on themselves
+	 */
+	private final boolean[] cyclic;
+
+	/**
+	 * The dependencies of every component in the condensed DAG, those of component c being
+	 * dagTargets[dagOffsets[c]] to dagTargets[dagOffsets[c + 1] - 1]
+	 */
+	private final int[] dagOffsets, dagTargets;
+
+	/**
+	 * The closure of every component as pairs of the first and the last number of sorted
+	 * disjoint intervals of components, or null if the closures did not fit the budget
+	 */
+	private final int[][] closures;
+
+	/**
+	 * The number of labelings, 0 if the closures are kept
+	 */
+	private final int labels;
+
+	/**
+	 * The interval [low, rank] of every component in every labeling, at label * components + c
+	 */
+	private final int[] lows, ranks;
+
+	/**
+	 * The first rank of the tree of every component in every labeling, so that its tree spans
+	 * the ranks [first, rank]
+	 */
+	private final int[] firsts;
+
+	/**
+	 * The estimated number of bytes used by the index
+	 */
+	private final long footprint;
+
+	/**
+	 * The time spent building the index
+	 */
+	private final long buildNanos;
+
+	/**
+	 * Builds the index of a graph
+	 *
+	 * @param graph the graph
+	 * @param budget the number of bytes the closures may use before the index falls back to
+	 * labels, which also bounds the number of labelings
+	 */
+	public ReachabilityIndex(Graph graph, long budget) {
+		long start = System.nanoTime();
+		this.graph = graph;
+		this.version = graph.version();
+		componentOf = StronglyConnectedComponents.numberComponents(graph);
+		int count = 0;
+		for (int component : componentOf) {
+			count = Math.max(count, component + 1);
+		}
+		components = count;
+		cyclic = new boolean[count];
+		// count the edges between components, then store them and drop the duplicates
+		int bound = componentOf.length;
+		int[] degree = new int[count + 1];
+		int[] members = new int[count];
+		for (int id = 0; id < bound; id++) {
+			int from = componentOf[id];
+			if (from < 0)
+				continue;
+			if (++members[from] > 1)
+				cyclic[from] = true;
+			for (int i = 0; i < graph.outDegree(id); i++) {
+				int to = componentOf[graph.successor(id, i)];
+				if (to == from)
+					cyclic[from] = true;
+				else if (to >= 0)
+					degree[from + 1]++;
+			}
+		}
+		int[] offsets = new int[count + 1];
+		for (int c = 0; c < count; c++) {
+			offsets[c + 1] = offsets[c] + degree[c + 1];
+		}
+		int[] targets = new int[offsets[count]];
+		int[] next = Arrays.copyOf(offsets, count);
+		for (int id = 0; id < bound; id++) {
+			int from = componentOf[id];
+			if (from < 0)
+				continue;
+			for (int i = 0; i < graph.outDegree(id); i++) {
+				int to = componentOf[graph.successor(id, i)];
+				if (to != from && to >= 0)
+					targets[next[from]++] = to;
+			}
+		}
+		int edges = 0;
+		for (int c = 0; c < count; c++) {
+			int first = edges;
+			Arrays.sort(targets, offsets[c], offsets[c + 1]);
+			for (int i = offsets[c]; i < offsets[c + 1]; i++) {
+				if (i == offsets[c] || targets[i] != targets[i - 1])
+					targets[edges++] = targets[i];
+			}
+			offsets[c] = first;
+		}
+		offsets[count] = edges;
+		dagOffsets = offsets;
+		dagTargets = Arrays.copyOf(targets, edges);
+		long base = 4L * bound + count + 4L * (count + 1) + 4L * edges;
+
+		int[][] exact = buildClosures(budget - base);
+		if (exact != null) {
+			closures = exact;
+			labels = 0;
+			lows = ranks = firsts = null;
+			long bytes = base + 16L * count;
+			for (int[] closure : exact) {
+				bytes += 16 + 4L * closure.length;
+			}
+			footprint = bytes;
+		} else {
+			closures = null;
+			labels = (int) Math.max(1, Math.min(MAX_LABELS, (budget - base) / Math.max(1, 12L * count)));
+			lows = new int[labels * count];
+			ranks = new int[labels * count];
+			firsts = new int[labels * count];
+			Random random = new Random(graph.version());
+			for (int label = 0; label < labels; label++) {
+				buildLabel(label, random);
+			}
+			footprint = base + 12L * labels * count;
+		}
+		buildNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Returns whether the index is still up to date with the graph
+	 *
+	 * @param graph the graph
+	 * @return true if the index was built from this graph and it has not changed since
+	 */
+	public boolean isCurrent(Graph graph) {
+		return this.graph == graph && graph.version() == version;
+	}
+
+	/**
+	 * Returns whether a vertex depends on another one, directly or through its dependencies.
+	 * A vertex only depends on itself if it is on a cycle.
+	 *
+	 * @param from the id of the dependent vertex
+	 * @param to the id of the dependency
+	 * @return true if there is a path of at least one edge from the first vertex to the second
+	 */
+	public boolean reaches(int from, int to) {
+		int source = componentOf[from];
+		int target = componentOf[to];
+		if (source == target)
+			return cyclic[source];
+		// the dependencies of a component all have smaller numbers
+		if (target > source)
+			return false;
+		if (closures != null)
+			return contains(closures[source], target);
+		if (!labelsContain(source, target))
+			return false;
+		return treeContains(source, target) || search(source, target);
+	}
+
+	/**
+	 * Returns whether the closures of all components are kept
+	 *
+	 * @return true if every question is a binary search, false if the index uses labels
+	 */
+	public boolean isExact() {
+		return closures != null;
+	}
+
+	/**
+	 * Returns the number of labelings of every component
+	 *
+	 * @return the number of labelings, 0 if the closures are kept
+	 */
+	public int getLabelCount() {
+		return labels;
+	}
+
+	/**
+	 * Returns the number of strongly connected components of the graph
+	 *
+	 * @return the number of vertices of the condensed DAG
+	 */
+	public int getComponentCount() {
+		return components;
+	}
+
+	/**
+	 * Returns the memory used by the index
+	 *
+	 * @return the estimated number of bytes of the index
+	 */
+	public long getFootprint() {
+		return footprint;
+	}
+
+	/**
+	 * Returns the time spent building the index
+	 *
+	 * @return the build time in nanoseconds
+	 */
+	public long getBuildNanos() {
+		return buildNanos;
+	}
+
+	/**
+	 * This helper method computes the closure of every component from those of its
+	 * dependencies, which have smaller numbers and are computed first
+	 * @param budget - the number of bytes the closures may use
+	 * @return the closures, or null as soon as they need more than the budget
+	 */
+	private int[][] buildClosures(long budget) {
+		int[][] result = new int[components][];
+		long used = 16L * components;
+		// the intervals of the dependencies, each encoded as first << 32 | last
+		long[] buffer = new long[16];
+		for (int c = 0; c < components; c++) {
+			int size = 0;
+			for (int i = dagOffsets[c]; i < dagOffsets[c + 1]; i++) {
+				int dependency = dagTargets[i];
+				int[] closure = result[dependency];
+				if (size + 1 + closure.length / 2 > buffer.length)
+					buffer = Arrays.copyOf(buffer, Math.max(2 * buffer.length, size + 1 + closure.length / 2));
+				buffer[size++] = ((long) dependency << 32) | dependency;
+				for (int j = 0; j < closure.length; j += 2) {
+					buffer[size++] = ((long) closure[j] << 32) | closure[j + 1];
+				}
+			}
+			Arrays.sort(buffer, 0, size);
+			// merge the intervals that overlap or touch
+			int merged = 0;
+			for (int i = 0; i < size; i++) {
+				int first = (int) (buffer[i] >>> 32), last = (int) buffer[i];
+				if (merged > 0 && first <= (int) buffer[merged - 1] + 1) {
+					if (last > (int) buffer[merged - 1])
+						buffer[merged - 1] = (buffer[merged - 1] & 0xFFFFFFFF00000000L) | last;
+				} else {
+					buffer[merged++] = buffer[i];
+				}
+			}
+			int[] closure = new int[2 * merged];
+			for (int i = 0; i < merged; i++) {
+				closure[2 * i] = (int) (buffer[i] >>> 32);
+				closure[2 * i + 1] = (int) buffer[i];
+			}
+			used += 16 + 4L * closure.length;
+			if (used > budget)
+				return null;
+			result[c] = closure;
+		}
+		return result;
+	}
+
+	/**
+	 * This helper method checks if a closure contains a component
+	 * @param closure - the sorted intervals of the closure
+	 * @param target - the number of the component
+	 * @return true if an interval of the closure contains the component
+	 */
+	private static boolean contains(int[] closure, int target) {
+		// find the last interval starting at or before the target
+		int low = 0, high = closure.length / 2 - 1;
+		while (low <= high) {
+			int middle = (low + high) >>> 1;
+			if (closure[2 * middle] <= target)
+				low = middle + 1;
+			else
+				high = middle - 1;
+		}
+		return high >= 0 && closure[2 * high + 1] >= target;
+	}
+
+	/**
+	 * This helper method labels every component with the interval of the post-order ranks
+	 * below it in one randomized depth-first search of the condensed DAG
+	 * @param label - the number of the labeling
+	 * @param random - the source of random choices
+	 */
+	private void buildLabel(int label, Random random) {
+		int offset = label * components;
+		// visit the components in a random order, and their dependencies from a random one
+		int[] order = new int[components];
+		for (int c = 0; c < components; c++) {
+			int j = random.nextInt(c + 1);
+			order[c] = order[j];
+			order[j] = c;
+		}
+		boolean[] visited = new boolean[components];
+		int[] stack = new int[components];
+		int[] start = new int[components];
+		int[] step = new int[components];
+		int rank = 0;
+		for (int root : order) {
+			if (visited[root])
+				continue;
+			visited[root] = true;
+			int depth = 0;
+			firsts[offset + root] = rank;
+			stack[depth] = root;
+			start[depth] = randomStart(root, random);
+			step[depth++] = 0;
+			while (depth > 0) {
+				int c = stack[depth - 1];
+				int degree = dagOffsets[c + 1] - dagOffsets[c];
+				if (step[depth - 1] < degree) {
+					int i = (start[depth - 1] + step[depth - 1]++) % degree;
+					int dependency = dagTargets[dagOffsets[c] + i];
+					if (!visited[dependency]) {
+						visited[dependency] = true;
+						firsts[offset + dependency] = rank;
+						stack[depth] = dependency;
+						start[depth] = randomStart(dependency, random);
+						step[depth++] = 0;
+					}
+					continue;
+				}
+				ranks[offset + c] = rank++;
+				depth--;
+			}
+		}
+		// the lowest rank below every component, from the dependencies up
+		for (int c = 0; c < components; c++) {
+			int low = ranks[offset + c];
+			for (int i = dagOffsets[c]; i < dagOffsets[c + 1]; i++) {
+				low = Math.min(low, lows[offset + dagTargets[i]]);
+			}
+			lows[offset + c] = low;
+		}
+	}
+
+	/**
+	 * This helper method picks the position of the first dependency visited from a component
+	 * @param c - the number of the component
+	 * @param random - the source of random choices
+	 * @return a position among the dependencies of the component
+	 */
+	private int randomStart(int c, Random random) {
+		int degree = dagOffsets[c + 1] - dagOffsets[c];
+		return degree <= 1 ? 0 : random.nextInt(degree);
+	}
+
+	/**
+	 * This helper method checks if the intervals of a component contain those of another one
+	 * in every labeling, which they do if the first one reaches the second one
+	 * @param source - the number of the first component
+	 * @param target - the number of the second component
+	 * @return false if the first component cannot reach the second one
+	 */
+	private boolean labelsContain(int source, int target) {
+		for (int offset = 0; offset < labels * components; offset += components) {
+			if (lows[offset + target] < lows[offset + source] || ranks[offset + target] > ranks[offset + source])
+				return false;
+		}
+		return true;
+	}
+
+	/**
+	 * This helper method checks if a component is below another one in the tree of any 
+	 * labeling, in which case the second one reaches it
+	 * @param source - the number of the first component
+	 * @param target - the number of the second component
+	 * @return true if the first component reaches the second one through its tree
+	 */
+	private boolean treeContains(int source, int target) {
+		for (int offset = 0; offset < labels * components; offset += components) {
+			if (ranks[offset + target] >= firsts[offset + source] && ranks[offset + target] <= ranks[offset + source])
+				return true;
+		}
+		return false;
+	}
+
+	/**
+	 * This helper method searches the condensed DAG for a path between two components, only
+	 * descending into the components whose labels may still reach the target
+	 * @param source - the number of the first component
+	 * @param target - the number of the second component
+	 * @return true if the first component reaches the second one
+	 */
+	private boolean search(int source, int target) {
+		Scratch scratch = SCRATCH.get();
+		int epoch = scratch.begin(components);
+		int[] stamps = scratch.stamps;
+		int[] stack = scratch.stack;
+		int size = 0;
+		stack[size++] = source;
+		stamps[source] = epoch;
+		while (size > 0) {
+			int c = stack[--size];
+			for (int i = dagOffsets[c]; i < dagOffsets[c + 1]; i++) {
+				int dependency = dagTargets[i];
+				if (dependency == target)
+					return true;
+				// a component with a smaller number than the target cannot reach it
+				if (dependency < target || stamps[dependency] == epoch || !labelsContain(dependency, target))
+					continue;
+				if (treeContains(dependency, target))
+					return true;
+				stamps[dependency] = epoch;
+				stack[size++] = dependency;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * The visited stamps and the stack of the pruned searches of one thread
+	 */
+	private static class Scratch {
+		int[] stamps = new int[0];
+		int[] stack = new int[0];
+		int epoch;
+
+		/**
+		 * Starts a search of a DAG with the given number of components
+		 * @return the stamp of the components visited by the search
+		 */
+		int begin(int components) {
+			if (stamps.length < components) {
+				stamps = new int[components];
+				stack = new int[components];
+				epoch = 0;
+			}
+			if (++epoch == Integer.MAX_VALUE) {
+				Arrays.fill(stamps, 0);
+				epoch = 1;
+			}
+			return epoch;
+		}
+	}
+}
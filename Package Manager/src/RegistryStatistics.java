@@ -0,0 +1,405 @@
+import java.io.IOException;
+import java.io.Writer;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+import org.json.simple.JSONValue;
+
+/**
+ * Filename:   RegistryStatistics.java
+ * Project:    p4
+ *
+ * The dependency statistics of every package of a graph: the number of distinct transitive
+ * dependencies and dependents, the depth of its longest chain of dependencies, and its number
+ * of direct dependents (fan-in) and dependencies (fan-out).
+ *
+ * The depth of every package is found in one pass over the installation order, and splits the
+ * packages into waves of the same depth, which only depend on packages of earlier waves. The
+ * sets of dependencies are then the union of the sets of the successors, as in
+ * DependencyClosure, computed one wave at a time with the packages of a wave shared between
+ * the threads of a fork-join pool. The sets of dependents are computed the same way, over
+ * waves of the same height, the length of the longest chain of dependents. Like
+ * DependencyClosure, the sets are exact bitsets or fixed-size sketches, and are released as
+ * soon as all the packages that need them have been counted.
+ */
+public class RegistryStatistics {
+	/**
+	 * The number of packages of a wave below which they are counted by one thread
+	 */
+	private static final int LEAF_SIZE = 256;
+
+	/**
+	 * The graph the statistics were computed from
+	 */
+	private final Graph graph;
+
+	/**
+	 * The version of the graph the statistics were computed from
+	 */
+	private final long version;
+
+	/**
+	 * Whether the counts of dependencies and dependents are estimates
+	 */
+	private final boolean approximate;
+
+	/**
+	 * The number of distinct transitive dependencies and dependents of every vertex, and the
+	 * length of its longest chain of dependencies, indexed by id
+	 */
+	private final int[] dependencies, dependents, depths;
+
+	/**
+	 * The time taken to compute the statistics
+	 */
+	private final long computeNanos;
+
+	/**
+	 * Computes the statistics of every vertex of a graph
+	 *
+	 * @param graph the graph, which must not change while the statistics are computed
+	 * @param approximate true to estimate the transitive counts with sketches instead of
+	 * exact bitsets
+	 * @param pool the pool the packages of every wave are counted by
+	 * @throws CycleException if the graph has a cycle
+	 */
+	public RegistryStatistics(Graph graph, boolean approximate, ForkJoinPool pool) throws CycleException {
+		long start = System.nanoTime();
+		this.graph = graph;
+		this.version = graph.version();
+		this.approximate = approximate;
+		int[] order = TopologicalOrder.sort(graph);
+		int bound = graph.idBound();
+		// a vertex comes after its successors in the installation order, and before its
+		// predecessors in the reverse order
+		depths = new int[bound];
+		for (int id : order) {
+			for (int i = 0; i < graph.outDegree(id); i++) {
+				int successor = graph.successor(id, i);
+				if (graph.isVertex(successor))
+					depths[id] = Math.max(depths[id], depths[successor] + 1);
+			}
+		}
+		int[] heights = new int[bound];
+		for (int j = order.length - 1; j >= 0; j--) {
+			int id = order[j];
+			for (int i = 0; i < graph.inDegree(id); i++) {
+				int predecessor = graph.predecessor(id, i);
+				if (graph.isVertex(predecessor))
+					heights[id] = Math.max(heights[id], heights[predecessor] + 1);
+			}
+		}
+		dependencies = new int[bound];
+		dependents = new int[bound];
+		new Sweep(order, depths, true, dependencies).run(pool);
+		new Sweep(order, heights, false, dependents).run(pool);
+		computeNanos = System.nanoTime() - start;
+	}
+
+	/**
+	 * Returns whether the statistics are still up to date with the graph
+	 *
+	 * @param graph the graph
+	 * @return true if the statistics were computed from this graph and it has not changed since
+	 */
+	public boolean isCurrent(Graph graph) {
+		return this.graph == graph && graph.version() == version;
+	}
+
+	/**
+	 * Returns whether the counts of dependencies and dependents are estimates
+	 *
+	 * @return true if they were computed with sketches
+	 */
+	public boolean isApproximate() {
+		return approximate;
+	}
+
+	/**
+	 * Returns the time taken to compute the statistics
+	 *
+	 * @return the number of nanoseconds
+	 */
+	public long getComputeNanos() {
+		return computeNanos;
+	}
+
+	/**
+	 * Returns the number of distinct packages a package depends on, directly or not
+	 *
+	 * @param pkg the name of the package
+	 * @return the number of transitive dependencies
+	 * @throws PackageNotFoundException if the package is not in the graph
+	 */
+	public int getDependencyCount(String pkg) throws PackageNotFoundException {
+		return dependencies[idOf(pkg)];
+	}
+
+	/**
+	 * Returns the number of distinct packages that depend on a package, directly or not
+	 *
+	 * @param pkg the name of the package
+	 * @return the number of transitive dependents
+	 * @throws PackageNotFoundException if the package is not in the graph
+	 */
+	public int getDependentCount(String pkg) throws PackageNotFoundException {
+		return dependents[idOf(pkg)];
+	}
+
+	/**
+	 * Returns the length of the longest chain of dependencies of a package
+	 *
+	 * @param pkg the name of the package
+	 * @return 0 for a package without dependencies, or else one more than the largest depth of
+	 * its dependencies
+	 * @throws PackageNotFoundException if the package is not in the graph
+	 */
+	public int getDepth(String pkg) throws PackageNotFoundException {
+		return depths[idOf(pkg)];
+	}
+
+	/**
+	 * Returns the number of packages that depend on a package directly
+	 *
+	 * @param pkg the name of the package
+	 * @return the number of direct dependents
+	 * @throws PackageNotFoundException if the package is not in the graph
+	 */
+	public int getFanIn(String pkg) throws PackageNotFoundException {
+		return graph.inDegree(idOf(pkg));
+	}
+
+	/**
+	 * Returns the number of packages a package depends on directly
+	 *
+	 * @param pkg the name of the package
+	 * @return the number of direct dependencies
+	 * @throws PackageNotFoundException if the package is not in the graph
+	 */
+	public int getFanOut(String pkg) throws PackageNotFoundException {
+		return graph.outDegree(idOf(pkg));
+	}
+
+	/**
+	 * Writes the statistics of every package as CSV, one line per package in case-insensitive
+	 * order after a header line, without holding the report in memory
+	 *
+	 * @param out the writer, which is not closed
+	 * @throws IOException if the writer fails
+	 */
+	public void writeCsv(Writer out) throws IOException {
+		out.write("package,dependencies,dependents,depth,fan_in,fan_out\n");
+		for (int id : graph.sortedIds()) {
+			String name = graph.nameOf(id);
+			// quote the names that would break the columns
+			if (name.indexOf(',') >= 0 || name.indexOf('"') >= 0 || name.indexOf('\n') >= 0 || name.indexOf('\r') >= 0)
+				name = "\"" + name.replace("\"", "\"\"") + "\"";
+			out.write(name + "," + dependencies[id] + "," + dependents[id] + "," + depths[id] + ","
+					+ graph.inDegree(id) + "," + graph.outDegree(id) + "\n");
+		}
+		out.flush();
+	}
+
+	/**
+	 * Writes the statistics of every package as a json object with a "packages" array, one
+	 * entry per package in case-insensitive order, without holding the report in memory
+	 *
+	 * @param out the writer, which is not closed
+	 * @throws IOException if the writer fails
+	 */
+	public void writeJson(Writer out) throws IOException {
+		out.write("{\"approximate\": " + approximate + ", \"packages\": [\n");
+		int[] sortedIds = graph.sortedIds();
+		for (int i = 0; i < sortedIds.length; i++) {
+			int id = sortedIds[i];
+			out.write("{\"name\": \"" + JSONValue.escape(graph.nameOf(id)) + "\", \"dependencies\": " + dependencies[id]
+					+ ", \"dependents\": " + dependents[id] + ", \"depth\": " + depths[id] + ", \"fanIn\": "
+					+ graph.inDegree(id) + ", \"fanOut\": " + graph.outDegree(id) + (i + 1 < sortedIds.length ? "},\n" : "}\n"));
+		}
+		out.write("]}\n");
+		out.flush();
+	}
+
+	/**
+	 * This helper method finds the id of a package
+	 * @param pkg - the name of the package
+	 * @return the id
+	 * @throws PackageNotFoundException if the package is not in the graph
+	 */
+	private int idOf(String pkg) throws PackageNotFoundException {
+		int id = graph.idOf(pkg);
+		if (id < 0)
+			throw new PackageNotFoundException();
+		return id;
+	}
+
+	/**
+	 * One sweep over the waves of the graph, counting the transitive successors or
+	 * predecessors of every vertex
+	 */
+	private class Sweep {
+		/**
+		 * true to count the successors, false to count the predecessors
+		 */
+		private final boolean forward;
+
+		/**
+		 * The counts of every vertex, indexed by id
+		 */
+		private final int[] counts;
+
+		/**
+		 * The ids of the vertices sorted by wave, and where every wave starts in it
+		 */
+		private final int[] waves, waveStarts;
+
+		/**
+		 * The set of every vertex whose set is still needed, in exact or approximate mode
+		 */
+		private final BitSet[] closures;
+		private final long[][] sketches;
+
+		/**
+		 * The number of the vertices of later waves that still need the set of every vertex
+		 */
+		private final AtomicIntegerArray pending;
+
+		/**
+		 * Sorts the vertices into waves
+		 * @param order - the ids of the vertices in installation order
+		 * @param levels - the wave of every vertex, indexed by id
+		 * @param forward - true to count the successors, false to count the predecessors
+		 * @param counts - the array the counts are written to
+		 */
+		Sweep(int[] order, int[] levels, boolean forward, int[] counts) {
+			this.forward = forward;
+			this.counts = counts;
+			int levelCount = 0;
+			for (int id : order) {
+				levelCount = Math.max(levelCount, levels[id] + 1);
+			}
+			waveStarts = new int[levelCount + 1];
+			for (int id : order) {
+				waveStarts[levels[id] + 1]++;
+			}
+			for (int level = 0; level < levelCount; level++) {
+				waveStarts[level + 1] += waveStarts[level];
+			}
+			waves = new int[order.length];
+			int[] next = java.util.Arrays.copyOf(waveStarts, levelCount);
+			pending = new AtomicIntegerArray(counts.length);
+			for (int id : order) {
+				waves[next[levels[id]]++] = id;
+				int needed = 0;
+				for (int i = 0; i < degree(id, !forward); i++) {
+					if (graph.isVertex(neighbor(id, i, !forward)))
+						needed++;
+				}
+				pending.set(id, needed);
+			}
+			closures = approximate ? null : new BitSet[counts.length];
+			sketches = approximate ? new long[counts.length][] : null;
+		}
+
+		/**
+		 * Counts every wave in turn, sharing the large waves between the threads of the pool
+		 * @param pool - the pool
+		 */
+		void run(ForkJoinPool pool) {
+			for (int level = 0; level + 1 < waveStarts.length; level++) {
+				int from = waveStarts[level], to = waveStarts[level + 1];
+				// joining a wave publishes its sets to the threads counting the next one
+				if (to - from <= LEAF_SIZE)
+					count(from, to);
+				else
+					pool.invoke(new WaveTask(this, from, to));
+			}
+		}
+
+		/**
+		 * Counts the vertices of part of a wave
+		 * @param from - the position of the first vertex in the waves
+		 * @param to - the position after the last vertex
+		 */
+		void count(int from, int to) {
+			long[] buffer = approximate ? new long[2 * DependencyClosure.SKETCH_SIZE + 1] : null;
+			for (int position = from; position < to; position++) {
+				int id = waves[position];
+				BitSet closure = approximate ? null : new BitSet();
+				long[] sketch = approximate ? new long[0] : null;
+				for (int i = 0; i < degree(id, forward); i++) {
+					int neighbor = neighbor(id, i, forward);
+					if (!graph.isVertex(neighbor))
+						continue;
+					if (approximate) {
+						sketch = DependencyClosure.merge(sketch, sketches[neighbor], DependencyClosure.hash(neighbor), buffer);
+					} else {
+						closure.set(neighbor);
+						closure.or(closures[neighbor]);
+					}
+					// the last vertex to need the set of a neighbor releases it
+					if (pending.decrementAndGet(neighbor) == 0) {
+						if (approximate)
+							sketches[neighbor] = null;
+						else
+							closures[neighbor] = null;
+					}
+				}
+				counts[id] = approximate ? DependencyClosure.estimate(sketch) : closure.cardinality();
+				if (pending.get(id) > 0) {
+					if (approximate)
+						sketches[id] = sketch;
+					else
+						closures[id] = closure;
+				}
+			}
+		}
+
+		/**
+		 * This helper method returns the number of successors or predecessors of a vertex
+		 * @param id - the id of the vertex
+		 * @param successors - true for the successors, false for the predecessors
+		 * @return the degree
+		 */
+		private int degree(int id, boolean successors) {
+			return successors ? graph.outDegree(id) : graph.inDegree(id);
+		}
+
+		/**
+		 * This helper method returns the i-th successor or predecessor of a vertex
+		 * @param id - the id of the vertex
+		 * @param i - the position of the neighbor
+		 * @param successors - true for the successors, false for the predecessors
+		 * @return the id of the neighbor
+		 */
+		private int neighbor(int id, int i, boolean successors) {
+			return successors ? graph.successor(id, i) : graph.predecessor(id, i);
+		}
+	}
+
+	/**
+	 * Counts part of a wave, splitting it in halves until the parts are small
+	 */
+	@SuppressWarnings("serial")
+	private static class WaveTask extends RecursiveAction {
+		private final Sweep sweep;
+		private final int from, to;
+
+		WaveTask(Sweep sweep, int from, int to) {
+			this.sweep = sweep;
+			this.from = from;
+			this.to = to;
+		}
+
+		protected void compute() {
+			if (to - from <= LEAF_SIZE) {
+				sweep.count(from, to);
+				return;
+			}
+			int middle = (from + to) >>> 1;
+			invokeAll(new WaveTask(sweep, from, middle), new WaveTask(sweep, middle, to));
+		}
+	}
+}
@@ -0,0 +1,77 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Filename:   Release.java
+ * Project:    p4
+ *
+ * One version of a package, with the range of versions it accepts for each of its
+ * dependencies. A json file declares a release with an entry that has a "version", and it may
+ * give the dependencies as an object from names to ranges instead of an array of names.
+ */
+public final class Release {
+	/**
+	 * The name of the package
+	 */
+	private final String name;
+
+	/**
+	 * The version of the release
+	 */
+	private final Version version;
+
+	/**
+	 * The range accepted for every dependency, in the order of the json entry
+	 */
+	private final Map<String, VersionRange> dependencies;
+
+	/**
+	 * Creates a release
+	 *
+	 * @param name the name of the package
+	 * @param version the version of the release
+	 * @param dependencies the range accepted for every dependency
+	 */
+	public Release(String name, Version version, Map<String, VersionRange> dependencies) {
+		this.name = name;
+		this.version = version;
+		this.dependencies = Collections.unmodifiableMap(new LinkedHashMap<String, VersionRange>(dependencies));
+	}
+
+	/**
+	 * Returns the name of the package
+	 *
+	 * @return the name
+	 */
+	public String getName() {
+		return name;
+	}
+
+	/**
+	 * Returns the version of the release
+	 *
+	 * @return the version
+	 */
+	public Version getVersion() {
+		return version;
+	}
+
+	/**
+	 * Returns the dependencies of the release
+	 *
+	 * @return the range accepted for every dependency, by the name of the dependency
+	 */
+	public Map<String, VersionRange> getDependencies() {
+		return dependencies;
+	}
+
+	/**
+	 * Returns the release as the name and version of the package
+	 *
+	 * @return such as "A 1.2.0"
+	 */
+	public String toString() {
+		return name + " " + version;
+	}
+}
@@ -0,0 +1,50 @@
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Filename:   ResolutionException.java
+ * Project:    p4
+ *
+ * Thrown when no choice of one version per package satisfies all the version constraints of a
+ * package and its dependencies.
+ */
+@SuppressWarnings("serial")
+public class ResolutionException extends Exception {
+	/**
+	 * The package that could not be resolved
+	 */
+	private final String pkg;
+
+	/**
+	 * Why every version of the package that matches the requested range was ruled out
+	 */
+	private final List<String> reasons;
+
+	/**
+	 * Creates an exception for a package
+	 * @param pkg the package that could not be resolved
+	 * @param reasons why every acceptable version of the package was ruled out
+	 */
+	public ResolutionException(String pkg, List<String> reasons) {
+		super("cannot resolve the versions of " + pkg + (reasons.isEmpty() ? "" : ": " + String.join("; ", reasons)));
+		this.pkg = pkg;
+		this.reasons = Collections.unmodifiableList(reasons);
+	}
+
+	/**
+	 * Returns the package that could not be resolved
+	 * @return the name of the package
+	 */
+	public String getPackage() {
+		return pkg;
+	}
+
+	/**
+	 * Returns why every acceptable version of the package was ruled out
+	 * @return one reason per conflict, such as "A 1.0 depends on B >=2, which has no matching
+	 * release"
+	 */
+	public List<String> getReasons() {
+		return reasons;
+	}
+}
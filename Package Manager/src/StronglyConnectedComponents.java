@@ -0,0 +1,217 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Filename:   StronglyConnectedComponents.java
+ * Project:    p4
+ * 
+ * Finds the strongly connected components of a graph with an iterative version of Tarjan's 
+ * algorithm, which visits every vertex and edge once and never recurses, so that long chains of
+ * dependencies cannot overflow the call stack.
+ * 
+ * A component is cyclic if it has more than one vertex or a vertex that depends on itself. 
+ * Every cyclic component is reported in a CycleException together with one concrete cycle 
+ * through it.
+ */
+public class StronglyConnectedComponents {
+
+	/**
+	 * Returns the cyclic components of the part of a graph reachable from a vertex
+	 * 
+	 * @param graph the graph
+	 * @param root the id of the vertex to start from, or -1 for the whole graph
+	 * @return the ids of the vertices of every cyclic component
+	 */
+	public static List<int[]> findCyclicComponents(Graph graph, int root) {
+		return search(graph, root, null);
+	}
+
+	/**
+	 * Numbers the components of a whole graph in the order Tarjan's algorithm completes them, 
+	 * so that every edge between two components goes from a component to one with a smaller 
+	 * number, as in the condensation of the graph in reverse topological order
+	 * 
+	 * @param graph the graph
+	 * @return the number of the component of every vertex, indexed by id, and -1 for the ids of
+	 * removed vertices
+	 */
+	public static int[] numberComponents(Graph graph) {
+		int[] componentOf = new int[graph.idBound()];
+		java.util.Arrays.fill(componentOf, -1);
+		search(graph, -1, componentOf);
+		return componentOf;
+	}
+
+	/**
+	 * This helper method runs Tarjan's algorithm
+	 * @param graph - the graph
+	 * @param root - the id of the vertex to start from, or -1 for the whole graph
+	 * @param componentOf - the array the number of the component of every vertex is stored 
+	 * in, or null if only the cyclic components are needed
+	 * @return the ids of the vertices of every cyclic component
+	 */
+	private static List<int[]> search(Graph graph, int root, int[] componentOf) {
+		int bound = graph.idBound();
+		// the discovery index of every vertex, starting at 1 so that 0 means not visited
+		int[] index = new int[bound];
+		int[] low = new int[bound];
+		boolean[] onStack = new boolean[bound];
+		// the stack of visited vertices that are not yet assigned to a component
+		int[] stack = new int[bound];
+		int stackSize = 0;
+		// the explicit call stack, holding each vertex and the position of its next successor
+		int[] callVertex = new int[bound];
+		int[] callEdge = new int[bound];
+		int depth = 0;
+		int counter = 0;
+		int completed = 0;
+		List<int[]> components = new ArrayList<int[]>();
+
+		int first = root < 0 ? 0 : root;
+		int last = root < 0 ? bound - 1 : root;
+		for (int start = first; start <= last; start++) {
+			if (index[start] != 0 || !graph.isVertex(start))
+				continue;
+			callVertex[0] = start;
+			callEdge[0] = 0;
+			depth = 1;
+			index[start] = low[start] = ++counter;
+			stack[stackSize++] = start;
+			onStack[start] = true;
+			while (depth > 0) {
+				int vertex = callVertex[depth - 1];
+				if (callEdge[depth - 1] < graph.outDegree(vertex)) {
+					int successor = graph.successor(vertex, callEdge[depth - 1]++);
+					if (!graph.isVertex(successor))
+						continue;
+					if (index[successor] == 0) {
+						// descend into the successor
+						index[successor] = low[successor] = ++counter;
+						stack[stackSize++] = successor;
+						onStack[successor] = true;
+						callVertex[depth] = successor;
+						callEdge[depth] = 0;
+						depth++;
+					} else if (onStack[successor]) {
+						low[vertex] = Math.min(low[vertex], index[successor]);
+					}
+					continue;
+				}
+				// all successors are done, so return to the caller
+				depth--;
+				if (depth > 0) {
+					int caller = callVertex[depth - 1];
+					low[caller] = Math.min(low[caller], low[vertex]);
+				}
+				if (low[vertex] != index[vertex])
+					continue;
+				// the vertex is the root of a component, which is on top of the stack
+				int size = 0;
+				while (stack[stackSize - 1 - size] != vertex)
+					size++;
+				size++;
+				int[] component = new int[size];
+				for (int i = 0; i < size; i++) {
+					component[i] = stack[--stackSize];
+					onStack[component[i]] = false;
+					if (componentOf != null)
+						componentOf[component[i]] = completed;
+				}
+				completed++;
+				if (size > 1 || hasSelfLoop(graph, vertex))
+					components.add(component);
+			}
+		}
+		return components;
+	}
+
+	/**
+	 * Creates a CycleException reporting every cyclic component reachable from a vertex, and one
+	 * cycle through each of them
+	 * 
+	 * @param graph the graph
+	 * @param root the id of the vertex to start from, or -1 for the whole graph
+	 * @return the exception to be thrown
+	 */
+	public static CycleException cycleException(Graph graph, int root) {
+		List<List<String>> components = new ArrayList<List<String>>();
+		List<List<String>> cycles = new ArrayList<List<String>>();
+		boolean[] member = new boolean[graph.idBound()];
+		for (int[] component : findCyclicComponents(graph, root)) {
+			List<String> names = new ArrayList<String>(component.length);
+			for (int id : component) {
+				names.add(graph.nameOf(id));
+			}
+			names.sort(String.CASE_INSENSITIVE_ORDER);
+			components.add(names);
+			cycles.add(findCycle(graph, component, member));
+		}
+		return new CycleException(components, cycles);
+	}
+
+	/**
+	 * This helper method finds a cycle inside a cyclic component with a breadth-first search 
+	 * from one of its vertices back to itself
+	 * @param graph - the graph
+	 * @param component - the ids of the vertices of the component
+	 * @param member - scratch array of the size of the graph, all false
+	 * @return the names along the cycle, starting and ending with the same vertex
+	 */
+	private static List<String> findCycle(Graph graph, int[] component, boolean[] member) {
+		for (int id : component) {
+			member[id] = true;
+		}
+		// start from the first vertex of the component in alphabetic order
+		int start = component[0];
+		for (int id : component) {
+			if (String.CASE_INSENSITIVE_ORDER.compare(graph.nameOf(id), graph.nameOf(start)) < 0)
+				start = id;
+		}
+		java.util.Map<Integer, Integer> parent = new java.util.HashMap<Integer, Integer>();
+		int[] queue = new int[component.length];
+		int head = 0, tail = 0;
+		queue[tail++] = start;
+		int end = -1;
+		search:
+			while (head < tail) {
+				int vertex = queue[head++];
+				for (int i = 0; i < graph.outDegree(vertex); i++) {
+					int successor = graph.successor(vertex, i);
+					if (successor == start) {
+						end = vertex;
+						break search;
+					}
+					if (member[successor] && !parent.containsKey(successor)) {
+						parent.put(successor, vertex);
+						queue[tail++] = successor;
+					}
+				}
+			}
+		for (int id : component) {
+			member[id] = false;
+		}
+		// walk the parents back from the last vertex of the cycle to the start
+		List<String> cycle = new ArrayList<String>();
+		cycle.add(graph.nameOf(start));
+		for (int vertex = end; vertex != start; vertex = parent.get(vertex)) {
+			cycle.add(graph.nameOf(vertex));
+		}
+		cycle.add(graph.nameOf(start));
+		java.util.Collections.reverse(cycle);
+		return cycle;
+	}
+
+	/**
+	 * This helper method checks if a vertex depends on itself
+	 * @param graph - the graph
+	 * @param vertex - the id of the vertex
+	 * @return true if there is an edge from the vertex to itself
+	 */
+	private static boolean hasSelfLoop(Graph graph, int vertex) {
+		for (int i = 0; i < graph.outDegree(vertex); i++) {
+			if (graph.successor(vertex, i) == vertex)
+				return true;
+		}
+		return false;
+	}
+}
@@ -0,0 +1,84 @@
+/**
+ * Filename:   TopologicalOrder.java
+ * Project:    p4
+ * 
+ * Computes an installation order of every vertex of a graph by a depth-first search, which 
+ * installs every vertex once all of its successors are installed. The search is iterative and 
+ * keeps the position it reached in the successors of every vertex on the stack, so that every 
+ * edge is followed once.
+ * 
+ * The order is the one getInstallationOrderForAllPackages always gave: the vertices without 
+ * predecessors are pushed in case-insensitive order, the search starts from the last one 
+ * pushed, and it follows the successors of a vertex in case-insensitive order, which is the 
+ * order the graph keeps them in. Apart from the case-insensitive order of the names, which the 
+ * graph computes once per version, the search takes linear time.
+ */
+public class TopologicalOrder {
+
+	/**
+	 * Returns the ids of all the vertices of a graph in a valid installation order, where every 
+	 * vertex comes after all of its successors.
+	 * 
+	 * @param graph the graph to be sorted
+	 * @return the ids of the vertices in installation order
+	 * @throws CycleException if the graph has a cycle
+	 */
+	public static int[] sort(Graph graph) throws CycleException {
+		int bound = graph.idBound();
+		// the vertices that are a dependency of another one are not where the search starts
+		boolean[] dependency = new boolean[bound];
+		for (int id = 0; id < bound; id++) {
+			if (!graph.isVertex(id))
+				continue;
+			for (int i = 0; i < graph.outDegree(id); i++) {
+				dependency[graph.successor(id, i)] = true;
+			}
+		}
+		int[] sortedIds = graph.sortedIds();
+		// the stack holds the vertices being searched, with the index of their next successor
+		int[] stack = new int[sortedIds.length];
+		int[] next = new int[sortedIds.length];
+		int top = 0;
+		// 1 once a vertex is pushed, 2 once it is installed
+		byte[] state = new byte[bound];
+		for (int id : sortedIds) {
+			if (!dependency[id]) {
+				stack[top++] = id;
+				state[id] = 1;
+			}
+		}
+		int[] order = new int[sortedIds.length];
+		int installed = 0;
+		while (top > 0) {
+			int id = stack[top - 1];
+			int degree = graph.outDegree(id);
+			int i = next[top - 1];
+			// look for a successor that is not installed yet
+			while (i < degree) {
+				int successor = graph.successor(id, i);
+				if (graph.isVertex(successor) && state[successor] != 2)
+					break;
+				i++;
+			}
+			if (i == degree) {
+				// all the successors are installed, so is the vertex
+				top--;
+				state[id] = 2;
+				order[installed++] = id;
+				continue;
+			}
+			next[top - 1] = i + 1;
+			int successor = graph.successor(id, i);
+			// a successor still on the stack depends on the vertex
+			if (state[successor] == 1)
+				throw StronglyConnectedComponents.cycleException(graph, -1);
+			state[successor] = 1;
+			next[top] = 0;
+			stack[top++] = successor;
+		}
+		// the vertices that were never reached are on a cycle without a way in
+		if (installed < order.length)
+			throw StronglyConnectedComponents.cycleException(graph, -1);
+		return order;
+	}
+}
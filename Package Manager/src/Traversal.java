@@ -0,0 +1,236 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Filename:   Traversal.java
+ * Project:    p4
+ *
+ * Iterative depth-first and breadth-first searches over the vertex ids of a graph, using
+ * scratch state that is reused from one search to the next.
+ *
+ * Every thread has its own context, returned by get. A vertex is visited in the current search
+ * if its stamp equals the number of the search, so the visited marks never have to be cleared,
+ * and the stacks and the queue are kept in primitive arrays that only grow. The successors are
+ * walked in place, already in case-insensitive order. Apart from its result, a search
+ * allocates nothing once the arrays are large enough for the graph.
+ */
+public class Traversal {
+	/**
+	 * The context of every thread
+	 */
+	private static final ThreadLocal<Traversal> CONTEXT = ThreadLocal.withInitial(Traversal::new);
+
+	/**
+	 * The number of the current search, the stamp of the vertices it visited
+	 */
+	private int epoch;
+
+	/**
+	 * The stamp of every vertex, equal to epoch if it was visited in the current search
+	 */
+	private int[] visited;
+
+	/**
+	 * The stamp of every vertex, equal to epoch if it is on the current path of a depth-first search
+	 */
+	private int[] onPath;
+
+	/**
+	 * The vertex of every frame of the depth-first stack, or the queue of a breadth-first search
+	 */
+	private int[] stack;
+
+	/**
+	 * The position of the next successor to be traversed of the vertex of every frame
+	 */
+	private int[] framePosition;
+
+	/**
+	 * The number of vertices visited by all the searches of this context
+	 */
+	private long visitedCount;
+
+	/**
+	 * Returns the context of the current thread
+	 *
+	 * @return the traversal context, only to be used by the current thread
+	 */
+	public static Traversal get() {
+		return CONTEXT.get();
+	}
+
+	/**
+	 * Creates an empty context
+	 */
+	private Traversal() {
+		visited = onPath = stack = framePosition = new int[0];
+	}
+
+	/**
+	 * Returns the installation order of a vertex: every vertex it reaches, each one after all
+	 * of its successors, visiting successors in case-insensitive order
+	 *
+	 * @param graph the graph
+	 * @param root the id of the vertex
+	 * @return the names of the reached vertices in installation order, the root last
+	 * @throws CycleException if a cycle is reachable from the vertex
+	 */
+	public List<String> installationOrder(Graph graph, int root) throws CycleException {
+		return depthFirst(graph, root, null, false);
+	}
+
+	/**
+	 * Returns every vertex a vertex reaches without going through a skipped vertex, each one
+	 * before its successors, visiting successors in case-insensitive order
+	 *
+	 * @param graph the graph
+	 * @param root the id of the vertex
+	 * @param skipped the ids of the vertices that are not traversed, or null
+	 * @return the names of the reached vertices in preorder, the root first, or an empty list
+	 * if the root is skipped
+	 * @throws CycleException if a cycle is reachable from the vertex
+	 */
+	public List<String> preorder(Graph graph, int root, BitSet skipped) throws CycleException {
+		if (skipped != null && skipped.get(root))
+			return new ArrayList<String>();
+		return depthFirst(graph, root, skipped, true);
+	}
+
+	/**
+	 * Marks a vertex and every vertex it reaches. Marked vertices are not traversed again, so
+	 * marking the closures of several vertices in turn visits every vertex once.
+	 *
+	 * @param graph the graph
+	 * @param root the id of the vertex
+	 * @param marks the ids of the marked vertices, to which the reached vertices are added
+	 */
+	public void mark(Graph graph, int root, BitSet marks) {
+		if (marks.get(root))
+			return;
+		prepare(graph);
+		int top = 0;
+		stack[top++] = root;
+		marks.set(root);
+		visitedCount++;
+		while (top > 0) {
+			int current = stack[--top];
+			for (int i = 0; i < graph.outDegree(current); i++) {
+				int successor = graph.successor(current, i);
+				if (marks.get(successor))
+					continue;
+				// every vertex is pushed once, so the stack never holds more than all vertices
+				marks.set(successor);
+				visitedCount++;
+				stack[top++] = successor;
+			}
+		}
+	}
+
+	/**
+	 * Returns every vertex that reaches a vertex, nearest first
+	 *
+	 * @param graph the graph
+	 * @param root the id of the vertex
+	 * @return the names of the vertices that reach the vertex, not including the vertex
+	 */
+	public List<String> dependents(Graph graph, int root) {
+		prepare(graph);
+		List<String> dependents = new ArrayList<String>();
+		// the stack array is used as the queue of the breadth-first search
+		int head = 0, tail = 0;
+		stack[tail++] = root;
+		visited[root] = epoch;
+		visitedCount++;
+		while (head < tail) {
+			int current = stack[head++];
+			for (int i = 0; i < graph.inDegree(current); i++) {
+				int dependent = graph.predecessor(current, i);
+				if (visited[dependent] != epoch) {
+					visited[dependent] = epoch;
+					visitedCount++;
+					stack[tail++] = dependent;
+					dependents.add(graph.nameOf(dependent));
+				}
+			}
+		}
+		return dependents;
+	}
+
+	/**
+	 * Returns the number of vertices visited by all the searches of this context so far, so 
+	 * that the vertices visited by one search are the difference before and after it
+	 *
+	 * @return the number of visited vertices
+	 */
+	public long getVisitedCount() {
+		return visitedCount;
+	}
+
+	/**
+	 * This helper method runs a depth-first search from a vertex, detecting cycles
+	 * @param graph - the graph
+	 * @param root - the id of the vertex to start from
+	 * @param skipped - the ids of the vertices that are not traversed, or null
+	 * @param preorder - true to list every vertex when it is reached, false when all of its
+	 * successors are done
+	 * @return the names of the reached vertices in the chosen order
+	 */
+	private List<String> depthFirst(Graph graph, int root, BitSet skipped, boolean preorder) throws CycleException {
+		prepare(graph);
+		List<String> order = new ArrayList<String>();
+		int top = 0;
+		visited[root] = onPath[root] = epoch;
+		visitedCount++;
+		if (preorder)
+			order.add(graph.nameOf(root));
+		stack[top] = root;
+		framePosition[top++] = 0;
+		while (top > 0) {
+			int current = stack[top - 1];
+			if (framePosition[top - 1] == graph.outDegree(current)) {
+				// after all its successors have been traversed, the vertex leaves the path
+				onPath[current] = 0;
+				if (!preorder)
+					order.add(graph.nameOf(current));
+				top--;
+				continue;
+			}
+			int successor = graph.successor(current, framePosition[top - 1]++);
+			if (onPath[successor] == epoch)
+				throw StronglyConnectedComponents.cycleException(graph, root);
+			if (visited[successor] != epoch && (skipped == null || !skipped.get(successor))) {
+				visited[successor] = onPath[successor] = epoch;
+				visitedCount++;
+				if (preorder)
+					order.add(graph.nameOf(successor));
+				stack[top] = successor;
+				framePosition[top++] = 0;
+			}
+		}
+		return order;
+	}
+
+	/**
+	 * This helper method starts a new search, growing the arrays to the ids of the graph and
+	 * moving to the next stamp
+	 * @param graph - the graph to be searched
+	 */
+	private void prepare(Graph graph) {
+		int bound = graph.idBound();
+		if (visited.length < bound) {
+			int capacity = Math.max(bound, 2 * visited.length);
+			visited = Arrays.copyOf(visited, capacity);
+			onPath = Arrays.copyOf(onPath, capacity);
+			stack = Arrays.copyOf(stack, capacity);
+			framePosition = Arrays.copyOf(framePosition, capacity);
+		}
+		// the stamps are cleared once in about two billion searches
+		if (++epoch == Integer.MAX_VALUE) {
+			Arrays.fill(visited, 0);
+			Arrays.fill(onPath, 0);
+			epoch = 1;
+		}
+	}
+}
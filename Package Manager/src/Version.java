@@ -0,0 +1,166 @@
+import java.util.Arrays;
+
+/**
+ * Filename:   Version.java
+ * Project:    p4
+ *
+ * The version of a release of a package, such as 1.2.3 or 2.0.0-beta.1.
+ *
+ * A version is a list of numbers separated by dots, optionally followed by a dash and a
+ * qualifier. Versions are ordered by their numbers, a missing number counting as 0, so 1.2 and
+ * 1.2.0 are equal. A version with a qualifier comes before the same version without one, and
+ * qualifiers are ordered alphabetically.
+ */
+public final class Version implements Comparable<Version> {
+	/**
+	 * The version of the packages whose entries have no "version"
+	 */
+	public static final Version ZERO = parse("0");
+
+	/**
+	 * The numbers of the version, without trailing zeros
+	 */
+	private final int[] numbers;
+
+	/**
+	 * The qualifier of the version, or null if it has none
+	 */
+	private final String qualifier;
+
+	/**
+	 * The version as it was written
+	 */
+	private final String text;
+
+	/**
+	 * Creates a version
+	 */
+	private Version(int[] numbers, String qualifier, String text) {
+		int length = numbers.length;
+		while (length > 0 && numbers[length - 1] == 0)
+			length--;
+		this.numbers = Arrays.copyOf(numbers, length);
+		this.qualifier = qualifier;
+		this.text = text;
+	}
+
+	/**
+	 * Parses a version
+	 *
+	 * @param text the version, such as 1.2.3 or 1.0.0-rc.1
+	 * @return the version
+	 * @throws IllegalArgumentException if the text is not a version
+	 */
+	public static Version parse(String text) {
+		String trimmed = text.trim();
+		int dash = trimmed.indexOf('-');
+		String qualifier = dash < 0 ? null : trimmed.substring(dash + 1);
+		String[] parts = (dash < 0 ? trimmed : trimmed.substring(0, dash)).split("\\.", -1);
+		if (qualifier != null && qualifier.isEmpty())
+			throw new IllegalArgumentException("not a version: " + text);
+		int[] numbers = new int[parts.length];
+		for (int i = 0; i < parts.length; i++) {
+			if (parts[i].isEmpty())
+				throw new IllegalArgumentException("not a version: " + text);
+			for (int j = 0; j < parts[i].length(); j++) {
+				if (parts[i].charAt(j) < '0' || parts[i].charAt(j) > '9')
+					throw new IllegalArgumentException("not a version: " + text);
+			}
+			try {
+				numbers[i] = Integer.parseInt(parts[i]);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("not a version: " + text);
+			}
+		}
+		return new Version(numbers, qualifier, trimmed);
+	}
+
+	/**
+	 * Returns one of the numbers of the version
+	 *
+	 * @param index the position of the number, 0 for the major number
+	 * @return the number, or 0 if the version has fewer numbers
+	 */
+	public int getNumber(int index) {
+		return index < numbers.length ? numbers[index] : 0;
+	}
+
+	/**
+	 * Returns the qualifier of the version
+	 *
+	 * @return the text after the dash, or null if the version has none
+	 */
+	public String getQualifier() {
+		return qualifier;
+	}
+
+	/**
+	 * Returns the smallest version after every version that starts with the same numbers up to
+	 * a position, such as 1.3.0 for 1.2.5 at position 1
+	 *
+	 * @param index the position of the number that is incremented
+	 * @return the version with that number incremented and the following numbers dropped
+	 */
+	Version next(int index) {
+		int[] bumped = new int[index + 1];
+		for (int i = 0; i < index; i++) {
+			bumped[i] = getNumber(i);
+		}
+		bumped[index] = getNumber(index) + 1;
+		StringBuilder text = new StringBuilder();
+		for (int i = 0; i <= index; i++) {
+			text.append(i > 0 ? "." : "").append(bumped[i]);
+		}
+		return new Version(bumped, null, text.toString());
+	}
+
+	/**
+	 * Returns the position of the first number that is not 0
+	 *
+	 * @return the position, or -1 if all the numbers are 0
+	 */
+	int firstNonZero() {
+		for (int i = 0; i < numbers.length; i++) {
+			if (numbers[i] != 0)
+				return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Compares two versions by their numbers, then by their qualifiers
+	 *
+	 * @param other the other version
+	 * @return a negative number if this version comes first, 0 if they are equal, and a
+	 * positive number otherwise
+	 */
+	public int compareTo(Version other) {
+		int length = Math.max(numbers.length, other.numbers.length);
+		for (int i = 0; i < length; i++) {
+			int compare = Integer.compare(getNumber(i), other.getNumber(i));
+			if (compare != 0)
+				return compare;
+		}
+		// a version without a qualifier comes after all of its qualified versions
+		if (qualifier == null || other.qualifier == null)
+			return qualifier == null ? (other.qualifier == null ? 0 : 1) : -1;
+		return qualifier.compareTo(other.qualifier);
+	}
+
+	public boolean equals(Object other) {
+		return other instanceof Version && compareTo((Version) other) == 0;
+	}
+
+	public int hashCode() {
+		return 31 * Arrays.hashCode(numbers) + (qualifier == null ? 0 : qualifier.hashCode());
+	}
+
+	/**
+	 * Returns the version as it was written
+	 *
+	 * @return the text of the version
+	 */
+	public String toString() {
+		return text;
+	}
+}
@@ -0,0 +1,144 @@
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Filename:   VersionRange.java
+ * Project:    p4
+ *
+ * A constraint on the version of a dependency, such as ">=1.2 <2", "^1.4.0" or "1.0 || 2.0".
+ *
+ * A range is one or more alternatives separated by "||", and it contains a version if any
+ * alternative does. An alternative is a list of comparators separated by spaces, all of which
+ * must hold:
+ * - "*" or nothing: any version
+ * - "1.2.3" or "=1.2.3": exactly that version
+ * - ">1.2", ">=1.2", "<2", "<=2": an open or closed bound
+ * - "^1.2.3": the versions from 1.2.3 up to the next change of the first number that is not 0,
+ *   i.e. below 2.0.0, or below 0.3.0 for ^0.2.3
+ * - "~1.2.3": the versions from 1.2.3 below the next minor version, 1.3.0
+ */
+public final class VersionRange {
+	/**
+	 * The range of every version
+	 */
+	public static final VersionRange ANY = parse("*");
+
+	/**
+	 * The lower and upper bound of every alternative, null if it is not bounded, and whether
+	 * each bound is part of the alternative
+	 */
+	private final Version[] lower, upper;
+	private final boolean[] lowerInclusive, upperInclusive;
+
+	/**
+	 * The range as it was written
+	 */
+	private final String text;
+
+	/**
+	 * Creates a range
+	 */
+	private VersionRange(List<Version[]> bounds, List<boolean[]> inclusive, String text) {
+		int count = bounds.size();
+		lower = new Version[count];
+		upper = new Version[count];
+		lowerInclusive = new boolean[count];
+		upperInclusive = new boolean[count];
+		for (int i = 0; i < count; i++) {
+			lower[i] = bounds.get(i)[0];
+			upper[i] = bounds.get(i)[1];
+			lowerInclusive[i] = inclusive.get(i)[0];
+			upperInclusive[i] = inclusive.get(i)[1];
+		}
+		this.text = text;
+	}
+
+	/**
+	 * Parses a range
+	 *
+	 * @param text the range, such as ">=1.0 <2.0"
+	 * @return the range
+	 * @throws IllegalArgumentException if the text is not a range
+	 */
+	public static VersionRange parse(String text) {
+		List<Version[]> bounds = new ArrayList<Version[]>();
+		List<boolean[]> inclusive = new ArrayList<boolean[]>();
+		for (String alternative : text.split("\\|\\|", -1)) {
+			Version[] bound = new Version[2];
+			boolean[] closed = {true, true};
+			for (String comparator : alternative.trim().split("\\s+")) {
+				if (comparator.isEmpty() || comparator.equals("*"))
+					continue;
+				// every comparator narrows the alternative to the bounds it gives
+				Version low = null, high = null;
+				boolean lowClosed = true, highClosed = true;
+				if (comparator.startsWith(">=")) {
+					low = Version.parse(comparator.substring(2));
+				} else if (comparator.startsWith(">")) {
+					low = Version.parse(comparator.substring(1));
+					lowClosed = false;
+				} else if (comparator.startsWith("<=")) {
+					high = Version.parse(comparator.substring(2));
+				} else if (comparator.startsWith("<")) {
+					high = Version.parse(comparator.substring(1));
+					highClosed = false;
+				} else if (comparator.startsWith("^")) {
+					low = Version.parse(comparator.substring(1));
+					high = low.next(Math.max(0, low.firstNonZero()));
+					highClosed = false;
+				} else if (comparator.startsWith("~")) {
+					low = Version.parse(comparator.substring(1));
+					high = low.next(comparator.indexOf('.') < 0 ? 0 : 1);
+					highClosed = false;
+				} else {
+					low = high = Version.parse(comparator.startsWith("=") ? comparator.substring(1) : comparator);
+				}
+				if (low != null && (bound[0] == null || low.compareTo(bound[0]) > 0
+						|| (low.equals(bound[0]) && !lowClosed))) {
+					bound[0] = low;
+					closed[0] = lowClosed;
+				}
+				if (high != null && (bound[1] == null || high.compareTo(bound[1]) < 0
+						|| (high.equals(bound[1]) && !highClosed))) {
+					bound[1] = high;
+					closed[1] = highClosed;
+				}
+			}
+			bounds.add(bound);
+			inclusive.add(closed);
+		}
+		return new VersionRange(bounds, inclusive, text.trim());
+	}
+
+	/**
+	 * Returns whether a version is in the range
+	 *
+	 * @param version the version
+	 * @return true if any alternative of the range contains the version
+	 */
+	public boolean contains(Version version) {
+		for (int i = 0; i < lower.length; i++) {
+			if (lower[i] != null) {
+				int compare = version.compareTo(lower[i]);
+				if (compare < 0 || (compare == 0 && !lowerInclusive[i]))
+					continue;
+			}
+			if (upper[i] != null) {
+				int compare = version.compareTo(upper[i]);
+				if (compare > 0 || (compare == 0 && !upperInclusive[i]))
+					continue;
+			}
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Returns the range as it was written
+	 *
+	 * @return the text of the range
+	 */
+	public String toString() {
+		return text;
+	}
+}
@@ -0,0 +1,650 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Filename:   VersionResolver.java
+ * Project:    p4
+ *
+ * Chooses one version of a package and of every package it depends on, so that every chosen
+ * release accepts the chosen version of each of its dependencies.
+ *
+ * Every release is a boolean variable, true if it is chosen. A release that is chosen requires
+ * one of the releases its range accepts for each dependency, which is a clause, and at most one
+ * release of every package is chosen. The resolver is a conflict-driven clause learning solver
+ * over these variables: it chooses the highest acceptable version of one required package at a
+ * time, propagates what that choice implies through the clauses until nothing more follows, and
+ * when a choice leads to a conflict it learns a clause that rules out the cause of the conflict
+ * and jumps back to the choice the cause depends on. A learned clause follows from the releases
+ * alone, not from the package being resolved, so the resolver keeps them for the next
+ * resolutions, and a conflict is never explored twice.
+ *
+ * Packages without releases are taken as a single release, version 0, depending on any version
+ * of their dependencies in the graph. A resolver is built for one version of the graph and its
+ * releases, and its methods are synchronized.
+ */
+public class VersionResolver {
+	/**
+	 * The graph the resolver was built for
+	 */
+	private final Graph graph;
+
+	/**
+	 * The releases of every package that has some
+	 */
+	private final Map<String, List<Release>> releases;
+
+	/**
+	 * The number of every package whose variables were created
+	 */
+	private final Map<String, Integer> packageIds;
+
+	/**
+	 * The first variable and the number of variables of every package, its releases from the
+	 * highest version to the lowest
+	 */
+	private int[] firstVariable, variableCount;
+	private int packageCount;
+
+	/**
+	 * The release and the package of every variable
+	 */
+	private Release[] releaseOf;
+	private int[] packageOf;
+
+	/**
+	 * The acceptable releases of every dependency of every variable, from the highest version
+	 * to the lowest
+	 */
+	private int[][][] requirements;
+	private int variables;
+
+	/**
+	 * The value of every variable, 1 if it is true, -1 if it is false and 0 if it is unassigned,
+	 * the decision level at which it was assigned, and the clause that implied it, or null if it
+	 * was chosen
+	 */
+	private byte[] value;
+	private int[] level;
+	private int[][] reason;
+
+	/**
+	 * The literals assigned so far in the order they were assigned, where the literal of a
+	 * variable v is 2v if v is true and 2v + 1 if v is false
+	 */
+	private int[] trail;
+	private int trailSize;
+
+	/**
+	 * The position in the trail where every decision level starts
+	 */
+	private int[] levelStart;
+	private int currentLevel;
+
+	/**
+	 * The number of assigned literals whose consequences were propagated, and the number whose
+	 * requirements were checked to be satisfied
+	 */
+	private int propagated, checked;
+
+	/**
+	 * The clauses of two or more literals, the ones given by the releases and the learned ones,
+	 * and the clauses of a single literal
+	 */
+	private final List<int[]> clauses;
+	private final List<int[]> units;
+
+	/**
+	 * The positions of the clauses watching every literal. A clause watches its first two
+	 * literals, and only has to be looked at when one of them becomes false.
+	 */
+	private int[][] watches;
+	private int[] watchCount;
+
+	/**
+	 * The dependency that gave every clause of the releases, to explain a failed resolution
+	 */
+	private final Map<int[], String> origins;
+
+	/**
+	 * The variables visited by the current conflict analysis
+	 */
+	private boolean[] seen;
+
+	/**
+	 * The number of conflicts found and of clauses learned by all the resolutions
+	 */
+	private long conflicts, learned;
+
+	/**
+	 * Creates a resolver
+	 *
+	 * @param graph the version of the graph
+	 * @param releases the releases of every package that has some, from that version
+	 */
+	public VersionResolver(Graph graph, Map<String, List<Release>> releases) {
+		this.graph = graph;
+		this.releases = releases;
+		packageIds = new HashMap<String, Integer>();
+		firstVariable = new int[16];
+		variableCount = new int[16];
+		releaseOf = new Release[16];
+		packageOf = new int[16];
+		requirements = new int[16][][];
+		value = new byte[16];
+		level = new int[16];
+		reason = new int[16][];
+		seen = new boolean[16];
+		trail = new int[16];
+		levelStart = new int[16];
+		watches = new int[32][];
+		watchCount = new int[32];
+		clauses = new ArrayList<int[]>();
+		units = new ArrayList<int[]>();
+		origins = new IdentityHashMap<int[], String>();
+	}
+
+	/**
+	 * Returns whether the resolver was built for a version of the graph
+	 *
+	 * @param graph the version of the graph
+	 * @return true if the resolver can resolve the packages of that version
+	 */
+	public boolean isCurrent(Graph graph) {
+		return this.graph == graph;
+	}
+
+	/**
+	 * Chooses a version of a package and of every package it depends on, directly or not
+	 *
+	 * @param pkg the name of the package
+	 * @param range the acceptable versions of the package
+	 * @return the chosen version of every package, the package first and every other package
+	 * after a package that depends on it
+	 * @throws ResolutionException if no choice satisfies all the constraints
+	 */
+	public synchronized Map<String, Version> resolve(String pkg, VersionRange range) throws ResolutionException {
+		int root = addPackages(pkg);
+		int[] candidates = acceptable(root, range);
+		// start over from no assignment, keeping the learned clauses
+		for (int i = 0; i < trailSize; i++) {
+			value[trail[i] >> 1] = 0;
+			reason[trail[i] >> 1] = null;
+		}
+		trailSize = propagated = checked = currentLevel = 0;
+		for (int[] unit : units) {
+			if (valueOf(unit[0]) < 0)
+				throw failure(pkg, candidates, range);
+			if (valueOf(unit[0]) == 0)
+				assign(unit[0], unit);
+		}
+		while (true) {
+			int[] conflict = propagate();
+			if (conflict != null) {
+				conflicts++;
+				if (currentLevel == 0)
+					throw failure(pkg, candidates, range);
+				learn(conflict);
+				continue;
+			}
+			int decision = decide(candidates);
+			if (decision == -1)
+				return chosen(root);
+			if (decision == -2)
+				throw failure(pkg, candidates, range);
+			currentLevel++;
+			if (currentLevel == levelStart.length)
+				levelStart = Arrays.copyOf(levelStart, 2 * levelStart.length);
+			levelStart[currentLevel] = trailSize;
+			assign(decision, null);
+		}
+	}
+
+	/**
+	 * Returns the number of conflicts found by all the resolutions
+	 *
+	 * @return the number of conflicts
+	 */
+	public synchronized long getConflicts() {
+		return conflicts;
+	}
+
+	/**
+	 * Returns the number of clauses learned from the conflicts and kept for later resolutions
+	 *
+	 * @return the number of learned clauses
+	 */
+	public synchronized long getLearnedClauses() {
+		return learned;
+	}
+
+	/**
+	 * This helper method creates the variables and clauses of a package and of every package
+	 * any of its releases depends on, if they do not exist yet
+	 * @param pkg - the name of the package
+	 * @return the number of the package
+	 */
+	private int addPackages(String pkg) {
+		Integer existing = packageIds.get(pkg);
+		if (existing != null)
+			return existing;
+		// create the variables of all the new packages first, then the clauses between them
+		int firstNew = variables;
+		ArrayDeque<String> pending = new ArrayDeque<String>();
+		int root = addPackage(pkg);
+		pending.add(pkg);
+		while (!pending.isEmpty()) {
+			int p = packageIds.get(pending.poll());
+			for (int v = firstVariable[p]; v < firstVariable[p] + variableCount[p]; v++) {
+				for (String dependency : releaseOf[v].getDependencies().keySet()) {
+					if (!packageIds.containsKey(dependency)) {
+						addPackage(dependency);
+						pending.add(dependency);
+					}
+				}
+			}
+		}
+		for (int v = firstNew; v < variables; v++) {
+			Map<String, VersionRange> dependencies = releaseOf[v].getDependencies();
+			requirements[v] = new int[dependencies.size()][];
+			int i = 0;
+			for (Map.Entry<String, VersionRange> dependency : dependencies.entrySet()) {
+				int[] accepted = acceptable(packageIds.get(dependency.getKey()), dependency.getValue());
+				requirements[v][i++] = accepted;
+				// choosing the release requires one of the accepted releases
+				int[] clause = new int[accepted.length + 1];
+				clause[0] = 2 * v + 1;
+				for (int j = 0; j < accepted.length; j++) {
+					clause[j + 1] = 2 * accepted[j];
+				}
+				origins.put(clause, releaseOf[v] + " depends on " + dependency.getKey() + " " + dependency.getValue());
+				addClause(clause);
+			}
+		}
+		return root;
+	}
+
+	/**
+	 * This helper method creates the variables of one package, one per release
+	 * @param pkg - the name of the package
+	 * @return the number of the package
+	 */
+	private int addPackage(String pkg) {
+		List<Release> list = releases.get(pkg);
+		if (list == null) {
+			// a package without releases is one release depending on any version of its
+			// successors in the graph
+			Map<String, VersionRange> dependencies = new LinkedHashMap<String, VersionRange>();
+			if (graph.containsVertex(pkg)) {
+				for (String dependency : graph.getAdjacentVerticesOf(pkg)) {
+					dependencies.put(dependency, VersionRange.ANY);
+				}
+				list = Collections.singletonList(new Release(pkg, Version.ZERO, dependencies));
+			} else {
+				list = Collections.emptyList();
+			}
+		}
+		// the highest versions first, so that they are tried first
+		List<Release> sorted = new ArrayList<Release>(list);
+		sorted.sort((a, b) -> b.getVersion().compareTo(a.getVersion()));
+		int p = packageCount++;
+		if (p == firstVariable.length) {
+			firstVariable = Arrays.copyOf(firstVariable, 2 * p);
+			variableCount = Arrays.copyOf(variableCount, 2 * p);
+		}
+		packageIds.put(pkg, p);
+		firstVariable[p] = variables;
+		for (Release release : sorted) {
+			if (variableCount[p] > 0 && releaseOf[variables - 1].getVersion().equals(release.getVersion()))
+				continue;
+			if (variables == releaseOf.length)
+				growVariables(2 * variables);
+			releaseOf[variables] = release;
+			packageOf[variables] = p;
+			variables++;
+			variableCount[p]++;
+		}
+		return p;
+	}
+
+	/**
+	 * This helper method grows the arrays indexed by variables and literals
+	 * @param capacity - the number of variables the arrays can hold
+	 */
+	private void growVariables(int capacity) {
+		releaseOf = Arrays.copyOf(releaseOf, capacity);
+		packageOf = Arrays.copyOf(packageOf, capacity);
+		requirements = Arrays.copyOf(requirements, capacity);
+		value = Arrays.copyOf(value, capacity);
+		level = Arrays.copyOf(level, capacity);
+		reason = Arrays.copyOf(reason, capacity);
+		seen = Arrays.copyOf(seen, capacity);
+		trail = Arrays.copyOf(trail, capacity);
+		watches = Arrays.copyOf(watches, 2 * capacity);
+		watchCount = Arrays.copyOf(watchCount, 2 * capacity);
+	}
+
+	/**
+	 * This helper method returns the releases of a package in a range
+	 * @param p - the number of the package
+	 * @param range - the range
+	 * @return the variables of the releases, from the highest version to the lowest
+	 */
+	private int[] acceptable(int p, VersionRange range) {
+		int[] accepted = new int[variableCount[p]];
+		int count = 0;
+		for (int v = firstVariable[p]; v < firstVariable[p] + variableCount[p]; v++) {
+			if (range.contains(releaseOf[v].getVersion()))
+				accepted[count++] = v;
+		}
+		return Arrays.copyOf(accepted, count);
+	}
+
+	/**
+	 * This helper method adds a clause, watching its first two literals
+	 * @param clause - the literals of the clause, one of which has to be true
+	 */
+	private void addClause(int[] clause) {
+		if (clause.length == 1) {
+			units.add(clause);
+			return;
+		}
+		int index = clauses.size();
+		clauses.add(clause);
+		watch(clause[0], index);
+		watch(clause[1], index);
+	}
+
+	/**
+	 * This helper method adds a clause to the clauses watching a literal
+	 * @param literal - the literal
+	 * @param index - the position of the clause
+	 */
+	private void watch(int literal, int index) {
+		if (watches[literal] == null)
+			watches[literal] = new int[4];
+		else if (watchCount[literal] == watches[literal].length)
+			watches[literal] = Arrays.copyOf(watches[literal], 2 * watchCount[literal]);
+		watches[literal][watchCount[literal]++] = index;
+	}
+
+	/**
+	 * This helper method returns the value of a literal
+	 * @param literal - the literal
+	 * @return 1 if it is true, -1 if it is false and 0 if its variable is unassigned
+	 */
+	private int valueOf(int literal) {
+		int v = value[literal >> 1];
+		return (literal & 1) == 0 ? v : -v;
+	}
+
+	/**
+	 * This helper method makes a literal true at the current decision level
+	 * @param literal - the literal
+	 * @param cause - the clause that implies it, or null if it is a decision
+	 */
+	private void assign(int literal, int[] cause) {
+		int v = literal >> 1;
+		value[v] = (byte) ((literal & 1) == 0 ? 1 : -1);
+		level[v] = currentLevel;
+		reason[v] = cause;
+		trail[trailSize++] = literal;
+	}
+
+	/**
+	 * This helper method assigns every literal implied by the literals assigned so far
+	 * @return a clause whose literals are all false, or null if there is no conflict
+	 */
+	private int[] propagate() {
+		while (propagated < trailSize) {
+			int literal = trail[propagated++];
+			int v = literal >> 1;
+			if ((literal & 1) == 0) {
+				// no other release of the package can be chosen
+				int p = packageOf[v];
+				for (int other = firstVariable[p]; other < firstVariable[p] + variableCount[p]; other++) {
+					if (other == v)
+						continue;
+					if (value[other] > 0)
+						return new int[] {2 * v + 1, 2 * other + 1};
+					if (value[other] == 0)
+						assign(2 * other + 1, new int[] {2 * other + 1, 2 * v + 1});
+				}
+			}
+			// look at the clauses watching the literal that became false
+			int falsified = literal ^ 1;
+			int[] watching = watches[falsified];
+			int count = watchCount[falsified];
+			int kept = 0;
+			for (int i = 0; i < count; i++) {
+				int index = watching[i];
+				int[] clause = clauses.get(index);
+				if (clause[0] == falsified) {
+					clause[0] = clause[1];
+					clause[1] = falsified;
+				}
+				if (valueOf(clause[0]) > 0) {
+					watching[kept++] = index;
+					continue;
+				}
+				// watch another literal that is not false, if there is one
+				boolean moved = false;
+				for (int k = 2; k < clause.length; k++) {
+					if (valueOf(clause[k]) >= 0) {
+						clause[1] = clause[k];
+						clause[k] = falsified;
+						watch(clause[1], index);
+						moved = true;
+						break;
+					}
+				}
+				if (moved)
+					continue;
+				watching[kept++] = index;
+				if (valueOf(clause[0]) < 0) {
+					// every literal is false, keep the remaining watches and report the conflict
+					while (++i < count)
+						watching[kept++] = watching[i];
+					watchCount[falsified] = kept;
+					return clause;
+				}
+				assign(clause[0], clause);
+			}
+			watchCount[falsified] = kept;
+		}
+		return null;
+	}
+
+	/**
+	 * This helper method chooses the next release to try: the package being resolved first,
+	 * then the highest acceptable unassigned release of the first dependency of a chosen
+	 * release that has no chosen release yet
+	 * @param candidates - the acceptable releases of the package being resolved
+	 * @return the literal of the release, -1 if every dependency is satisfied, or -2 if no
+	 * acceptable release of the package being resolved is left
+	 */
+	private int decide(int[] candidates) {
+		int choice = choose(candidates);
+		if (choice != -1)
+			return choice < 0 ? -2 : choice;
+		for (; checked < trailSize; checked++) {
+			int literal = trail[checked];
+			if ((literal & 1) != 0)
+				continue;
+			for (int[] accepted : requirements[literal >> 1]) {
+				choice = choose(accepted);
+				// propagation leaves no chosen release without an acceptable release
+				if (choice >= 0)
+					return choice;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * This helper method chooses one release of a set if none is chosen yet
+	 * @param accepted - the releases, from the highest version to the lowest
+	 * @return the literal of the highest unassigned release, -1 if a release is already chosen,
+	 * or -2 if all of them are ruled out
+	 */
+	private int choose(int[] accepted) {
+		int unassigned = -1;
+		for (int v : accepted) {
+			if (value[v] > 0)
+				return -1;
+			if (value[v] == 0 && unassigned < 0)
+				unassigned = v;
+		}
+		return unassigned < 0 ? -2 : 2 * unassigned;
+	}
+
+	/**
+	 * This helper method learns the clause that explains a conflict, up to the first literal
+	 * of the current level every path to the conflict goes through, and jumps back to the
+	 * highest level of the other literals of that clause
+	 * @param conflict - the clause whose literals are all false
+	 */
+	private void learn(int[] conflict) {
+		List<Integer> literals = new ArrayList<Integer>();
+		literals.add(0);
+		int pending = 0;
+		int implied = -1;
+		int position = trailSize - 1;
+		int[] clause = conflict;
+		do {
+			for (int literal : clause) {
+				int v = literal >> 1;
+				if (implied >= 0 && v == implied >> 1)
+					continue;
+				if (!seen[v] && level[v] > 0) {
+					seen[v] = true;
+					if (level[v] == currentLevel)
+						pending++;
+					else
+						literals.add(literal);
+				}
+			}
+			// the next literal of the current level in the conflict, latest first
+			while (!seen[trail[position] >> 1])
+				position--;
+			implied = trail[position--];
+			seen[implied >> 1] = false;
+			pending--;
+			clause = reason[implied >> 1];
+		} while (pending > 0);
+		literals.set(0, implied ^ 1);
+		int[] learnt = new int[literals.size()];
+		int backjump = 0;
+		for (int i = 0; i < learnt.length; i++) {
+			learnt[i] = literals.get(i);
+			seen[learnt[i] >> 1] = false;
+			// the literal of the highest level is watched with the asserted literal
+			if (i > 0 && level[learnt[i] >> 1] > backjump) {
+				backjump = level[learnt[i] >> 1];
+				learnt[i] = learnt[1];
+				learnt[1] = literals.get(i);
+			}
+		}
+		backtrack(backjump);
+		addClause(learnt);
+		learned++;
+		assign(learnt[0], learnt);
+	}
+
+	/**
+	 * This helper method undoes every assignment above a decision level
+	 * @param target - the level to go back to
+	 */
+	private void backtrack(int target) {
+		if (currentLevel <= target)
+			return;
+		int start = levelStart[target + 1];
+		for (int i = start; i < trailSize; i++) {
+			value[trail[i] >> 1] = 0;
+			reason[trail[i] >> 1] = null;
+		}
+		trailSize = propagated = start;
+		// a requirement checked before may have been satisfied by an undone release
+		checked = 0;
+		currentLevel = target;
+	}
+
+	/**
+	 * This helper method collects the chosen releases from the package being resolved
+	 * @param root - the number of the package
+	 * @return the chosen version of every package it depends on, directly or not
+	 */
+	private Map<String, Version> chosen(int root) {
+		Map<String, Version> versions = new LinkedHashMap<String, Version>();
+		ArrayDeque<Integer> pending = new ArrayDeque<Integer>();
+		pending.add(root);
+		while (!pending.isEmpty()) {
+			int p = pending.poll();
+			for (int v = firstVariable[p]; v < firstVariable[p] + variableCount[p]; v++) {
+				if (value[v] <= 0)
+					continue;
+				if (versions.put(releaseOf[v].getName(), releaseOf[v].getVersion()) != null)
+					break;
+				for (String dependency : releaseOf[v].getDependencies().keySet()) {
+					if (!versions.containsKey(dependency))
+						pending.add(packageIds.get(dependency));
+				}
+				break;
+			}
+		}
+		return Collections.unmodifiableMap(versions);
+	}
+
+	/**
+	 * This helper method explains why no acceptable release of the package being resolved
+	 * can be chosen
+	 * @param pkg - the name of the package
+	 * @param candidates - its acceptable releases
+	 * @param range - the acceptable versions
+	 * @return the exception to be thrown
+	 */
+	private ResolutionException failure(String pkg, int[] candidates, VersionRange range) {
+		List<String> reasons = new ArrayList<String>();
+		if (candidates.length == 0)
+			reasons.add("no release of " + pkg + " matches " + range);
+		for (int v : candidates) {
+			if (value[v] < 0 && reason[v] != null)
+				reasons.add(releaseOf[v] + " is ruled out: " + describe(reason[v], v));
+		}
+		return new ResolutionException(pkg, reasons);
+	}
+
+	/**
+	 * This helper method describes a clause that ruled out a release
+	 * @param clause - the clause
+	 * @param ruledOut - the variable of the release it ruled out
+	 * @return the description of the clause
+	 */
+	private String describe(int[] clause, int ruledOut) {
+		String origin = origins.get(clause);
+		if (origin != null)
+			return origin + (clause.length == 1 ? ", which has no matching release" : "");
+		List<String> chosen = new ArrayList<String>();
+		List<String> required = new ArrayList<String>();
+		for (int literal : clause) {
+			if (literal >> 1 == ruledOut)
+				continue;
+			// a false literal of the clause is a release that is chosen, or ruled out
+			if ((literal & 1) != 0)
+				chosen.add(releaseOf[literal >> 1].toString());
+			else
+				required.add(releaseOf[literal >> 1].toString());
+		}
+		if (required.isEmpty() && chosen.isEmpty())
+			return "it conflicts with the constraints of its dependencies";
+		if (required.isEmpty())
+			return "it conflicts with " + String.join(", ", chosen);
+		return "it requires one of " + required + (chosen.isEmpty() ? "" : " with " + String.join(", ", chosen));
+	}
+}